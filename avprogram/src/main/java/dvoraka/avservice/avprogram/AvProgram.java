@@ -2,6 +2,10 @@ package dvoraka.avservice.avprogram;
 
 import dvoraka.avservice.common.exception.ScanException;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Anti-virus program interface.
  */
@@ -26,6 +30,39 @@ public interface AvProgram {
      */
     String scanBytesWithInfo(byte[] bytes) throws ScanException;
 
+    /**
+     * Scans bytes without blocking the calling thread.
+     *
+     * @param bytes bytes for scanning
+     * @return the future with the virus description, it completes exceptionally
+     * with a {@link ScanException} when scanning failed
+     * @see #getNoVirusResponse()
+     */
+    CompletableFuture<String> scanBytesAsync(byte[] bytes);
+
+    /**
+     * Scans a stream and returns an info about found viruses. The data is sent
+     * to the program in chunks directly from the stream, so the maximum array size
+     * does not apply. The stream is not closed.
+     *
+     * @param inputStream the stream for scanning
+     * @return the virus description
+     * @throws ScanException when scanning failed
+     * @see #getNoVirusResponse()
+     */
+    String scanStreamWithInfo(InputStream inputStream) throws ScanException;
+
+    /**
+     * Scans remaining bytes of a buffer and returns an info about found viruses.
+     * The buffer position is not changed and the maximum array size does not apply.
+     *
+     * @param buffer the buffer for scanning
+     * @return the virus description
+     * @throws ScanException when scanning failed
+     * @see #getNoVirusResponse()
+     */
+    String scanBufferWithInfo(ByteBuffer buffer) throws ScanException;
+
     /**
      * Returns a concrete string which means no virus in a message.
      * <p>
@@ -35,6 +72,13 @@ public interface AvProgram {
      */
     String getNoVirusResponse();
 
+    /**
+     * Returns the program version with the signature database version.
+     *
+     * @return the version or null if the program is not available
+     */
+    String version();
+
     /**
      * Returns a running state of the program.
      *
@@ -0,0 +1,505 @@
+package dvoraka.avservice.avprogram;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.exception.ConnectionException;
+import dvoraka.avservice.common.exception.ScanException;
+import dvoraka.avservice.common.helper.ExecutorServiceHelper;
+import dvoraka.avservice.common.service.CachingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * ClamAV load balancer. Spreads scans across several ClamAV daemons.
+ * <p>
+ * Every scan goes to the healthy endpoint with the least outstanding requests or,
+ * with the latency routing, with the lowest expected waiting time. A failed scan
+ * is repeated on another endpoint if the data can be sent again. Only connection
+ * failures eject the endpoint, other failures like a busy socket pool or too big
+ * data are not endpoint faults. If no endpoint is healthy, the scan is tried once
+ * on an ejected endpoint and a success re-admits it. A background health check
+ * pings all endpoints, ejects the ones which do not answer and re-admits
+ * the recovered ones.
+ */
+@ManagedResource
+public class BalancingAvProgram implements AvProgram, ExecutorServiceHelper {
+
+    private static final Logger log = LogManager.getLogger(BalancingAvProgram.class);
+
+    /**
+     * Default health check period in milliseconds.
+     */
+    public static final long HEALTH_CHECK_PERIOD = 5_000;
+
+    private static final String ERROR_MSG = "Scanning problem!";
+    private static final long CHECK_TERM_TIME_S = 5;
+    /**
+     * Weight of a new latency sample in the moving average.
+     */
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final List<Endpoint> endpoints;
+    private final Routing routing;
+    private final AtomicInteger nextStart;
+
+    private final ScheduledExecutorService healthCheckService;
+
+
+    /**
+     * Instantiate a load balancer with the least outstanding requests routing.
+     *
+     * @param programs the programs for all endpoints
+     */
+    public BalancingAvProgram(List<ClamAvProgram> programs) {
+        this(programs, Routing.LEAST_OUTSTANDING, HEALTH_CHECK_PERIOD);
+    }
+
+    /**
+     * Instantiate a load balancer.
+     *
+     * @param programs          the programs for all endpoints
+     * @param routing           the routing
+     * @param healthCheckPeriod the health check period in milliseconds, 0 means no checking
+     */
+    public BalancingAvProgram(List<ClamAvProgram> programs, Routing routing, long healthCheckPeriod) {
+        requireNonNull(programs);
+        if (programs.isEmpty()) {
+            throw new IllegalArgumentException("Endpoints must not be empty.");
+        }
+        if (healthCheckPeriod < 0) {
+            throw new IllegalArgumentException("Health check period must not be negative.");
+        }
+
+        List<Endpoint> endpointList = new ArrayList<>(programs.size());
+        programs.forEach(program -> endpointList.add(new Endpoint(requireNonNull(program))));
+        this.endpoints = Collections.unmodifiableList(endpointList);
+        this.routing = requireNonNull(routing);
+        nextStart = new AtomicInteger();
+
+        if (healthCheckPeriod > 0) {
+            healthCheckService = Executors.newSingleThreadScheduledExecutor(
+                    new CustomThreadFactory("clamd-health-check-", true));
+            healthCheckService.scheduleWithFixedDelay(
+                    this::checkHealth, healthCheckPeriod, healthCheckPeriod, TimeUnit.MILLISECONDS);
+        } else {
+            healthCheckService = null;
+        }
+    }
+
+    @Override
+    public boolean scanBytes(byte[] bytes) throws ScanException {
+        String response;
+        try {
+            response = scanBytesWithInfo(bytes);
+        } catch (ScanException e) {
+            log.warn(ERROR_MSG, e);
+            throw new ScanException(ERROR_MSG, e);
+        }
+
+        if (response.equals(getNoVirusResponse())) {
+            return false;
+        } else {
+            log.debug("Virus found: " + response);
+            return true;
+        }
+    }
+
+    @Override
+    public String scanBytesWithInfo(byte[] bytes) throws ScanException {
+        requireNonNull(bytes);
+
+        return scan(program -> program.scanBytesWithInfo(bytes), true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The scan is sent with the asynchronous scanning of the selected endpoint
+     * and repeated on another endpoint if it fails.
+     */
+    @Override
+    public CompletableFuture<String> scanBytesAsync(byte[] bytes) {
+        requireNonNull(bytes);
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        scanAsync(bytes, new ArrayList<>(endpoints.size()), null, result);
+
+        return result;
+    }
+
+    private void scanAsync(
+            byte[] bytes,
+            List<Endpoint> tried,
+            Throwable lastFailure,
+            CompletableFuture<String> result
+    ) {
+        Endpoint endpoint = nextEndpoint(tried);
+        if (endpoint == null) {
+            result.completeExceptionally(lastFailure == null
+                    ? new ScanException("No healthy endpoint!")
+                    : new ScanException(ERROR_MSG, lastFailure));
+
+            return;
+        }
+        tried.add(endpoint);
+
+        endpoint.outstanding.getAndIncrement();
+        long start = System.nanoTime();
+        endpoint.program.scanBytesAsync(bytes).whenComplete((response, throwable) -> {
+            endpoint.outstanding.getAndDecrement();
+            if (throwable == null) {
+                endpoint.recordLatency(System.nanoTime() - start);
+                endpoint.admit();
+                result.complete(response);
+            } else {
+                failed(endpoint, throwable);
+                scanAsync(bytes, tried, throwable, result);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The stream cannot be sent again, so a failed scan is not repeated.
+     */
+    @Override
+    public String scanStreamWithInfo(InputStream inputStream) throws ScanException {
+        requireNonNull(inputStream);
+
+        return scan(program -> program.scanStreamWithInfo(inputStream), false);
+    }
+
+    @Override
+    public String scanBufferWithInfo(ByteBuffer buffer) throws ScanException {
+        requireNonNull(buffer);
+
+        return scan(program -> program.scanBufferWithInfo(buffer), true);
+    }
+
+    private String scan(Scan scan, boolean repeatable) throws ScanException {
+        List<Endpoint> tried = new ArrayList<>(endpoints.size());
+        ScanException lastException = null;
+        do {
+            Endpoint endpoint = nextEndpoint(tried);
+            if (endpoint == null) {
+                break;
+            }
+            tried.add(endpoint);
+
+            endpoint.outstanding.getAndIncrement();
+            long start = System.nanoTime();
+            try {
+                String result = scan.scan(endpoint.program);
+                endpoint.recordLatency(System.nanoTime() - start);
+                endpoint.admit();
+
+                return result;
+            } catch (ScanException e) {
+                failed(endpoint, e);
+                lastException = e;
+            } finally {
+                endpoint.outstanding.getAndDecrement();
+            }
+        } while (repeatable);
+
+        if (lastException != null) {
+            throw new ScanException(ERROR_MSG, lastException);
+        }
+
+        throw new ScanException("No healthy endpoint!");
+    }
+
+    /**
+     * Ejects the endpoint if the failure is a connection failure.
+     */
+    private void failed(Endpoint endpoint, Throwable throwable) {
+        if (isEndpointFault(throwable)) {
+            log.warn("Endpoint scan failed, ejecting: " + endpoint, throwable);
+            endpoint.eject();
+        } else {
+            log.warn("Endpoint scan failed: " + endpoint, throwable);
+        }
+    }
+
+    static boolean isEndpointFault(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectionException || cause instanceof IOException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Selects the next endpoint for a scan. Without healthy endpoints, the first attempt
+     * goes to an ejected one because it might have recovered since the last health check.
+     */
+    private Endpoint nextEndpoint(List<Endpoint> tried) {
+        Endpoint endpoint = selectEndpoint(tried, true);
+        if (endpoint == null && tried.isEmpty()) {
+            endpoint = selectEndpoint(tried, false);
+        }
+
+        return endpoint;
+    }
+
+    /**
+     * Selects the best endpoint which was not tried yet. The search starts
+     * at a rotating index, so ties are spread evenly.
+     */
+    private Endpoint selectEndpoint(List<Endpoint> tried, boolean healthyOnly) {
+        int size = endpoints.size();
+        int start = Math.floorMod(nextStart.getAndIncrement(), size);
+
+        Endpoint best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Endpoint endpoint = endpoints.get((start + i) % size);
+            if ((healthyOnly && !endpoint.healthy) || tried.contains(endpoint)) {
+                continue;
+            }
+
+            double cost = routing.cost(endpoint);
+            if (cost < bestCost) {
+                best = endpoint;
+                bestCost = cost;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Pings all endpoints and updates their health.
+     */
+    void checkHealth() {
+        for (Endpoint endpoint : endpoints) {
+            boolean alive;
+            try {
+                alive = endpoint.program.testConnection();
+            } catch (RuntimeException e) {
+                log.warn("Health check failed: " + endpoint, e);
+                alive = false;
+            }
+
+            if (alive) {
+                endpoint.admit();
+            } else {
+                endpoint.eject();
+            }
+        }
+    }
+
+    @Override
+    public String getNoVirusResponse() {
+        return endpoints.get(0).program.getNoVirusResponse();
+    }
+
+    /**
+     * Returns distinct versions of all endpoints separated by commas. Healthy endpoints
+     * are asked, ejected endpoints keep their last known version, so ejections
+     * and re-admissions do not change the result.
+     *
+     * @return the versions or null if no version is available
+     */
+    @Override
+    public String version() {
+        String versions = endpoints.stream()
+                .map(Endpoint::version)
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(", "));
+
+        return versions.isEmpty() ? null : versions;
+    }
+
+    /**
+     * Returns true if at least one endpoint is healthy.
+     *
+     * @return the running state
+     */
+    @Override
+    public boolean isRunning() {
+        return getHealthyEndpointCount() > 0;
+    }
+
+    @Override
+    public boolean isCaching() {
+        return endpoints.stream().allMatch(endpoint -> endpoint.program.isCaching());
+    }
+
+    @Override
+    public void setCaching(boolean caching) {
+        endpoints.forEach(endpoint -> endpoint.program.setCaching(caching));
+    }
+
+    /**
+     * Returns the smallest maximum array size of all endpoints.
+     *
+     * @return the maximum array size
+     */
+    @Override
+    public long getMaxArraySize() {
+        return endpoints.stream()
+                .mapToLong(endpoint -> endpoint.program.getMaxArraySize())
+                .min()
+                .orElse(0);
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public int getEndpointCount() {
+        return endpoints.size();
+    }
+
+    @ManagedAttribute
+    public int getHealthyEndpointCount() {
+        return (int) endpoints.stream()
+                .filter(endpoint -> endpoint.healthy)
+                .count();
+    }
+
+    @ManagedAttribute
+    public long getEjectionCount() {
+        return endpoints.stream()
+                .mapToLong(endpoint -> endpoint.ejectionCount.get())
+                .sum();
+    }
+
+    @ManagedAttribute
+    public int getOutstandingRequests() {
+        return endpoints.stream()
+                .mapToInt(endpoint -> endpoint.outstanding.get())
+                .sum();
+    }
+
+    /**
+     * Stops the health check and closes all endpoints.
+     */
+    @PreDestroy
+    public void close() {
+        if (healthCheckService != null) {
+            shutdownAndAwaitTermination(healthCheckService, CHECK_TERM_TIME_S, log);
+        }
+        endpoints.forEach(endpoint -> endpoint.program.close());
+    }
+
+    @Autowired(required = false)
+    public void setCachingService(CachingService cachingService) {
+        endpoints.forEach(endpoint -> endpoint.program.setCachingService(cachingService));
+    }
+
+    /**
+     * Endpoint routing.
+     */
+    public enum Routing {
+        /**
+         * Routes to the endpoint with the least outstanding requests.
+         */
+        LEAST_OUTSTANDING {
+            @Override
+            double cost(Endpoint endpoint) {
+                return endpoint.outstanding.get();
+            }
+        },
+        /**
+         * Routes to the endpoint with the lowest average latency multiplied
+         * by the count of outstanding requests.
+         */
+        LATENCY {
+            @Override
+            double cost(Endpoint endpoint) {
+                return endpoint.latency * (endpoint.outstanding.get() + 1);
+            }
+        };
+
+        abstract double cost(Endpoint endpoint);
+    }
+
+    @FunctionalInterface
+    private interface Scan {
+
+        String scan(ClamAvProgram program) throws ScanException;
+    }
+
+    static final class Endpoint {
+
+        private final ClamAvProgram program;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong ejectionCount = new AtomicLong();
+
+        private volatile boolean healthy = true;
+        private volatile String lastVersion;
+        /**
+         * Moving average of the scan latency in nanoseconds.
+         */
+        private volatile double latency;
+
+
+        Endpoint(ClamAvProgram program) {
+            this.program = program;
+        }
+
+        void recordLatency(long nanos) {
+            // races only lose a sample
+            double current = latency;
+            latency = current == 0 ? nanos : current + LATENCY_WEIGHT * (nanos - current);
+        }
+
+        String version() {
+            if (healthy) {
+                String version = program.version();
+                if (version != null) {
+                    lastVersion = version;
+                }
+            }
+
+            return lastVersion;
+        }
+
+        void eject() {
+            if (healthy) {
+                healthy = false;
+                ejectionCount.getAndIncrement();
+            }
+        }
+
+        void admit() {
+            if (!healthy) {
+                log.info("Endpoint recovered: " + this);
+                healthy = true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return program.getSocketHost() + ":" + program.getSocketPort();
+        }
+    }
+}
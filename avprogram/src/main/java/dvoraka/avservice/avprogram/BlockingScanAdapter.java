@@ -0,0 +1,111 @@
+package dvoraka.avservice.avprogram;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.exception.OverloadException;
+import dvoraka.avservice.common.exception.ScanException;
+import dvoraka.avservice.common.helper.ExecutorServiceHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapter running blocking scans asynchronously.
+ * <p>
+ * Blocking scans wait for the network, so they run on a separate pool of daemon
+ * threads instead of the common fork-join pool. The pool is owned by one program
+ * and sized to its scanner pool, idle threads are stopped. When all threads are busy
+ * and the queue is full, scans fail instead of waiting.
+ */
+final class BlockingScanAdapter implements ExecutorServiceHelper {
+
+    private static final Logger log = LogManager.getLogger(BlockingScanAdapter.class);
+
+    private static final long KEEP_ALIVE_S = 60;
+    private static final long TERM_TIME_S = 5;
+
+    private final ThreadPoolExecutor executor;
+
+
+    /**
+     * Creates an adapter.
+     *
+     * @param threadCount   the maximum count of threads
+     * @param queueCapacity the maximum count of waiting scans
+     */
+    BlockingScanAdapter(int threadCount, int queueCapacity) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+
+        executor = new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                KEEP_ALIVE_S,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomThreadFactory("blocking-scan-", true));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs a blocking scan asynchronously.
+     *
+     * @param scan the scan
+     * @param <T>  the result type
+     * @return the future with the result, it completes exceptionally with the exception
+     * thrown by the scan or with an {@link OverloadException} if the scan was rejected
+     */
+    <T> CompletableFuture<T> supplyAsync(BlockingScan<T> scan) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(scan.scan());
+                } catch (ScanException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new OverloadException("Blocking scan rejected!", e));
+        }
+
+        return future;
+    }
+
+    /**
+     * Runs a task on the blocking scan pool.
+     *
+     * @param task the task
+     * @throws RejectedExecutionException if the queue is full or the adapter is stopped
+     */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    int getMaxThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Stops the pool.
+     */
+    void stop() {
+        shutdownAndAwaitTermination(executor, TERM_TIME_S, log);
+    }
+
+    /**
+     * Blocking scan.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    interface BlockingScan<T> {
+
+        T scan() throws ScanException;
+    }
+}
@@ -1,16 +1,24 @@
 package dvoraka.avservice.avprogram;
 
+import dvoraka.avservice.common.exception.ConnectionException;
+import dvoraka.avservice.common.exception.OverloadException;
 import dvoraka.avservice.common.exception.ScanException;
 import dvoraka.avservice.common.service.CachingService;
+import dvoraka.avservice.common.socket.PipelinedSession;
+import dvoraka.avservice.common.socket.PipelinedSession.RequestWriter;
 import dvoraka.avservice.common.socket.SocketPool;
 import dvoraka.avservice.common.util.Utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -21,6 +29,15 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,6 +47,7 @@ import static java.util.Objects.requireNonNull;
  * ClamAV wrapper. Uses network sockets.
  */
 @Component
+@ManagedResource
 public class ClamAvProgram implements AvProgram {
 
     private CachingService cachingService;
@@ -39,14 +57,26 @@ public class ClamAvProgram implements AvProgram {
     public static final String HOST = "localhost";
     public static final int PORT = 3310;
     public static final int MAX_ARRAY_SIZE = 10_000;
+    public static final int STREAM_CHUNK_SIZE = 8_192;
 
     private static final String ERROR_MSG = "Scanning problem!";
+    /**
+     * Count of threads for asynchronous scans without socket pooling.
+     */
+    private static final int UNPOOLED_SCAN_THREADS = 4;
+    private static final int BLOCKING_QUEUE_CAPACITY = 1_000;
+    /**
+     * Default maximum wait for a pipelined reply in milliseconds.
+     */
+    public static final long PIPELINED_REPLY_TIMEOUT = 30_000;
 
     public static final String CLEAN_STREAM_RESPONSE = Utils.OK_VIRUS_INFO;
     private static final int CHUNK_LENGTH_BYTE_SIZE = 4;
+    private static final byte[] INSTREAM_COMMAND = "nINSTREAM\n".getBytes(StandardCharsets.UTF_8);
     private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
 
     private volatile boolean caching;
+    private volatile long pipelinedReplyTimeout = PIPELINED_REPLY_TIMEOUT;
 
     private final String socketHost;
     private final int socketPort;
@@ -55,7 +85,11 @@ public class ClamAvProgram implements AvProgram {
     private final SocketPool socketPool;
     private final boolean socketPooling;
 
+    private final List<PipelinedSession> pipelinedSessions;
+    private final boolean pipelining;
+
     private final Pattern responsePattern;
+    private final BlockingScanAdapter blockingScanAdapter;
 
 
     /**
@@ -78,6 +112,27 @@ public class ClamAvProgram implements AvProgram {
             int socketPort,
             long maxArraySize,
             int socketPoolSize
+    ) {
+        this(socketHost, socketPort, maxArraySize, socketPoolSize, 1);
+    }
+
+    /**
+     * Instantiate a ClamAV program wrapper. With a pipeline depth bigger than 1 the pooled
+     * sockets are shared and every session carries more requests at once.
+     *
+     * @param socketHost     the host where ClamAV runs
+     * @param socketPort     the port where ClamAV listens
+     * @param maxArraySize   the maximum size of a scanning array
+     * @param socketPoolSize the socket pool size, 0 means no pooling
+     * @param pipelineDepth  the maximum count of unanswered requests in one session,
+     *                       1 means no pipelining
+     */
+    public ClamAvProgram(
+            String socketHost,
+            int socketPort,
+            long maxArraySize,
+            int socketPoolSize,
+            int pipelineDepth
     ) {
         this.socketHost = socketHost;
         this.socketPort = socketPort;
@@ -86,14 +141,30 @@ public class ClamAvProgram implements AvProgram {
         if (socketPoolSize < 0) {
             throw new IllegalArgumentException("Pool size must not be negative.");
         }
+        if (pipelineDepth < 1) {
+            throw new IllegalArgumentException("Pipeline depth must be positive.");
+        }
         socketPooling = socketPoolSize != 0;
-        if (socketPooling) {
+        pipelining = socketPooling && pipelineDepth > 1;
+        if (pipelining) {
+            socketPool = null;
+            List<PipelinedSession> sessions = new ArrayList<>(socketPoolSize);
+            for (int i = 0; i < socketPoolSize; i++) {
+                sessions.add(new PipelinedSession(socketHost, socketPort, null, pipelineDepth));
+            }
+            pipelinedSessions = Collections.unmodifiableList(sessions);
+        } else if (socketPooling) {
             socketPool = new SocketPool(socketPoolSize, socketHost, socketPort, null);
+            socketPool.warmUp();
+            pipelinedSessions = Collections.emptyList();
         } else {
             socketPool = null;
+            pipelinedSessions = Collections.emptyList();
         }
 
         responsePattern = Pattern.compile(".+?: (.+)");
+        blockingScanAdapter = new BlockingScanAdapter(
+                socketPooling ? socketPoolSize : UNPOOLED_SCAN_THREADS, BLOCKING_QUEUE_CAPACITY);
     }
 
     @Override
@@ -125,28 +196,122 @@ public class ClamAvProgram implements AvProgram {
     private String scanBytesPooling(byte[] bytes) throws ScanException {
         requireNonNull(bytes);
 
-        final int maxAttempts = socketPool.getSize() + 1;
+        return scanPooling(outStream -> sendBytes(bytes, outStream), socketPool.getSize() + 1);
+    }
+
+    private String scanPooling(RequestWriter request, int maxAttempts) throws ScanException {
+        IOException lastException = null;
         for (int i = 0; i < maxAttempts; i++) {
 
             SocketPool.SocketWrapper socket = socketPool.getSocket();
-            OutputStream outStream = socket.getOutputStream();
-            BufferedReader in = socket.getBufferedReader();
+            if (socket == null) {
+                throw new OverloadException("No available socket!");
+            }
 
             try {
-                sendBytes(bytes, outStream);
+                OutputStream outStream = socket.getOutputStream();
+                BufferedReader in = socket.getBufferedReader();
+                if (outStream == null || in == null) {
+                    throw new IOException("Socket is not connected.");
+                }
+
+                request.write(outStream);
                 String response = in.readLine();
+                if (response == null) {
+                    throw new IOException("Connection closed before response.");
+                }
 
                 return parseResponse(response);
 
             } catch (IOException e) {
                 log.info(ERROR_MSG + ": {}", e.getMessage());
                 socket.fix();
+                lastException = e;
             } finally {
                 socketPool.returnSocket(socket);
             }
         }
 
-        throw new ScanException(ERROR_MSG);
+        throw new ConnectionException(ERROR_MSG, lastException);
+    }
+
+    /**
+     * Pipelined checking. Requests share sessions and replies are matched by request ID.
+     *
+     * @param bytes bytes for scan
+     * @return the virus info
+     * @throws ScanException if scan fails
+     * @see ClamAvProgram#scanBytesWithInfo(byte[])
+     */
+    private String scanBytesPipelined(byte[] bytes) throws ScanException {
+        requireNonNull(bytes);
+        checkArraySize(bytes);
+
+        return scanPipelined(
+                outStream -> sendBytes(bytes, outStream), pipelinedSessions.size() + 1);
+    }
+
+    /**
+     * Pipelined checking with retries. A session without a reply in time is reset, so all its
+     * pending requests fail instead of waiting for a reply which is not coming.
+     */
+    private String scanPipelined(RequestWriter request, int maxAttempts) throws ScanException {
+        Throwable lastException = null;
+        for (int i = 0; i < maxAttempts; i++) {
+
+            PipelinedSession session = leastLoadedSession();
+            try {
+                return session.send(request).get(pipelinedReplyTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScanException(ERROR_MSG, e);
+            } catch (ExecutionException e) {
+                log.info(ERROR_MSG + ": {}", e.getCause().getMessage());
+                lastException = e.getCause();
+            } catch (TimeoutException e) {
+                log.warn("Pipelined reply timeout, resetting session.");
+                session.reset(new IOException("Reply timeout."));
+                throw new ConnectionException(ERROR_MSG, e);
+            }
+        }
+
+        throw new ConnectionException(ERROR_MSG, lastException);
+    }
+
+    /**
+     * Pipelined checking without waiting for the reply. Failed requests are repeated
+     * on the blocking scan pool, so session callbacks never send new requests.
+     */
+    private void scanPipelinedAsync(
+            RequestWriter request,
+            int attempts,
+            CompletableFuture<String> result
+    ) {
+        leastLoadedSession().send(request).whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                result.complete(response);
+
+                return;
+            }
+
+            log.info(ERROR_MSG + ": {}", throwable.getMessage());
+            try {
+                blockingScanAdapter.execute(() -> {
+                    if (attempts > 1) {
+                        scanPipelinedAsync(request, attempts - 1, result);
+                    } else {
+                        result.completeExceptionally(new ConnectionException(ERROR_MSG, throwable));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(new OverloadException(ERROR_MSG, throwable));
+            }
+        });
+    }
+
+    private PipelinedSession leastLoadedSession() {
+        return Collections.min(
+                pipelinedSessions, Comparator.comparingInt(PipelinedSession::pendingCount));
     }
 
     public String parseResponse(String response) {
@@ -184,13 +349,93 @@ public class ClamAvProgram implements AvProgram {
      */
     @Override
     public String scanBytesWithInfo(byte[] bytes) throws ScanException {
-        if (socketPooling) {
+        if (pipelining) {
+            return scanBytesPipelined(bytes);
+        } else if (socketPooling) {
             return scanBytesPooling(bytes);
         } else {
             return scanBytesNormal(bytes);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With pipelining the request is sent directly and the calling thread waits only
+     * if all session pipelines are full. Otherwise the blocking scan runs on the pool
+     * of the program, which has a thread for every pooled socket.
+     */
+    @Override
+    public CompletableFuture<String> scanBytesAsync(byte[] bytes) {
+        if (!pipelining) {
+            return blockingScanAdapter.supplyAsync(() -> scanBytesWithInfo(bytes));
+        }
+
+        requireNonNull(bytes);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            checkArraySize(bytes);
+        } catch (ScanException e) {
+            result.completeExceptionally(e);
+
+            return result;
+        }
+
+        scanPipelinedAsync(
+                outStream -> sendBytes(bytes, outStream), pipelinedSessions.size() + 1, result);
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A failed stream scan is not repeated because the stream is already consumed.
+     */
+    @Override
+    public String scanStreamWithInfo(InputStream inputStream) throws ScanException {
+        requireNonNull(inputStream);
+
+        return scan(outStream -> sendStream(inputStream, outStream), false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The buffer is checked and cached like an array and it is never copied.
+     */
+    @Override
+    public String scanBufferWithInfo(ByteBuffer buffer) throws ScanException {
+        requireNonNull(buffer);
+        checkArraySize(buffer.remaining());
+
+        String bufferDigest = null;
+        if (caching) {
+            bufferDigest = cachingService.bufferDigest(buffer);
+            String cachedValue = cachingService.get(bufferDigest);
+            if (cachedValue != null) {
+                log.debug("Taking from the cache: " + bufferDigest);
+
+                return cachedValue;
+            }
+        }
+
+        String response = scan(outStream -> sendBuffer(buffer.duplicate(), outStream), true);
+        addToCache(bufferDigest, response);
+
+        return response;
+    }
+
+    private String scan(RequestWriter request, boolean repeatable) throws ScanException {
+        if (pipelining) {
+            return scanPipelined(request, repeatable ? pipelinedSessions.size() + 1 : 1);
+        } else if (socketPooling) {
+            return scanPooling(request, repeatable ? socketPool.getSize() + 1 : 1);
+        } else {
+            return scanNormal(request);
+        }
+    }
+
     private String scanBytesNormal(byte[] bytes) throws ScanException {
         requireNonNull(bytes);
         checkArraySize(bytes);
@@ -206,6 +451,13 @@ public class ClamAvProgram implements AvProgram {
             }
         }
 
+        String response = scanNormal(outStream -> sendBytes(bytes, outStream));
+        addToCache(arrayDigest, response);
+
+        return response;
+    }
+
+    private String scanNormal(RequestWriter request) throws ScanException {
         log.debug("Scanning bytes...");
         try (
                 Socket socket = createSocket();
@@ -214,29 +466,27 @@ public class ClamAvProgram implements AvProgram {
                         new InputStreamReader(socket.getInputStream(), DEFAULT_CHARSET);
                 BufferedReader in = new BufferedReader(inReader)
         ) {
-            sendBytes(bytes, outStream);
+            request.write(outStream);
 
             // read check result
             String response = in.readLine();
 
             log.debug("scanning done.");
             if (response != null) {
-                addToCache(arrayDigest, response);
-
                 return response;
             } else {
                 log.warn("Response reading problem!");
-                throw new ScanException(ERROR_MSG);
+                throw new ConnectionException(ERROR_MSG);
             }
         } catch (IOException e) {
             log.warn(ERROR_MSG, e);
-            throw new ScanException(ERROR_MSG, e);
+            throw new ConnectionException(ERROR_MSG, e);
         }
     }
 
     private void sendBytes(byte[] bytes, OutputStream outStream) throws IOException {
         // write bytes
-        outStream.write("nINSTREAM\n".getBytes("UTF-8"));
+        outStream.write(INSTREAM_COMMAND);
         outStream.write(intBytes(bytes.length, CHUNK_LENGTH_BYTE_SIZE));
         outStream.write(bytes);
 
@@ -245,6 +495,44 @@ public class ClamAvProgram implements AvProgram {
         outStream.flush();
     }
 
+    private void sendStream(InputStream inStream, OutputStream outStream) throws IOException {
+        outStream.write(INSTREAM_COMMAND);
+
+        byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+        int count;
+        while ((count = inStream.read(chunk)) != -1) {
+            if (count > 0) {
+                outStream.write(intBytes(count, CHUNK_LENGTH_BYTE_SIZE));
+                outStream.write(chunk, 0, count);
+            }
+        }
+
+        // terminate byte stream with a zero length chunk
+        outStream.write(intBytes(0, CHUNK_LENGTH_BYTE_SIZE));
+        outStream.flush();
+    }
+
+    private void sendBuffer(ByteBuffer buffer, OutputStream outStream) throws IOException {
+        outStream.write(INSTREAM_COMMAND);
+
+        byte[] chunk = buffer.hasArray() ? null : new byte[STREAM_CHUNK_SIZE];
+        while (buffer.hasRemaining()) {
+            int count = Math.min(buffer.remaining(), STREAM_CHUNK_SIZE);
+            outStream.write(intBytes(count, CHUNK_LENGTH_BYTE_SIZE));
+            if (chunk == null) {
+                outStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+                buffer.position(buffer.position() + count);
+            } else {
+                buffer.get(chunk, 0, count);
+                outStream.write(chunk, 0, count);
+            }
+        }
+
+        // terminate byte stream with a zero length chunk
+        outStream.write(intBytes(0, CHUNK_LENGTH_BYTE_SIZE));
+        outStream.flush();
+    }
+
     private void addToCache(String arrayDigest, String response) {
         if (caching && arrayDigest != null) {
             log.debug("Adding to the cache: " + arrayDigest);
@@ -253,9 +541,13 @@ public class ClamAvProgram implements AvProgram {
     }
 
     private void checkArraySize(byte[] bytes) throws ScanException {
-        if (bytes.length > getMaxArraySize()) {
+        checkArraySize(bytes.length);
+    }
+
+    private void checkArraySize(int length) throws ScanException {
+        if (length > getMaxArraySize()) {
             throw new ScanException(
-                    "Array is too big: " + bytes.length + ", max is " + getMaxArraySize());
+                    "Array is too big: " + length + ", max is " + getMaxArraySize());
         }
     }
 
@@ -319,6 +611,7 @@ public class ClamAvProgram implements AvProgram {
         return "PONG".equals(command("PING"));
     }
 
+    @Override
     public String version() {
         return command("VERSION");
     }
@@ -361,10 +654,80 @@ public class ClamAvProgram implements AvProgram {
         return maxArraySize;
     }
 
+    public String getSocketHost() {
+        return socketHost;
+    }
+
+    public int getSocketPort() {
+        return socketPort;
+    }
+
     public boolean isSocketPooling() {
         return socketPooling;
     }
 
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    public long getPipelinedReplyTimeout() {
+        return pipelinedReplyTimeout;
+    }
+
+    /**
+     * Sets the maximum wait for a pipelined reply.
+     *
+     * @param pipelinedReplyTimeout the timeout in milliseconds
+     */
+    public void setPipelinedReplyTimeout(long pipelinedReplyTimeout) {
+        if (pipelinedReplyTimeout < 1) {
+            throw new IllegalArgumentException("Timeout must be positive.");
+        }
+        this.pipelinedReplyTimeout = pipelinedReplyTimeout;
+    }
+
+    @ManagedAttribute
+    public long getPoolBorrowCount() {
+        return socketPool != null ? socketPool.getBorrowCount() : 0;
+    }
+
+    @ManagedAttribute
+    public long getPoolBorrowWaitTime() {
+        return socketPool != null ? socketPool.getBorrowWaitTime() : 0;
+    }
+
+    @ManagedAttribute
+    public long getPoolExhaustedCount() {
+        return socketPool != null ? socketPool.getExhaustedCount() : 0;
+    }
+
+    @ManagedAttribute
+    public long getPoolValidationFailureCount() {
+        return socketPool != null ? socketPool.getValidationFailureCount() : 0;
+    }
+
+    @ManagedAttribute
+    public long getPoolEvictionCount() {
+        return socketPool != null ? socketPool.getEvictionCount() : 0;
+    }
+
+    @ManagedAttribute
+    public int getPoolAvailableSockets() {
+        return socketPool != null ? socketPool.availableSockets() : 0;
+    }
+
+    /**
+     * Closes pooled sockets and sessions and stops the asynchronous scan pool.
+     */
+    @PreDestroy
+    public void close() {
+        if (socketPool != null) {
+            socketPool.close();
+        }
+        pipelinedSessions.forEach(PipelinedSession::close);
+        blockingScanAdapter.stop();
+    }
+
     @Autowired(required = false)
     public void setCachingService(CachingService cachingService) {
         this.cachingService = cachingService;
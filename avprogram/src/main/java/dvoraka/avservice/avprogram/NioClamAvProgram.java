@@ -0,0 +1,621 @@
+package dvoraka.avservice.avprogram;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.exception.ConnectionException;
+import dvoraka.avservice.common.exception.ScanException;
+import dvoraka.avservice.common.helper.ExecutorServiceHelper;
+import dvoraka.avservice.common.service.CachingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * ClamAV wrapper with a non-blocking socket engine.
+ * <p>
+ * Every scan is an INSTREAM session on its own channel and all sessions are multiplexed
+ * over a small set of event loop threads, so the count of concurrent scans is not limited
+ * by the count of threads. Control commands like PING and VERSION and stream scans,
+ * which block on reading the stream anyway, are delegated to a {@link ClamAvProgram}
+ * without pooling.
+ */
+public class NioClamAvProgram implements AvProgram, ExecutorServiceHelper {
+
+    private CachingService cachingService;
+
+    private static final Logger log = LogManager.getLogger(NioClamAvProgram.class);
+
+    public static final int DEFAULT_EVENT_LOOP_COUNT = 2;
+    /**
+     * Default scan timeout in milliseconds.
+     */
+    public static final long SCAN_TIMEOUT = 30_000;
+
+    private static final String ERROR_MSG = "Scanning problem!";
+
+    private static final byte[] INSTREAM_COMMAND =
+            "nINSTREAM\n".getBytes(StandardCharsets.UTF_8);
+    private static final int CHUNK_LENGTH_BYTE_SIZE = 4;
+    private static final int STREAM_CHUNK_SIZE = ClamAvProgram.STREAM_CHUNK_SIZE;
+    private static final byte RESPONSE_END = '\n';
+    private static final int READ_BUFFER_SIZE = 256;
+    private static final long SELECT_TIMEOUT = 1_000;
+    private static final long LOOP_TERM_TIME_S = 5;
+
+    private volatile boolean caching;
+    private volatile boolean running;
+
+    private final InetSocketAddress socketAddress;
+    private final long maxArraySize;
+    private final long scanTimeout;
+
+    private final ClamAvProgram controlProgram;
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextLoop;
+    private final ExecutorService executorService;
+
+
+    /**
+     * Instantiate a non-blocking ClamAV program wrapper with default values.
+     */
+    public NioClamAvProgram() {
+        this(ClamAvProgram.HOST, ClamAvProgram.PORT, ClamAvProgram.MAX_ARRAY_SIZE,
+                DEFAULT_EVENT_LOOP_COUNT);
+    }
+
+    /**
+     * Instantiate a non-blocking ClamAV program wrapper.
+     *
+     * @param socketHost     the host where ClamAV runs
+     * @param socketPort     the port where ClamAV listens
+     * @param maxArraySize   the maximum size of a scanning array
+     * @param eventLoopCount the count of event loop threads
+     */
+    public NioClamAvProgram(
+            String socketHost,
+            int socketPort,
+            long maxArraySize,
+            int eventLoopCount
+    ) {
+        this(socketHost, socketPort, maxArraySize, eventLoopCount, SCAN_TIMEOUT);
+    }
+
+    /**
+     * Instantiate a non-blocking ClamAV program wrapper.
+     *
+     * @param socketHost     the host where ClamAV runs
+     * @param socketPort     the port where ClamAV listens
+     * @param maxArraySize   the maximum size of a scanning array
+     * @param eventLoopCount the count of event loop threads
+     * @param scanTimeout    the maximum time for one scan in milliseconds
+     */
+    public NioClamAvProgram(
+            String socketHost,
+            int socketPort,
+            long maxArraySize,
+            int eventLoopCount,
+            long scanTimeout
+    ) {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("Event loop count must be positive.");
+        }
+
+        this.socketAddress = new InetSocketAddress(requireNonNull(socketHost), socketPort);
+        this.maxArraySize = maxArraySize;
+        this.scanTimeout = scanTimeout;
+
+        controlProgram = new ClamAvProgram(socketHost, socketPort, maxArraySize, 0);
+
+        running = true;
+        nextLoop = new AtomicInteger();
+        eventLoops = new EventLoop[eventLoopCount];
+        executorService = Executors.newFixedThreadPool(
+                eventLoopCount, new CustomThreadFactory("clamd-event-loop-"));
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop();
+            executorService.execute(eventLoops[i]);
+        }
+    }
+
+    @Override
+    public boolean scanBytes(byte[] bytes) throws ScanException {
+        String response;
+        try {
+            response = scanBytesWithInfo(bytes);
+        } catch (ScanException e) {
+            log.warn(ERROR_MSG, e);
+            throw new ScanException(ERROR_MSG, e);
+        }
+
+        if (response.equals(getNoVirusResponse())) {
+            return false;
+        } else {
+            log.debug("Virus found: " + response);
+            return true;
+        }
+    }
+
+    @Override
+    public String scanBytesWithInfo(byte[] bytes) throws ScanException {
+        return waitForResult(scanBytesAsync(bytes));
+    }
+
+    /**
+     * Scans bytes without blocking the calling thread.
+     * <p>
+     * The future completes with the raw ClamAV response or exceptionally
+     * with a {@link ScanException}.
+     *
+     * @param bytes bytes for scanning
+     * @return the future with the virus info
+     */
+    @Override
+    public CompletableFuture<String> scanBytesAsync(byte[] bytes) {
+        requireNonNull(bytes);
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (bytes.length > getMaxArraySize()) {
+            future.completeExceptionally(new ScanException(
+                    "Array is too big: " + bytes.length + ", max is " + getMaxArraySize()));
+
+            return future;
+        }
+
+        if (!running) {
+            future.completeExceptionally(new ScanException("Program is stopped."));
+
+            return future;
+        }
+
+        final String arrayDigest = caching ? cachingService.arrayDigest(bytes) : null;
+        if (arrayDigest != null) {
+            String cachedValue = cachingService.get(arrayDigest);
+            if (cachedValue != null) {
+                log.debug("Taking from the cache: " + arrayDigest);
+                future.complete(cachedValue);
+
+                return future;
+            }
+        }
+
+        nextEventLoop().register(new ScanSession(ByteBuffer.wrap(bytes), future, scanTimeout));
+
+        return future.thenApply(response -> {
+            addToCache(arrayDigest, response);
+
+            return response;
+        });
+    }
+
+    /**
+     * Stream scans block the calling thread on reading the stream, so they use
+     * the blocking engine.
+     */
+    @Override
+    public String scanStreamWithInfo(InputStream inputStream) throws ScanException {
+        return controlProgram.scanStreamWithInfo(inputStream);
+    }
+
+    @Override
+    public String scanBufferWithInfo(ByteBuffer buffer) throws ScanException {
+        return waitForResult(scanBufferAsync(buffer));
+    }
+
+    /**
+     * Scans remaining bytes of a buffer without blocking the calling thread. The buffer
+     * is checked and cached like an array, it is sent without copying and must not be
+     * changed until the future completes.
+     *
+     * @param buffer the buffer for scanning
+     * @return the future with the virus info
+     */
+    public CompletableFuture<String> scanBufferAsync(ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (buffer.remaining() > getMaxArraySize()) {
+            future.completeExceptionally(new ScanException(
+                    "Array is too big: " + buffer.remaining() + ", max is " + getMaxArraySize()));
+
+            return future;
+        }
+
+        if (!running) {
+            future.completeExceptionally(new ScanException("Program is stopped."));
+
+            return future;
+        }
+
+        final String bufferDigest = caching ? cachingService.bufferDigest(buffer) : null;
+        if (bufferDigest != null) {
+            String cachedValue = cachingService.get(bufferDigest);
+            if (cachedValue != null) {
+                log.debug("Taking from the cache: " + bufferDigest);
+                future.complete(cachedValue);
+
+                return future;
+            }
+        }
+
+        nextEventLoop().register(new ScanSession(buffer.duplicate(), future, scanTimeout));
+
+        return future.thenApply(response -> {
+            addToCache(bufferDigest, response);
+
+            return response;
+        });
+    }
+
+    private String waitForResult(CompletableFuture<String> future) throws ScanException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScanException(ERROR_MSG, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ScanException) {
+                throw (ScanException) e.getCause();
+            }
+
+            throw new ScanException(ERROR_MSG, e.getCause());
+        }
+    }
+
+    private EventLoop nextEventLoop() {
+        int index = Math.abs(nextLoop.getAndIncrement() % eventLoops.length);
+
+        return eventLoops[index];
+    }
+
+    private void addToCache(String arrayDigest, String response) {
+        if (caching && arrayDigest != null) {
+            log.debug("Adding to the cache: " + arrayDigest);
+            cachingService.put(arrayDigest, response);
+        }
+    }
+
+    /**
+     * Stops the event loops and the control program. Unfinished scans fail.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        log.info("Stopping event loops...");
+        running = false;
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.wakeup();
+        }
+        shutdownAndAwaitTermination(executorService, LOOP_TERM_TIME_S, log);
+        controlProgram.close();
+        log.info("Event loops stopped.");
+    }
+
+    @Override
+    public String getNoVirusResponse() {
+        return ClamAvProgram.CLEAN_STREAM_RESPONSE;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running && testConnection();
+    }
+
+    @Override
+    public boolean isCaching() {
+        return caching;
+    }
+
+    @Override
+    public void setCaching(boolean caching) {
+        if (cachingService == null) {
+            log.warn("Caching service is not set.");
+            this.caching = false;
+
+            return;
+        }
+
+        this.caching = caching;
+    }
+
+    @Override
+    public long getMaxArraySize() {
+        return maxArraySize;
+    }
+
+    public boolean testConnection() {
+        return controlProgram.testConnection();
+    }
+
+    public boolean ping() {
+        return controlProgram.ping();
+    }
+
+    @Override
+    public String version() {
+        return controlProgram.version();
+    }
+
+    public String stats() {
+        return controlProgram.stats();
+    }
+
+    public int getEventLoopCount() {
+        return eventLoops.length;
+    }
+
+    @Autowired(required = false)
+    public void setCachingService(CachingService cachingService) {
+        this.cachingService = cachingService;
+    }
+
+    /**
+     * Selector loop driving INSTREAM sessions.
+     */
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<ScanSession> newSessions;
+
+
+        EventLoop() {
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                throw new IllegalStateException("Selector opening failed!", e);
+            }
+            newSessions = new ConcurrentLinkedQueue<>();
+        }
+
+        void register(ScanSession session) {
+            newSessions.add(session);
+            selector.wakeup();
+
+            if (!running) {
+                failNewSessions();
+            }
+        }
+
+        void wakeup() {
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(SELECT_TIMEOUT);
+                } catch (IOException e) {
+                    log.warn("Selector problem!", e);
+                }
+
+                registerNewSessions();
+                processSelectedKeys();
+                expireSessions();
+            }
+
+            closeSessions();
+        }
+
+        private void registerNewSessions() {
+            ScanSession session;
+            while ((session = newSessions.poll()) != null) {
+                try {
+                    SocketChannel channel = SocketChannel.open();
+                    session.setChannel(channel);
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                    if (channel.connect(socketAddress)) {
+                        channel.register(selector, SelectionKey.OP_WRITE, session);
+                    } else {
+                        channel.register(selector, SelectionKey.OP_CONNECT, session);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    log.info(ERROR_MSG + ": {}", e.getMessage());
+                    session.fail(new ConnectionException(ERROR_MSG, e));
+                }
+            }
+        }
+
+        private void processSelectedKeys() {
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+
+                ScanSession session = (ScanSession) key.attachment();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isConnectable()) {
+                        session.finishConnect(key);
+                    } else if (key.isWritable()) {
+                        session.write(key);
+                    } else if (key.isReadable()) {
+                        session.read();
+                    }
+                } catch (IOException e) {
+                    log.info(ERROR_MSG + ": {}", e.getMessage());
+                    session.fail(new ConnectionException(ERROR_MSG, e));
+                }
+            }
+        }
+
+        private void expireSessions() {
+            long now = System.currentTimeMillis();
+            for (SelectionKey key : selector.keys()) {
+                ScanSession session = (ScanSession) key.attachment();
+                if (session.isExpired(now)) {
+                    session.fail(new ScanException("Scanning timeout!"));
+                }
+            }
+        }
+
+        private void failNewSessions() {
+            ScanSession session;
+            while ((session = newSessions.poll()) != null) {
+                session.fail(new ScanException("Program is stopped."));
+            }
+        }
+
+        private void closeSessions() {
+            failNewSessions();
+            for (SelectionKey key : selector.keys()) {
+                ((ScanSession) key.attachment()).fail(new ScanException("Program is stopped."));
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("Selector closing failed!", e);
+            }
+        }
+    }
+
+    /**
+     * One INSTREAM request with its response.
+     */
+    private static final class ScanSession {
+
+        private final ByteBuffer[] request;
+        private final ByteBuffer readBuffer;
+        private final ByteArrayOutputStream response;
+        private final CompletableFuture<String> future;
+        private final long deadline;
+
+        private SocketChannel channel;
+
+
+        ScanSession(ByteBuffer data, CompletableFuture<String> future, long timeout) {
+            this.future = future;
+            this.deadline = System.currentTimeMillis() + timeout;
+
+            request = createRequest(data);
+            readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            response = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        }
+
+        /**
+         * Splits data into INSTREAM chunks of {@link ClamAvProgram#STREAM_CHUNK_SIZE}.
+         * Chunks are views of the data, nothing is copied.
+         */
+        private static ByteBuffer[] createRequest(ByteBuffer data) {
+            int chunkCount = (data.remaining() + STREAM_CHUNK_SIZE - 1) / STREAM_CHUNK_SIZE;
+            ByteBuffer[] buffers = new ByteBuffer[2 * chunkCount + 2];
+
+            int index = 0;
+            buffers[index++] = ByteBuffer.wrap(INSTREAM_COMMAND).asReadOnlyBuffer();
+            while (data.hasRemaining()) {
+                int count = Math.min(data.remaining(), STREAM_CHUNK_SIZE);
+                buffers[index++] = chunkLength(count);
+
+                ByteBuffer chunk = data.slice();
+                chunk.limit(count);
+                buffers[index++] = chunk;
+                data.position(data.position() + count);
+            }
+            // terminate byte stream with a zero length chunk
+            buffers[index] = chunkLength(0);
+
+            return buffers;
+        }
+
+        private static ByteBuffer chunkLength(int length) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_LENGTH_BYTE_SIZE);
+            buffer.putInt(length);
+            buffer.flip();
+
+            return buffer;
+        }
+
+        void setChannel(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void finishConnect(SelectionKey key) throws IOException {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        void write(SelectionKey key) throws IOException {
+            channel.write(request);
+            if (!request[request.length - 1].hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        void read() throws IOException {
+            readBuffer.clear();
+            if (channel.read(readBuffer) == -1) {
+                fail(new ConnectionException("Connection closed before response!"));
+
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == RESPONSE_END) {
+                    complete(new String(response.toByteArray(), StandardCharsets.UTF_8));
+
+                    return;
+                }
+                response.write(b);
+            }
+        }
+
+        boolean isExpired(long now) {
+            return now > deadline;
+        }
+
+        void complete(String result) {
+            close();
+            future.complete(result);
+        }
+
+        void fail(Throwable cause) {
+            close();
+            future.completeExceptionally(cause);
+        }
+
+        private void close() {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Channel closing failed!", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package dvoraka.avservice.avprogram;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.helper.ExecutorServiceHelper;
+import dvoraka.avservice.common.service.CachingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Watches the signature database version of the AV program and updates the version
+ * in the caching service, so clean infos cached before a signature update are invalidated.
+ */
+public class SignatureVersionWatcher implements ExecutorServiceHelper {
+
+    private static final Logger log = LogManager.getLogger(SignatureVersionWatcher.class);
+
+    /**
+     * Default check period in milliseconds.
+     */
+    public static final long CHECK_PERIOD = 60_000;
+
+    private static final long CHECK_TERM_TIME_S = 5;
+
+    private final AvProgram avProgram;
+    private final CachingService cachingService;
+
+    private final ScheduledExecutorService checkService;
+    /**
+     * ClamAV version format is {@literal <engine>/<database version>/<database date>}.
+     */
+    private final Pattern databaseVersionPattern;
+
+
+    /**
+     * Creates a watcher and starts checking.
+     *
+     * @param avProgram      the AV program
+     * @param cachingService the caching service
+     * @param checkPeriod    the check period in milliseconds
+     */
+    public SignatureVersionWatcher(
+            AvProgram avProgram,
+            CachingService cachingService,
+            long checkPeriod
+    ) {
+        this.avProgram = requireNonNull(avProgram);
+        this.cachingService = requireNonNull(cachingService);
+        if (checkPeriod < 1) {
+            throw new IllegalArgumentException("Check period must be positive.");
+        }
+
+        databaseVersionPattern = Pattern.compile("/(\\d+)/");
+
+        checkService = Executors.newSingleThreadScheduledExecutor(
+                new CustomThreadFactory("signature-watcher-", true));
+        checkService.scheduleWithFixedDelay(
+                this::checkVersion, 0, checkPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks the current version and updates the caching service if it changed.
+     */
+    void checkVersion() {
+        String version;
+        try {
+            version = avProgram.version();
+        } catch (RuntimeException e) {
+            log.warn("Version check failed!", e);
+
+            return;
+        }
+
+        if (version == null) {
+            log.debug("Version is not available.");
+
+            return;
+        }
+
+        String signatureVersion = signatureVersion(version);
+        if (!signatureVersion.equals(cachingService.getSignatureVersion())) {
+            log.info("New signature version: {}", signatureVersion);
+            cachingService.setSignatureVersion(signatureVersion);
+        }
+    }
+
+    /**
+     * Extracts signature database versions from a program version. A version
+     * without known database versions is used as a whole.
+     *
+     * @param version the program version
+     * @return the signature version
+     */
+    String signatureVersion(String version) {
+        List<String> databaseVersions = new ArrayList<>();
+        Matcher matcher = databaseVersionPattern.matcher(version);
+        while (matcher.find()) {
+            databaseVersions.add(matcher.group(1));
+        }
+
+        if (databaseVersions.isEmpty()) {
+            return version.trim();
+        }
+
+        return String.join(",", databaseVersions);
+    }
+
+    /**
+     * Stops checking.
+     */
+    @PreDestroy
+    public void stop() {
+        shutdownAndAwaitTermination(checkService, CHECK_TERM_TIME_S, log);
+    }
+}
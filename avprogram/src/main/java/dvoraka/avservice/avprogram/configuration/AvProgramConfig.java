@@ -1,17 +1,28 @@
 package dvoraka.avservice.avprogram.configuration;
 
 import dvoraka.avservice.avprogram.AvProgram;
+import dvoraka.avservice.avprogram.BalancingAvProgram;
 import dvoraka.avservice.avprogram.ClamAvProgram;
+import dvoraka.avservice.avprogram.NioClamAvProgram;
+import dvoraka.avservice.avprogram.SignatureVersionWatcher;
+import dvoraka.avservice.avprogram.service.AdaptiveConcurrencyLimiter;
 import dvoraka.avservice.avprogram.service.AvService;
 import dvoraka.avservice.avprogram.service.DefaultAvService;
+import dvoraka.avservice.avprogram.service.LimitingAvService;
 import dvoraka.avservice.common.service.CachingService;
 import dvoraka.avservice.common.service.DefaultCachingService;
+import dvoraka.avservice.common.service.HashingAlgorithm;
+import dvoraka.avservice.common.service.MappedCachingService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * AV program module main configuration.
  */
@@ -28,23 +39,119 @@ public class AvProgramConfig {
     private int maxArraySize;
     @Value("${avservice.avprogram.socketPoolSize}")
     private int socketPoolSize;
+    @Value("${avservice.avprogram.pipelineDepth:1}")
+    private int pipelineDepth;
+    @Value("${avservice.avprogram.eventLoopCount:0}")
+    private int eventLoopCount;
+    @Value("${avservice.avprogram.endpoints:}")
+    private String endpoints;
+    @Value("${avservice.avprogram.routing:LEAST_OUTSTANDING}")
+    private BalancingAvProgram.Routing routing;
+    @Value("${avservice.avprogram.cacheFile:}")
+    private String cacheFile;
+    @Value("${avservice.avprogram.cacheSize:10000}")
+    private long cacheSize;
+    @Value("${avservice.avprogram.cacheHashing:SHA256}")
+    private HashingAlgorithm cacheHashing;
+    @Value("${avservice.avprogram.versionCheckPeriod:60000}")
+    private long versionCheckPeriod;
+    @Value("${avservice.avprogram.maxConcurrency:0}")
+    private int maxConcurrency;
 
 
     @Bean
     public AvProgram avProgram() {
-        AvProgram avProgram = new ClamAvProgram(host, port, maxArraySize, socketPoolSize);
+        AvProgram avProgram;
+        if (!endpoints.trim().isEmpty()) {
+            avProgram = new BalancingAvProgram(clamAvPrograms(), routing,
+                    BalancingAvProgram.HEALTH_CHECK_PERIOD);
+        } else if (eventLoopCount > 0) {
+            avProgram = new NioClamAvProgram(host, port, maxArraySize, eventLoopCount);
+        } else {
+            avProgram = new ClamAvProgram(
+                    host, port, maxArraySize, socketPoolSize, pipelineDepth);
+        }
         avProgram.setCaching(false);
 
         return avProgram;
     }
 
+    private List<ClamAvProgram> clamAvPrograms() {
+        List<ClamAvProgram> programs = new ArrayList<>();
+        for (String endpoint : endpoints.split(",")) {
+            String[] hostAndPort = endpoint.trim().split(":");
+            if (hostAndPort.length != 2) {
+                throw new IllegalArgumentException("Bad endpoint: " + endpoint);
+            }
+
+            programs.add(new ClamAvProgram(
+                    hostAndPort[0],
+                    Integer.parseInt(hostAndPort[1]),
+                    maxArraySize,
+                    socketPoolSize,
+                    pipelineDepth));
+        }
+
+        return programs;
+    }
+
     @Bean
     public CachingService cachingService() {
-        return new DefaultCachingService();
+        // a crafted collision with a clean file would reuse its verdict
+        if (!cacheHashing.isCryptographic()) {
+            throw new IllegalArgumentException(
+                    "Cache hashing must be cryptographic: " + cacheHashing);
+        }
+
+        if (cacheFile.trim().isEmpty()) {
+            CachingService cachingService = new DefaultCachingService(cacheHashing.newService());
+            cachingService.setMaxCacheSize(cacheSize);
+
+            return cachingService;
+        }
+
+        return new MappedCachingService(
+                Paths.get(cacheFile.trim()), cacheSize, cacheHashing.newService());
+    }
+
+    @Bean
+    public SignatureVersionWatcher signatureVersionWatcher(
+            AvProgram avProgram,
+            CachingService cachingService
+    ) {
+        return new SignatureVersionWatcher(avProgram, cachingService, versionCheckPeriod);
     }
 
     @Bean
     public AvService avService(AvProgram avProgram) {
-        return new DefaultAvService(avProgram);
+        AvService avService = new DefaultAvService(avProgram);
+        if (maxConcurrency < 1) {
+            return avService;
+        }
+
+        AdaptiveConcurrencyLimiter limiter =
+                new AdaptiveConcurrencyLimiter(initialConcurrencyLimit(), 1, maxConcurrency);
+
+        return new LimitingAvService(avService, limiter);
+    }
+
+    /**
+     * Returns the initial concurrent scan limit for the configured engine. Pooled engines
+     * start at their pool capacity. The NIO engine and the blocking engine without a pool
+     * open a connection per scan, so they start at the upper bound and adapt down.
+     *
+     * @return the initial limit
+     */
+    private int initialConcurrencyLimit() {
+        boolean balanced = !endpoints.trim().isEmpty();
+        boolean pooled = socketPoolSize > 0 && (balanced || eventLoopCount < 1);
+        if (!pooled) {
+            return maxConcurrency;
+        }
+
+        int endpointCount = balanced ? endpoints.split(",").length : 1;
+        int poolCapacity = socketPoolSize * Math.max(pipelineDepth, 1) * endpointCount;
+
+        return Math.max(1, Math.min(maxConcurrency, poolCapacity));
     }
 }
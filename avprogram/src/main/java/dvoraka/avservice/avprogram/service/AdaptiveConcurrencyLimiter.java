@@ -0,0 +1,308 @@
+package dvoraka.avservice.avprogram.service;
+
+import dvoraka.avservice.common.service.ExpiryWheel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Concurrency limiter with a limit adapting to the observed latency.
+ * <p>
+ * It uses a gradient algorithm. A long-term latency average is the baseline and
+ * a short-term average is the current latency. While the current latency stays
+ * within the tolerance of the baseline, the limit grows by the square root of itself.
+ * When the latency rises, the limit shrinks proportionally. Failures of the scanned
+ * resource decrease the limit multiplicatively. The limit does not grow when less
+ * than a half of it is used, so an idle service cannot inflate it.
+ * <p>
+ * Waiting callers are served in the arrival order. Asynchronous callers can wait with
+ * a timeout, so the waiting queue stays bounded by the arrival rate under overload.
+ * Thread-safe.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * Allowed ratio of the current latency to the baseline before the limit shrinks.
+     */
+    private static final double TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double SHORT_RTT_FACTOR = 0.1;
+    private static final double LONG_RTT_FACTOR = 0.002;
+    /**
+     * Baseline decay when the current latency drops far below it, so the baseline
+     * recovers from a period of overload.
+     */
+    private static final double LONG_RTT_DECAY = 0.95;
+    private static final double LONG_RTT_DECAY_RATIO = 2;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final Deque<CompletableFuture<Void>> waiters;
+
+    private double limit;
+    private int inFlight;
+    private double shortRtt;
+    private double longRtt;
+
+    private long sampleCount;
+    private long dropCount;
+
+
+    /**
+     * Creates a limiter.
+     *
+     * @param initialLimit the initial limit
+     * @param minLimit     the minimal limit
+     * @param maxLimit     the maximal limit
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Bad limit range: " + minLimit + "-" + maxLimit);
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Initial limit out of range: " + initialLimit);
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        limit = initialLimit;
+        waiters = new ArrayDeque<>();
+    }
+
+    /**
+     * Acquires a permit asynchronously. The future completes when the permit is acquired.
+     * A cancelled future does not take the permit.
+     * <p>
+     * The waiting is not limited, use {@link #acquireAsync(long, TimeUnit)} for callers
+     * which cannot be stopped otherwise.
+     *
+     * @return the future
+     */
+    public synchronized CompletableFuture<Void> acquireAsync() {
+        if (waiters.isEmpty() && inFlight < getLimit()) {
+            inFlight++;
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+
+        return waiter;
+    }
+
+    /**
+     * Acquires a permit asynchronously and waits at most a given timeout. The future
+     * completes when the permit is acquired or exceptionally with a {@link TimeoutException}
+     * when the timeout passes first. Timeouts are checked on the
+     * {@link ExpiryWheel#shared() shared expiry wheel}.
+     *
+     * @param timeout the timeout
+     * @param unit    the timeout unit
+     * @return the future
+     */
+    public CompletableFuture<Void> acquireAsync(long timeout, TimeUnit unit) {
+        CompletableFuture<Void> waiter = acquireAsync();
+        if (waiter.isDone()) {
+            return waiter;
+        }
+
+        ExpiryWheel.Expiry expiry = ExpiryWheel.shared().schedule(() -> {
+            synchronized (this) {
+                waiters.remove(waiter);
+            }
+            waiter.completeExceptionally(new TimeoutException("Permit waiting timeout."));
+        }, timeout, unit);
+        waiter.whenComplete((result, throwable) -> expiry.cancel());
+
+        return waiter;
+    }
+
+    /**
+     * Acquires a permit and waits at most a given timeout.
+     *
+     * @param timeout the timeout
+     * @param unit    the timeout unit
+     * @return true if the permit was acquired
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> waiter = acquireAsync();
+        try {
+            waiter.get(timeout, unit);
+
+            return true;
+        } catch (TimeoutException e) {
+            return !giveUp(waiter);
+        } catch (InterruptedException e) {
+            if (!giveUp(waiter)) {
+                release();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            // waiters are never completed exceptionally
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Cancels a waiter.
+     *
+     * @param waiter the waiter
+     * @return true if the waiter was cancelled, false if it already got the permit
+     */
+    private boolean giveUp(CompletableFuture<Void> waiter) {
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+
+        return waiter.cancel(false);
+    }
+
+    /**
+     * Releases a permit after a successful operation and adapts the limit.
+     *
+     * @param latency the operation latency in nanoseconds
+     */
+    public void onSuccess(long latency) {
+        List<CompletableFuture<Void>> ready;
+        synchronized (this) {
+            inFlight--;
+            update(latency);
+            ready = dispatch();
+        }
+        complete(ready);
+    }
+
+    /**
+     * Releases a permit after an operation failed because of the limited resource
+     * and decreases the limit.
+     */
+    public void onDropped() {
+        List<CompletableFuture<Void>> ready;
+        synchronized (this) {
+            inFlight--;
+            dropCount++;
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            ready = dispatch();
+        }
+        complete(ready);
+    }
+
+    /**
+     * Releases a permit without changing the limit, for operations which say nothing
+     * about the resource capacity.
+     */
+    public void release() {
+        List<CompletableFuture<Void>> ready;
+        synchronized (this) {
+            inFlight--;
+            ready = dispatch();
+        }
+        complete(ready);
+    }
+
+    private void update(long latency) {
+        sampleCount++;
+        if (shortRtt == 0) {
+            shortRtt = latency;
+            longRtt = latency;
+
+            return;
+        }
+
+        shortRtt += (latency - shortRtt) * SHORT_RTT_FACTOR;
+        longRtt += (latency - longRtt) * LONG_RTT_FACTOR;
+        if (longRtt / shortRtt > LONG_RTT_DECAY_RATIO) {
+            longRtt *= LONG_RTT_DECAY;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        // the used concurrency is too low to say anything about a higher limit
+        if (inFlight + 1 < limit / 2) {
+            newLimit = Math.min(newLimit, limit);
+        }
+
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private List<CompletableFuture<Void>> dispatch() {
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        while (inFlight < getLimit() && !waiters.isEmpty()) {
+            CompletableFuture<Void> waiter = waiters.poll();
+            // cancelled or timed out
+            if (!waiter.isDone()) {
+                inFlight++;
+                ready.add(waiter);
+            }
+        }
+
+        return ready;
+    }
+
+    private void complete(List<CompletableFuture<Void>> ready) {
+        for (CompletableFuture<Void> waiter : ready) {
+            if (!waiter.complete(null)) {
+                // cancelled or timed out in the meantime
+                release();
+            }
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Returns the baseline latency in milliseconds.
+     *
+     * @return the latency
+     */
+    public synchronized double getBaselineLatency() {
+        return longRtt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the current latency in milliseconds.
+     *
+     * @return the latency
+     */
+    public synchronized double getCurrentLatency() {
+        return shortRtt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized long getDropCount() {
+        return dropCount;
+    }
+}
@@ -4,6 +4,9 @@ import dvoraka.avservice.common.exception.ScanException;
 import dvoraka.avservice.common.util.Utils;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * AV service interface.
@@ -32,7 +35,38 @@ public interface AvService {
     String scanBytesWithInfo(byte[] bytes) throws ScanException;
 
     /**
-     * Scans file and returns result as a boolean value.
+     * Scans bytes without blocking the calling thread.
+     *
+     * @param bytes the bytes to scan
+     * @return the future with the result string, it completes exceptionally
+     * with a {@link ScanException} if scan fails
+     * @see #scanBytesWithInfo(byte[])
+     */
+    CompletableFuture<String> scanBytesAsync(byte[] bytes);
+
+    /**
+     * Scans a stream and returns result as a string. The stream is sent for scanning
+     * in chunks without reading it into memory and it is not closed.
+     *
+     * @param inputStream the stream to scan
+     * @return the result string
+     * @throws ScanException if scan fails
+     * @see #scanBytesWithInfo(byte[])
+     */
+    String scanStreamWithInfo(InputStream inputStream) throws ScanException;
+
+    /**
+     * Scans remaining bytes of a buffer and returns result as a string.
+     *
+     * @param buffer the buffer to scan
+     * @return the result string
+     * @throws ScanException if scan fails
+     * @see #scanBytesWithInfo(byte[])
+     */
+    String scanBufferWithInfo(ByteBuffer buffer) throws ScanException;
+
+    /**
+     * Scans file and returns result as a boolean value. The file is streamed.
      *
      * @param file the file for the scan
      * @return the result of scan
@@ -11,7 +11,10 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.Objects.requireNonNull;
 
@@ -61,7 +64,50 @@ public class DefaultAvService implements AvService {
 
         checkSize(bytes.length);
 
-        String response = avProgram.scanBytesWithInfo(bytes);
+        return unifyResponse(avProgram.scanBytesWithInfo(bytes));
+    }
+
+    @Override
+    public CompletableFuture<String> scanBytesAsync(byte[] bytes) {
+        requireNonNull(bytes, "Bytes must not be null");
+
+        if (bytes.length == 0) {
+            return CompletableFuture.completedFuture("");
+        }
+
+        try {
+            checkSize(bytes.length);
+        } catch (ScanException e) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+
+            return future;
+        }
+
+        return avProgram.scanBytesAsync(bytes).thenApply(this::unifyResponse);
+    }
+
+    @Override
+    public String scanStreamWithInfo(InputStream inputStream) throws ScanException {
+        requireNonNull(inputStream, "Stream must not be null");
+
+        return unifyResponse(avProgram.scanStreamWithInfo(inputStream));
+    }
+
+    @Override
+    public String scanBufferWithInfo(ByteBuffer buffer) throws ScanException {
+        requireNonNull(buffer, "Buffer must not be null");
+
+        if (!buffer.hasRemaining()) {
+            return "";
+        }
+
+        checkSize(buffer.remaining());
+
+        return unifyResponse(avProgram.scanBufferWithInfo(buffer));
+    }
+
+    private String unifyResponse(String response) {
         if (response.equals(avProgram.getNoVirusResponse())) {
             return Utils.OK_VIRUS_INFO;
         } else {
@@ -78,7 +124,6 @@ public class DefaultAvService implements AvService {
 
     @Override
     public boolean scanFile(File file) throws ScanException {
-        byte[] bytes;
         try {
             long size = Files.size(file.toPath());
             if (size > getMaxFileSize()) {
@@ -86,9 +131,10 @@ public class DefaultAvService implements AvService {
                 throw new ScanException("Too big file.", new FileSizeException(
                         "File is too big: " + size + " bytes, max is: " + getMaxFileSize()));
             }
-            bytes = Files.readAllBytes(file.toPath());
 
-            return scanBytes(bytes);
+            try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+                return !Utils.OK_VIRUS_INFO.equals(scanStreamWithInfo(inputStream));
+            }
         } catch (IOException e) {
             log.warn("File error!", e);
             throw new ScanException("File error.", e);
@@ -0,0 +1,225 @@
+package dvoraka.avservice.avprogram.service;
+
+import dvoraka.avservice.common.exception.ConnectionException;
+import dvoraka.avservice.common.exception.OverloadException;
+import dvoraka.avservice.common.exception.ScanException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * AV service decorator limiting concurrent scans with an adaptive limit.
+ * <p>
+ * Scans wait for a permit from the {@link AdaptiveConcurrencyLimiter} and report their
+ * latency back, so the count of scans in flight follows the AV program capacity.
+ * Failed scans caused by connection problems or exhausted scanning resources decrease
+ * the limit. Other failures, like too big data, do not change it. Synchronous and
+ * asynchronous scans fail when they do not get a permit within the acquire timeout.
+ */
+@ManagedResource
+public class LimitingAvService implements AvService {
+
+    private static final Logger log = LogManager.getLogger(LimitingAvService.class);
+
+    /**
+     * Default time in milliseconds to wait for a permit.
+     */
+    public static final long ACQUIRE_TIMEOUT = 10_000;
+
+    private static final String TOO_MANY_SCANS = "Too many concurrent scans.";
+
+    private final AvService avService;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private volatile long acquireTimeout;
+
+
+    public LimitingAvService(AvService avService, AdaptiveConcurrencyLimiter limiter) {
+        this.avService = requireNonNull(avService);
+        this.limiter = requireNonNull(limiter);
+        acquireTimeout = ACQUIRE_TIMEOUT;
+    }
+
+    @Override
+    public boolean scanBytes(byte[] bytes) throws ScanException {
+        return limit(() -> avService.scanBytes(bytes));
+    }
+
+    @Override
+    public String scanBytesWithInfo(byte[] bytes) throws ScanException {
+        return limit(() -> avService.scanBytesWithInfo(bytes));
+    }
+
+    @Override
+    public CompletableFuture<String> scanBytesAsync(byte[] bytes) {
+        return limiter.acquireAsync(acquireTimeout, TimeUnit.MILLISECONDS)
+                .handle((permit, throwable) -> throwable)
+                .thenCompose(throwable -> throwable == null
+                        ? scanAsync(bytes)
+                        : timedOut());
+    }
+
+    private CompletableFuture<String> timedOut() {
+        log.warn("Scan limit timeout, limit: {}", limiter.getLimit());
+        CompletableFuture<String> result = new CompletableFuture<>();
+        result.completeExceptionally(new ScanException(TOO_MANY_SCANS));
+
+        return result;
+    }
+
+    private CompletableFuture<String> scanAsync(byte[] bytes) {
+        long start = System.nanoTime();
+        CompletableFuture<String> result;
+        try {
+            result = avService.scanBytesAsync(bytes);
+        } catch (RuntimeException e) {
+            limiter.release();
+            throw e;
+        }
+
+        return result.whenComplete((info, throwable) -> {
+            if (throwable == null) {
+                limiter.onSuccess(System.nanoTime() - start);
+            } else {
+                release(unwrap(throwable));
+            }
+        });
+    }
+
+    @Override
+    public String scanStreamWithInfo(InputStream inputStream) throws ScanException {
+        return limit(() -> avService.scanStreamWithInfo(inputStream));
+    }
+
+    @Override
+    public String scanBufferWithInfo(ByteBuffer buffer) throws ScanException {
+        return limit(() -> avService.scanBufferWithInfo(buffer));
+    }
+
+    @Override
+    public boolean scanFile(File file) throws ScanException {
+        return limit(() -> avService.scanFile(file));
+    }
+
+    @Override
+    public long getMaxFileSize() {
+        return avService.getMaxFileSize();
+    }
+
+    private <T> T limit(Scan<T> scan) throws ScanException {
+        acquire();
+
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = scan.scan();
+        } catch (ScanException | RuntimeException e) {
+            release(e);
+            throw e;
+        }
+        limiter.onSuccess(System.nanoTime() - start);
+
+        return result;
+    }
+
+    private void acquire() throws ScanException {
+        boolean acquired;
+        try {
+            acquired = limiter.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScanException("Waiting for scan interrupted.", e);
+        }
+
+        if (!acquired) {
+            log.warn("Scan limit timeout, limit: {}", limiter.getLimit());
+            throw new ScanException(TOO_MANY_SCANS);
+        }
+    }
+
+    private void release(Throwable failure) {
+        if (isDrop(failure)) {
+            limiter.onDropped();
+        } else {
+            limiter.release();
+        }
+    }
+
+    /**
+     * Returns true if a failure shows that the AV program is overloaded. Scan failures are
+     * often wrapped, so the whole cause chain is checked.
+     *
+     * @param failure the scan failure
+     * @return the result
+     */
+    static boolean isDrop(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectionException || cause instanceof OverloadException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+
+        return throwable;
+    }
+
+    public long getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @ManagedAttribute
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    @ManagedAttribute
+    public int getScansInFlight() {
+        return limiter.getInFlight();
+    }
+
+    @ManagedAttribute
+    public int getScansWaiting() {
+        return limiter.getWaiting();
+    }
+
+    @ManagedAttribute
+    public double getBaselineLatency() {
+        return limiter.getBaselineLatency();
+    }
+
+    @ManagedAttribute
+    public double getCurrentLatency() {
+        return limiter.getCurrentLatency();
+    }
+
+    @ManagedAttribute
+    public long getDropCount() {
+        return limiter.getDropCount();
+    }
+
+    @FunctionalInterface
+    private interface Scan<T> {
+        T scan() throws ScanException;
+    }
+}
@@ -0,0 +1,354 @@
+package dvoraka.avservice.avprogram
+
+import dvoraka.avservice.common.exception.ConnectionException
+import dvoraka.avservice.common.exception.ScanException
+import dvoraka.avservice.common.service.CachingService
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.ByteBuffer
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+/**
+ * Load balancer spec.
+ */
+class BalancingAvProgramSpec extends Specification {
+
+    @Subject
+    BalancingAvProgram avProgram
+
+    ClamAvProgram first
+    ClamAvProgram second
+
+    byte[] bytes = new byte[10]
+
+
+    def setup() {
+        first = Mock()
+        second = Mock()
+        avProgram = new BalancingAvProgram([first, second], BalancingAvProgram.Routing.LEAST_OUTSTANDING, 0)
+    }
+
+    def "constructor with empty endpoints"() {
+        when:
+            new BalancingAvProgram([])
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "constructor with negative health check period"() {
+        when:
+            new BalancingAvProgram([first], BalancingAvProgram.Routing.LATENCY, -1)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "scan bytes"() {
+        when:
+            String result = avProgram.scanBytesWithInfo(bytes)
+
+        then:
+            1 * _.scanBytesWithInfo(bytes) >> Utils.OK_VIRUS_INFO
+            result == Utils.OK_VIRUS_INFO
+    }
+
+    def "scan bytes with infected flag"() {
+        given:
+            _.getNoVirusResponse() >> Utils.OK_VIRUS_INFO
+
+        when:
+            boolean infected = avProgram.scanBytes(bytes)
+
+        then:
+            1 * _.scanBytesWithInfo(bytes) >> 'Eicar FOUND'
+            infected
+    }
+
+    def "scans are spread across endpoints"() {
+        when:
+            4.times { avProgram.scanBytesWithInfo(bytes) }
+
+        then:
+            2 * first.scanBytesWithInfo(bytes) >> Utils.OK_VIRUS_INFO
+            2 * second.scanBytesWithInfo(bytes) >> Utils.OK_VIRUS_INFO
+    }
+
+    def "scan goes to endpoint with least outstanding requests"() {
+        given:
+            avProgram.endpoints[0].outstanding.set(5)
+
+        when:
+            3.times { avProgram.scanBytesWithInfo(bytes) }
+
+        then:
+            0 * first.scanBytesWithInfo(_)
+            3 * second.scanBytesWithInfo(bytes) >> Utils.OK_VIRUS_INFO
+    }
+
+    def "scan goes to endpoint with lowest latency"() {
+        given:
+            avProgram = new BalancingAvProgram([first, second], BalancingAvProgram.Routing.LATENCY, 0)
+            avProgram.endpoints[0].recordLatency(1_000_000)
+            avProgram.endpoints[1].recordLatency(1_000)
+
+        when:
+            avProgram.scanBufferWithInfo(ByteBuffer.wrap(bytes))
+
+        then:
+            0 * first.scanBufferWithInfo(_)
+            1 * second.scanBufferWithInfo(_) >> Utils.OK_VIRUS_INFO
+    }
+
+    def "failed endpoint is ejected and scan is repeated"() {
+        given:
+            avProgram.endpoints[1].outstanding.set(1)
+
+        when:
+            String result = avProgram.scanBytesWithInfo(bytes)
+
+        then:
+            1 * first.scanBytesWithInfo(bytes) >> { throw new ConnectionException('test') }
+            1 * second.scanBytesWithInfo(bytes) >> Utils.OK_VIRUS_INFO
+            result == Utils.OK_VIRUS_INFO
+            avProgram.getHealthyEndpointCount() == 1
+            avProgram.getEjectionCount() == 1
+    }
+
+    def "failed scan without connection problem does not eject"() {
+        given:
+            avProgram.endpoints[1].outstanding.set(1)
+
+        when:
+            String result = avProgram.scanBytesWithInfo(bytes)
+
+        then:
+            1 * first.scanBytesWithInfo(bytes) >> { throw new ScanException('No available socket!') }
+            1 * second.scanBytesWithInfo(bytes) >> Utils.OK_VIRUS_INFO
+            result == Utils.OK_VIRUS_INFO
+            avProgram.getHealthyEndpointCount() == 2
+            avProgram.getEjectionCount() == 0
+    }
+
+    def "endpoint faults"() {
+        expect:
+            BalancingAvProgram.isEndpointFault(throwable) == fault
+
+        where:
+            throwable                                                  || fault
+            new ConnectionException('test')                            || true
+            new ScanException('test', new IOException())               || true
+            new ScanException('test', new ConnectionException('test')) || true
+            new ScanException('test')                                  || false
+            new ScanException('test', new InterruptedException())      || false
+    }
+
+    def "failed stream scan is not repeated"() {
+        given:
+            InputStream inputStream = new ByteArrayInputStream(bytes)
+
+        when:
+            avProgram.scanStreamWithInfo(inputStream)
+
+        then:
+            1 * _.scanStreamWithInfo(inputStream) >> { throw new ConnectionException('test') }
+            thrown(ScanException)
+            avProgram.getHealthyEndpointCount() == 1
+    }
+
+    def "scan with all endpoints failing"() {
+        when:
+            avProgram.scanBytesWithInfo(bytes)
+
+        then:
+            1 * first.scanBytesWithInfo(bytes) >> { throw new ConnectionException('test') }
+            1 * second.scanBytesWithInfo(bytes) >> { throw new ConnectionException('test') }
+            thrown(ScanException)
+            !avProgram.isRunning()
+    }
+
+    def "scan without healthy endpoints tries an ejected one"() {
+        given:
+            avProgram.endpoints.each { it.eject() }
+
+        when:
+            String result = avProgram.scanBytesWithInfo(bytes)
+
+        then:
+            1 * _.scanBytesWithInfo(bytes) >> Utils.OK_VIRUS_INFO
+            result == Utils.OK_VIRUS_INFO
+            avProgram.getHealthyEndpointCount() == 1
+    }
+
+    def "failed scan without healthy endpoints"() {
+        given:
+            avProgram.endpoints.each { it.eject() }
+
+        when:
+            avProgram.scanBytesWithInfo(bytes)
+
+        then:
+            1 * _.scanBytesWithInfo(bytes) >> { throw new ConnectionException('test') }
+            thrown(ScanException)
+            avProgram.getHealthyEndpointCount() == 0
+    }
+
+    def "health check ejects and re-admits endpoints"() {
+        when:
+            avProgram.checkHealth()
+
+        then:
+            1 * first.testConnection() >> false
+            1 * second.testConnection() >> true
+            avProgram.getHealthyEndpointCount() == 1
+
+        when:
+            avProgram.checkHealth()
+
+        then:
+            1 * first.testConnection() >> true
+            1 * second.testConnection() >> true
+            avProgram.getHealthyEndpointCount() == 2
+            avProgram.getEjectionCount() == 1
+    }
+
+    def "health check with exception"() {
+        when:
+            avProgram.checkHealth()
+
+        then:
+            1 * first.testConnection() >> { throw new RuntimeException('test') }
+            1 * second.testConnection() >> true
+            avProgram.getHealthyEndpointCount() == 1
+    }
+
+    def "set caching"() {
+        when:
+            avProgram.setCaching(true)
+
+        then:
+            1 * first.setCaching(true)
+            1 * second.setCaching(true)
+    }
+
+    def "is caching"() {
+        given:
+            first.isCaching() >> true
+            second.isCaching() >> false
+
+        expect:
+            !avProgram.isCaching()
+    }
+
+    def "set caching service"() {
+        given:
+            CachingService cachingService = Mock()
+
+        when:
+            avProgram.setCachingService(cachingService)
+
+        then:
+            1 * first.setCachingService(cachingService)
+            1 * second.setCachingService(cachingService)
+    }
+
+    def "get max array size"() {
+        given:
+            first.getMaxArraySize() >> 100
+            second.getMaxArraySize() >> 50
+
+        expect:
+            avProgram.getMaxArraySize() == 50
+    }
+
+    def "get endpoint info"() {
+        expect:
+            avProgram.getEndpointCount() == 2
+            avProgram.getRouting() == BalancingAvProgram.Routing.LEAST_OUTSTANDING
+            avProgram.getOutstandingRequests() == 0
+            avProgram.isRunning()
+    }
+
+    def "close"() {
+        given:
+            avProgram = new BalancingAvProgram([first, second])
+
+        when:
+            avProgram.close()
+
+        then:
+            1 * first.close()
+            1 * second.close()
+    }
+
+    def "version of all endpoints"() {
+        given:
+            first.version() >> 'ClamAV 0.99.2/2/date'
+            second.version() >> 'ClamAV 0.99.2/1/date'
+
+        expect:
+            avProgram.version() == 'ClamAV 0.99.2/1/date, ClamAV 0.99.2/2/date'
+
+        when:
+            avProgram.endpoints[0].eject()
+
+        then:
+            avProgram.version() == 'ClamAV 0.99.2/1/date, ClamAV 0.99.2/2/date'
+    }
+
+    def "ejected endpoints are not asked for version"() {
+        given:
+            avProgram.endpoints.each { it.eject() }
+
+        when:
+            String version = avProgram.version()
+
+        then:
+            0 * _.version()
+            !version
+    }
+
+    def "async scan"() {
+        when:
+            String result = avProgram.scanBytesAsync(bytes).get()
+
+        then:
+            1 * _.scanBytesAsync(bytes) >> CompletableFuture.completedFuture(Utils.OK_VIRUS_INFO)
+            result == Utils.OK_VIRUS_INFO
+            avProgram.getOutstandingRequests() == 0
+    }
+
+    def "failed async scan is repeated"() {
+        given:
+            CompletableFuture<String> failed = new CompletableFuture<>()
+            failed.completeExceptionally(new ConnectionException('test'))
+
+            avProgram.endpoints[1].outstanding.set(1)
+
+        when:
+            String result = avProgram.scanBytesAsync(bytes).get()
+
+        then:
+            1 * first.scanBytesAsync(bytes) >> failed
+            1 * second.scanBytesAsync(bytes) >> CompletableFuture.completedFuture(Utils.OK_VIRUS_INFO)
+            result == Utils.OK_VIRUS_INFO
+            avProgram.getHealthyEndpointCount() == 1
+    }
+
+    def "async scan with all endpoints failing"() {
+        given:
+            CompletableFuture<String> failed = new CompletableFuture<>()
+            failed.completeExceptionally(new ConnectionException('test'))
+
+        when:
+            avProgram.scanBytesAsync(bytes).get()
+
+        then:
+            2 * _.scanBytesAsync(bytes) >> failed
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+    }
+}
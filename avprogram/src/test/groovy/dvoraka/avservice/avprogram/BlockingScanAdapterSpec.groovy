@@ -0,0 +1,98 @@
+package dvoraka.avservice.avprogram
+
+import dvoraka.avservice.common.exception.ScanException
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ * Blocking scan adapter spec.
+ */
+class BlockingScanAdapterSpec extends Specification {
+
+    @Subject
+    BlockingScanAdapter adapter
+
+
+    def setup() {
+        adapter = new BlockingScanAdapter(2, 1)
+    }
+
+    def cleanup() {
+        adapter.stop()
+    }
+
+    def "constructor with bad thread count"() {
+        when:
+            new BlockingScanAdapter(0, 1)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "supply result"() {
+        expect:
+            adapter.supplyAsync({ 'RESULT' }).get() == 'RESULT'
+    }
+
+    def "supply with scan exception"() {
+        when:
+            adapter.supplyAsync({ throw new ScanException('test') }).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+    }
+
+    def "supply with runtime exception"() {
+        when:
+            adapter.supplyAsync({ throw new IllegalStateException('test') }).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof IllegalStateException
+    }
+
+    def "scan runs on blocking scan thread"() {
+        expect:
+            adapter.supplyAsync({ Thread.currentThread().getName() })
+                    .get()
+                    .startsWith('blocking-scan-')
+    }
+
+    def "scan is rejected when threads and queue are full"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(1)
+            // two running and one waiting
+            3.times { adapter.supplyAsync({ latch.await() }) }
+
+        when:
+            adapter.supplyAsync({ 'RESULT' }).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+
+        cleanup:
+            latch.countDown()
+    }
+
+    def "task is rejected after stop"() {
+        given:
+            adapter.stop()
+
+        when:
+            adapter.execute({})
+
+        then:
+            thrown(RejectedExecutionException)
+    }
+
+    def "max thread count"() {
+        expect:
+            adapter.getMaxThreadCount() == 2
+    }
+}
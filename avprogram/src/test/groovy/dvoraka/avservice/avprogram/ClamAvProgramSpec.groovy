@@ -1,11 +1,16 @@
 package dvoraka.avservice.avprogram
 
+import dvoraka.avservice.common.exception.ConnectionException
 import dvoraka.avservice.common.exception.ScanException
 import dvoraka.avservice.common.service.CachingService
+import dvoraka.avservice.common.socket.PipelinedSession
 import dvoraka.avservice.common.util.Utils
 import spock.lang.Specification
 import spock.lang.Subject
 
+import java.nio.ByteBuffer
+import java.util.concurrent.ExecutionException
+
 /**
  * ClamAV program spec.
  */
@@ -91,6 +96,135 @@ class ClamAvProgramSpec extends Specification {
             thrown(ScanException)
     }
 
+    def "constructor with bad pipeline depth"() {
+        when:
+            new ClamAvProgram('localhost', 3310, 1_000, 2, 0)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "pipelining needs socket pooling"() {
+        expect:
+            new ClamAvProgram('localhost', 3310, 1_000, 2, 4).isPipelining()
+            !new ClamAvProgram('localhost', 3310, 1_000, 0, 4).isPipelining()
+            !new ClamAvProgram('localhost', 3310, 1_000, 2, 1).isPipelining()
+    }
+
+    def "pipelined scan without reply resets the session"() {
+        given:
+            // connections are queued by the system and nobody replies
+            ServerSocket server = new ServerSocket(0)
+            ClamAvProgram program = new ClamAvProgram('localhost', server.getLocalPort(), 1_000, 1, 2)
+            program.setPipelinedReplyTimeout(100)
+            PipelinedSession session = program.@pipelinedSessions[0]
+
+        when:
+            program.scanBytesWithInfo(new byte[10])
+
+        then:
+            thrown(ConnectionException)
+            session.pendingCount() == 0
+
+        cleanup:
+            program.close()
+            server.close()
+    }
+
+    def "set bad pipelined reply timeout"() {
+        when:
+            avProgram.setPipelinedReplyTimeout(0)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "scan stream in chunks"() {
+        given:
+            ByteArrayOutputStream output = new ByteArrayOutputStream()
+            Socket socket = Mock()
+            socket.getOutputStream() >> output
+            socket.getInputStream() >> new ByteArrayInputStream('stream: OK\n'.getBytes('UTF-8'))
+
+            ClamAvProgram program = Spy()
+            program.createSocket() >> socket
+
+            int size = ClamAvProgram.STREAM_CHUNK_SIZE * 2 + 1
+
+        when:
+            String result = program.scanStreamWithInfo(new ByteArrayInputStream(new byte[size]))
+
+        then:
+            result == ClamAvProgram.CLEAN_STREAM_RESPONSE
+            // three chunks and the terminating chunk
+            output.size() == 'nINSTREAM\n'.length() + size + 4 * 4
+    }
+
+    def "scan buffer in chunks"() {
+        given:
+            ByteArrayOutputStream output = new ByteArrayOutputStream()
+            Socket socket = Mock()
+            socket.getOutputStream() >> output
+            socket.getInputStream() >> new ByteArrayInputStream('stream: OK\n'.getBytes('UTF-8'))
+
+            ClamAvProgram program = Spy()
+            program.createSocket() >> socket
+
+        when:
+            String result = program.scanBufferWithInfo(buffer)
+
+        then:
+            result == ClamAvProgram.CLEAN_STREAM_RESPONSE
+            output.size() == 'nINSTREAM\n'.length() + buffer.remaining() + 3 * 4
+            buffer.position() == 0
+
+        where:
+            buffer << [
+                    ByteBuffer.allocate(ClamAvProgram.STREAM_CHUNK_SIZE + 1),
+                    ByteBuffer.allocateDirect(ClamAvProgram.STREAM_CHUNK_SIZE + 1),
+                    ByteBuffer.allocate(ClamAvProgram.STREAM_CHUNK_SIZE + 1).asReadOnlyBuffer()
+            ]
+    }
+
+    def "scan buffer with cached value"() {
+        given:
+            CachingService cachingService = Mock()
+            ClamAvProgram program = Spy()
+            program.setCachingService(cachingService)
+            program.setCaching(true)
+
+        when:
+            String result = program.scanBufferWithInfo(ByteBuffer.allocate(10))
+
+        then:
+            1 * cachingService.bufferDigest(_) >> 'DIGEST'
+            1 * cachingService.get('DIGEST') >> 'CACHED'
+            0 * program.createSocket()
+            result == 'CACHED'
+    }
+
+    def "scan too big buffer"() {
+        when:
+            avProgram.scanBufferWithInfo(ByteBuffer.allocate((int) avProgram.getMaxArraySize() + 1))
+
+        then:
+            thrown(ScanException)
+    }
+
+    def "scan stream with IO exception"() {
+        given:
+            ClamAvProgram program = Spy()
+            program.createSocket() >> {
+                throw new IOException("TEST")
+            }
+
+        when:
+            program.scanStreamWithInfo(new ByteArrayInputStream(new byte[10]))
+
+        then:
+            thrown(ScanException)
+    }
+
     def "get no virus response string"() {
         expect:
             avProgram.getNoVirusResponse() == avProgram.CLEAN_STREAM_RESPONSE
@@ -207,4 +341,106 @@ class ClamAvProgramSpec extends Specification {
         then:
             !avProgram.isCaching()
     }
+
+    def "async scan without pipelining"() {
+        given:
+            Socket socket = Mock()
+            socket.getOutputStream() >> new ByteArrayOutputStream()
+            socket.getInputStream() >> new ByteArrayInputStream('stream: OK\n'.getBytes('UTF-8'))
+
+            ClamAvProgram program = Spy()
+            program.createSocket() >> socket
+
+        expect:
+            program.scanBytesAsync(new byte[10]).get() == ClamAvProgram.CLEAN_STREAM_RESPONSE
+    }
+
+    def "async scan after close"() {
+        given:
+            ClamAvProgram program = new ClamAvProgram()
+            program.close()
+
+        when:
+            program.scanBytesAsync(new byte[10]).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+    }
+
+    def "async pipelined scan"() {
+        given:
+            ServerSocket server = new ServerSocket(0)
+            Thread.startDaemon {
+                server.accept().withCloseable { socket ->
+                    DataInputStream input = new DataInputStream(socket.getInputStream())
+                    readCommand(input)
+                    int id = 0
+                    while (readCommand(input) == 'nINSTREAM') {
+                        int length
+                        while ((length = input.readInt()) != 0) {
+                            input.skipBytes(length)
+                        }
+                        socket.getOutputStream().write("${++id}: stream: OK\n".getBytes('UTF-8'))
+                        socket.getOutputStream().flush()
+                    }
+                }
+            }
+            ClamAvProgram program = new ClamAvProgram('localhost', server.getLocalPort(), 100, 1, 4)
+
+        when:
+            List<String> results = (1..10)
+                    .collect { program.scanBytesAsync(new byte[5]) }
+                    .collect { it.get() }
+
+        then:
+            results.every { it == ClamAvProgram.CLEAN_STREAM_RESPONSE }
+
+        cleanup:
+            program.close()
+            server.close()
+    }
+
+    String readCommand(DataInputStream input) {
+        StringBuilder command = new StringBuilder()
+        int c
+        while ((c = input.read()) != -1 && c != (int) '\n') {
+            command.append((char) c)
+        }
+
+        return command.toString()
+    }
+
+    def "async pipelined scan without server"() {
+        given:
+            ServerSocket freeSocket = new ServerSocket(0)
+            int freePort = freeSocket.getLocalPort()
+            freeSocket.close()
+            ClamAvProgram program = new ClamAvProgram('localhost', freePort, 100, 2, 4)
+
+        when:
+            program.scanBytesAsync(new byte[10]).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+
+        cleanup:
+            program.close()
+    }
+
+    def "async pipelined scan with too big array"() {
+        given:
+            ClamAvProgram program = new ClamAvProgram('localhost', 3310, 10, 1, 4)
+
+        when:
+            program.scanBytesAsync(new byte[11]).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+
+        cleanup:
+            program.close()
+    }
 }
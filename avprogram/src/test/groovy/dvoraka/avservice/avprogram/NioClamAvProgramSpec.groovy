@@ -0,0 +1,290 @@
+package dvoraka.avservice.avprogram
+
+import dvoraka.avservice.common.exception.OverloadException
+import dvoraka.avservice.common.exception.ScanException
+import dvoraka.avservice.common.service.CachingService
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+/**
+ * Non-blocking ClamAV program spec.
+ */
+class NioClamAvProgramSpec extends Specification {
+
+    @Subject
+    NioClamAvProgram avProgram
+
+    ServerSocket server
+    Thread serverThread
+    List<Integer> chunkLengths = Collections.synchronizedList([])
+
+
+    def setup() {
+        server = new ServerSocket(0)
+        serverThread = new Thread({ serve() })
+        serverThread.setDaemon(true)
+        serverThread.start()
+
+        avProgram = new NioClamAvProgram('localhost', server.getLocalPort(), 1_000, 2)
+    }
+
+    def cleanup() {
+        avProgram.stop()
+        server.close()
+    }
+
+    /**
+     * Fake clamd answering INSTREAM requests.
+     */
+    void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept()
+                Thread.start {
+                    socket.withCloseable {
+                        DataInputStream input = new DataInputStream(socket.getInputStream())
+                        while (input.read() != (int) '\n') {
+                            // skip command
+                        }
+
+                        ByteArrayOutputStream data = new ByteArrayOutputStream()
+                        int length
+                        while ((length = input.readInt()) != 0) {
+                            chunkLengths.add(length)
+                            byte[] chunk = new byte[length]
+                            input.readFully(chunk)
+                            data.write(chunk)
+                        }
+
+                        String response = new String(data.toByteArray(), StandardCharsets.UTF_8)
+                                .contains(Utils.EICAR) ? 'stream: Eicar FOUND' : 'stream: OK'
+                        socket.getOutputStream().write((response + '\n').getBytes('UTF-8'))
+                        socket.getOutputStream().flush()
+                    }
+                }
+            } catch (IOException ignored) {
+                // server closed
+            }
+        }
+    }
+
+    def "constructor with bad event loop count"() {
+        when:
+            new NioClamAvProgram('localhost', 3310, 1_000, 0)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "scan clean bytes"() {
+        expect:
+            avProgram.scanBytesWithInfo(new byte[100]) == ClamAvProgram.CLEAN_STREAM_RESPONSE
+            !avProgram.scanBytes(new byte[100])
+    }
+
+    def "scan infected bytes"() {
+        expect:
+            avProgram.scanBytes(Utils.EICAR.getBytes(StandardCharsets.UTF_8))
+    }
+
+    def "scan many bytes concurrently"() {
+        given:
+            int count = 200
+
+        when:
+            List<CompletableFuture<String>> futures = (1..count).collect {
+                avProgram.scanBytesAsync(new byte[it])
+            }
+            CompletableFuture.allOf(futures as CompletableFuture[]).get()
+
+        then:
+            futures.every { it.get() == ClamAvProgram.CLEAN_STREAM_RESPONSE }
+    }
+
+    def "scan buffer"() {
+        given:
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) avProgram.getMaxArraySize())
+
+        expect:
+            avProgram.scanBufferWithInfo(buffer) == ClamAvProgram.CLEAN_STREAM_RESPONSE
+            buffer.position() == 0
+    }
+
+    def "scan buffer in chunks"() {
+        given:
+            int size = ClamAvProgram.STREAM_CHUNK_SIZE * 2 + 1
+            NioClamAvProgram program = new NioClamAvProgram('localhost', server.getLocalPort(), size, 1)
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size)
+
+        expect:
+            program.scanBufferWithInfo(buffer) == ClamAvProgram.CLEAN_STREAM_RESPONSE
+            chunkLengths == [ClamAvProgram.STREAM_CHUNK_SIZE, ClamAvProgram.STREAM_CHUNK_SIZE, 1]
+            buffer.position() == 0
+
+        cleanup:
+            program.stop()
+    }
+
+    def "scan buffer bigger than max array size"() {
+        when:
+            avProgram.scanBufferWithInfo(ByteBuffer.allocateDirect((int) avProgram.getMaxArraySize() + 1))
+
+        then:
+            thrown(ScanException)
+    }
+
+    def "scan stream"() {
+        given:
+            InputStream inputStream = new ByteArrayInputStream(
+                    new byte[ClamAvProgram.STREAM_CHUNK_SIZE * 3])
+
+        expect:
+            avProgram.scanStreamWithInfo(inputStream) == ClamAvProgram.CLEAN_STREAM_RESPONSE
+    }
+
+    def "scan too big array"() {
+        when:
+            avProgram.scanBytesWithInfo(new byte[avProgram.getMaxArraySize() + 1])
+
+        then:
+            thrown(ScanException)
+    }
+
+    def "scan without server"() {
+        given:
+            server.close()
+            ServerSocket freeSocket = new ServerSocket(0)
+            int freePort = freeSocket.getLocalPort()
+            freeSocket.close()
+            NioClamAvProgram program = new NioClamAvProgram('localhost', freePort, 1_000, 1)
+
+        when:
+            program.scanBytesWithInfo(new byte[10])
+
+        then:
+            thrown(ScanException)
+
+        cleanup:
+            program.stop()
+    }
+
+    def "scan after stop"() {
+        given:
+            avProgram.stop()
+
+        when:
+            avProgram.scanBytesAsync(new byte[10]).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+    }
+
+    def "scan with cached value"() {
+        given:
+            CachingService cachingService = Mock()
+            avProgram.setCachingService(cachingService)
+            avProgram.setCaching(true)
+
+        when:
+            String result = avProgram.scanBytesWithInfo(new byte[10])
+
+        then:
+            1 * cachingService.arrayDigest(_) >> 'DIGEST'
+            1 * cachingService.get('DIGEST') >> 'CACHED'
+            0 * cachingService.put(_, _)
+            result == 'CACHED'
+    }
+
+    def "scan adds result into cache"() {
+        given:
+            CachingService cachingService = Mock()
+            avProgram.setCachingService(cachingService)
+            avProgram.setCaching(true)
+
+        when:
+            avProgram.scanBytesWithInfo(new byte[10])
+
+        then:
+            1 * cachingService.arrayDigest(_) >> 'DIGEST'
+            1 * cachingService.get('DIGEST') >> null
+            1 * cachingService.put('DIGEST', ClamAvProgram.CLEAN_STREAM_RESPONSE)
+    }
+
+    def "scan buffer with cached value"() {
+        given:
+            CachingService cachingService = Mock()
+            avProgram.setCachingService(cachingService)
+            avProgram.setCaching(true)
+
+        when:
+            String result = avProgram.scanBufferWithInfo(ByteBuffer.allocate(10))
+
+        then:
+            1 * cachingService.bufferDigest(_) >> 'DIGEST'
+            1 * cachingService.get('DIGEST') >> 'CACHED'
+            0 * cachingService.put(_, _)
+            result == 'CACHED'
+    }
+
+    def "scan buffer adds result into cache"() {
+        given:
+            CachingService cachingService = Mock()
+            avProgram.setCachingService(cachingService)
+            avProgram.setCaching(true)
+
+        when:
+            avProgram.scanBufferWithInfo(ByteBuffer.allocate(10))
+
+        then:
+            1 * cachingService.bufferDigest(_) >> 'DIGEST'
+            1 * cachingService.get('DIGEST') >> null
+            1 * cachingService.put('DIGEST', ClamAvProgram.CLEAN_STREAM_RESPONSE)
+    }
+
+    def "set caching without caching service"() {
+        when:
+            avProgram.setCaching(true)
+
+        then:
+            !avProgram.isCaching()
+    }
+
+    def "get no virus response"() {
+        expect:
+            avProgram.getNoVirusResponse() == Utils.OK_VIRUS_INFO
+    }
+
+    def "get event loop count"() {
+        expect:
+            avProgram.getEventLoopCount() == 2
+    }
+
+    def "stop closes the control program"() {
+        given:
+            ClamAvProgram controlProgram = avProgram.@controlProgram
+            avProgram.stop()
+
+        when:
+            controlProgram.scanBytesAsync(new byte[10]).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof OverloadException
+    }
+
+    def "stop twice"() {
+        when:
+            avProgram.stop()
+            avProgram.stop()
+
+        then:
+            notThrown(Exception)
+    }
+}
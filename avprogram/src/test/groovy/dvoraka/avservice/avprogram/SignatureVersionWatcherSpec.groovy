@@ -0,0 +1,113 @@
+package dvoraka.avservice.avprogram
+
+import dvoraka.avservice.common.service.CachingService
+import dvoraka.avservice.common.service.DefaultCachingService
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * Signature version watcher spec.
+ */
+class SignatureVersionWatcherSpec extends Specification {
+
+    @Subject
+    SignatureVersionWatcher watcher
+
+    AvProgram avProgram
+    CachingService cachingService
+
+    String version = 'ClamAV 0.99.2/23456/Mon Apr 16 09:12:37 2018'
+
+
+    def setup() {
+        avProgram = Stub()
+        cachingService = new DefaultCachingService()
+    }
+
+    def cleanup() {
+        watcher?.stop()
+    }
+
+    def "constructor with bad period"() {
+        when:
+            new SignatureVersionWatcher(avProgram, cachingService, 0)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "new version invalidates clean infos"() {
+        given:
+            // the watcher checks also in the background, so the version must not depend on call count
+            String currentVersion = version
+            avProgram.version() >> { currentVersion }
+            watcher = new SignatureVersionWatcher(avProgram, cachingService, 60_000)
+            watcher.checkVersion()
+            cachingService.put('CLEAN', Utils.OK_VIRUS_INFO)
+            cachingService.put('INFECTED', 'stream: Eicar FOUND')
+
+        when:
+            currentVersion = version.replace('23456', '23457')
+            watcher.checkVersion()
+
+        then:
+            cachingService.getSignatureVersion() == '23457'
+            !cachingService.get('CLEAN')
+            cachingService.get('INFECTED') == 'stream: Eicar FOUND'
+    }
+
+    def "same version keeps infos"() {
+        given:
+            avProgram.version() >> version
+            watcher = new SignatureVersionWatcher(avProgram, cachingService, 60_000)
+            watcher.checkVersion()
+            cachingService.put('CLEAN', Utils.OK_VIRUS_INFO)
+
+        when:
+            watcher.checkVersion()
+
+        then:
+            cachingService.getSignatureVersion() == '23456'
+            cachingService.get('CLEAN') == Utils.OK_VIRUS_INFO
+    }
+
+    def "unavailable version"() {
+        given:
+            avProgram.version() >> null
+            watcher = new SignatureVersionWatcher(avProgram, cachingService, 60_000)
+
+        when:
+            watcher.checkVersion()
+
+        then:
+            !cachingService.getSignatureVersion()
+    }
+
+    def "version check with exception"() {
+        given:
+            avProgram.version() >> { throw new RuntimeException('test') }
+            watcher = new SignatureVersionWatcher(avProgram, cachingService, 60_000)
+
+        when:
+            watcher.checkVersion()
+
+        then:
+            notThrown(Exception)
+            !cachingService.getSignatureVersion()
+    }
+
+    def "signature version parsing"() {
+        given:
+            watcher = new SignatureVersionWatcher(avProgram, cachingService, 60_000)
+
+        expect:
+            watcher.signatureVersion(programVersion) == signatureVersion
+
+        where:
+            programVersion                                     || signatureVersion
+            'ClamAV 0.99.2/23456/Mon Apr 16 09:12:37 2018'     || '23456'
+            'ClamAV 0.99.2/1/date, ClamAV 0.99.2/2/date'       || '1,2'
+            ' ClamAV 0.99.2 '                                  || 'ClamAV 0.99.2'
+    }
+}
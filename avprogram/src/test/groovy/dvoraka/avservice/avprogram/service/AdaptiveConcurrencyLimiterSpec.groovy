@@ -0,0 +1,213 @@
+package dvoraka.avservice.avprogram.service
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * Adaptive concurrency limiter spec.
+ */
+class AdaptiveConcurrencyLimiterSpec extends Specification {
+
+    static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10)
+
+
+    def "constructor with bad limits"() {
+        when:
+            new AdaptiveConcurrencyLimiter(initial, min, max)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            initial | min | max
+            1       | 0   | 10
+            5       | 6   | 5
+            11      | 1   | 10
+            0       | 1   | 10
+    }
+
+    def "acquire up to the limit"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10)
+
+        when:
+            CompletableFuture<Void> first = limiter.acquireAsync()
+            CompletableFuture<Void> second = limiter.acquireAsync()
+            CompletableFuture<Void> third = limiter.acquireAsync()
+
+        then:
+            first.isDone()
+            second.isDone()
+            !third.isDone()
+            limiter.getInFlight() == 2
+            limiter.getWaiting() == 1
+
+        when:
+            limiter.release()
+
+        then:
+            third.isDone()
+            limiter.getInFlight() == 2
+            limiter.getWaiting() == 0
+    }
+
+    def "timed acquire"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1)
+
+        expect:
+            limiter.tryAcquire(10, TimeUnit.MILLISECONDS)
+            !limiter.tryAcquire(10, TimeUnit.MILLISECONDS)
+            limiter.getWaiting() == 0
+
+        when:
+            limiter.release()
+
+        then:
+            limiter.getInFlight() == 0
+            limiter.tryAcquire(10, TimeUnit.MILLISECONDS)
+    }
+
+    def "async acquire with timeout"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1)
+            limiter.acquireAsync()
+
+        when:
+            limiter.acquireAsync(10, TimeUnit.MILLISECONDS).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof TimeoutException
+            limiter.getWaiting() == 0
+            limiter.getInFlight() == 1
+
+        when:
+            limiter.release()
+
+        then:
+            limiter.getInFlight() == 0
+    }
+
+    def "async acquire with timeout gets a released permit"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1)
+            limiter.acquireAsync()
+            CompletableFuture<Void> waiter = limiter.acquireAsync(10, TimeUnit.SECONDS)
+
+        when:
+            limiter.release()
+
+        then:
+            waiter.isDone()
+            !waiter.isCompletedExceptionally()
+            limiter.getInFlight() == 1
+    }
+
+    def "cancelled waiter does not take a permit"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1)
+            limiter.acquireAsync()
+            CompletableFuture<Void> cancelled = limiter.acquireAsync()
+            CompletableFuture<Void> waiting = limiter.acquireAsync()
+
+        when:
+            cancelled.cancel(false)
+            limiter.release()
+
+        then:
+            waiting.isDone()
+            limiter.getInFlight() == 1
+    }
+
+    def "limit grows with stable latency"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 100)
+
+        when:
+            50.times {
+                sample(limiter, LATENCY)
+            }
+
+        then:
+            limiter.getLimit() > 4
+            limiter.getSampleCount() == 50
+    }
+
+    def "limit does not grow without load"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100)
+
+        when:
+            50.times {
+                limiter.acquireAsync()
+                limiter.onSuccess(LATENCY)
+            }
+
+        then:
+            limiter.getLimit() == 10
+    }
+
+    def "limit shrinks with rising latency"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 100)
+            sample(limiter, LATENCY)
+
+        when:
+            50.times {
+                sample(limiter, LATENCY * 5)
+            }
+
+        then:
+            limiter.getLimit() < 20
+            limiter.getCurrentLatency() > limiter.getBaselineLatency()
+    }
+
+    def "drops decrease the limit"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100)
+
+        when:
+            30.times {
+                limiter.acquireAsync()
+                limiter.onDropped()
+            }
+
+        then:
+            limiter.getLimit() == 2
+            limiter.getDropCount() == 30
+            limiter.getInFlight() == 0
+    }
+
+    def "limit is bounded"() {
+        given:
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 6)
+
+        when:
+            200.times {
+                sample(limiter, LATENCY)
+            }
+
+        then:
+            limiter.getLimit() == 6
+    }
+
+    /**
+     * Acquires all free permits, completes one operation and releases the rest.
+     */
+    void sample(AdaptiveConcurrencyLimiter limiter, long latency) {
+        int acquired = 0
+        while (limiter.getInFlight() < limiter.getLimit()) {
+            limiter.acquireAsync()
+            acquired++
+        }
+        limiter.onSuccess(latency)
+        (acquired - 1).times {
+            limiter.release()
+        }
+    }
+}
@@ -6,9 +6,12 @@ import dvoraka.avservice.common.exception.ScanException
 import dvoraka.avservice.common.util.Utils
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
 import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 import java.nio.file.StandardOpenOption
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
 
 /**
  * Default AV service spec.
@@ -160,9 +163,93 @@ class DefaultAvServiceSpec extends Specification {
             tempFile.deleteOnExit()
 
         when:
-            service.scanFile(tempFile)
+            boolean result = service.scanFile(tempFile)
 
         then:
-            1 * avProgram.scanBytes(_)
+            1 * avProgram.scanStreamWithInfo(_ as InputStream) >> Utils.OK_VIRUS_INFO
+            0 * avProgram.scanBytes(_)
+            !result
+    }
+
+    def "scan stream"() {
+        given:
+            InputStream inputStream = new ByteArrayInputStream(new byte[1_000])
+
+        when:
+            String result = service.scanStreamWithInfo(inputStream)
+
+        then:
+            1 * avProgram.scanStreamWithInfo(inputStream) >> 'VIRUS'
+            result == 'VIRUS'
+    }
+
+    def "scan stream with OK response"() {
+        when:
+            String result = service.scanStreamWithInfo(new ByteArrayInputStream(new byte[10]))
+
+        then:
+            1 * avProgram.scanStreamWithInfo(_) >> Utils.OK_VIRUS_INFO
+            result == Utils.OK_VIRUS_INFO
+    }
+
+    def "scan buffer"() {
+        given:
+            ByteBuffer buffer = ByteBuffer.allocateDirect(service.getMaxArraySize() as int)
+
+        when:
+            String result = service.scanBufferWithInfo(buffer)
+
+        then:
+            1 * avProgram.scanBufferWithInfo(buffer) >> Utils.OK_VIRUS_INFO
+            result == Utils.OK_VIRUS_INFO
+    }
+
+    def "scan buffer bigger than max array size"() {
+        given:
+            ByteBuffer buffer = ByteBuffer.allocateDirect(service.getMaxArraySize() + 1 as int)
+
+        when:
+            service.scanBufferWithInfo(buffer)
+
+        then:
+            0 * avProgram.scanBufferWithInfo(_)
+            thrown(ScanException)
+    }
+
+    def "scan empty buffer"() {
+        when:
+            String result = service.scanBufferWithInfo(ByteBuffer.allocate(0))
+
+        then:
+            0 * avProgram.scanBufferWithInfo(_)
+            result == ''
+    }
+
+    def "async scan bytes"() {
+        when:
+            String result = service.scanBytesAsync(new byte[10]).get()
+
+        then:
+            1 * avProgram.scanBytesAsync(_) >> CompletableFuture.completedFuture(Utils.OK_VIRUS_INFO)
+            result == Utils.OK_VIRUS_INFO
+    }
+
+    def "async scan empty bytes"() {
+        when:
+            String result = service.scanBytesAsync(new byte[0]).get()
+
+        then:
+            0 * avProgram.scanBytesAsync(_)
+            result == ''
+    }
+
+    def "async scan with too big array"() {
+        when:
+            service.scanBytesAsync(new byte[101]).get()
+
+        then:
+            0 * avProgram.scanBytesAsync(_)
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
     }
 }
@@ -0,0 +1,190 @@
+package dvoraka.avservice.avprogram.service
+
+import dvoraka.avservice.avprogram.AvProgram
+import dvoraka.avservice.common.exception.ConnectionException
+import dvoraka.avservice.common.exception.FileSizeException
+import dvoraka.avservice.common.exception.OverloadException
+import dvoraka.avservice.common.exception.ScanException
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+/**
+ * Limiting AV service spec.
+ */
+class LimitingAvServiceSpec extends Specification {
+
+    AvService avService
+    AdaptiveConcurrencyLimiter limiter
+    LimitingAvService service
+
+
+    def setup() {
+        avService = Mock()
+        limiter = new AdaptiveConcurrencyLimiter(1, 1, 10)
+        service = new LimitingAvService(avService, limiter)
+        service.setAcquireTimeout(50)
+    }
+
+    def "scan with a permit"() {
+        when:
+            String result = service.scanBytesWithInfo(new byte[1])
+
+        then:
+            1 * avService.scanBytesWithInfo(_) >> Utils.OK_VIRUS_INFO
+            result == Utils.OK_VIRUS_INFO
+            limiter.getInFlight() == 0
+            limiter.getSampleCount() == 1
+    }
+
+    def "scan without a free permit"() {
+        given:
+            limiter.acquireAsync()
+
+        when:
+            service.scanBytesWithInfo(new byte[1])
+
+        then:
+            thrown(ScanException)
+            0 * avService._
+    }
+
+    def "failed scan with a connection problem decreases the limit"() {
+        given:
+            limiter = new AdaptiveConcurrencyLimiter(10, 1, 10)
+            service = new LimitingAvService(avService, limiter)
+
+        when:
+            service.scanBytesWithInfo(new byte[1])
+
+        then:
+            1 * avService.scanBytesWithInfo(_) >> {
+                throw new ScanException('Scan failed.', new ConnectionException('Connection failed.'))
+            }
+            thrown(ScanException)
+            limiter.getLimit() == 9
+            limiter.getInFlight() == 0
+    }
+
+    def "failed scan without a connection problem keeps the limit"() {
+        given:
+            limiter = new AdaptiveConcurrencyLimiter(10, 1, 10)
+            service = new LimitingAvService(avService, limiter)
+
+        when:
+            service.scanBytes(new byte[1])
+
+        then:
+            1 * avService.scanBytes(_) >> {
+                throw new ScanException('Too big.')
+            }
+            thrown(ScanException)
+            limiter.getLimit() == 10
+            limiter.getDropCount() == 0
+            limiter.getInFlight() == 0
+    }
+
+    def "async scan waits for a permit"() {
+        given:
+            CompletableFuture<String> scan = new CompletableFuture<>()
+            avService.scanBytesAsync(_) >> scan
+            CompletableFuture<String> first = service.scanBytesAsync(new byte[1])
+
+        when:
+            CompletableFuture<String> second = service.scanBytesAsync(new byte[1])
+
+        then:
+            limiter.getWaiting() == 1
+
+        when:
+            scan.complete(Utils.OK_VIRUS_INFO)
+
+        then:
+            first.get() == Utils.OK_VIRUS_INFO
+            second.get() == Utils.OK_VIRUS_INFO
+            limiter.getInFlight() == 0
+    }
+
+    def "async scan without a permit times out"() {
+        given:
+            CompletableFuture<String> scan = new CompletableFuture<>()
+            avService.scanBytesAsync(_) >> scan
+            service.scanBytesAsync(new byte[1])
+
+        when:
+            service.scanBytesAsync(new byte[1]).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+            limiter.getWaiting() == 0
+            limiter.getInFlight() == 1
+
+        cleanup:
+            scan.complete(Utils.OK_VIRUS_INFO)
+    }
+
+    def "failed async scan"() {
+        given:
+            CompletableFuture<String> failed = new CompletableFuture<>()
+            failed.completeExceptionally(new OverloadException('No available socket!'))
+            avService.scanBytesAsync(_) >> failed
+
+        when:
+            service.scanBytesAsync(new byte[1]).get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof ScanException
+            limiter.getDropCount() == 1
+            limiter.getInFlight() == 0
+    }
+
+    def "too big file keeps the limit"() {
+        given:
+            limiter = new AdaptiveConcurrencyLimiter(10, 1, 10)
+            DefaultAvService defaultService = new DefaultAvService(Mock(AvProgram))
+            defaultService.setMaxFileSize(1)
+            service = new LimitingAvService(defaultService, limiter)
+            File file = File.createTempFile('avservice', '.test')
+            file.bytes = new byte[2]
+
+        when:
+            service.scanFile(file)
+
+        then:
+            thrown(ScanException)
+            limiter.getLimit() == 10
+            limiter.getDropCount() == 0
+            limiter.getInFlight() == 0
+
+        cleanup:
+            file.delete()
+    }
+
+    def "drops"() {
+        expect:
+            LimitingAvService.isDrop(failure) == drop
+
+        where:
+            failure                                                        || drop
+            new ConnectionException('test')                                || true
+            new OverloadException('test')                                  || true
+            new ScanException('test', new ConnectionException('test'))     || true
+            new ScanException('test', new IOException())                   || false
+            new ScanException('test', new FileSizeException('test'))       || false
+            new ScanException('test')                                      || false
+            new IllegalStateException()                                    || false
+    }
+
+    def "max file size"() {
+        when:
+            long size = service.getMaxFileSize()
+
+        then:
+            1 * avService.getMaxFileSize() >> 42
+            size == 42
+    }
+}
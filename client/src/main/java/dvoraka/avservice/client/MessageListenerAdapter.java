@@ -3,6 +3,8 @@ package dvoraka.avservice.client;
 import dvoraka.avservice.common.data.Message;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
+import java.util.List;
+
 
 /**
  * Message listener "adapter" for various types with a default implementation.
@@ -26,4 +28,13 @@ public interface MessageListenerAdapter<M extends Message> extends
     default void onMessage(ConsumerRecord<String, M> record) {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Receives a batch of Kafka records.
+     *
+     * @param records the records
+     */
+    default void onMessages(List<ConsumerRecord<String, M>> records) {
+        throw new UnsupportedOperationException();
+    }
 }
@@ -2,6 +2,7 @@ package dvoraka.avservice.client.configuration.file;
 
 import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.amqp.AmqpAdapter;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.springframework.amqp.core.MessageListener;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
@@ -32,9 +33,13 @@ public class AmqpFileClientConfig {
     @Bean
     public AvNetworkComponent avNetworkComponent(
             RabbitTemplate rabbitTemplate,
-            MessageInfoService messageInfoService
+            MessageInfoService messageInfoService,
+            ClaimCheck claimCheck
     ) {
-        return new AmqpAdapter(fileExchange, serviceId, rabbitTemplate, messageInfoService);
+        AmqpAdapter adapter = new AmqpAdapter(fileExchange, serviceId, rabbitTemplate, messageInfoService);
+        adapter.setClaimCheck(claimCheck);
+
+        return adapter;
     }
 
     @Bean
@@ -4,6 +4,7 @@ import dvoraka.avservice.client.transport.amqp.AmqpQueueCleaner;
 import dvoraka.avservice.client.util.QueueCleaner;
 import dvoraka.avservice.common.amqp.AvMessageConverter;
 import dvoraka.avservice.common.amqp.AvMessageMapper;
+import dvoraka.avservice.common.codec.WireFormat;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
@@ -35,6 +36,8 @@ public class AmqpFileCommonConfig {
     private String userName;
     @Value("${avservice.amqp.pass}")
     private String userPassword;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
 
 
     @Bean
@@ -44,7 +47,7 @@ public class AmqpFileCommonConfig {
 
     @Bean
     public MessageConverter messageConverter(AvMessageMapper fileMessageMapper) {
-        return new AvMessageConverter(fileMessageMapper);
+        return new AvMessageConverter(fileMessageMapper, wireFormat);
     }
 
     @Bean
@@ -7,7 +7,9 @@ import dvoraka.avservice.client.service.FileServiceClient;
 import dvoraka.avservice.client.service.response.DefaultResponseClient;
 import dvoraka.avservice.client.service.response.ResponseClient;
 import dvoraka.avservice.client.transport.AvNetworkComponent;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.db.service.MessageInfoService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -30,6 +32,12 @@ import org.springframework.context.annotation.Profile;
 })
 public class FileClientConfig {
 
+    @Value("${avservice.claimCheck.threshold:0}")
+    private Long claimCheckThreshold;
+    @Value("${avservice.claimCheck.directory:}")
+    private String claimCheckDirectory;
+
+
     @Bean
     public AvServiceClient avServiceClient(
             AvNetworkComponent avNetworkComponent,
@@ -50,4 +58,9 @@ public class FileClientConfig {
     ) {
         return new DefaultResponseClient(avNetworkComponent, messageInfoService);
     }
+
+    @Bean
+    public ClaimCheck claimCheck() {
+        return ClaimCheck.create(claimCheckThreshold, claimCheckDirectory);
+    }
 }
@@ -2,6 +2,7 @@ package dvoraka.avservice.client.configuration.file;
 
 import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.jms.JmsAdapter;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -32,9 +33,13 @@ public class JmsFileClientConfig {
     @Bean
     public AvNetworkComponent avNetworkComponent(
             JmsTemplate jmsTemplate,
-            MessageInfoService messageInfoService
+            MessageInfoService messageInfoService,
+            ClaimCheck claimCheck
     ) {
-        return new JmsAdapter(fileDestination, serviceId, jmsTemplate, messageInfoService);
+        JmsAdapter adapter = new JmsAdapter(fileDestination, serviceId, jmsTemplate, messageInfoService);
+        adapter.setClaimCheck(claimCheck);
+
+        return adapter;
     }
 
     @Bean
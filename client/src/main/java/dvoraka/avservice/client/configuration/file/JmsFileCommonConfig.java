@@ -2,6 +2,8 @@ package dvoraka.avservice.client.configuration.file;
 
 import dvoraka.avservice.client.transport.jms.JmsQueueCleaner;
 import dvoraka.avservice.client.util.QueueCleaner;
+import dvoraka.avservice.common.codec.WireFormat;
+import dvoraka.avservice.common.jms.BinaryMessageConverter;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -25,6 +27,8 @@ public class JmsFileCommonConfig {
     private String brokerUrl;
     @Value("${avservice.jms.receiveTimeout:2000}")
     private long receiveTimeout;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
 
 
     @Bean
@@ -57,7 +61,7 @@ public class JmsFileCommonConfig {
         MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
         messageConverter.setTypeIdPropertyName("typeId");
 
-        return messageConverter;
+        return new BinaryMessageConverter(messageConverter, wireFormat);
     }
 
     @Bean
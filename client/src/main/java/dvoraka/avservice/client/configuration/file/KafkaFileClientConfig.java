@@ -2,8 +2,12 @@ package dvoraka.avservice.client.configuration.file;
 
 import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.kafka.KafkaAdapter;
+import dvoraka.avservice.common.blob.ClaimCheck;
+import dvoraka.avservice.common.codec.WireFormat;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.DefaultAvMessage;
+import dvoraka.avservice.common.kafka.AvMessageDeserializer;
+import dvoraka.avservice.common.kafka.BinaryMessageSerializer;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -22,7 +26,6 @@ import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListener;
 import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.listener.config.ContainerProperties;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
@@ -46,14 +49,25 @@ public class KafkaFileClientConfig {
 
     @Value("${avservice.serviceId}")
     private String serviceId;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
+
+    @Value("${avservice.kafka.linger:5}")
+    private int linger;
+    @Value("${avservice.kafka.batchSize:16384}")
+    private int batchSize;
 
 
     @Bean
     public AvNetworkComponent avNetworkComponent(
             KafkaTemplate<String, AvMessage> kafkaTemplate,
-            MessageInfoService messageInfoService
+            MessageInfoService messageInfoService,
+            ClaimCheck claimCheck
     ) {
-        return new KafkaAdapter(fileTopic, serviceId, kafkaTemplate, messageInfoService);
+        KafkaAdapter adapter = new KafkaAdapter(fileTopic, serviceId, kafkaTemplate, messageInfoService);
+        adapter.setClaimCheck(claimCheck);
+
+        return adapter;
     }
 
     @Bean
@@ -61,7 +75,10 @@ public class KafkaFileClientConfig {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
+                wireFormat == WireFormat.BINARY ? BinaryMessageSerializer.class : JsonSerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, linger);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
 
         return new DefaultKafkaProducerFactory<>(configProps);
     }
@@ -76,7 +93,7 @@ public class KafkaFileClientConfig {
         return new DefaultKafkaConsumerFactory<>(
                 consumerConfigs(),
                 new StringDeserializer(),
-                new JsonDeserializer<>(DefaultAvMessage.class)
+                new AvMessageDeserializer()
         );
     }
 
@@ -115,7 +132,7 @@ public class KafkaFileClientConfig {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, AvMessageDeserializer.class);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "client");
 
         return props;
@@ -4,6 +4,8 @@ import dvoraka.avservice.client.transport.ReplicationComponent;
 import dvoraka.avservice.client.transport.amqp.AmqpQueueCleaner;
 import dvoraka.avservice.client.transport.amqp.AmqpReplicationComponent;
 import dvoraka.avservice.client.util.QueueCleaner;
+import dvoraka.avservice.common.amqp.ReplicationMessageConverter;
+import dvoraka.avservice.common.codec.WireFormat;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.amqp.core.Binding;
@@ -17,7 +19,6 @@ import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -54,6 +55,8 @@ public class AmqpReplicationClientConfig {
 
     @Value("${avservice.amqp.replicationQueue}.${avservice.storage.replication.nodeId}")
     private String fullQueueName;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
 
 
     @Bean
@@ -81,7 +84,7 @@ public class AmqpReplicationClientConfig {
 
     @Bean
     public MessageConverter replicationMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+        return new ReplicationMessageConverter(wireFormat);
     }
 
     @Bean
@@ -2,6 +2,8 @@ package dvoraka.avservice.client.configuration.replication;
 
 import dvoraka.avservice.client.transport.ReplicationComponent;
 import dvoraka.avservice.client.transport.amqp.AmqpReplicationComponent;
+import dvoraka.avservice.common.amqp.ReplicationMessageConverter;
+import dvoraka.avservice.common.codec.WireFormat;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
@@ -14,7 +16,6 @@ import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -50,6 +51,8 @@ public class AmqpTestReplicationClientConfig {
     private String testNodeId;
     @Value("${avservice.amqp.replicationQueue}.${avservice.storage.replication.testNodeId}")
     private String fullQueueName;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
 
 
     @Bean
@@ -77,7 +80,7 @@ public class AmqpTestReplicationClientConfig {
 
     @Bean
     public MessageConverter replicationMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+        return new ReplicationMessageConverter(wireFormat);
     }
 
     @Bean
@@ -2,6 +2,7 @@ package dvoraka.avservice.client.transport.amqp;
 
 import dvoraka.avservice.client.transport.AbstractNetworkComponent;
 import dvoraka.avservice.client.transport.AvNetworkComponent;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.InfoSource;
 import dvoraka.avservice.common.listener.AvMessageListener;
@@ -9,15 +10,23 @@ import dvoraka.avservice.db.service.MessageInfoService;
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
 import org.springframework.amqp.support.converter.MessageConversionException;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static java.util.Objects.requireNonNull;
 
 /**
  * AMQP network component adapter.
+ * <p>
+ * With {@link #enablePublisherConfirms() publisher confirms}, sent messages are tracked until
+ * the broker confirms them and rejected or unroutable messages are reported and counted.
  */
 @Component
 public class AmqpAdapter extends AbstractNetworkComponent<AvMessage, AvMessageListener>
@@ -28,6 +37,12 @@ public class AmqpAdapter extends AbstractNetworkComponent<AvMessage, AvMessageLi
     private final RabbitTemplate rabbitTemplate;
     private final MessageInfoService messageInfoService;
 
+    private final ConcurrentMap<String, AvMessage> unconfirmed;
+    private final AtomicLong failedCount;
+
+    private volatile ClaimCheck claimCheck;
+    private volatile boolean publisherConfirms;
+
     public static final String ROUTING_KEY = "ROUTINGKEY";
 
     private final MessageConverter messageConverter;
@@ -45,6 +60,9 @@ public class AmqpAdapter extends AbstractNetworkComponent<AvMessage, AvMessageLi
         this.rabbitTemplate = requireNonNull(rabbitTemplate);
         this.messageInfoService = requireNonNull(messageInfoService);
         messageConverter = requireNonNull(rabbitTemplate.getMessageConverter());
+
+        unconfirmed = new ConcurrentHashMap<>();
+        failedCount = new AtomicLong();
     }
 
     @Override
@@ -70,9 +88,11 @@ public class AmqpAdapter extends AbstractNetworkComponent<AvMessage, AvMessageLi
         requireNonNull(message, "Message must not be null!");
         log.debug("Send: {}", message);
 
+        AvMessage outgoing = claimCheck != null ? claimCheck.checkIn(message) : message;
+
         try {
-            rabbitTemplate.convertAndSend(responseExchange, ROUTING_KEY, message);
-            messageInfoService.save(message, InfoSource.AMQP_ADAPTER_OUT, serviceId);
+            send(outgoing);
+            messageInfoService.save(outgoing, InfoSource.AMQP_ADAPTER_OUT, serviceId);
         } catch (MessageConversionException e) {
             log.warn("Conversion problem!", e);
 
@@ -80,8 +100,82 @@ public class AmqpAdapter extends AbstractNetworkComponent<AvMessage, AvMessageLi
             AvMessage errorResponse = message.createErrorResponse(errorMessage);
             rabbitTemplate.convertAndSend(responseExchange, ROUTING_KEY, errorResponse);
         } catch (AmqpException e) {
-            log.warn("Message send problem!", e);
+            unconfirmed.remove(outgoing.getId());
+            failedCount.getAndIncrement();
+            log.error("Message send problem: " + outgoing.getId(), e);
+        }
+    }
+
+    private void send(AvMessage message) {
+        if (!publisherConfirms) {
+            rabbitTemplate.convertAndSend(responseExchange, ROUTING_KEY, message);
+
+            return;
+        }
+
+        unconfirmed.put(message.getId(), message);
+        rabbitTemplate.convertAndSend(
+                responseExchange, ROUTING_KEY, message, new CorrelationData(message.getId()));
+    }
+
+    /**
+     * Enables tracking of sent messages with publisher confirms and returns. The template
+     * connection factory must have publisher confirms and returns enabled.
+     */
+    public void enablePublisherConfirms() {
+        rabbitTemplate.setMandatory(true);
+        rabbitTemplate.setConfirmCallback(this::confirm);
+        rabbitTemplate.setReturnCallback(this::returned);
+        publisherConfirms = true;
+    }
+
+    private void confirm(CorrelationData correlationData, boolean ack, String cause) {
+        if (correlationData == null) {
+            return;
         }
+
+        AvMessage message = unconfirmed.remove(correlationData.getId());
+        if (!ack) {
+            failedCount.getAndIncrement();
+            log.error("Message not confirmed: {}, cause: {}", message, cause);
+        }
+    }
+
+    private void returned(
+            Message message, int replyCode, String replyText, String exchange, String routingKey
+    ) {
+        failedCount.getAndIncrement();
+        log.error("Message returned: {}, reply: {} {}, exchange: {}, key: {}",
+                message.getMessageProperties().getMessageId(),
+                replyCode, replyText, exchange, routingKey);
+    }
+
+    /**
+     * Returns a number of sent messages waiting for a confirmation.
+     *
+     * @return the number of messages
+     */
+    public int getUnconfirmedCount() {
+        return unconfirmed.size();
+    }
+
+    /**
+     * Returns a number of messages which failed to be sent, were rejected by the broker or
+     * returned as unroutable.
+     *
+     * @return the number of messages
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Sets a claim check for big data of sent messages.
+     *
+     * @param claimCheck the claim check or null for data in messages
+     */
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
     }
 
     @Override
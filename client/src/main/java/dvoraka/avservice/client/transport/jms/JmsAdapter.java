@@ -2,6 +2,7 @@ package dvoraka.avservice.client.transport.jms;
 
 import dvoraka.avservice.client.transport.AbstractNetworkComponent;
 import dvoraka.avservice.client.transport.AvNetworkComponent;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.InfoSource;
 import dvoraka.avservice.common.listener.AvMessageListener;
@@ -28,6 +29,9 @@ public class JmsAdapter extends AbstractNetworkComponent<AvMessage, AvMessageLis
     private final JmsTemplate jmsTemplate;
     private final MessageInfoService messageInfoService;
 
+    private volatile ClaimCheck claimCheck;
+    private volatile JmsBatchPublisher batchPublisher;
+
     private final String destination;
     private final String serviceId;
     private final MessageConverter messageConverter;
@@ -70,9 +74,18 @@ public class JmsAdapter extends AbstractNetworkComponent<AvMessage, AvMessageLis
         requireNonNull(message, "Message must not be null!");
         log.debug("Send: {}", message);
 
+        AvMessage outgoing = claimCheck != null ? claimCheck.checkIn(message) : message;
+
+        JmsBatchPublisher publisher = batchPublisher;
+        if (publisher != null) {
+            publisher.publish(outgoing);
+
+            return;
+        }
+
         try {
-            jmsTemplate.convertAndSend(destination, message);
-            messageInfoService.save(message, InfoSource.JMS_ADAPTER_OUT, serviceId);
+            jmsTemplate.convertAndSend(destination, outgoing);
+            messageInfoService.save(outgoing, InfoSource.JMS_ADAPTER_OUT, serviceId);
         } catch (MessageConversionException e) {
             log.warn("Conversion problem!", e);
 
@@ -84,6 +97,29 @@ public class JmsAdapter extends AbstractNetworkComponent<AvMessage, AvMessageLis
         }
     }
 
+    /**
+     * Sets a claim check for big data of sent messages.
+     *
+     * @param claimCheck the claim check or null for data in messages
+     */
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+    }
+
+    /**
+     * Sets a publisher for sending messages in batches from a background thread. Sent
+     * messages are saved in the message info service by the publisher thread.
+     *
+     * @param batchPublisher the publisher or null for direct sending
+     */
+    public void setBatchPublisher(JmsBatchPublisher batchPublisher) {
+        if (batchPublisher != null) {
+            batchPublisher.setSentListener(
+                    sent -> messageInfoService.save(sent, InfoSource.JMS_ADAPTER_OUT, serviceId));
+        }
+        this.batchPublisher = batchPublisher;
+    }
+
     @Override
     public String getServiceId() {
         return serviceId;
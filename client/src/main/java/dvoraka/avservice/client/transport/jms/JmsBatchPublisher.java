@@ -0,0 +1,275 @@
+package dvoraka.avservice.client.transport.jms;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.data.AvMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.annotation.PreDestroy;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Background JMS publisher sending messages in batches.
+ * <p>
+ * Callers only queue messages and one thread sends them. A batch is sent when it is full
+ * or when the linger time after its first message passes. Every batch is sent with one
+ * session and one producer, and with a transacted template it is committed once. Failed
+ * batches are logged and counted. A full queue blocks callers.
+ * <p>
+ * Thread-safe.
+ */
+public class JmsBatchPublisher {
+
+    private static final Logger log = LogManager.getLogger(JmsBatchPublisher.class);
+
+    private static final long POLL_TIMEOUT = 100;
+    private static final long STOP_TIMEOUT = 5_000;
+
+    private final JmsTemplate jmsTemplate;
+    private final String destination;
+    private final int batchSize;
+    private final long lingerNanos;
+
+    private final BlockingQueue<AvMessage> queue;
+    private final Thread worker;
+    private final AtomicBoolean started;
+    private volatile boolean running;
+
+    private final AtomicLong sentCount;
+    private final AtomicLong failedCount;
+
+    private volatile Consumer<AvMessage> sentListener;
+
+
+    /**
+     * Creates a publisher.
+     *
+     * @param jmsTemplate the template
+     * @param destination the destination name
+     * @param batchSize   the maximum batch size
+     * @param linger      the maximum wait for a full batch in milliseconds
+     * @param capacity    the queue capacity
+     */
+    public JmsBatchPublisher(
+            JmsTemplate jmsTemplate,
+            String destination,
+            int batchSize,
+            long linger,
+            int capacity
+    ) {
+        this.jmsTemplate = requireNonNull(jmsTemplate);
+        this.destination = requireNonNull(destination);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Bad batch size: " + batchSize);
+        }
+        if (linger < 0) {
+            throw new IllegalArgumentException("Bad linger time: " + linger);
+        }
+        this.batchSize = batchSize;
+        lingerNanos = TimeUnit.MILLISECONDS.toNanos(linger);
+
+        queue = new ArrayBlockingQueue<>(capacity);
+        sentCount = new AtomicLong();
+        failedCount = new AtomicLong();
+
+        started = new AtomicBoolean();
+        running = true;
+        worker = new CustomThreadFactory("jms-publisher-", true).newThread(this::run);
+    }
+
+    /**
+     * Queues a message for sending.
+     *
+     * @param message the message
+     */
+    public void publish(AvMessage message) {
+        requireNonNull(message, "Message must not be null!");
+        if (!running) {
+            throw new IllegalStateException("Publisher is stopped.");
+        }
+        if (started.compareAndSet(false, true)) {
+            worker.start();
+        }
+
+        try {
+            queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedCount.getAndIncrement();
+            log.warn("Publishing interrupted: {}", message.getId());
+        }
+    }
+
+    private void run() {
+        List<AvMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AvMessage first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                fill(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                running = false;
+            }
+
+            send(batch);
+            batch.clear();
+        }
+    }
+
+    private void fill(List<AvMessage> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !running) {
+                return;
+            }
+
+            long wait = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT));
+            AvMessage next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next != null) {
+                batch.add(next);
+            }
+        }
+    }
+
+    private void send(List<AvMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        log.debug("Sending batch: {}", batch.size());
+        try {
+            jmsTemplate.execute(session -> sendBatch(session, batch), true);
+        } catch (JmsException e) {
+            failedCount.addAndGet(batch.size());
+            log.error("Batch send failed, messages: " + batch.stream()
+                    .map(AvMessage::getId)
+                    .collect(Collectors.toList()), e);
+
+            return;
+        }
+
+        sentCount.addAndGet(batch.size());
+        Consumer<AvMessage> listener = sentListener;
+        if (listener != null) {
+            batch.forEach(listener);
+        }
+    }
+
+    private Void sendBatch(Session session, List<AvMessage> batch) throws JMSException {
+        Destination dest = jmsTemplate.getDestinationResolver()
+                .resolveDestinationName(session, destination, jmsTemplate.isPubSubDomain());
+        MessageConverter converter = jmsTemplate.getMessageConverter();
+
+        MessageProducer producer = session.createProducer(dest);
+        try {
+            for (AvMessage message : batch) {
+                producer.send(convert(converter, session, message));
+            }
+        } finally {
+            JmsUtils.closeMessageProducer(producer);
+        }
+        JmsUtils.commitIfNecessary(session);
+
+        return null;
+    }
+
+    private Message convert(MessageConverter converter, Session session, AvMessage message)
+            throws JMSException {
+        try {
+            return converter.toMessage(message, session);
+        } catch (MessageConversionException e) {
+            log.warn("Conversion problem!", e);
+
+            String errorMessage = e.getMessage() == null ? "" : e.getMessage();
+            return converter.toMessage(message.createErrorResponse(errorMessage), session);
+        }
+    }
+
+    /**
+     * Sets a listener called in the publisher thread for every sent message.
+     *
+     * @param sentListener the listener or null
+     */
+    public void setSentListener(Consumer<AvMessage> sentListener) {
+        this.sentListener = sentListener;
+    }
+
+    /**
+     * Returns the count of queued messages.
+     *
+     * @return the count
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the count of sent messages.
+     *
+     * @return the count
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * Returns the count of messages which failed to be sent.
+     *
+     * @return the count
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Sends queued messages and stops the publisher.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        log.info("Stopping publisher...");
+        running = false;
+        if (started.get()) {
+            try {
+                worker.join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Publisher stopped.");
+    }
+}
@@ -2,6 +2,7 @@ package dvoraka.avservice.client.transport.kafka;
 
 import dvoraka.avservice.client.transport.AbstractNetworkComponent;
 import dvoraka.avservice.client.transport.AvNetworkComponent;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.InfoSource;
 import dvoraka.avservice.common.listener.AvMessageListener;
@@ -11,10 +12,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static java.util.Objects.requireNonNull;
 
 /**
  * Kafka network component adapter.
+ * <p>
+ * Sent records are keyed by the message owner or the correlation ID, so messages of one owner
+ * or one conversation keep their order in one partition while others are spread over all
+ * partitions.
+ * <p>
+ * Sending does not wait for the broker. Records are batched by the producer according to
+ * its linger and batch size settings and failures are logged and counted in callbacks.
  */
 @Component
 public class KafkaAdapter extends AbstractNetworkComponent<AvMessage, AvMessageListener>
@@ -25,6 +37,10 @@ public class KafkaAdapter extends AbstractNetworkComponent<AvMessage, AvMessageL
     private final KafkaTemplate<String, AvMessage> kafkaTemplate;
     private final MessageInfoService messageInfoService;
 
+    private final AtomicLong failedCount;
+
+    private volatile ClaimCheck claimCheck;
+
 
     @Autowired
     public KafkaAdapter(
@@ -37,6 +53,7 @@ public class KafkaAdapter extends AbstractNetworkComponent<AvMessage, AvMessageL
         this.serviceId = requireNonNull(serviceId);
         this.kafkaTemplate = requireNonNull(kafkaTemplate);
         this.messageInfoService = requireNonNull(messageInfoService);
+        failedCount = new AtomicLong();
     }
 
     @Override
@@ -51,14 +68,71 @@ public class KafkaAdapter extends AbstractNetworkComponent<AvMessage, AvMessageL
         notifyListeners(getListeners(), avMessage);
     }
 
+    @Override
+    public void onMessages(List<ConsumerRecord<String, AvMessage>> records) {
+        requireNonNull(records, "Records must not be null!");
+        log.debug("On messages: {}", records.size());
+
+        List<AvMessage> avMessages = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, AvMessage> record : records) {
+            AvMessage avMessage = record.value();
+            messageInfoService.save(avMessage, InfoSource.KAFKA_ADAPTER_IN, serviceId);
+            avMessages.add(avMessage);
+        }
+
+        getListeners().forEach(listener -> listener.onMessages(avMessages));
+    }
+
     @Override
     public void sendMessage(AvMessage message) {
         requireNonNull(message, "Message must not be null!");
         log.debug("Send: {}", message);
 
-        kafkaTemplate.send(topic, message);
+        AvMessage outgoing = claimCheck != null ? claimCheck.checkIn(message) : message;
+
+        kafkaTemplate.send(topic, recordKey(outgoing), outgoing).addCallback(
+                result -> log.debug("Sent: {}", outgoing.getId()),
+                e -> {
+                    failedCount.getAndIncrement();
+                    log.error("Message send problem: " + outgoing.getId(), e);
+                });
+
+        messageInfoService.save(outgoing, InfoSource.KAFKA_ADAPTER_OUT, serviceId);
+    }
+
+    /**
+     * Returns a record key for the message. Messages are keyed by the owner, messages
+     * without an owner by the correlation ID or by the ID.
+     *
+     * @param message the message
+     * @return the key
+     */
+    static String recordKey(AvMessage message) {
+        if (message.getOwner() != null) {
+            return message.getOwner();
+        } else if (message.getCorrelationId() != null) {
+            return message.getCorrelationId();
+        }
+
+        return message.getId();
+    }
+
+    /**
+     * Sets a claim check for big data of sent messages.
+     *
+     * @param claimCheck the claim check or null for data in messages
+     */
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+    }
 
-        messageInfoService.save(message, InfoSource.KAFKA_ADAPTER_OUT, serviceId);
+    /**
+     * Returns a number of messages which failed to be sent.
+     *
+     * @return the number of messages
+     */
+    public long getFailedCount() {
+        return failedCount.get();
     }
 
     @Override
@@ -1,6 +1,8 @@
 package dvoraka.avservice.client.transport.amqp
 
 import dvoraka.avservice.common.amqp.AvMessageMapper
+import dvoraka.avservice.common.blob.BlobStore
+import dvoraka.avservice.common.blob.ClaimCheck
 import dvoraka.avservice.common.data.AvMessage
 import dvoraka.avservice.common.listener.AvMessageListener
 import dvoraka.avservice.common.util.Utils
@@ -9,6 +11,7 @@ import dvoraka.avservice.db.service.DbMessageInfoService
 import org.springframework.amqp.AmqpException
 import org.springframework.amqp.core.Message
 import org.springframework.amqp.rabbit.core.RabbitTemplate
+import org.springframework.amqp.rabbit.support.CorrelationData
 import org.springframework.amqp.support.converter.MessageConversionException
 import org.springframework.amqp.support.converter.MessageConverter
 import spock.lang.Shared
@@ -137,6 +140,94 @@ class AmqpAdapterSpec extends Specification {
 
         then:
             notThrown(Exception)
+            component.getFailedCount() == 1
+    }
+
+    def "send message with claimed data"() {
+        given:
+            BlobStore blobStore = Mock()
+            component.setClaimCheck(new ClaimCheck(1, blobStore))
+            AvMessage message = Utils.genMessage()
+
+        when:
+            component.sendMessage(message)
+
+        then:
+            1 * blobStore.put(_) >> '0' * 64
+            1 * rabbitTemplate.convertAndSend(_, _, { AvMessage sent ->
+                sent.getId() == message.getId() && sent.getDataLength() == 0 &&
+                        sent.getDataReference() != null
+            })
+    }
+
+    def "send message with publisher confirms"() {
+        given:
+            RabbitTemplate.ConfirmCallback confirmCallback
+            rabbitTemplate.setConfirmCallback(_) >> { confirmCallback = it[0] }
+            component.enablePublisherConfirms()
+            AvMessage message = Utils.genMessage()
+
+        when:
+            component.sendMessage(message)
+
+        then:
+            1 * rabbitTemplate.convertAndSend(testExchange, _ as String, message, { CorrelationData data ->
+                data.getId() == message.getId()
+            })
+            component.getUnconfirmedCount() == 1
+
+        when:
+            confirmCallback.confirm(new CorrelationData(message.getId()), ack, null)
+
+        then:
+            component.getUnconfirmedCount() == 0
+            component.getFailedCount() == failed
+
+        where:
+            ack   || failed
+            true  || 0
+            false || 1
+    }
+
+    def "enable publisher confirms"() {
+        when:
+            component.enablePublisherConfirms()
+
+        then:
+            1 * rabbitTemplate.setMandatory(true)
+            1 * rabbitTemplate.setConfirmCallback(_)
+            1 * rabbitTemplate.setReturnCallback(_)
+    }
+
+    def "returned message is counted"() {
+        given:
+            RabbitTemplate.ReturnCallback returnCallback
+            rabbitTemplate.setReturnCallback(_) >> { returnCallback = it[0] }
+            component.enablePublisherConfirms()
+
+        when:
+            returnCallback.returnedMessage(
+                    messageMapper.transform(Utils.genMessage()), 312, 'NO_ROUTE', testExchange, 'key')
+
+        then:
+            component.getFailedCount() == 1
+    }
+
+    def "send failure with publisher confirms"() {
+        given:
+            component.enablePublisherConfirms()
+            AvMessage message = Utils.genMessage()
+
+            rabbitTemplate.convertAndSend(testExchange, _ as String, message, _ as CorrelationData) >> {
+                throw new AmqpException("Problem!")
+            }
+
+        when:
+            component.sendMessage(message)
+
+        then:
+            component.getUnconfirmedCount() == 0
+            component.getFailedCount() == 1
     }
 
     def "add listeners"() {
@@ -1,5 +1,7 @@
 package dvoraka.avservice.client.transport.jms
 
+import dvoraka.avservice.common.blob.BlobStore
+import dvoraka.avservice.common.blob.ClaimCheck
 import dvoraka.avservice.common.data.AvMessage
 import dvoraka.avservice.common.listener.AvMessageListener
 import dvoraka.avservice.common.util.Utils
@@ -25,6 +27,7 @@ class JmsAdapterSpec extends Specification {
 
     JmsTemplate jmsTemplate
     MessageConverter converter
+    MessageInfoService messageInfoService
 
     @Shared
     String destination = "TEST-DESTINATION"
@@ -33,7 +36,7 @@ class JmsAdapterSpec extends Specification {
 
 
     def setup() {
-        MessageInfoService messageInfoService = Mock()
+        messageInfoService = Mock()
 
         converter = Mock()
 
@@ -131,6 +134,51 @@ class JmsAdapterSpec extends Specification {
             notThrown(Exception)
     }
 
+    def "send message with claimed data"() {
+        given:
+            BlobStore blobStore = Mock()
+            component.setClaimCheck(new ClaimCheck(1, blobStore))
+            AvMessage message = Utils.genMessage()
+
+        when:
+            component.sendMessage(message)
+
+        then:
+            1 * blobStore.put(_) >> '0' * 64
+            1 * jmsTemplate.convertAndSend(_, { AvMessage sent ->
+                sent.getId() == message.getId() && sent.getDataLength() == 0 &&
+                        sent.getDataReference() != null
+            })
+    }
+
+    def "send message with batch publisher"() {
+        given:
+            JmsBatchPublisher publisher = Mock()
+            component.setBatchPublisher(publisher)
+            AvMessage message = Utils.genMessage()
+
+        when:
+            component.sendMessage(message)
+
+        then:
+            1 * publisher.publish(message)
+            0 * jmsTemplate.convertAndSend(_, _)
+            0 * messageInfoService.save(_, _, _)
+    }
+
+    def "batch publisher saves sent messages"() {
+        given:
+            JmsBatchPublisher publisher = Mock()
+            AvMessage message = Utils.genMessage()
+
+        when:
+            component.setBatchPublisher(publisher)
+
+        then:
+            1 * publisher.setSentListener(_) >> { it[0].accept(message) }
+            1 * messageInfoService.save(message, _, testServiceId)
+    }
+
     def "add listeners"() {
         when:
             component.addMessageListener(getAvMessageListener())
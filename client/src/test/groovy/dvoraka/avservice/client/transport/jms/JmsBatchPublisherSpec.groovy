@@ -0,0 +1,189 @@
+package dvoraka.avservice.client.transport.jms
+
+import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.util.Utils
+import org.springframework.jms.UncategorizedJmsException
+import org.springframework.jms.core.JmsTemplate
+import org.springframework.jms.core.SessionCallback
+import org.springframework.jms.support.converter.MessageConversionException
+import org.springframework.jms.support.converter.MessageConverter
+import org.springframework.jms.support.destination.DestinationResolver
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import javax.jms.Destination
+import javax.jms.Message
+import javax.jms.MessageProducer
+import javax.jms.Session
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * JMS batch publisher spec.
+ */
+class JmsBatchPublisherSpec extends Specification {
+
+    @Subject
+    JmsBatchPublisher publisher
+
+    JmsTemplate jmsTemplate
+    MessageConverter converter
+    String destination = 'TEST-DESTINATION'
+
+    AtomicInteger batchCount
+    List<AvMessage> converted
+    boolean failing
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+
+    def setup() {
+        batchCount = new AtomicInteger()
+        converted = new CopyOnWriteArrayList<>()
+
+        Session session = Stub()
+        session.createProducer(_) >> Stub(MessageProducer)
+
+        converter = Stub()
+        converter.toMessage(_, _) >> { AvMessage message, Session s ->
+            converted.add(message)
+            return Stub(Message)
+        }
+
+        DestinationResolver resolver = Stub()
+        resolver.resolveDestinationName(_, destination, _) >> Stub(Destination)
+
+        jmsTemplate = Stub()
+        jmsTemplate.getMessageConverter() >> { converter }
+        jmsTemplate.getDestinationResolver() >> resolver
+        jmsTemplate.execute(_ as SessionCallback, true) >> { SessionCallback callback, boolean start ->
+            if (failing) {
+                throw new UncategorizedJmsException('TEST')
+            }
+            batchCount.incrementAndGet()
+            return callback.doInJms(session)
+        }
+    }
+
+    def cleanup() {
+        publisher?.stop()
+    }
+
+    def "full batches are sent together"() {
+        given:
+            publisher = new JmsBatchPublisher(jmsTemplate, destination, 3, 60_000, 10)
+            List<AvMessage> messages = (1..3).collect { Utils.genMessage() }
+
+        when:
+            messages.each { publisher.publish(it) }
+
+        then:
+            conditions.eventually {
+                assert publisher.getSentCount() == 3
+            }
+            batchCount.get() == 1
+            converted == messages
+            publisher.getQueuedCount() == 0
+    }
+
+    def "partial batch is sent after linger time"() {
+        given:
+            publisher = new JmsBatchPublisher(jmsTemplate, destination, 100, 10, 10)
+
+        when:
+            publisher.publish(Utils.genMessage())
+
+        then:
+            conditions.eventually {
+                assert publisher.getSentCount() == 1
+            }
+    }
+
+    def "sent listener"() {
+        given:
+            publisher = new JmsBatchPublisher(jmsTemplate, destination, 10, 0, 10)
+            List<AvMessage> sent = new CopyOnWriteArrayList<>()
+            publisher.setSentListener({ sent.add(it) })
+            AvMessage message = Utils.genMessage()
+
+        when:
+            publisher.publish(message)
+
+        then:
+            conditions.eventually {
+                assert sent == [message]
+            }
+    }
+
+    def "failed batch is counted"() {
+        given:
+            failing = true
+            publisher = new JmsBatchPublisher(jmsTemplate, destination, 10, 0, 10)
+
+        when:
+            publisher.publish(Utils.genMessage())
+            publisher.publish(Utils.genMessage())
+
+        then:
+            conditions.eventually {
+                assert publisher.getFailedCount() == 2
+            }
+            publisher.getSentCount() == 0
+    }
+
+    def "conversion error sends an error response"() {
+        given:
+            AvMessage message = Utils.genMessage()
+            converter = Stub()
+            converter.toMessage(_, _) >> { AvMessage msg, Session s ->
+                if (msg == message) {
+                    throw new MessageConversionException('TEST')
+                }
+                converted.add(msg)
+                return Stub(Message)
+            }
+            publisher = new JmsBatchPublisher(jmsTemplate, destination, 10, 0, 10)
+
+        when:
+            publisher.publish(message)
+
+        then:
+            conditions.eventually {
+                assert publisher.getSentCount() == 1
+            }
+            converted.size() == 1
+            converted[0].getCorrelationId() == message.getId()
+    }
+
+    def "stop sends queued messages"() {
+        given:
+            publisher = new JmsBatchPublisher(jmsTemplate, destination, 2, 60_000, 10)
+
+        when:
+            publisher.publish(Utils.genMessage())
+            publisher.stop()
+
+        then:
+            publisher.getSentCount() == 1
+
+        when:
+            publisher.publish(Utils.genMessage())
+
+        then:
+            thrown(IllegalStateException)
+    }
+
+    def "bad arguments"() {
+        when:
+            new JmsBatchPublisher(jmsTemplate, destination, batchSize, linger, 10)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            batchSize | linger
+            0         | 0
+            1         | -1
+    }
+}
@@ -1,6 +1,9 @@
 package dvoraka.avservice.client.transport.kafka
 
+import dvoraka.avservice.common.blob.BlobStore
+import dvoraka.avservice.common.blob.ClaimCheck
 import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.data.DefaultAvMessage
 import dvoraka.avservice.common.listener.AvMessageListener
 import dvoraka.avservice.common.util.Utils
 import dvoraka.avservice.db.repository.db.DbMessageInfoRepository
@@ -9,6 +12,7 @@ import org.apache.kafka.clients.consumer.ConsumerRecord
 import org.springframework.amqp.core.Message
 import org.springframework.kafka.core.KafkaTemplate
 import org.springframework.messaging.converter.MessageConverter
+import org.springframework.util.concurrent.SettableListenableFuture
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Subject
@@ -82,7 +86,85 @@ class KafkaAdapterSpec extends Specification {
             component.sendMessage(message)
 
         then:
-            1 * kafkaTemplate.send(testTopic, message)
+            1 * kafkaTemplate.send(testTopic, message.getCorrelationId(), message) >>
+                    new SettableListenableFuture()
+    }
+
+    def "messages are keyed by owner"() {
+        given:
+            AvMessage message = Utils.genFileMessage()
+
+        when:
+            component.sendMessage(message)
+
+        then:
+            1 * kafkaTemplate.send(testTopic, message.getOwner(), message) >>
+                    new SettableListenableFuture()
+    }
+
+    def "record key"() {
+        expect:
+            KafkaAdapter.recordKey(new DefaultAvMessage.Builder('ID')
+                    .owner(owner)
+                    .correlationId(corrId)
+                    .build()) == key
+
+        where:
+            owner   | corrId   || key
+            'owner' | 'corrId' || 'owner'
+            null    | 'corrId' || 'corrId'
+            null    | null     || 'ID'
+    }
+
+    def "on messages"() {
+        given:
+            AvMessageListener listener = Mock()
+            List<AvMessage> messages = [Utils.genMessage(), Utils.genMessage()]
+
+            component.addMessageListener(listener)
+
+        when:
+            component.onMessages(messages.collect {
+                new ConsumerRecord<String, AvMessage>('testTopic', 0, 0, null, it)
+            })
+
+        then:
+            1 * listener.onMessages(messages)
+    }
+
+    def "send message with claimed data"() {
+        given:
+            BlobStore blobStore = Mock()
+            component.setClaimCheck(new ClaimCheck(1, blobStore))
+            AvMessage message = Utils.genMessage()
+
+        when:
+            component.sendMessage(message)
+
+        then:
+            1 * blobStore.put(_) >> '0' * 64
+            1 * kafkaTemplate.send(_, _, { AvMessage sent ->
+                sent.getId() == message.getId() && sent.getDataLength() == 0 &&
+                        sent.getDataReference() != null
+            }) >> new SettableListenableFuture()
+    }
+
+    def "failed send is counted"() {
+        given:
+            SettableListenableFuture future = new SettableListenableFuture()
+            kafkaTemplate.send(*_) >> future
+
+        when:
+            component.sendMessage(Utils.genMessage())
+
+        then:
+            component.getFailedCount() == 0
+
+        when:
+            future.setException(new IllegalStateException('TEST'))
+
+        then:
+            component.getFailedCount() == 1
     }
 
     def "add listeners"() {
@@ -11,6 +11,7 @@ import static java.util.Objects.requireNonNull;
 public final class CustomThreadFactory implements ThreadFactory {
 
     private final String poolName;
+    private final boolean daemon;
     private final AtomicLong counter;
 
 
@@ -21,7 +22,19 @@ public final class CustomThreadFactory implements ThreadFactory {
      * @param name the thread name
      */
     public CustomThreadFactory(String name) {
+        this(name, false);
+    }
+
+    /**
+     * Creates a custom thread factory with a given base name and a daemon flag. Daemon
+     * threads are good for background tasks which should not block a JVM exit.
+     *
+     * @param name   the thread name
+     * @param daemon the daemon flag for all threads
+     */
+    public CustomThreadFactory(String name, boolean daemon) {
         poolName = requireNonNull(name);
+        this.daemon = daemon;
         counter = new AtomicLong();
     }
 
@@ -29,6 +42,9 @@ public final class CustomThreadFactory implements ThreadFactory {
     public Thread newThread(Runnable r) {
         Thread thread = new Thread(r);
         thread.setName(poolName + counter.getAndIncrement());
+        if (daemon) {
+            thread.setDaemon(true);
+        }
 
         return thread;
     }
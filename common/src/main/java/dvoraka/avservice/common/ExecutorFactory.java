@@ -0,0 +1,167 @@
+package dvoraka.avservice.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Factory for thread factories and executors with a given {@link ThreadMode}.
+ * <p>
+ * The service targets Java 8, so virtual threads are created through reflection when
+ * the runtime provides them. Without them the factory falls back to platform threads.
+ * <p>
+ * The default mode is taken from the {@value #THREAD_MODE_PROPERTY} system property.
+ */
+public final class ExecutorFactory {
+
+    private static final Logger log = LogManager.getLogger(ExecutorFactory.class);
+
+    /**
+     * System property with the default thread mode.
+     */
+    public static final String THREAD_MODE_PROPERTY = "avservice.threadMode";
+
+    private static final Method VIRTUAL_BUILDER_METHOD;
+    private static final Method BUILDER_NAME_METHOD;
+    private static final Method BUILDER_FACTORY_METHOD;
+    private static final Method THREAD_PER_TASK_METHOD;
+
+    private static volatile ThreadMode defaultMode;
+
+    static {
+        Method virtualBuilder = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method threadPerTask = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            virtualBuilder = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            threadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            log.debug("Virtual threads are not available.");
+            virtualBuilder = null;
+        }
+
+        VIRTUAL_BUILDER_METHOD = virtualBuilder;
+        BUILDER_NAME_METHOD = builderName;
+        BUILDER_FACTORY_METHOD = builderFactory;
+        THREAD_PER_TASK_METHOD = threadPerTask;
+
+        defaultMode = parseMode(System.getProperty(THREAD_MODE_PROPERTY));
+    }
+
+    private ExecutorFactory() {
+    }
+
+    /**
+     * Returns true if the runtime supports virtual threads.
+     *
+     * @return the result
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return VIRTUAL_BUILDER_METHOD != null;
+    }
+
+    public static ThreadMode getDefaultMode() {
+        return defaultMode;
+    }
+
+    public static void setDefaultMode(ThreadMode mode) {
+        defaultMode = requireNonNull(mode);
+    }
+
+    /**
+     * Creates a thread factory. Virtual threads are always daemon threads.
+     *
+     * @param mode   the thread mode
+     * @param name   the thread base name
+     * @param daemon the daemon flag for platform threads
+     * @return the thread factory
+     */
+    public static ThreadFactory threadFactory(ThreadMode mode, String name, boolean daemon) {
+        requireNonNull(name);
+        if (requireNonNull(mode) == ThreadMode.VIRTUAL) {
+            ThreadFactory virtualFactory = virtualThreadFactory(name);
+            if (virtualFactory != null) {
+                return virtualFactory;
+            }
+        }
+
+        return new CustomThreadFactory(name, daemon);
+    }
+
+    /**
+     * Creates an executor for blocking tasks. Platform mode uses a fixed thread pool,
+     * virtual mode starts a new virtual thread for every task and the thread count is
+     * ignored, so concurrency must be limited elsewhere.
+     *
+     * @param mode        the thread mode
+     * @param threadCount the platform thread count
+     * @param name        the thread base name
+     * @return the executor
+     */
+    public static ExecutorService newFixedThreadPool(ThreadMode mode, int threadCount, String name) {
+        ThreadFactory factory = threadFactory(mode, name, false);
+        if (mode == ThreadMode.VIRTUAL && !(factory instanceof CustomThreadFactory)) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_METHOD.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual thread executor creation failed!", e);
+            }
+        }
+
+        return Executors.newFixedThreadPool(threadCount, factory);
+    }
+
+    /**
+     * Creates a single thread executor.
+     *
+     * @param mode the thread mode
+     * @param name the thread base name
+     * @return the executor
+     */
+    public static ExecutorService newSingleThreadExecutor(ThreadMode mode, String name) {
+        return Executors.newSingleThreadExecutor(threadFactory(mode, name, false));
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        if (!isVirtualThreadAvailable()) {
+            log.warn("Virtual threads are not available, using platform threads for: {}", name);
+
+            return null;
+        }
+
+        try {
+            Object builder = VIRTUAL_BUILDER_METHOD.invoke(null);
+            builder = BUILDER_NAME_METHOD.invoke(builder, name, 0L);
+
+            return (ThreadFactory) BUILDER_FACTORY_METHOD.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual thread factory creation failed!", e);
+
+            return null;
+        }
+    }
+
+    static ThreadMode parseMode(String mode) {
+        if (mode == null || mode.trim().isEmpty()) {
+            return ThreadMode.PLATFORM;
+        }
+
+        try {
+            return ThreadMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown thread mode: {}, using platform threads.", mode);
+
+            return ThreadMode.PLATFORM;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package dvoraka.avservice.common;
+
+/**
+ * Kind of threads for executors created by {@link ExecutorFactory}.
+ */
+public enum ThreadMode {
+    /**
+     * Classic platform threads.
+     */
+    PLATFORM,
+    /**
+     * Virtual threads, if the runtime supports them (Java 21+), otherwise platform threads.
+     * Good for tasks which spend most of the time blocked on I/O, like scanning.
+     */
+    VIRTUAL
+}
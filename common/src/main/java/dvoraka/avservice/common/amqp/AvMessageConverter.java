@@ -1,5 +1,7 @@
 package dvoraka.avservice.common.amqp;
 
+import dvoraka.avservice.common.codec.BinaryMessageCodec;
+import dvoraka.avservice.common.codec.WireFormat;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.exception.MapperException;
 import org.apache.logging.log4j.LogManager;
@@ -11,8 +13,14 @@ import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * Spring AMQP AV message converter.
+ * <p>
+ * With the {@link WireFormat#BINARY binary format}, messages are sent as one body encoded
+ * with {@link BinaryMessageCodec}. Otherwise, metadata go into headers through
+ * {@link AvMessageMapper}. Both formats are always received.
  *
  * @see AvMessage
  */
@@ -20,6 +28,8 @@ import org.springframework.stereotype.Component;
 public class AvMessageConverter implements MessageConverter {
 
     private final AvMessageMapper mapper;
+    private final WireFormat wireFormat;
+    private final BinaryMessageCodec codec;
 
     private static final Logger log = LogManager.getLogger(AvMessageConverter.class);
 
@@ -28,7 +38,19 @@ public class AvMessageConverter implements MessageConverter {
 
     @Autowired
     public AvMessageConverter(AvMessageMapper mapper) {
+        this(mapper, WireFormat.JSON);
+    }
+
+    /**
+     * Creates a converter.
+     *
+     * @param mapper     the mapper for messages with headers
+     * @param wireFormat the format of sent messages
+     */
+    public AvMessageConverter(AvMessageMapper mapper, WireFormat wireFormat) {
         this.mapper = mapper;
+        this.wireFormat = requireNonNull(wireFormat);
+        codec = new BinaryMessageCodec();
     }
 
     @Override
@@ -36,7 +58,9 @@ public class AvMessageConverter implements MessageConverter {
         Message message;
         if (object instanceof AvMessage) {
             try {
-                message = mapper.transform((AvMessage) object);
+                message = wireFormat == WireFormat.BINARY
+                        ? encode((AvMessage) object)
+                        : mapper.transform((AvMessage) object);
             } catch (MapperException e) {
                 log.warn(CONVERSION_FAILED, e);
                 throw new MessageConversionException(CONVERSION_FAILED, e);
@@ -53,7 +77,9 @@ public class AvMessageConverter implements MessageConverter {
     public Object fromMessage(Message message) {
         AvMessage avMessage;
         try {
-            avMessage = mapper.transform(message);
+            avMessage = isBinary(message)
+                    ? codec.decodeAvMessage(message.getBody())
+                    : mapper.transform(message);
         } catch (MapperException e) {
             log.warn(CONVERSION_FAILED, e);
             throw new MessageConversionException(CONVERSION_FAILED, e);
@@ -61,4 +87,21 @@ public class AvMessageConverter implements MessageConverter {
 
         return avMessage;
     }
+
+    private Message encode(AvMessage avMessage) throws MapperException {
+        MessageProperties props = new MessageProperties();
+        props.setMessageId(avMessage.getId());
+        props.setContentType(BinaryMessageCodec.CONTENT_TYPE);
+
+        return new Message(codec.encode(avMessage), props);
+    }
+
+    private static boolean isBinary(Message message) {
+        return BinaryMessageCodec.CONTENT_TYPE.equals(
+                message.getMessageProperties().getContentType());
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
 }
@@ -28,6 +28,7 @@ public class AvMessageMapper {
     public static final String VIRUS_INFO_KEY = "virusInfo";
     public static final String OWNER_KEY = "owner";
     public static final String FILENAME_KEY = "filename";
+    public static final String DATA_REFERENCE_KEY = "dataReference";
 
 
     /**
@@ -52,6 +53,8 @@ public class AvMessageMapper {
         String owner = getHeaderValue(headers, OWNER_KEY);
         // filename
         String filename = getHeaderValue(headers, FILENAME_KEY);
+        // data reference
+        String dataReference = getHeaderValue(headers, DATA_REFERENCE_KEY);
 
         // message type
         MessageType messageType = getMessageType(props);
@@ -61,10 +64,12 @@ public class AvMessageMapper {
         return new DefaultAvMessage.Builder(props.getMessageId())
                 .correlationId(corrId)
                 .type(messageType)
-                .data(msg.getBody())
+                // the body belongs to the received message only
+                .wrapData(msg.getBody())
                 .owner(owner)
                 .filename(filename)
                 .virusInfo(virusInfo)
+                .dataReference(dataReference)
                 .build();
     }
 
@@ -142,6 +147,10 @@ public class AvMessageMapper {
         props.setHeader(OWNER_KEY, msg.getOwner());
         // filename
         props.setHeader(FILENAME_KEY, msg.getFilename());
+        // data reference
+        if (msg.getDataReference() != null) {
+            props.setHeader(DATA_REFERENCE_KEY, msg.getDataReference());
+        }
 
         return new Message(msg.getData(), props);
     }
@@ -0,0 +1,72 @@
+package dvoraka.avservice.common.amqp;
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec;
+import dvoraka.avservice.common.codec.WireFormat;
+import dvoraka.avservice.common.data.replication.ReplicationMessage;
+import dvoraka.avservice.common.exception.MapperException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Spring AMQP replication message converter. With the {@link WireFormat#BINARY binary format},
+ * replication messages are encoded with {@link BinaryMessageCodec}, otherwise they are JSON
+ * documents. Both formats are always received.
+ *
+ * @see ReplicationMessage
+ */
+public class ReplicationMessageConverter extends Jackson2JsonMessageConverter {
+
+    private static final Logger log = LogManager.getLogger(ReplicationMessageConverter.class);
+
+    private static final String CONVERSION_FAILED = "Conversion failed!";
+
+    private final WireFormat wireFormat;
+    private final BinaryMessageCodec codec;
+
+
+    public ReplicationMessageConverter(WireFormat wireFormat) {
+        this.wireFormat = requireNonNull(wireFormat);
+        codec = new BinaryMessageCodec();
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        if (wireFormat != WireFormat.BINARY || !(object instanceof ReplicationMessage)) {
+            return super.createMessage(object, messageProperties);
+        }
+
+        try {
+            messageProperties.setContentType(BinaryMessageCodec.CONTENT_TYPE);
+
+            return new Message(codec.encode((ReplicationMessage) object), messageProperties);
+        } catch (MapperException e) {
+            log.warn(CONVERSION_FAILED, e);
+            throw new MessageConversionException(CONVERSION_FAILED, e);
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        if (!BinaryMessageCodec.CONTENT_TYPE.equals(
+                message.getMessageProperties().getContentType())) {
+            return super.fromMessage(message);
+        }
+
+        try {
+            return codec.decodeReplicationMessage(message.getBody());
+        } catch (MapperException e) {
+            log.warn(CONVERSION_FAILED, e);
+            throw new MessageConversionException(CONVERSION_FAILED, e);
+        }
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+}
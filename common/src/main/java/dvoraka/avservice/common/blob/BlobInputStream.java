@@ -0,0 +1,126 @@
+package dvoraka.avservice.common.blob;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Stream with blob data checked against a {@link BlobReference reference}. The stream
+ * hashes data while they are read and ends at the referenced length. Blob directories
+ * are shared, so the content may differ from the reference and the reader must call
+ * {@link #verify()} before the read data are used.
+ * <p>
+ * Not thread-safe.
+ */
+public final class BlobInputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final BlobReference reference;
+    private final MessageDigest digest;
+
+    private long remaining;
+    private Boolean intact;
+
+
+    BlobInputStream(InputStream in, BlobReference reference, MessageDigest digest) {
+        super(requireNonNull(in));
+        this.reference = requireNonNull(reference);
+        this.digest = requireNonNull(digest);
+
+        digest.reset();
+        remaining = reference.getLength();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining == 0) {
+            return -1;
+        }
+
+        int value = in.read();
+        if (value != -1) {
+            digest.update((byte) value);
+            remaining--;
+        }
+
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining == 0) {
+            return -1;
+        }
+
+        int count = in.read(b, off, (int) Math.min(len, remaining));
+        if (count > 0) {
+            digest.update(b, off, count);
+            remaining -= count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Skips data by reading them, skipped data must be hashed too.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(n, 0))];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // mark is not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Reset is not supported.");
+    }
+
+    /**
+     * Reads the rest of the blob and checks all data against the reference.
+     *
+     * @throws IOException if the data do not match the reference or reading failed
+     */
+    public void verify() throws IOException {
+        if (intact == null) {
+            skip(remaining);
+            intact = remaining == 0
+                    && in.read() == -1
+                    && FileBlobStore.toHex(digest.digest()).equals(reference.getId());
+        }
+
+        if (!intact) {
+            throw new IOException("Blob does not match the reference: " + reference.getValue());
+        }
+    }
+}
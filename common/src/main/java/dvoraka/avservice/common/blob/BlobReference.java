@@ -0,0 +1,98 @@
+package dvoraka.avservice.common.blob;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reference to message data in a blob store. The string value is the blob ID and the data
+ * length separated by a colon.
+ */
+public final class BlobReference {
+
+    private static final char SEPARATOR = ':';
+
+    private final String id;
+    private final long length;
+
+
+    public BlobReference(String id, long length) {
+        this.id = requireNonNull(id);
+        if (id.isEmpty() || id.indexOf(SEPARATOR) != -1) {
+            throw new IllegalArgumentException("Bad blob ID: " + id);
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("Bad length: " + length);
+        }
+        this.length = length;
+    }
+
+    /**
+     * Parses a reference string.
+     *
+     * @param value the reference string
+     * @return the reference
+     * @throws IllegalArgumentException if the string is not a reference
+     */
+    public static BlobReference parse(String value) {
+        requireNonNull(value, "Reference must not be null!");
+
+        int separator = value.lastIndexOf(SEPARATOR);
+        if (separator == -1) {
+            throw new IllegalArgumentException("Bad reference: " + value);
+        }
+
+        long length;
+        try {
+            length = Long.parseLong(value.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad reference: " + value, e);
+        }
+
+        return new BlobReference(value.substring(0, separator), length);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the reference string for messages.
+     *
+     * @return the reference string
+     */
+    public String getValue() {
+        return id + SEPARATOR + length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        BlobReference that = (BlobReference) o;
+
+        return length == that.length && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, length);
+    }
+
+    @Override
+    public String toString() {
+        return "BlobReference{" +
+                "id='" + id + '\'' +
+                ", length=" + length +
+                '}';
+    }
+}
@@ -0,0 +1,70 @@
+package dvoraka.avservice.common.blob;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Content addressed store for big data. A blob ID is derived from the blob content,
+ * so storing the same data again returns the same ID.
+ * <p>
+ * IDs often come from received messages, so methods with an ID throw
+ * {@link IllegalArgumentException} for IDs the store could not create. Other processes may
+ * write into the store, so data are always read against a {@link BlobReference reference}
+ * and checked.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores data.
+     *
+     * @param data the data, the buffer position is not changed
+     * @return the blob ID
+     * @throws IOException if storing failed
+     */
+    String put(ByteBuffer data) throws IOException;
+
+    /**
+     * Opens a stream with blob data. The caller must verify and close the stream.
+     *
+     * @param reference the blob reference
+     * @return the stream
+     * @throws IOException if the blob is not available
+     */
+    BlobInputStream open(BlobReference reference) throws IOException;
+
+    /**
+     * Loads the whole blob.
+     *
+     * @param reference the blob reference
+     * @return the checked data
+     * @throws IOException if the blob is not available or does not match the reference
+     */
+    byte[] load(BlobReference reference) throws IOException;
+
+    /**
+     * Returns a blob size.
+     *
+     * @param id the blob ID
+     * @return the size in bytes
+     * @throws IOException if the blob is not available
+     */
+    long size(String id) throws IOException;
+
+    /**
+     * Deletes a blob.
+     *
+     * @param id the blob ID
+     * @return true if the blob was deleted
+     * @throws IOException if deleting failed
+     */
+    boolean delete(String id) throws IOException;
+
+    /**
+     * Deletes all blobs which were not stored again in a given time.
+     *
+     * @param maxAge the maximum age in milliseconds
+     * @return the count of deleted blobs
+     * @throws IOException if the store is not readable
+     */
+    int expire(long maxAge) throws IOException;
+}
@@ -0,0 +1,81 @@
+package dvoraka.avservice.common.blob;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.helper.ExecutorServiceHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Periodically deletes blobs older than the retention time from the store of a claim check.
+ * It runs on the receiving service, so blobs are expired even when the clients storing them
+ * are gone. A disabled claim check has nothing to sweep.
+ */
+public class BlobSweeper implements ExecutorServiceHelper {
+
+    private static final Logger log = LogManager.getLogger(BlobSweeper.class);
+
+    /**
+     * Sweeps per retention time.
+     */
+    private static final long SWEEPS_PER_RETENTION = 4;
+    private static final long SWEEP_TERM_TIME_S = 5;
+
+    private final BlobStore blobStore;
+    private final long retention;
+
+    private final ScheduledExecutorService sweepService;
+
+
+    /**
+     * Creates a sweeper and starts sweeping.
+     *
+     * @param claimCheck the claim check
+     * @param retention  the blob retention time in milliseconds
+     */
+    public BlobSweeper(ClaimCheck claimCheck, long retention) {
+        requireNonNull(claimCheck);
+        if (retention < 1) {
+            throw new IllegalArgumentException("Bad retention: " + retention);
+        }
+        this.blobStore = claimCheck.getBlobStore();
+        this.retention = retention;
+
+        sweepService = Executors.newSingleThreadScheduledExecutor(
+                new CustomThreadFactory("blob-sweeper-", true));
+        if (claimCheck.isEnabled()) {
+            long period = Math.max(retention / SWEEPS_PER_RETENTION, 1);
+            sweepService.scheduleWithFixedDelay(
+                    this::sweep, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Deletes expired blobs.
+     */
+    void sweep() {
+        try {
+            int count = blobStore.expire(retention);
+            if (count > 0) {
+                log.debug("Blobs expired: {}", count);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Blob expiration failed!", e);
+        }
+    }
+
+    /**
+     * Stops sweeping.
+     */
+    @PreDestroy
+    public void stop() {
+        shutdownAndAwaitTermination(sweepService, SWEEP_TERM_TIME_S, log);
+    }
+}
@@ -0,0 +1,268 @@
+package dvoraka.avservice.common.blob;
+
+import dvoraka.avservice.common.data.AvMessage;
+import dvoraka.avservice.common.data.DefaultAvMessage;
+import dvoraka.avservice.common.data.MessageType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Claim check for big message data. Data of file requests above the threshold are put into
+ * a blob store and the message carries only a {@link BlobReference reference}, so brokers
+ * do not move big data. A receiver sharing the store reads the data back from the store
+ * and the store checks them against the reference.
+ * <p>
+ * A {@link #disabled() disabled} claim check neither claims data nor accepts references.
+ * Stored blobs are expired by the receiving service with a {@link BlobSweeper}.
+ * <p>
+ * Thread-safe.
+ */
+public class ClaimCheck {
+
+    private static final Logger log = LogManager.getLogger(ClaimCheck.class);
+
+    /**
+     * Types of messages with claimed data.
+     */
+    public static final Set<MessageType> CLAIMED_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            MessageType.FILE_CHECK,
+            MessageType.FILE_SAVE,
+            MessageType.FILE_UPDATE));
+
+    private static final ClaimCheck DISABLED = new ClaimCheck();
+
+    private final long threshold;
+    private final BlobStore blobStore;
+
+    private final AtomicLong claimedCount;
+    private final AtomicLong claimedBytes;
+
+
+    /**
+     * Creates a claim check.
+     *
+     * @param threshold the data size in bytes above which data are claimed
+     * @param blobStore the blob store
+     */
+    public ClaimCheck(long threshold, BlobStore blobStore) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Bad threshold: " + threshold);
+        }
+        this.threshold = threshold;
+        this.blobStore = requireNonNull(blobStore);
+
+        claimedCount = new AtomicLong();
+        claimedBytes = new AtomicLong();
+    }
+
+    private ClaimCheck() {
+        threshold = 0;
+        blobStore = null;
+
+        claimedCount = new AtomicLong();
+        claimedBytes = new AtomicLong();
+    }
+
+    /**
+     * Returns a claim check without a store. It keeps data in messages and rejects
+     * data references.
+     *
+     * @return the disabled claim check
+     */
+    public static ClaimCheck disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Creates a claim check with a {@link FileBlobStore file blob store} from configuration.
+     *
+     * @param threshold the data size in bytes above which data are claimed, 0 disables
+     *                  the claim check
+     * @param directory the blob directory, it must be set for an enabled claim check
+     * @return the claim check
+     */
+    public static ClaimCheck create(long threshold, String directory) {
+        if (threshold == 0) {
+            return disabled();
+        }
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new IllegalArgumentException("No blob directory for the claim check!");
+        }
+
+        return new ClaimCheck(threshold, new FileBlobStore(Paths.get(directory.trim())));
+    }
+
+    /**
+     * Puts message data into the store if the message should be claimed. When the store
+     * fails, the message keeps its data.
+     *
+     * @param message the message
+     * @return the message with a data reference or the original message
+     */
+    public AvMessage checkIn(AvMessage message) {
+        if (!shouldClaim(message)) {
+            return message;
+        }
+
+        ByteBuffer data = message.getDataBuffer();
+        String id;
+        try {
+            id = blobStore.put(data);
+        } catch (IOException e) {
+            log.warn("Claiming failed, sending data in the message!", e);
+
+            return message;
+        }
+
+        claimedCount.getAndIncrement();
+        claimedBytes.getAndAdd(data.remaining());
+
+        return copy(message)
+                .dataReference(new BlobReference(id, data.remaining()).getValue())
+                .build();
+    }
+
+    private boolean shouldClaim(AvMessage message) {
+        return isEnabled()
+                && !isClaimed(message)
+                && CLAIMED_TYPES.contains(message.getType())
+                && message.getDataLength() > threshold;
+    }
+
+    /**
+     * Opens a stream with claimed message data. The caller must close the stream and
+     * {@link BlobInputStream#verify() verify} it before the read data are used.
+     *
+     * @param message the claimed message
+     * @return the data stream
+     * @throws IOException if the data are not available or the claim check is disabled
+     */
+    public BlobInputStream open(AvMessage message) throws IOException {
+        BlobReference reference = reference(message);
+        try {
+            return blobStore.open(reference);
+        } catch (IllegalArgumentException e) {
+            throw badReference(message, e);
+        }
+    }
+
+    /**
+     * Returns a message with claimed data loaded back into the message.
+     *
+     * @param message the message
+     * @return the message with data or the original message if it is not claimed
+     * @throws IOException if the data are not available, do not match the reference or
+     *                     the claim check is disabled
+     */
+    public AvMessage checkOut(AvMessage message) throws IOException {
+        if (!isClaimed(message)) {
+            return message;
+        }
+
+        BlobReference reference = reference(message);
+        byte[] data;
+        try {
+            data = blobStore.load(reference);
+        } catch (IllegalArgumentException e) {
+            throw badReference(message, e);
+        }
+
+        return copy(message)
+                .wrapData(data)
+                .build();
+    }
+
+    private BlobReference reference(AvMessage message) throws IOException {
+        if (!isEnabled()) {
+            throw new IOException("Claim check is disabled, rejecting: "
+                    + message.getDataReference());
+        }
+
+        try {
+            return BlobReference.parse(message.getDataReference());
+        } catch (IllegalArgumentException e) {
+            throw badReference(message, e);
+        }
+    }
+
+    private static IOException badReference(AvMessage message, IllegalArgumentException cause) {
+        return new IOException("Bad data reference: " + message.getDataReference(), cause);
+    }
+
+    private static DefaultAvMessage.Builder copy(AvMessage message) {
+        return new DefaultAvMessage.Builder(message.getId())
+                .correlationId(message.getCorrelationId())
+                .type(message.getType())
+                .virusInfo(message.getVirusInfo())
+                .filename(message.getFilename())
+                .owner(message.getOwner());
+    }
+
+    /**
+     * Returns true if message data are in a blob store.
+     *
+     * @param message the message
+     * @return the result
+     */
+    public static boolean isClaimed(AvMessage message) {
+        return message.getDataReference() != null;
+    }
+
+    /**
+     * Returns the length of message data, also of claimed data.
+     *
+     * @param message the message
+     * @return the length
+     */
+    public static long dataLength(AvMessage message) {
+        if (!isClaimed(message)) {
+            return message.getDataLength();
+        }
+
+        try {
+            return BlobReference.parse(message.getDataReference()).getLength();
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    public boolean isEnabled() {
+        return threshold > 0;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the blob store.
+     *
+     * @return the store or null if the claim check is disabled
+     */
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * Returns the count of claimed messages.
+     *
+     * @return the count
+     */
+    public long getClaimedCount() {
+        return claimedCount.get();
+    }
+
+    public long getClaimedBytes() {
+        return claimedBytes.get();
+    }
+}
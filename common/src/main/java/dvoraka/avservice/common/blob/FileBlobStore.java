@@ -0,0 +1,237 @@
+package dvoraka.avservice.common.blob;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Blob store in a local directory. Blobs are files named by a SHA-256 hash of their
+ * content. A new blob is written into a temporary file and moved to its name at once,
+ * so readers never see a partial blob. Other processes can write into the directory,
+ * so read data are always checked against the reference.
+ * <p>
+ * Thread-safe, more processes can share the directory.
+ */
+public class FileBlobStore implements BlobStore {
+
+    private static final Logger log = LogManager.getLogger(FileBlobStore.class);
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int BYTE_MASK = 0xFF;
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0x0F;
+    private static final long MAX_LOAD_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final Path directory;
+    private final ThreadLocal<MessageDigest> digest;
+
+
+    /**
+     * Creates a store. The directory is created with the first blob.
+     *
+     * @param directory the blob directory
+     */
+    public FileBlobStore(Path directory) {
+        this.directory = requireNonNull(directory);
+
+        // fail fast if the algorithm is not available
+        newDigest();
+        digest = ThreadLocal.withInitial(FileBlobStore::newDigest);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            log.warn("Algorithm not found!", e);
+            throw new IllegalStateException("No algorithm found: " + ALGORITHM, e);
+        }
+    }
+
+    @Override
+    public String put(ByteBuffer data) throws IOException {
+        String id = hash(data.duplicate());
+        Path blob = directory.resolve(id);
+
+        if (touch(blob)) {
+            log.debug("Blob already stored: {}", id);
+
+            return id;
+        }
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, id, TEMP_SUFFIX);
+        try {
+            ByteBuffer buffer = data.duplicate();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            move(temp, blob);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.debug("Blob stored: {}", id);
+
+        return id;
+    }
+
+    private static boolean touch(Path blob) throws IOException {
+        try {
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public BlobInputStream open(BlobReference reference) throws IOException {
+        InputStream stream = Files.newInputStream(path(reference.getId()));
+
+        return new BlobInputStream(stream, reference, newDigest());
+    }
+
+    @Override
+    public byte[] load(BlobReference reference) throws IOException {
+        if (reference.getLength() > MAX_LOAD_LENGTH) {
+            throw new IOException("Blob is too big for loading: " + reference.getValue());
+        }
+
+        byte[] data = new byte[(int) reference.getLength()];
+        try (BlobInputStream stream = open(reference)) {
+            int offset = 0;
+            int count;
+            while (offset < data.length
+                    && (count = stream.read(data, offset, data.length - offset)) != -1) {
+                offset += count;
+            }
+            stream.verify();
+        }
+
+        return data;
+    }
+
+    @Override
+    public long size(String id) throws IOException {
+        return Files.size(path(id));
+    }
+
+    @Override
+    public boolean delete(String id) throws IOException {
+        return Files.deleteIfExists(path(id));
+    }
+
+    /**
+     * Deletes old blobs and also temporary files left by failed processes.
+     */
+    @Override
+    public int expire(long maxAge) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+
+        long oldest = System.currentTimeMillis() - maxAge;
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (isStoreFile(file) && expire(file, oldest)) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private static boolean isStoreFile(Path file) {
+        String name = file.getFileName().toString();
+
+        return ID_PATTERN.matcher(name).matches() || name.endsWith(TEMP_SUFFIX);
+    }
+
+    private static boolean expire(Path file, long oldest) {
+        try {
+            if (Files.getLastModifiedTime(file).toMillis() > oldest) {
+                return false;
+            }
+
+            return Files.deleteIfExists(file);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            log.warn("Expiration failed for: " + file, e);
+
+            return false;
+        }
+    }
+
+    /**
+     * Checks an ID and returns the blob path. IDs come from messages, so they must not
+     * point outside the directory.
+     *
+     * @param id the blob ID
+     * @return the path
+     */
+    private Path path(String id) {
+        requireNonNull(id, "ID must not be null!");
+        if (!ID_PATTERN.matcher(id).matches()) {
+            throw new IllegalArgumentException("Bad blob ID: " + id);
+        }
+
+        return directory.resolve(id);
+    }
+
+    private String hash(ByteBuffer data) {
+        MessageDigest messageDigest = digest.get();
+        messageDigest.reset();
+        messageDigest.update(data);
+
+        return toHex(messageDigest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & BYTE_MASK;
+            hex[i * 2] = HEX_DIGITS[value >>> NIBBLE_BITS];
+            hex[i * 2 + 1] = HEX_DIGITS[value & NIBBLE_MASK];
+        }
+
+        return new String(hex);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Blob store for message data passed outside the message broker.
+ */
+package dvoraka.avservice.common.blob;
@@ -0,0 +1,418 @@
+package dvoraka.avservice.common.codec;
+
+import dvoraka.avservice.common.data.AvMessage;
+import dvoraka.avservice.common.data.Command;
+import dvoraka.avservice.common.data.DefaultAvMessage;
+import dvoraka.avservice.common.data.FileMessage;
+import dvoraka.avservice.common.data.Message;
+import dvoraka.avservice.common.data.MessageType;
+import dvoraka.avservice.common.data.replication.DefaultReplicationMessage;
+import dvoraka.avservice.common.data.replication.MessageRouting;
+import dvoraka.avservice.common.data.replication.ReplicationMessage;
+import dvoraka.avservice.common.data.replication.ReplicationStatus;
+import dvoraka.avservice.common.exception.MapperException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Binary codec for AV and replication messages.
+ * <p>
+ * Format version 1 starts with the magic byte, the version and the message kind. Fields
+ * follow in a fixed order. Strings are UTF-8 bytes prefixed with the length plus one as
+ * an unsigned variable length integer, so null is a single zero byte. Enums are one byte
+ * with the ordinal plus one, so new constants must be added at the end. Data come last,
+ * prefixed with their length, and are not encoded in any way.
+ * <p>
+ * Thread-safe.
+ */
+public class BinaryMessageCodec {
+
+    /**
+     * Content type of encoded messages.
+     */
+    public static final String CONTENT_TYPE = "application/x-avservice-message";
+    /**
+     * First byte of encoded messages. It is not a valid first byte of a JSON document.
+     */
+    public static final byte MAGIC = (byte) 0xA5;
+    /**
+     * Current format version.
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte KIND_AV = 1;
+    private static final byte KIND_REPLICATION = 2;
+
+    private static final int HEADER_SIZE = 3;
+    /**
+     * Estimated size of all fields except data.
+     */
+    private static final int FIELDS_SIZE = 256;
+    private static final int VARINT_BITS = 7;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_MORE = 0x80;
+    private static final int MAX_VARINT_SIZE = 10;
+    private static final int BYTE_MASK = 0xFF;
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final MessageRouting[] ROUTINGS = MessageRouting.values();
+    private static final ReplicationStatus[] STATUSES = ReplicationStatus.values();
+    private static final Command[] COMMANDS = Command.values();
+
+
+    /**
+     * Returns true if bytes start as an encoded message.
+     *
+     * @param bytes the bytes
+     * @return the result
+     */
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    /**
+     * Encodes an AV or a replication message.
+     *
+     * @param message the message
+     * @return the encoded message
+     * @throws MapperException if the message type is not supported
+     */
+    public byte[] encode(Message message) throws MapperException {
+        requireNonNull(message, "Message must not be null!");
+
+        if (message instanceof AvMessage) {
+            return encodeAvMessage((AvMessage) message);
+        } else if (message instanceof ReplicationMessage) {
+            return encodeReplicationMessage((ReplicationMessage) message);
+        }
+
+        throw new MapperException("Unsupported message: " + message.getClass().getName());
+    }
+
+    private byte[] encodeAvMessage(AvMessage message) {
+        ByteBuffer data = message.getDataBuffer();
+        Writer writer = new Writer(data.remaining());
+        writer.header(KIND_AV);
+
+        writer.string(message.getId());
+        writer.string(message.getCorrelationId());
+        writer.enumValue(message.getType());
+        writer.string(message.getVirusInfo());
+        writer.string(message.getDataReference());
+        writer.string(message.getFilename());
+        writer.string(message.getOwner());
+        writer.data(data);
+
+        return writer.toArray();
+    }
+
+    private byte[] encodeReplicationMessage(ReplicationMessage message) {
+        ByteBuffer data = message.getDataBuffer();
+        Writer writer = new Writer(data.remaining());
+        writer.header(KIND_REPLICATION);
+
+        writer.string(message.getId());
+        writer.string(message.getCorrelationId());
+        writer.enumValue(message.getType());
+        writer.string(message.getFilename());
+        writer.string(message.getOwner());
+        writer.string(message.getFromId());
+        writer.string(message.getToId());
+        writer.varLong(message.getSequence());
+        writer.bool(message.isMaster());
+        writer.enumValue(message.getRouting());
+        writer.enumValue(message.getReplicationStatus());
+        writer.enumValue(message.getCommand());
+        writer.data(data);
+
+        return writer.toArray();
+    }
+
+    /**
+     * Decodes a message of any supported kind.
+     *
+     * @param bytes the encoded message
+     * @return the message
+     * @throws MapperException if the bytes are not a valid message
+     */
+    public FileMessage decode(byte[] bytes) throws MapperException {
+        Reader reader = new Reader(bytes);
+        byte kind = reader.header();
+
+        if (kind == KIND_AV) {
+            return readAvMessage(reader);
+        } else if (kind == KIND_REPLICATION) {
+            return readReplicationMessage(reader);
+        }
+
+        throw new MapperException("Unknown message kind: " + kind);
+    }
+
+    /**
+     * Decodes an AV message.
+     *
+     * @param bytes the encoded message
+     * @return the message
+     * @throws MapperException if the bytes are not a valid AV message
+     */
+    public DefaultAvMessage decodeAvMessage(byte[] bytes) throws MapperException {
+        Reader reader = new Reader(bytes);
+        if (reader.header() != KIND_AV) {
+            throw new MapperException("Not an AV message.");
+        }
+
+        return readAvMessage(reader);
+    }
+
+    /**
+     * Decodes a replication message.
+     *
+     * @param bytes the encoded message
+     * @return the message
+     * @throws MapperException if the bytes are not a valid replication message
+     */
+    public DefaultReplicationMessage decodeReplicationMessage(byte[] bytes)
+            throws MapperException {
+        Reader reader = new Reader(bytes);
+        if (reader.header() != KIND_REPLICATION) {
+            throw new MapperException("Not a replication message.");
+        }
+
+        return readReplicationMessage(reader);
+    }
+
+    private DefaultAvMessage readAvMessage(Reader reader) throws MapperException {
+        String id = reader.string();
+        if (id == null) {
+            throw new MapperException("Message ID can't be null");
+        }
+
+        return new DefaultAvMessage.Builder(id)
+                .correlationId(reader.string())
+                .type(reader.enumValue(MESSAGE_TYPES))
+                .virusInfo(reader.string())
+                .dataReference(reader.string())
+                .filename(reader.string())
+                .owner(reader.string())
+                .wrapData(reader.data())
+                .build();
+    }
+
+    private DefaultReplicationMessage readReplicationMessage(Reader reader)
+            throws MapperException {
+        String id = reader.string();
+        if (id == null) {
+            throw new MapperException("Message ID can't be null");
+        }
+
+        return new DefaultReplicationMessage.Builder(id)
+                .correlationId(reader.string())
+                .type(reader.enumValue(MESSAGE_TYPES))
+                .filename(reader.string())
+                .owner(reader.string())
+                .fromId(reader.string())
+                .toId(reader.string())
+                .sequence(reader.varLong())
+                .master(reader.bool())
+                .routing(reader.enumValue(ROUTINGS))
+                .replicationStatus(reader.enumValue(STATUSES))
+                .command(reader.enumValue(COMMANDS))
+                .wrapData(reader.data())
+                .build();
+    }
+
+    /**
+     * Growing output buffer sized for the data plus usual fields.
+     */
+    private static final class Writer {
+
+        private byte[] buffer;
+        private int position;
+
+
+        private Writer(int dataSize) {
+            buffer = new byte[HEADER_SIZE + FIELDS_SIZE + dataSize];
+        }
+
+        private void header(byte kind) {
+            put(MAGIC);
+            put(VERSION);
+            put(kind);
+        }
+
+        private void string(String value) {
+            if (value == null) {
+                varInt(0);
+                return;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varInt(bytes.length + 1);
+            bytes(bytes, bytes.length);
+        }
+
+        private void enumValue(Enum<?> value) {
+            put((byte) (value == null ? 0 : value.ordinal() + 1));
+        }
+
+        private void bool(boolean value) {
+            put((byte) (value ? 1 : 0));
+        }
+
+        private void data(ByteBuffer data) {
+            int length = data.remaining();
+            varInt(length);
+            ensure(length);
+            data.get(buffer, position, length);
+            position += length;
+        }
+
+        private void varInt(int value) {
+            varLong(value & INT_MASK);
+        }
+
+        private void varLong(long value) {
+            ensure(MAX_VARINT_SIZE);
+            long rest = value;
+            while ((rest & ~VARINT_MASK) != 0) {
+                buffer[position++] = (byte) ((rest & VARINT_MASK) | VARINT_MORE);
+                rest >>>= VARINT_BITS;
+            }
+            buffer[position++] = (byte) rest;
+        }
+
+        private void put(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        private void bytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buffer, position, length);
+            position += length;
+        }
+
+        private void ensure(int size) {
+            if (buffer.length - position < size) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + size));
+            }
+        }
+
+        private byte[] toArray() {
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+    }
+
+    /**
+     * Bounds checked input.
+     */
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+
+        private Reader(byte[] bytes) throws MapperException {
+            if (bytes == null || bytes.length < HEADER_SIZE) {
+                throw new MapperException("Message is too short.");
+            }
+            this.bytes = bytes;
+        }
+
+        private byte header() throws MapperException {
+            if (get() != MAGIC) {
+                throw new MapperException("Not a binary message.");
+            }
+            byte version = get();
+            if (version != VERSION) {
+                throw new MapperException("Unsupported version: " + version);
+            }
+
+            return get();
+        }
+
+        private String string() throws MapperException {
+            int length = varInt();
+            if (length == 0) {
+                return null;
+            }
+
+            int size = length - 1;
+            check(size);
+            String value = new String(bytes, position, size, StandardCharsets.UTF_8);
+            position += size;
+
+            return value;
+        }
+
+        private <E extends Enum<E>> E enumValue(E[] values) throws MapperException {
+            int value = get() & BYTE_MASK;
+            if (value == 0) {
+                return null;
+            }
+            if (value > values.length) {
+                throw new MapperException("Unknown enum value: " + value);
+            }
+
+            return values[value - 1];
+        }
+
+        private boolean bool() throws MapperException {
+            return get() != 0;
+        }
+
+        private byte[] data() throws MapperException {
+            int length = varInt();
+            check(length);
+            if (position + length != bytes.length) {
+                throw new MapperException("Unexpected message end.");
+            }
+            if (length == 0) {
+                return null;
+            }
+
+            byte[] data = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+
+            return data;
+        }
+
+        private int varInt() throws MapperException {
+            long value = varLong();
+            if (value > Integer.MAX_VALUE) {
+                throw new MapperException("Length is too big: " + value);
+            }
+
+            return (int) value;
+        }
+
+        private long varLong() throws MapperException {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += VARINT_BITS) {
+                byte b = get();
+                value |= (long) (b & VARINT_MASK) << shift;
+                if ((b & VARINT_MORE) == 0) {
+                    return value;
+                }
+            }
+
+            throw new MapperException("Malformed number.");
+        }
+
+        private byte get() throws MapperException {
+            check(1);
+            return bytes[position++];
+        }
+
+        private void check(int size) throws MapperException {
+            if (size < 0 || bytes.length - position < size) {
+                throw new MapperException("Unexpected message end.");
+            }
+        }
+    }
+}
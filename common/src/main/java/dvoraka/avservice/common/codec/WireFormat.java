@@ -0,0 +1,15 @@
+package dvoraka.avservice.common.codec;
+
+/**
+ * Format of sent messages. Receivers read both formats.
+ */
+public enum WireFormat {
+    /**
+     * JSON documents, and AMQP headers with a raw body for AV messages over AMQP.
+     */
+    JSON,
+    /**
+     * Messages encoded with {@link BinaryMessageCodec}.
+     */
+    BINARY
+}
@@ -0,0 +1,4 @@
+/**
+ * Binary wire format of messages.
+ */
+package dvoraka.avservice.common.codec;
@@ -15,6 +15,7 @@ package dvoraka.avservice.common.data;
  * <li>filename - filename of the data</li>
  * <li>owner - owner of file/data</li>
  * <li>virusInfo - info about infection in data</li>
+ * <li>dataReference - reference to data stored outside the message</li>
  * </ul>
  */
 public interface AvMessage extends FileMessage {
@@ -26,6 +27,15 @@ public interface AvMessage extends FileMessage {
      */
     String getVirusInfo();
 
+    /**
+     * Returns a reference to the message data in a blob store. Messages with a reference
+     * carry no data themselves.
+     *
+     * @return the reference or null if the data are in the message
+     * @see dvoraka.avservice.common.blob.ClaimCheck
+     */
+    String getDataReference();
+
     /**
      * Creates an AV check response to a check message.
      *
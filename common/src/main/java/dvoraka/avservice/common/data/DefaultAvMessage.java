@@ -1,10 +1,12 @@
 package dvoraka.avservice.common.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 import dvoraka.avservice.common.helper.UuidHelper;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -21,6 +23,7 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
     private final byte[] data;
     private final MessageType type;
     private final String virusInfo;
+    private final String dataReference;
 
     private final String filename;
     private final String owner;
@@ -32,6 +35,7 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
         this.data = builder.data;
         this.type = builder.type;
         this.virusInfo = builder.virusInfo;
+        this.dataReference = builder.dataReference;
 
         this.filename = builder.filename;
         this.owner = builder.owner;
@@ -55,6 +59,21 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
         return new byte[0];
     }
 
+    @JsonIgnore
+    @Override
+    public ByteBuffer getDataBuffer() {
+        if (data != null) {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+        return ByteBuffer.allocate(0).asReadOnlyBuffer();
+    }
+
+    @JsonIgnore
+    @Override
+    public int getDataLength() {
+        return data != null ? data.length : 0;
+    }
+
     @Override
     public MessageType getType() {
         return type;
@@ -65,6 +84,11 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
         return virusInfo;
     }
 
+    @Override
+    public String getDataReference() {
+        return dataReference;
+    }
+
     @Override
     public String getFilename() {
         return filename;
@@ -138,6 +162,11 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
         if (virusInfo != null ? !virusInfo.equals(that.virusInfo) : that.virusInfo != null) {
             return false;
         }
+        if (dataReference != null
+                ? !dataReference.equals(that.dataReference)
+                : that.dataReference != null) {
+            return false;
+        }
         if (filename != null ? !filename.equals(that.filename) : that.filename != null) {
             return false;
         }
@@ -167,6 +196,7 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
                 ", data=" + Arrays.toString(strData) +
                 ", type=" + type +
                 ", virusInfo='" + virusInfo + '\'' +
+                ", dataReference='" + dataReference + '\'' +
                 ", filename='" + filename + '\'' +
                 ", owner=" + owner +
                 '}';
@@ -180,6 +210,7 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
         private byte[] data;
         private MessageType type;
         private String virusInfo;
+        private String dataReference;
         private String filename;
         private String owner;
 
@@ -200,6 +231,35 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
             return this;
         }
 
+        /**
+         * Uses data without a copy. The caller must not change the array later.
+         *
+         * @param data the data
+         * @return the builder
+         */
+        @JsonIgnore
+        public Builder wrapData(byte[] data) {
+            this.data = data;
+            return this;
+        }
+
+        /**
+         * Takes data from another message. Data of an immutable message are shared
+         * without a copy.
+         *
+         * @param message the message
+         * @return the builder
+         */
+        @JsonIgnore
+        public Builder dataOf(FileMessage message) {
+            if (message instanceof DefaultAvMessage) {
+                this.data = ((DefaultAvMessage) message).data;
+            } else {
+                this.data = copy(message.getDataBuffer());
+            }
+            return this;
+        }
+
         public Builder type(MessageType type) {
             this.type = type;
             return this;
@@ -210,6 +270,11 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
             return this;
         }
 
+        public Builder dataReference(String reference) {
+            this.dataReference = reference;
+            return this;
+        }
+
         public Builder filename(String filename) {
             this.filename = filename;
             return this;
@@ -223,5 +288,12 @@ public final class DefaultAvMessage implements AvMessage, UuidHelper {
         public DefaultAvMessage build() {
             return new DefaultAvMessage(this);
         }
+
+        private static byte[] copy(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+
+            return bytes;
+        }
     }
 }
@@ -1,5 +1,9 @@
 package dvoraka.avservice.common.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.nio.ByteBuffer;
+
 /**
  * File message interface.
  */
@@ -12,6 +16,29 @@ public interface FileMessage extends Message {
      */
     byte[] getData();
 
+    /**
+     * Returns a read-only view of the message data. Immutable messages return a view
+     * of their data without copying, so it is the preferred way to read big data.
+     *
+     * @return the data view
+     */
+    @JsonIgnore
+    default ByteBuffer getDataBuffer() {
+        byte[] data = getData();
+
+        return ByteBuffer.wrap(data == null ? new byte[0] : data).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the length of the message data.
+     *
+     * @return the length
+     */
+    @JsonIgnore
+    default int getDataLength() {
+        return getDataBuffer().remaining();
+    }
+
     /**
      * Returns a filename for a data in a message.
      *
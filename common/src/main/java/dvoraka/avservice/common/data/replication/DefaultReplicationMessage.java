@@ -1,5 +1,6 @@
 package dvoraka.avservice.common.data.replication;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
@@ -8,6 +9,7 @@ import dvoraka.avservice.common.data.FileMessage;
 import dvoraka.avservice.common.data.MessageType;
 import dvoraka.avservice.common.helper.FileServiceHelper;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.UUID;
@@ -73,6 +75,21 @@ public final class DefaultReplicationMessage implements ReplicationMessage, File
         return data.clone();
     }
 
+    @JsonIgnore
+    @Override
+    public ByteBuffer getDataBuffer() {
+        if (data != null) {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+        return ByteBuffer.allocate(0).asReadOnlyBuffer();
+    }
+
+    @JsonIgnore
+    @Override
+    public int getDataLength() {
+        return data != null ? data.length : 0;
+    }
+
     @Override
     public String getFilename() {
         return filename;
@@ -215,6 +232,37 @@ public final class DefaultReplicationMessage implements ReplicationMessage, File
             return this;
         }
 
+        /**
+         * Uses data without a copy. The caller must not change the array later.
+         *
+         * @param data the data
+         * @return the builder
+         */
+        @JsonIgnore
+        public Builder wrapData(byte[] data) {
+            this.data = data;
+            return this;
+        }
+
+        /**
+         * Takes data from another message. Data of an immutable replication message
+         * are shared without a copy.
+         *
+         * @param message the message
+         * @return the builder
+         */
+        @JsonIgnore
+        public Builder dataOf(FileMessage message) {
+            if (message instanceof DefaultReplicationMessage) {
+                this.data = ((DefaultReplicationMessage) message).data;
+            } else {
+                ByteBuffer buffer = message.getDataBuffer();
+                this.data = new byte[buffer.remaining()];
+                buffer.get(this.data);
+            }
+            return this;
+        }
+
         public Builder filename(String filename) {
             this.filename = filename;
             return this;
@@ -0,0 +1,18 @@
+package dvoraka.avservice.common.exception;
+
+/**
+ * Exception for a failed connection to a scanning engine.
+ */
+public class ConnectionException extends ScanException {
+
+    private static final long serialVersionUID = 2305263843413717469L;
+
+
+    public ConnectionException(String message) {
+        super(message);
+    }
+
+    public ConnectionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
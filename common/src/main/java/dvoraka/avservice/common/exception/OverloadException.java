@@ -0,0 +1,19 @@
+package dvoraka.avservice.common.exception;
+
+/**
+ * Exception for a scan refused because local scanning resources, like sockets or threads,
+ * are exhausted.
+ */
+public class OverloadException extends ScanException {
+
+    private static final long serialVersionUID = 6120915237840592013L;
+
+
+    public OverloadException(String message) {
+        super(message);
+    }
+
+    public OverloadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
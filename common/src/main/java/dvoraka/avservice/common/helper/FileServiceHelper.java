@@ -20,6 +20,23 @@ public interface FileServiceHelper extends UuidHelper {
                 .build();
     }
 
+    /**
+     * Creates a message with the file of another message. The data are not copied
+     * when possible.
+     *
+     * @param type    the message type
+     * @param message the message with the file
+     * @return the new message
+     */
+    default FileMessage fileCopyMessage(MessageType type, FileMessage message) {
+        return new DefaultAvMessage.Builder(genUuidStr())
+                .type(type)
+                .filename(message.getFilename())
+                .owner(message.getOwner())
+                .dataOf(message)
+                .build();
+    }
+
     default FileMessage fileMessage(MessageType type, String filename, String owner) {
         return fileDataMessage(type, filename, owner, null);
     }
@@ -29,7 +46,7 @@ public interface FileServiceHelper extends UuidHelper {
     }
 
     default FileMessage fileSaveMessage(FileMessage message) {
-        return fileSaveMessage(message.getFilename(), message.getOwner(), message.getData());
+        return fileCopyMessage(MessageType.FILE_SAVE, message);
     }
 
     default FileMessage fileLoadMessage(String filename, String owner) {
@@ -49,7 +66,7 @@ public interface FileServiceHelper extends UuidHelper {
     }
 
     default FileMessage fileUpdateMessage(FileMessage message) {
-        return fileUpdateMessage(message.getFilename(), message.getOwner(), message.getData());
+        return fileCopyMessage(MessageType.FILE_UPDATE, message);
     }
 
     default FileMessage fileDeleteMessage(String filename, String owner) {
@@ -37,7 +37,7 @@ public interface ReplicationHelper extends ReplicationServiceHelper, UuidHelper
                 .command(command)
                 .toId(toNode)
                 .fromId(fromNode)
-                .data(message.getData())
+                .dataOf(message)
                 .filename(message.getFilename())
                 .owner(message.getOwner())
                 .build();
@@ -90,7 +90,7 @@ public interface ReplicationHelper extends ReplicationServiceHelper, UuidHelper
                 .replicationStatus(ReplicationStatus.OK)
                 .toId(request.getFromId())
                 .fromId(fromNode)
-                .data(message.getData())
+                .dataOf(message)
                 .filename(message.getFilename())
                 .owner(message.getOwner())
                 .build();
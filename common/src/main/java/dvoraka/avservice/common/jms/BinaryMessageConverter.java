@@ -0,0 +1,100 @@
+package dvoraka.avservice.common.jms;
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec;
+import dvoraka.avservice.common.codec.WireFormat;
+import dvoraka.avservice.common.exception.MapperException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * JMS converter for AV and replication messages with the binary codec. Messages without
+ * the binary content type and other objects go through the delegate converter, so binary
+ * and JSON senders can be mixed.
+ *
+ * @see BinaryMessageCodec
+ */
+public class BinaryMessageConverter implements MessageConverter {
+
+    private static final Logger log = LogManager.getLogger(BinaryMessageConverter.class);
+
+    /**
+     * Name of the property with the content type.
+     */
+    public static final String CONTENT_TYPE_PROPERTY = "contentType";
+    private static final String CONVERSION_FAILED = "Conversion failed!";
+
+    private final MessageConverter delegate;
+    private final WireFormat wireFormat;
+    private final BinaryMessageCodec codec;
+
+
+    /**
+     * Creates a converter.
+     *
+     * @param delegate   the converter for other formats
+     * @param wireFormat the format of sent messages
+     */
+    public BinaryMessageConverter(MessageConverter delegate, WireFormat wireFormat) {
+        this.delegate = requireNonNull(delegate);
+        this.wireFormat = requireNonNull(wireFormat);
+        codec = new BinaryMessageCodec();
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException {
+        if (wireFormat != WireFormat.BINARY
+                || !(object instanceof dvoraka.avservice.common.data.Message)) {
+            return delegate.toMessage(object, session);
+        }
+
+        byte[] bytes;
+        try {
+            bytes = codec.encode((dvoraka.avservice.common.data.Message) object);
+        } catch (MapperException e) {
+            log.warn(CONVERSION_FAILED, e);
+            throw new MessageConversionException(CONVERSION_FAILED, e);
+        }
+
+        BytesMessage message = session.createBytesMessage();
+        message.setStringProperty(CONTENT_TYPE_PROPERTY, BinaryMessageCodec.CONTENT_TYPE);
+        message.writeBytes(bytes);
+
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException {
+        if (!isBinary(message)) {
+            return delegate.fromMessage(message);
+        }
+
+        BytesMessage bytesMessage = (BytesMessage) message;
+        byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(bytes);
+
+        try {
+            return codec.decode(bytes);
+        } catch (MapperException e) {
+            log.warn(CONVERSION_FAILED, e);
+            throw new MessageConversionException(CONVERSION_FAILED, e);
+        }
+    }
+
+    private static boolean isBinary(Message message) throws JMSException {
+        return message instanceof BytesMessage && BinaryMessageCodec.CONTENT_TYPE.equals(
+                message.getStringProperty(CONTENT_TYPE_PROPERTY));
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+}
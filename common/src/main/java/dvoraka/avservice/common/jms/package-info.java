@@ -0,0 +1,4 @@
+/**
+ * JMS common classes.
+ */
+package dvoraka.avservice.common.jms;
@@ -0,0 +1,51 @@
+package dvoraka.avservice.common.kafka;
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec;
+import dvoraka.avservice.common.data.DefaultAvMessage;
+import dvoraka.avservice.common.exception.MapperException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Kafka deserializer for AV messages. Reads messages from the binary codec and JSON
+ * messages, so producers can switch the format independently.
+ *
+ * @see BinaryMessageSerializer
+ */
+public class AvMessageDeserializer implements Deserializer<DefaultAvMessage> {
+
+    private final BinaryMessageCodec codec;
+    private final JsonDeserializer<DefaultAvMessage> jsonDeserializer;
+
+
+    public AvMessageDeserializer() {
+        codec = new BinaryMessageCodec();
+        jsonDeserializer = new JsonDeserializer<>(DefaultAvMessage.class);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        // no configuration
+    }
+
+    @Override
+    public DefaultAvMessage deserialize(String topic, byte[] data) {
+        if (!BinaryMessageCodec.isEncoded(data)) {
+            return jsonDeserializer.deserialize(topic, data);
+        }
+
+        try {
+            return codec.decodeAvMessage(data);
+        } catch (MapperException e) {
+            throw new SerializationException("Deserialization failed!", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+}
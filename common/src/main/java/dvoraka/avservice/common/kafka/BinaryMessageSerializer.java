@@ -0,0 +1,47 @@
+package dvoraka.avservice.common.kafka;
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec;
+import dvoraka.avservice.common.data.Message;
+import dvoraka.avservice.common.exception.MapperException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Kafka serializer for AV and replication messages with the binary codec.
+ *
+ * @see BinaryMessageCodec
+ */
+public class BinaryMessageSerializer implements Serializer<Message> {
+
+    private final BinaryMessageCodec codec;
+
+
+    public BinaryMessageSerializer() {
+        codec = new BinaryMessageCodec();
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        // no configuration
+    }
+
+    @Override
+    public byte[] serialize(String topic, Message data) {
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            return codec.encode(data);
+        } catch (MapperException e) {
+            throw new SerializationException("Serialization failed!", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Kafka common classes.
+ */
+package dvoraka.avservice.common.kafka;
@@ -2,6 +2,8 @@ package dvoraka.avservice.common.listener;
 
 import dvoraka.avservice.common.data.Message;
 
+import java.util.List;
+
 /**
  * Common listener interface for messages.
  *
@@ -16,4 +18,13 @@ public interface MessageListener<M extends Message> {
      * @param message the message
      */
     void onMessage(M message);
+
+    /**
+     * Receives a batch of messages. The default implementation receives them one by one.
+     *
+     * @param messages the messages
+     */
+    default void onMessages(List<M> messages) {
+        messages.forEach(this::onMessage);
+    }
 }
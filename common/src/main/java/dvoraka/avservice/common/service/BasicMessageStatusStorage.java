@@ -4,49 +4,189 @@ import dvoraka.avservice.common.data.MessageStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+
 /**
  * Basic implementation for a message status storage.
+ * <p>
+ * Every ID has one map entry with the status and the time of the last change packed
+ * into one long, so a status change is one atomic map operation. Times are measured
+ * with {@link System#nanoTime()}, so clock changes do not affect expiration. Statuses expire
+ * after the cache timeout. IDs changed in the same second form a generation and every
+ * generation has one expiration on the {@link ExpiryWheel#shared() shared expiry wheel},
+ * which removes its statuses without newer changes.
  */
 public class BasicMessageStatusStorage implements MessageStatusStorage {
 
     private static final Logger log = LogManager.getLogger(BasicMessageStatusStorage.class);
 
-    private final TimedStorage<String> processingMessages;
-    private final TimedStorage<String> processedMessages;
+    /**
+     * Maximum time span of a generation in milliseconds.
+     */
+    public static final long GENERATION_TIME = 1_000;
+
+    private static final int STATE_BITS = 2;
+    private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+    private static final MessageStatus[] STATES = MessageStatus.values();
+
+    static {
+        if (STATES.length > 1 << STATE_BITS) {
+            throw new IllegalStateException("Message statuses do not fit into state bits.");
+        }
+    }
+
+    private final long cacheTimeout;
+    private final long generationTime;
+    private final long epoch;
+    private final ExpiryWheel expiryWheel;
+
+    private final ConcurrentMap<String, Long> statuses;
+    private final AtomicReference<Generation> currentGeneration;
+    private final Queue<Generation> generations;
 
 
     public BasicMessageStatusStorage(long cacheTimeout) {
-        this.processingMessages = new TimedStorage<>(cacheTimeout);
-        this.processedMessages = new TimedStorage<>(cacheTimeout);
+        this(cacheTimeout, ExpiryWheel.shared());
+    }
+
+    BasicMessageStatusStorage(long cacheTimeout, ExpiryWheel expiryWheel) {
+        this.cacheTimeout = cacheTimeout;
+        this.expiryWheel = requireNonNull(expiryWheel);
+        generationTime = Math.max(1, Math.min(GENERATION_TIME, cacheTimeout));
+        epoch = System.nanoTime();
+
+        statuses = new ConcurrentHashMap<>();
+        currentGeneration = new AtomicReference<>();
+        generations = new ConcurrentLinkedQueue<>();
     }
 
     @Override
     public void started(String id) {
-        processingMessages.put(id);
+        long now = now();
+        AtomicBoolean stored = new AtomicBoolean();
+        statuses.compute(id, (key, old) -> {
+            if (isProcessed(old)) {
+                return old;
+            }
+            stored.set(true);
+
+            return pack(MessageStatus.PROCESSING, now);
+        });
+
+        if (stored.get()) {
+            track(id, now);
+        }
     }
 
     @Override
     public void processed(String id) {
-        processedMessages.put(id);
-        processingMessages.remove(id);
+        long now = now();
+        statuses.put(id, pack(MessageStatus.PROCESSED, now));
+        track(id, now);
     }
 
     @Override
     public MessageStatus getStatus(String id) {
-        if (processedMessages.contains(id)) {
-            return MessageStatus.PROCESSED;
-        } else if (processingMessages.contains(id)) {
-            return MessageStatus.PROCESSING;
-        } else {
+        Long status = statuses.get(id);
+        if (status == null || time(status) + cacheTimeout < now()) {
             return MessageStatus.UNKNOWN;
         }
+
+        return STATES[(int) (status & STATE_MASK)];
+    }
+
+    /**
+     * Returns the count of stored statuses.
+     *
+     * @return the count
+     */
+    public int size() {
+        return statuses.size();
     }
 
     @Override
     public synchronized void stop() {
         log.info("Stopping storage...");
-        processingMessages.stop();
-        processedMessages.stop();
+        Generation generation;
+        while ((generation = generations.poll()) != null) {
+            ExpiryWheel.Expiry expiry = generation.expiry;
+            if (expiry != null) {
+                expiry.cancel();
+            }
+        }
+        statuses.clear();
         log.info("Storage stopped.");
     }
+
+    private void track(String id, long now) {
+        Generation generation = currentGeneration.get();
+        while (generation == null || now >= generation.end) {
+            Generation next = new Generation(now - now % generationTime + generationTime);
+            if (currentGeneration.compareAndSet(generation, next)) {
+                next.expiry = expiryWheel.schedule(
+                        () -> expire(next),
+                        next.end - now + cacheTimeout,
+                        TimeUnit.MILLISECONDS);
+                generations.add(next);
+                generation = next;
+            } else {
+                generation = currentGeneration.get();
+            }
+        }
+
+        generation.ids.add(id);
+    }
+
+    private void expire(Generation generation) {
+        generations.remove(generation);
+
+        long deadline = now() - cacheTimeout;
+        String id;
+        while ((id = generation.ids.poll()) != null) {
+            statuses.computeIfPresent(id, (key, status) -> time(status) <= deadline ? null : status);
+        }
+    }
+
+    /**
+     * Returns milliseconds since the storage creation.
+     */
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - epoch);
+    }
+
+    private static long pack(MessageStatus status, long time) {
+        return time << STATE_BITS | status.ordinal();
+    }
+
+    private static long time(long status) {
+        return status >>> STATE_BITS;
+    }
+
+    private static boolean isProcessed(Long status) {
+        return status != null && STATES[(int) (status & STATE_MASK)] == MessageStatus.PROCESSED;
+    }
+
+    /**
+     * IDs changed before the generation end.
+     */
+    private static final class Generation {
+
+        private final long end;
+        private final Queue<String> ids;
+        private volatile ExpiryWheel.Expiry expiry;
+
+
+        private Generation(long end) {
+            this.end = end;
+            ids = new ConcurrentLinkedQueue<>();
+        }
+    }
 }
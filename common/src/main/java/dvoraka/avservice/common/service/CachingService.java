@@ -1,5 +1,9 @@
 package dvoraka.avservice.common.service;
 
+import dvoraka.avservice.common.util.Utils;
+
+import java.nio.ByteBuffer;
+
 /**
  * Caching service interface.
  */
@@ -13,6 +17,15 @@ public interface CachingService {
      */
     String arrayDigest(byte[] bytes);
 
+    /**
+     * Generates a digest for remaining bytes of the given buffer without copying them.
+     * The digest is the same as the array digest of the bytes.
+     *
+     * @param buffer the buffer, the position is not changed
+     * @return the digest or null if the remaining length is bigger than max size
+     */
+    String bufferDigest(ByteBuffer buffer);
+
     /**
      * Returns a cached info for the digest.
      *
@@ -63,4 +76,41 @@ public interface CachingService {
      * @return the size
      */
     long cacheSize();
+
+    /**
+     * Returns the signature database version of cached infos.
+     *
+     * @return the version or null if the version is not known
+     */
+    String getSignatureVersion();
+
+    /**
+     * Sets the signature database version. Clean infos ({@link Utils#OK_VIRUS_INFO})
+     * cached with a different version are invalidated. Infected infos are kept because
+     * new signatures do not make a found virus clean.
+     *
+     * @param version the version
+     */
+    void setSignatureVersion(String version);
+
+    /**
+     * Returns the count of cache hits.
+     *
+     * @return the count
+     */
+    long getHitCount();
+
+    /**
+     * Returns the count of cache misses.
+     *
+     * @return the count
+     */
+    long getMissCount();
+
+    /**
+     * Returns the count of evicted items.
+     *
+     * @return the count
+     */
+    long getEvictionCount();
 }
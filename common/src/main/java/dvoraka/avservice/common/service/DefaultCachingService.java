@@ -1,50 +1,72 @@
 package dvoraka.avservice.common.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dvoraka.avservice.common.util.Utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * Default caching service implementation.
+ * <p>
+ * The cache is bounded and evicts with the W-TinyLFU policy, so frequently scanned
+ * data stays cached and the cache does not freeze when it is full. Infos expire after
+ * the time to live and clean infos are invalidated when the signature database version
+ * changes. Digests are SHA-256 hashes by default.
  */
 @Service
+@ManagedResource
 public class DefaultCachingService implements CachingService {
 
     private static final Logger log = LogManager.getLogger(DefaultCachingService.class.getName());
 
     public static final int DEFAULT_MAX_CACHED_FILE_SIZE = 5_000;
     public static final int DEFAULT_MAX_CACHE_SIZE = 10_000;
+    /**
+     * Default time to live of cached infos in milliseconds.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 60 * 1_000;
 
     private volatile long maxCachedFileSize;
     private volatile long maxCacheSize;
+    private volatile long timeToLive;
+    private volatile String signatureVersion;
 
-    private ConcurrentMap<String, String> scanCache;
-    private Base64.Encoder b64encoder;
-    private MessageDigest digest;
+    private final Cache<String, String> scanCache;
+    private final HashingService hashingService;
 
 
     public DefaultCachingService() {
+        this(new Sha256HashingService());
+    }
+
+    /**
+     * Creates a service with a given hashing for digests.
+     *
+     * @param hashingService the hashing service
+     */
+    public DefaultCachingService(HashingService hashingService) {
+        this.hashingService = requireNonNull(hashingService);
         maxCachedFileSize = DEFAULT_MAX_CACHED_FILE_SIZE;
         maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
-
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            log.warn("Algorithm not found!", e);
-        }
-
-        if (digest == null) {
-            throw new IllegalStateException("No algorithm found!");
-        }
-
-        scanCache = new ConcurrentHashMap<>();
-        b64encoder = Base64.getEncoder();
+        timeToLive = DEFAULT_TIME_TO_LIVE;
+
+        scanCache = Caffeine.newBuilder()
+                .maximumSize(maxCacheSize)
+                .expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+                // maintenance in the calling thread keeps the size exact after writes
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
     }
 
     @Override
@@ -52,9 +74,17 @@ public class DefaultCachingService implements CachingService {
         if (bytes.length > maxCachedFileSize) {
             return null;
         }
-        synchronized (this) {
-            return b64encoder.encodeToString(digest.digest(bytes));
+
+        return hashingService.arrayHash(bytes);
+    }
+
+    @Override
+    public String bufferDigest(ByteBuffer buffer) {
+        if (buffer.remaining() > maxCachedFileSize) {
+            return null;
         }
+
+        return hashingService.bufferHash(buffer);
     }
 
     @Override
@@ -62,7 +92,7 @@ public class DefaultCachingService implements CachingService {
         if (digest == null) {
             return null;
         }
-        return scanCache.get(digest);
+        return scanCache.getIfPresent(digest);
     }
 
     @Override
@@ -70,11 +100,7 @@ public class DefaultCachingService implements CachingService {
         if (digest == null || info == null) {
             return;
         }
-        synchronized (this) {
-            if (scanCache.size() < maxCacheSize) {
-                scanCache.put(digest, info);
-            }
-        }
+        scanCache.put(digest, info);
     }
 
     @Override
@@ -95,10 +121,65 @@ public class DefaultCachingService implements CachingService {
     @Override
     public void setMaxCacheSize(long size) {
         this.maxCacheSize = size;
+        scanCache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(size));
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the time to live of cached infos.
+     *
+     * @param timeToLive the time to live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        scanCache.policy().expireAfterWrite().ifPresent(expiration ->
+                expiration.setExpiresAfter(timeToLive, TimeUnit.MILLISECONDS));
     }
 
     @Override
+    @ManagedAttribute
     public long cacheSize() {
-        return scanCache.size();
+        scanCache.cleanUp();
+
+        return scanCache.estimatedSize();
+    }
+
+    @Override
+    @ManagedAttribute
+    public String getSignatureVersion() {
+        return signatureVersion;
+    }
+
+    @Override
+    public synchronized void setSignatureVersion(String version) {
+        if (Objects.equals(signatureVersion, version)) {
+            return;
+        }
+
+        log.info("Signature version changed: {} -> {}, invalidating clean infos...",
+                signatureVersion, version);
+        signatureVersion = version;
+        scanCache.asMap().values().removeIf(Utils.OK_VIRUS_INFO::equals);
+    }
+
+    @Override
+    @ManagedAttribute
+    public long getHitCount() {
+        return scanCache.stats().hitCount();
+    }
+
+    @Override
+    @ManagedAttribute
+    public long getMissCount() {
+        return scanCache.stats().missCount();
+    }
+
+    @Override
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return scanCache.stats().evictionCount();
     }
 }
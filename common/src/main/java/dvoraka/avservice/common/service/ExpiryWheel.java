@@ -0,0 +1,364 @@
+package dvoraka.avservice.common.service;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hashed timing wheel for expiration of temporary data.
+ * <p>
+ * Scheduling and cancelling are O(1) and expirations are checked only in the bucket of
+ * the current tick, so there are no sweeps over all data. One daemon thread serves all
+ * expirations of the wheel and the {@link #shared() shared wheel} serves the whole JVM.
+ * Expiration tasks run in the wheel thread and must be short. An expiration can be late
+ * by one tick.
+ * <p>
+ * Thread-safe.
+ */
+public final class ExpiryWheel {
+
+    private static final Logger log = LogManager.getLogger(ExpiryWheel.class);
+
+    /**
+     * Default tick duration in milliseconds.
+     */
+    public static final long TICK_DURATION = 100;
+    /**
+     * Default count of buckets.
+     */
+    public static final int WHEEL_SIZE = 512;
+
+    /**
+     * Maximum count of new expirations moved to buckets in one tick.
+     */
+    private static final int MAX_TRANSFER = 100_000;
+    private static final int MAX_WHEEL_SIZE = 1 << 30;
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+
+    private final Queue<Expiry> added;
+    private final Queue<Expiry> cancelled;
+    private final Thread worker;
+    private final AtomicBoolean started;
+    private volatile boolean running;
+
+    private final AtomicLong pendingCount;
+    private final AtomicLong expiredCount;
+
+    /**
+     * Current tick, accessed only by the worker thread.
+     */
+    private long tick;
+
+
+    /**
+     * Creates a wheel.
+     *
+     * @param tickDuration the tick duration
+     * @param unit         the tick duration unit
+     * @param wheelSize    the count of buckets, rounded up to a power of two
+     * @param name         the thread name
+     */
+    ExpiryWheel(long tickDuration, TimeUnit unit, int wheelSize, String name) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Bad tick duration: " + tickDuration);
+        }
+        if (wheelSize <= 0 || wheelSize > MAX_WHEEL_SIZE) {
+            throw new IllegalArgumentException("Bad wheel size: " + wheelSize);
+        }
+
+        this.tickDuration = unit.toNanos(tickDuration);
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+
+        added = new ConcurrentLinkedQueue<>();
+        cancelled = new ConcurrentLinkedQueue<>();
+        pendingCount = new AtomicLong();
+        expiredCount = new AtomicLong();
+
+        startTime = System.nanoTime();
+        started = new AtomicBoolean();
+        running = true;
+        worker = new CustomThreadFactory(name, true).newThread(this::run);
+    }
+
+    /**
+     * Returns the wheel shared by the whole JVM.
+     *
+     * @return the wheel
+     */
+    public static ExpiryWheel shared() {
+        return SharedHolder.WHEEL;
+    }
+
+    /**
+     * Schedules a task after a given delay.
+     *
+     * @param task  the task
+     * @param delay the delay
+     * @param unit  the delay unit
+     * @return the expiry for cancelling
+     */
+    public Expiry schedule(Runnable task, long delay, TimeUnit unit) {
+        requireNonNull(task);
+        if (!running) {
+            throw new IllegalStateException("Wheel is stopped.");
+        }
+        if (started.compareAndSet(false, true)) {
+            worker.start();
+        }
+
+        long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        Expiry expiry = new Expiry(this, task, deadline);
+        pendingCount.incrementAndGet();
+        added.add(expiry);
+
+        return expiry;
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+
+            removeCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleepTime = (deadline - current + MILLISECOND - 1) / MILLISECOND;
+            if (sleepTime <= 0) {
+                return current;
+            }
+
+            try {
+                Thread.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFER; i++) {
+            Expiry expiry = added.poll();
+            if (expiry == null) {
+                break;
+            }
+            if (expiry.isCancelled()) {
+                continue;
+            }
+
+            long calculated = expiry.deadline / tickDuration;
+            expiry.remainingRounds = (calculated - tick) / wheel.length;
+            // already late expirations go to the current bucket
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(expiry);
+        }
+    }
+
+    private void removeCancelled() {
+        Expiry expiry;
+        while ((expiry = cancelled.poll()) != null) {
+            if (expiry.bucket != null) {
+                expiry.bucket.remove(expiry);
+            }
+        }
+    }
+
+    private void expired(Expiry expiry) {
+        pendingCount.decrementAndGet();
+        expiredCount.incrementAndGet();
+        try {
+            expiry.task.run();
+        } catch (RuntimeException e) {
+            log.warn("Expiration task failed!", e);
+        }
+    }
+
+    /**
+     * Stops the wheel. Pending expirations never run.
+     */
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Returns the count of scheduled expirations which neither expired nor were cancelled.
+     *
+     * @return the count
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public long getTickDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(tickDuration);
+    }
+
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    /**
+     * Scheduled expiration.
+     */
+    public static final class Expiry {
+
+        private static final int STATE_INIT = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+
+        private final ExpiryWheel expiryWheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // bucket fields are accessed only by the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Expiry next;
+        private Expiry prev;
+
+
+        private Expiry(ExpiryWheel expiryWheel, Runnable task, long deadline) {
+            this.expiryWheel = expiryWheel;
+            this.task = task;
+            this.deadline = deadline;
+            state = new AtomicInteger(STATE_INIT);
+        }
+
+        /**
+         * Cancels the expiration.
+         *
+         * @return true if cancelled, false if already expired or cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_INIT, STATE_CANCELLED)) {
+                return false;
+            }
+
+            expiryWheel.pendingCount.decrementAndGet();
+            expiryWheel.cancelled.add(this);
+
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        private boolean expire() {
+            return state.compareAndSet(STATE_INIT, STATE_EXPIRED);
+        }
+    }
+
+    /**
+     * Doubly linked list of expirations, accessed only by the worker thread.
+     */
+    private final class Bucket {
+
+        private Expiry head;
+        private Expiry tail;
+
+
+        private void add(Expiry expiry) {
+            expiry.bucket = this;
+            if (head == null) {
+                head = expiry;
+                tail = expiry;
+            } else {
+                tail.next = expiry;
+                expiry.prev = tail;
+                tail = expiry;
+            }
+        }
+
+        private void expire(long deadline) {
+            Expiry expiry = head;
+            while (expiry != null) {
+                Expiry next = expiry.next;
+                if (expiry.remainingRounds <= 0 && expiry.deadline <= deadline) {
+                    remove(expiry);
+                    if (expiry.expire()) {
+                        expired(expiry);
+                    }
+                } else if (expiry.isCancelled()) {
+                    remove(expiry);
+                } else {
+                    expiry.remainingRounds--;
+                }
+                expiry = next;
+            }
+        }
+
+        private void remove(Expiry expiry) {
+            if (expiry.bucket != this) {
+                return;
+            }
+
+            if (expiry.prev != null) {
+                expiry.prev.next = expiry.next;
+            }
+            if (expiry.next != null) {
+                expiry.next.prev = expiry.prev;
+            }
+            if (expiry == head) {
+                head = expiry.next;
+            }
+            if (expiry == tail) {
+                tail = expiry.prev;
+            }
+
+            expiry.prev = null;
+            expiry.next = null;
+            expiry.bucket = null;
+        }
+    }
+
+    private static final class SharedHolder {
+
+        private static final ExpiryWheel WHEEL = new ExpiryWheel(
+                TICK_DURATION, TimeUnit.MILLISECONDS, WHEEL_SIZE, "expiry-wheel-");
+    }
+}
@@ -0,0 +1,44 @@
+package dvoraka.avservice.common.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Hashing service algorithms for selecting an implementation by configuration.
+ */
+public enum HashingAlgorithm {
+
+    MD5(Md5HashingService::new, true),
+    SHA256(Sha256HashingService::new, true),
+    /**
+     * Fast non-cryptographic hashing. Collisions can be crafted, so it must not be used
+     * where a collision gives access to data of another input, like scan verdict caching.
+     */
+    MURMUR3(Murmur3HashingService::new, false);
+
+    private final Supplier<HashingService> factory;
+    private final boolean cryptographic;
+
+
+    HashingAlgorithm(Supplier<HashingService> factory, boolean cryptographic) {
+        this.factory = factory;
+        this.cryptographic = cryptographic;
+    }
+
+    /**
+     * Returns true if the algorithm is a cryptographic hash function.
+     *
+     * @return the result
+     */
+    public boolean isCryptographic() {
+        return cryptographic;
+    }
+
+    /**
+     * Creates a new hashing service with the algorithm.
+     *
+     * @return the hashing service
+     */
+    public HashingService newService() {
+        return factory.get();
+    }
+}
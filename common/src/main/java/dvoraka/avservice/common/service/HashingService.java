@@ -1,5 +1,7 @@
 package dvoraka.avservice.common.service;
 
+import java.nio.ByteBuffer;
+
 /**
  * Hashing service for creating string hashes from data.
  */
@@ -13,6 +15,22 @@ public interface HashingService {
      */
     String arrayHash(byte[] data);
 
+    /**
+     * Generates a hash value for remaining bytes of a given buffer. The hash is the same
+     * as the array hash of the bytes and the buffer position is not changed.
+     * <p>
+     * The default implementation copies the bytes into an array.
+     *
+     * @param data the buffer
+     * @return the hash value
+     */
+    default String bufferHash(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+
+        return arrayHash(bytes);
+    }
+
     /**
      * Generates a hash value for a given string.
      *
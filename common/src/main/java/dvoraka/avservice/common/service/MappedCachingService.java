@@ -0,0 +1,518 @@
+package dvoraka.avservice.common.service;
+
+import dvoraka.avservice.common.util.Utils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Persistent caching service backed by a memory-mapped file.
+ * <p>
+ * The file is a fixed-size hash table of buckets with slots. Infos are stored
+ * with the signature database version. Clean infos of other versions are misses,
+ * infected infos are valid for all versions. When a bucket is full the oldest slot
+ * is overwritten.
+ * Every slot has a checksum and slots with a bad checksum, for instance after
+ * a crash in the middle of a write, are dropped when the file is opened.
+ * <p>
+ * Reads are lock-free, writes lock only the bucket. A read copies the whole slot and
+ * validates the copy, so a slot overwritten during the read is a miss.
+ * <p>
+ * The capacity is given at construction and stored in the file.
+ */
+public class MappedCachingService implements CachingService {
+
+    private static final Logger log = LogManager.getLogger(MappedCachingService.class);
+
+    public static final int DEFAULT_MAX_CACHED_FILE_SIZE = 5_000;
+    /**
+     * Maximum length of a digest in bytes.
+     */
+    public static final int MAX_DIGEST_LENGTH = 64;
+    /**
+     * Maximum length of an info in bytes.
+     */
+    public static final int MAX_INFO_LENGTH = 168;
+
+    private static final int MAGIC = 0x41564331;
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_VERSION_LENGTH = 100;
+    private static final int SLOTS_PER_BUCKET = 8;
+    private static final int LOCK_COUNT = 64;
+
+    // header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_OFFSET = 4;
+    private static final int BUCKET_COUNT_OFFSET = 8;
+    private static final int VERSION_LENGTH_OFFSET = 12;
+    private static final int VERSION_OFFSET = 16;
+    private static final int HEADER_SIZE = 128;
+
+    // slot layout
+    private static final int CHECKSUM_OFFSET = 0;
+    private static final int STATE_OFFSET = 4;
+    private static final int DIGEST_LENGTH_OFFSET = 5;
+    private static final int INFO_LENGTH_OFFSET = 6;
+    private static final int SLOT_VERSION_OFFSET = 8;
+    private static final int WRITE_TIME_OFFSET = 16;
+    private static final int DIGEST_OFFSET = 24;
+    private static final int INFO_OFFSET = DIGEST_OFFSET + MAX_DIGEST_LENGTH;
+    private static final int SLOT_SIZE = INFO_OFFSET + MAX_INFO_LENGTH;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private volatile long maxCachedFileSize;
+    private volatile String signatureVersion;
+    private volatile long signatureHash;
+
+    private final Path path;
+    private final int bucketCount;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Object[] locks;
+
+    private final HashingService hashingService;
+
+    private final AtomicLong size = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+
+    /**
+     * Opens or creates a cache file with SHA-256 digests. An existing file with
+     * a different capacity or format is cleared.
+     *
+     * @param path         the cache file
+     * @param maxCacheSize the maximum items count in the cache
+     */
+    public MappedCachingService(Path path, long maxCacheSize) {
+        this(path, maxCacheSize, new Sha256HashingService());
+    }
+
+    /**
+     * Opens or creates a cache file. An existing file with a different capacity
+     * or format is cleared.
+     *
+     * @param path           the cache file
+     * @param maxCacheSize   the maximum items count in the cache
+     * @param hashingService the hashing service for digests
+     */
+    public MappedCachingService(Path path, long maxCacheSize, HashingService hashingService) {
+        this.path = requireNonNull(path);
+        this.hashingService = requireNonNull(hashingService);
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive.");
+        }
+
+        maxCachedFileSize = DEFAULT_MAX_CACHED_FILE_SIZE;
+        signatureHash = hash(null);
+        bucketCount = (int) Math.max(1, (maxCacheSize + SLOTS_PER_BUCKET - 1) / SLOTS_PER_BUCKET);
+        long fileSize = HEADER_SIZE + (long) bucketCount * SLOTS_PER_BUCKET * SLOT_SIZE;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache size is too big: " + maxCacheSize);
+        }
+
+        try {
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean existing = channel.size() == fileSize;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+            if (existing && isValidHeader()) {
+                recover();
+            } else {
+                log.info("Creating cache file: {}", path);
+                format();
+            }
+        } catch (IOException e) {
+            log.error("Cache file problem!", e);
+            throw new IllegalStateException("Cache file problem: " + path, e);
+        }
+
+        locks = new Object[LOCK_COUNT];
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private boolean isValidHeader() {
+        return buffer.getInt(MAGIC_OFFSET) == MAGIC
+                && buffer.getInt(FORMAT_OFFSET) == FORMAT_VERSION
+                && buffer.getInt(BUCKET_COUNT_OFFSET) == bucketCount;
+    }
+
+    private void format() {
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(FORMAT_OFFSET, FORMAT_VERSION);
+        buffer.putInt(BUCKET_COUNT_OFFSET, bucketCount);
+        writeVersion(null);
+    }
+
+    /**
+     * Loads the signature version and drops damaged slots.
+     */
+    private void recover() {
+        int versionLength = buffer.getInt(VERSION_LENGTH_OFFSET);
+        if (versionLength > 0 && versionLength <= MAX_VERSION_LENGTH) {
+            byte[] versionBytes = new byte[versionLength];
+            ByteBuffer view = buffer.duplicate();
+            view.position(VERSION_OFFSET);
+            view.get(versionBytes);
+            signatureVersion = new String(versionBytes, StandardCharsets.UTF_8);
+            signatureHash = hash(signatureVersion);
+        }
+
+        int damaged = 0;
+        for (int slot = 0; slot < bucketCount * SLOTS_PER_BUCKET; slot++) {
+            int offset = slotOffset(slot);
+            if (buffer.get(offset + STATE_OFFSET) == EMPTY) {
+                continue;
+            }
+
+            if (readSlot(offset, null) == null) {
+                buffer.put(offset + STATE_OFFSET, EMPTY);
+                damaged++;
+            } else {
+                size.getAndIncrement();
+            }
+        }
+        log.info("Cache file loaded: {}, items: {}, damaged: {}", path, size.get(), damaged);
+    }
+
+    private void writeVersion(String version) {
+        byte[] versionBytes = version == null
+                ? new byte[0]
+                : version.getBytes(StandardCharsets.UTF_8);
+        if (versionBytes.length > MAX_VERSION_LENGTH) {
+            log.warn("Signature version is too long for storing: {}", version);
+            versionBytes = new byte[0];
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(VERSION_OFFSET);
+        view.put(versionBytes);
+        buffer.putInt(VERSION_LENGTH_OFFSET, versionBytes.length);
+    }
+
+    @Override
+    public String arrayDigest(byte[] bytes) {
+        if (bytes.length > maxCachedFileSize) {
+            return null;
+        }
+
+        return hashingService.arrayHash(bytes);
+    }
+
+    @Override
+    public String bufferDigest(ByteBuffer buffer) {
+        if (buffer.remaining() > maxCachedFileSize) {
+            return null;
+        }
+
+        return hashingService.bufferHash(buffer);
+    }
+
+    @Override
+    public String get(String digest) {
+        if (digest == null) {
+            return null;
+        }
+
+        byte[] digestBytes = digest.getBytes(StandardCharsets.UTF_8);
+        int bucket = bucket(digestBytes);
+        for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+            int offset = slotOffset(bucket * SLOTS_PER_BUCKET + i);
+            if (buffer.get(offset + STATE_OFFSET) != USED) {
+                continue;
+            }
+
+            Slot slot = readSlot(offset, digestBytes);
+            if (slot != null
+                    && (slot.version == signatureHash || !Utils.OK_VIRUS_INFO.equals(slot.info))) {
+                hitCount.increment();
+
+                return slot.info;
+            }
+        }
+        missCount.increment();
+
+        return null;
+    }
+
+    @Override
+    public void put(String digest, String info) {
+        if (digest == null || info == null) {
+            return;
+        }
+
+        byte[] digestBytes = digest.getBytes(StandardCharsets.UTF_8);
+        byte[] infoBytes = info.getBytes(StandardCharsets.UTF_8);
+        if (digestBytes.length > MAX_DIGEST_LENGTH || infoBytes.length > MAX_INFO_LENGTH) {
+            log.debug("Item is too big for caching: {}", digest);
+
+            return;
+        }
+
+        long version = signatureHash;
+        int bucket = bucket(digestBytes);
+        synchronized (locks[bucket % LOCK_COUNT]) {
+            int emptyOffset = -1;
+            int oldestOffset = -1;
+            long oldestTime = Long.MAX_VALUE;
+            for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+                int offset = slotOffset(bucket * SLOTS_PER_BUCKET + i);
+                if (buffer.get(offset + STATE_OFFSET) == EMPTY) {
+                    if (emptyOffset == -1) {
+                        emptyOffset = offset;
+                    }
+                    continue;
+                }
+
+                if (readSlot(offset, digestBytes) != null) {
+                    // replace the same digest
+                    writeSlot(offset, digestBytes, infoBytes, version);
+
+                    return;
+                }
+
+                long writeTime = buffer.getLong(offset + WRITE_TIME_OFFSET);
+                if (writeTime < oldestTime) {
+                    oldestOffset = offset;
+                    oldestTime = writeTime;
+                }
+            }
+
+            int target;
+            if (emptyOffset != -1) {
+                target = emptyOffset;
+                size.getAndIncrement();
+            } else {
+                target = oldestOffset;
+                evictionCount.increment();
+            }
+            writeSlot(target, digestBytes, infoBytes, version);
+        }
+    }
+
+    private void writeSlot(int offset, byte[] digestBytes, byte[] infoBytes, long version) {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.put(STATE_OFFSET, USED);
+        slot.put(DIGEST_LENGTH_OFFSET, (byte) digestBytes.length);
+        slot.putShort(INFO_LENGTH_OFFSET, (short) infoBytes.length);
+        slot.putLong(SLOT_VERSION_OFFSET, version);
+        slot.putLong(WRITE_TIME_OFFSET, System.currentTimeMillis());
+        slot.position(DIGEST_OFFSET);
+        slot.put(digestBytes);
+        slot.position(INFO_OFFSET);
+        slot.put(infoBytes);
+        int checksum = checksum(slot.array(), digestBytes.length, infoBytes.length);
+
+        // invalidate the slot first, so a torn write is never read as valid
+        buffer.putInt(offset + CHECKSUM_OFFSET, 0);
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + STATE_OFFSET);
+        view.put(slot.array(), STATE_OFFSET, SLOT_SIZE - STATE_OFFSET);
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum);
+    }
+
+    /**
+     * Reads a slot. The slot is copied first and only the copy is validated and parsed,
+     * so concurrent writes cannot mix two slot contents into a valid result.
+     *
+     * @param offset      the slot offset
+     * @param digestBytes the expected digest or null for any digest
+     * @return the slot or null if the slot does not match or is damaged
+     */
+    private Slot readSlot(int offset, byte[] digestBytes) {
+        byte[] bytes = new byte[SLOT_SIZE];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        ByteBuffer slot = ByteBuffer.wrap(bytes);
+
+        int digestLength = slot.get(DIGEST_LENGTH_OFFSET);
+        int infoLength = slot.getShort(INFO_LENGTH_OFFSET);
+        if (digestLength < 0 || digestLength > MAX_DIGEST_LENGTH
+                || infoLength < 0 || infoLength > MAX_INFO_LENGTH) {
+            return null;
+        }
+        if (digestBytes != null && (digestBytes.length != digestLength || !MessageDigest.isEqual(
+                digestBytes, Arrays.copyOfRange(bytes, DIGEST_OFFSET, DIGEST_OFFSET + digestLength)))) {
+            return null;
+        }
+        if (slot.getInt(CHECKSUM_OFFSET) != checksum(bytes, digestLength, infoLength)) {
+            return null;
+        }
+
+        return new Slot(
+                new String(bytes, INFO_OFFSET, infoLength, StandardCharsets.UTF_8),
+                slot.getLong(SLOT_VERSION_OFFSET));
+    }
+
+    private static int checksum(byte[] slot, int digestLength, int infoLength) {
+        CRC32 crc = new CRC32();
+        crc.update(slot, STATE_OFFSET, DIGEST_OFFSET + digestLength - STATE_OFFSET);
+        crc.update(slot, INFO_OFFSET, infoLength);
+
+        return (int) crc.getValue();
+    }
+
+    private int bucket(byte[] digestBytes) {
+        long hash = FNV_OFFSET;
+        for (byte b : digestBytes) {
+            hash = (hash ^ b) * FNV_PRIME;
+        }
+
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) bucketCount);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long hash(String value) {
+        if (value == null) {
+            return FNV_OFFSET;
+        }
+
+        long hash = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ b) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    @Override
+    public long getMaxCachedFileSize() {
+        return maxCachedFileSize;
+    }
+
+    @Override
+    public void setMaxCachedFileSize(long size) {
+        this.maxCachedFileSize = size;
+    }
+
+    @Override
+    public long getMaxCacheSize() {
+        return (long) bucketCount * SLOTS_PER_BUCKET;
+    }
+
+    /**
+     * The capacity is fixed at construction because it gives the file layout.
+     * The call is ignored with a warning.
+     *
+     * @param size the max size
+     */
+    @Override
+    public void setMaxCacheSize(long size) {
+        log.warn("Cache file capacity is fixed, ignoring new size: {}", size);
+    }
+
+    /**
+     * Returns the count of used slots, including infos of other signature versions
+     * which were not overwritten yet.
+     *
+     * @return the size
+     */
+    @Override
+    public long cacheSize() {
+        return size.get();
+    }
+
+    @Override
+    public String getSignatureVersion() {
+        return signatureVersion;
+    }
+
+    @Override
+    public synchronized void setSignatureVersion(String version) {
+        if (Objects.equals(signatureVersion, version)) {
+            return;
+        }
+
+        log.info("Signature version changed: {} -> {}", signatureVersion, version);
+        signatureVersion = version;
+        signatureHash = hash(version);
+        writeVersion(version);
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes changes to the storage device.
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Flushes and closes the cache file.
+     */
+    @PreDestroy
+    public void close() {
+        log.info("Closing cache file: {}", path);
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Cache file closing problem!", e);
+        }
+    }
+
+    /**
+     * Validated copy of a slot.
+     */
+    private static final class Slot {
+
+        private final String info;
+        private final long version;
+
+
+        private Slot(String info, long version) {
+            this.info = info;
+            this.version = version;
+        }
+    }
+}
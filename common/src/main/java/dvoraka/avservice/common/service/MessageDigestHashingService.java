@@ -0,0 +1,71 @@
+package dvoraka.avservice.common.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hashing service with a message digest algorithm. Every thread uses its own
+ * digest instance, so the service is thread-safe without locking.
+ */
+public class MessageDigestHashingService implements HashingService {
+
+    private static final Logger log = LogManager.getLogger(MessageDigestHashingService.class);
+
+    private final String algorithm;
+    private final Base64.Encoder b64encoder;
+    private final ThreadLocal<MessageDigest> digest;
+
+
+    /**
+     * Creates a service for a given algorithm.
+     *
+     * @param algorithm the message digest algorithm name
+     */
+    public MessageDigestHashingService(String algorithm) {
+        this.algorithm = requireNonNull(algorithm);
+
+        // fail fast if the algorithm is not available
+        newDigest();
+        digest = ThreadLocal.withInitial(this::newDigest);
+        b64encoder = Base64.getEncoder();
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            log.warn("Algorithm not found!", e);
+            throw new IllegalStateException("No algorithm found: " + algorithm, e);
+        }
+    }
+
+    @Override
+    public String arrayHash(byte[] data) {
+        return b64encoder.encodeToString(digest.get().digest(data));
+    }
+
+    @Override
+    public String bufferHash(ByteBuffer data) {
+        MessageDigest messageDigest = digest.get();
+        messageDigest.update(data.duplicate());
+
+        return b64encoder.encodeToString(messageDigest.digest());
+    }
+
+    @Override
+    public String stringHash(String data) {
+        return arrayHash(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+}
@@ -0,0 +1,136 @@
+package dvoraka.avservice.common.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hashing service with the 128-bit x64 MurmurHash3 implementation.
+ * <p>
+ * Much faster than cryptographic digests and allocates only the result. Not suitable
+ * for content keys because collisions can be crafted, but good for in-memory
+ * keys like lock names. The hash is a hexadecimal string of both 64-bit halves.
+ */
+public class Murmur3HashingService implements HashingService {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final int BLOCK_SIZE = 16;
+    private static final int HEX_LENGTH = 32;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final int seed;
+
+
+    public Murmur3HashingService() {
+        this(0);
+    }
+
+    public Murmur3HashingService(int seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public String arrayHash(byte[] data) {
+        long h1 = seed & 0xffffffffL;
+        long h2 = h1;
+
+        int length = data.length;
+        int blocks = length / BLOCK_SIZE;
+        for (int i = 0; i < blocks; i++) {
+            int offset = i * BLOCK_SIZE;
+            long k1 = getLong(data, offset);
+            long k2 = getLong(data, offset + Long.BYTES);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // tail
+        int offset = blocks * BLOCK_SIZE;
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = length - offset - 1; i >= 0; i--) {
+            long b = data[offset + i] & 0xffL;
+            if (i >= Long.BYTES) {
+                k2 ^= b << ((i - Long.BYTES) * Byte.SIZE);
+            } else {
+                k1 ^= b << (i * Byte.SIZE);
+            }
+        }
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+
+        // finalization
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        char[] hex = new char[HEX_LENGTH];
+        writeHex(hex, 0, h1);
+        writeHex(hex, HEX_LENGTH / 2, h2);
+
+        return new String(hex);
+    }
+
+    @Override
+    public String stringHash(String data) {
+        return arrayHash(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            value = (value << Byte.SIZE) | (data[offset + i] & 0xffL);
+        }
+
+        return value;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+
+        return k2;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+
+        return k;
+    }
+
+    private static void writeHex(char[] hex, int offset, long value) {
+        for (int i = HEX_LENGTH / 2 - 1; i >= 0; i--) {
+            hex[offset + i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,12 @@
+package dvoraka.avservice.common.service;
+
+/**
+ * Hashing service with SHA-256 implementation. Suitable for content keys where
+ * crafted collisions must not be possible.
+ */
+public class Sha256HashingService extends MessageDigestHashingService {
+
+    public Sha256HashingService() {
+        super("SHA-256");
+    }
+}
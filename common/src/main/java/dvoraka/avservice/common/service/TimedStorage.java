@@ -1,30 +1,29 @@
 package dvoraka.avservice.common.service;
 
-import dvoraka.avservice.common.CustomThreadFactory;
-import dvoraka.avservice.common.helper.ExecutorServiceHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PreDestroy;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * Timed storage for a temporary data saving. It is up to client to delete the data but
  * there is a max time too. If you forget to clean, everything is still fine.
  * <p>
+ * Data expire through the {@link ExpiryWheel#shared() shared expiry wheel}, so storages
+ * do not need their own cleaner threads and expiration does not scan the storage.
+ * <p>
  * Thread-safe.
  */
 @Service
 @Scope("prototype")
-public class TimedStorage<T> implements ExecutorServiceHelper {
+public class TimedStorage<T> {
 
     private static final Logger log = LogManager.getLogger(TimedStorage.class);
 
@@ -32,15 +31,14 @@ public class TimedStorage<T> implements ExecutorServiceHelper {
      * Default maximum time in milliseconds.
      */
     public static final long MAX_TIME = 60_000L;
-    @SuppressWarnings("checkstyle:ConstantName")
-    private static final AtomicLong storageNumber = new AtomicLong();
     /**
      * Maximum time in milliseconds.
      */
-    private long maxTime;
+    private final long maxTime;
+    private final ExpiryWheel expiryWheel;
+    private final ConcurrentHashMap<T, Entry> storage;
+    private final AtomicLong expiredCount;
     private volatile boolean running;
-    private final ConcurrentHashMap<T, Long> storage;
-    private final ExecutorService executorService;
 
 
     public TimedStorage() {
@@ -48,43 +46,49 @@ public class TimedStorage<T> implements ExecutorServiceHelper {
     }
 
     public TimedStorage(long maxTime) {
+        this(maxTime, ExpiryWheel.shared());
+    }
+
+    TimedStorage(long maxTime, ExpiryWheel expiryWheel) {
         this.maxTime = maxTime;
+        this.expiryWheel = requireNonNull(expiryWheel);
         storage = new ConcurrentHashMap<>();
-
+        expiredCount = new AtomicLong();
         running = true;
-        String name = "storage-" + storageNumber.getAndIncrement() + "-cleaner-";
-        ThreadFactory threadFactory = new CustomThreadFactory(name);
-        executorService = Executors.newSingleThreadExecutor(threadFactory);
-        executorService.execute(this::cleanStorage);
-    }
-
-    private void cleanStorage() {
-        while (running) {
-            long now = System.currentTimeMillis();
-            storage.entrySet()
-                    .removeIf(entry -> (entry.getValue() + maxTime) < now);
-
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
-        }
     }
 
     public void put(T data) {
-        storage.put(data, System.currentTimeMillis());
+        Entry entry = new Entry(data);
+        entry.expiry = expiryWheel.schedule(entry, maxTime, TimeUnit.MILLISECONDS);
+
+        Entry old = storage.put(data, entry);
+        if (old != null) {
+            old.cancel();
+        }
     }
 
     public boolean contains(T data) {
         return storage.containsKey(data);
     }
 
+    /**
+     * Removes data.
+     *
+     * @param data the data
+     * @return the time of the data saving or 0 if data are not stored
+     */
     public long remove(T data) {
-        return Optional.ofNullable(data)
-                .map(storage::remove)
-                .orElse(0L);
+        if (data == null) {
+            return 0L;
+        }
+
+        Entry entry = storage.remove(data);
+        if (entry == null) {
+            return 0L;
+        }
+        entry.cancel();
+
+        return entry.created;
     }
 
     public long size() {
@@ -95,6 +99,18 @@ public class TimedStorage<T> implements ExecutorServiceHelper {
         return maxTime;
     }
 
+    /**
+     * Returns the count of data removed after the max time.
+     *
+     * @return the count
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Stops the storage and removes all data.
+     */
     @PreDestroy
     public void stop() {
         if (!running) {
@@ -102,10 +118,39 @@ public class TimedStorage<T> implements ExecutorServiceHelper {
         }
 
         log.info("Stopping storage...");
-
         running = false;
-        final long timeout = 5;
-        shutdownAndAwaitTermination(executorService, timeout, log);
+        storage.values().forEach(Entry::cancel);
+        storage.clear();
         log.info("Storage stopped.");
     }
+
+    /**
+     * Storage entry expiring itself.
+     */
+    private final class Entry implements Runnable {
+
+        private final T data;
+        private final long created;
+        private volatile ExpiryWheel.Expiry expiry;
+
+
+        private Entry(T data) {
+            this.data = data;
+            created = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            if (storage.remove(data, this)) {
+                expiredCount.incrementAndGet();
+            }
+        }
+
+        private void cancel() {
+            ExpiryWheel.Expiry current = expiry;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
 }
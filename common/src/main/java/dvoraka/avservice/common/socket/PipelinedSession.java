@@ -0,0 +1,280 @@
+package dvoraka.avservice.common.socket;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pipelined ClamAV IDSESSION.
+ * <p>
+ * Requests are written back-to-back on one session without waiting for previous replies.
+ * ClamAV numbers requests inside a session from 1 and prefixes every reply with
+ * the request ID ({@literal <id>: <reply>}), so replies are matched to requests by ID
+ * and can come in any order. A broken session fails all pending requests
+ * and reconnects with the next request.
+ * <p>
+ * Thread-safe.
+ */
+public class PipelinedSession implements SocketFactory {
+
+    private static final Logger log = LogManager.getLogger(PipelinedSession.class);
+
+    private static final String ID_SEPARATOR = ": ";
+    private static final ThreadFactory READER_FACTORY =
+            new CustomThreadFactory("clamd-session-reader-", true);
+
+    private final String host;
+    private final int port;
+    private final SocketFactory socketFactory;
+    private final int pipelineDepth;
+
+    private final Semaphore permits;
+    private final ConcurrentMap<Long, CompletableFuture<String>> pendingRequests;
+
+    // guarded by this
+    private Socket socket;
+    private OutputStream outputStream;
+    private long lastId;
+    private boolean closed;
+
+
+    /**
+     * Creates a session.
+     *
+     * @param host          the ClamAV host
+     * @param port          the ClamAV port
+     * @param socketFactory the socket factory, null means the session creates sockets itself
+     * @param pipelineDepth the maximum count of requests waiting for a reply
+     */
+    public PipelinedSession(String host, int port, SocketFactory socketFactory, int pipelineDepth) {
+        if (pipelineDepth < 1) {
+            throw new IllegalArgumentException("Pipeline depth must be positive.");
+        }
+
+        this.host = requireNonNull(host);
+        this.port = port;
+        if (socketFactory == null) {
+            this.socketFactory = this;
+        } else {
+            this.socketFactory = socketFactory;
+        }
+        this.pipelineDepth = pipelineDepth;
+
+        permits = new Semaphore(pipelineDepth);
+        pendingRequests = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Sends a request into the session. Waits only if the pipeline is full.
+     *
+     * @param writer the request writer
+     * @return the future with the reply without the request ID
+     */
+    public CompletableFuture<String> send(RequestWriter writer) {
+        requireNonNull(writer);
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+
+            return future;
+        }
+        future.whenComplete((result, throwable) -> permits.release());
+
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IOException("Session is closed."));
+
+                return future;
+            }
+
+            try {
+                connect();
+                // ClamAV assigns IDs in order of received commands
+                long id = ++lastId;
+                pendingRequests.put(id, future);
+                writer.write(outputStream);
+                outputStream.flush();
+            } catch (IOException e) {
+                log.info("Session problem: {}", e.getMessage());
+                reset(socket, e);
+                future.completeExceptionally(e);
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * Returns the count of requests waiting for a reply.
+     *
+     * @return the count
+     */
+    public int pendingCount() {
+        return pendingRequests.size();
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * Drops the current connection and fails all pending requests. The session reconnects
+     * with the next request.
+     *
+     * @param cause the cause for pending requests
+     */
+    public synchronized void reset(IOException cause) {
+        reset(socket, requireNonNull(cause));
+    }
+
+    /**
+     * Ends the session and fails all pending requests.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        if (socket != null) {
+            try {
+                outputStream.write("nEND\n".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            } catch (IOException e) {
+                log.debug("Session end problem!", e);
+            }
+        }
+        reset(socket, new IOException("Session is closed."));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) {
+        log.debug("Creating socket, host: {}, port: {}", host, port);
+        Socket newSocket = null;
+        try {
+            newSocket = new Socket(host, port);
+            newSocket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            log.error("Socket creating error!", e);
+        }
+
+        return newSocket;
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+
+        log.debug("Opening session, host: {}, port: {}", host, port);
+        Socket newSocket = socketFactory.createSocket(host, port);
+        if (newSocket == null) {
+            throw new IOException("Socket creating error!");
+        }
+
+        socket = newSocket;
+        lastId = 0;
+        outputStream = newSocket.getOutputStream();
+        outputStream.write("nIDSESSION\n".getBytes(StandardCharsets.UTF_8));
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                newSocket.getInputStream(), StandardCharsets.UTF_8));
+        READER_FACTORY.newThread(() -> readReplies(newSocket, reader)).start();
+    }
+
+    private void readReplies(Socket readSocket, BufferedReader reader) {
+        IOException cause;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                dispatch(line);
+            }
+            cause = new EOFException("Session closed by server.");
+        } catch (IOException e) {
+            cause = e;
+        }
+
+        synchronized (this) {
+            reset(readSocket, cause);
+        }
+    }
+
+    private void dispatch(String line) {
+        int separator = line.indexOf(ID_SEPARATOR);
+        if (separator < 1) {
+            log.warn("Unknown reply: {}", line);
+
+            return;
+        }
+
+        CompletableFuture<String> future;
+        try {
+            future = pendingRequests.remove(Long.parseLong(line.substring(0, separator)));
+        } catch (NumberFormatException e) {
+            log.warn("Bad reply ID: {}", line);
+
+            return;
+        }
+
+        if (future == null) {
+            log.warn("No request for reply: {}", line);
+        } else {
+            future.complete(line.substring(separator + ID_SEPARATOR.length()));
+        }
+    }
+
+    /**
+     * Closes a given socket if it is still the current one and fails pending requests.
+     * Must be called with the session lock.
+     */
+    private void reset(Socket brokenSocket, IOException cause) {
+        if (brokenSocket == null || brokenSocket != socket) {
+            return;
+        }
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.warn("Socket closing failed!", e);
+        }
+        socket = null;
+        outputStream = null;
+
+        pendingRequests.values().forEach(future -> future.completeExceptionally(cause));
+        pendingRequests.clear();
+    }
+
+    /**
+     * Writes one complete request into the session stream.
+     */
+    @FunctionalInterface
+    public interface RequestWriter {
+
+        /**
+         * Writes a request.
+         *
+         * @param outputStream the session output stream
+         * @throws IOException if writing fails
+         */
+        void write(OutputStream outputStream) throws IOException;
+    }
+}
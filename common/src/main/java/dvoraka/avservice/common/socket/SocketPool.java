@@ -1,5 +1,7 @@
 package dvoraka.avservice.common.socket;
 
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.helper.ExecutorServiceHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -12,6 +14,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,11 +28,41 @@ import static java.util.Objects.requireNonNull;
  * Socket pool prototype.
  * <p>
  * Current class is a mix of ClamAvSocketPool and abstract BaseSocketPool.
+ * <p>
+ * Sockets can be connected in the background with a warm-up. Borrowing waits
+ * for a free socket at most the borrow timeout. A socket idle for longer than
+ * the validation time is checked with PING before it is returned and reconnected
+ * if the check fails. A background task closes sockets idle for too long, before ClamAV
+ * closes them itself, and reconnects sockets older than the maximum lifetime.
  */
-public class SocketPool implements SocketFactory {
+public class SocketPool implements SocketFactory, ExecutorServiceHelper {
 
     private static final Logger log = LogManager.getLogger(SocketPool.class);
 
+    /**
+     * Default borrow timeout in milliseconds.
+     */
+    public static final long BORROW_TIMEOUT = 5_000;
+    /**
+     * Default idle time in milliseconds after which a socket is validated before use.
+     */
+    public static final long VALIDATION_IDLE_TIME = 10_000;
+    /**
+     * Default idle time in milliseconds after which a socket is closed. ClamAV closes idle
+     * sessions after 30 seconds by default.
+     */
+    public static final long MAX_IDLE_TIME = 25_000;
+    /**
+     * Default maximum socket lifetime in milliseconds.
+     */
+    public static final long MAX_LIFETIME = 30 * 60 * 1_000;
+    /**
+     * Maintenance period in milliseconds.
+     */
+    public static final long MAINTENANCE_PERIOD = 5_000;
+
+    private static final long MAINTENANCE_TERM_TIME_S = 5;
+
     private final String host;
     private final int port;
     private final SocketFactory socketFactory;
@@ -33,6 +70,19 @@ public class SocketPool implements SocketFactory {
     private final List<SocketWrapper> socketWrappers;
     private final BlockingQueue<SocketWrapper> availableSocketWrappers;
 
+    private final ScheduledExecutorService maintenanceService;
+
+    private volatile long borrowTimeout;
+    private volatile long validationIdleTime;
+    private volatile long maxIdleTime;
+    private volatile long maxLifetime;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitTime = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
 
     public SocketPool(int socketCount, String host, int port, SocketFactory factory) {
         this.host = host;
@@ -44,6 +94,11 @@ public class SocketPool implements SocketFactory {
             socketFactory = factory;
         }
 
+        borrowTimeout = BORROW_TIMEOUT;
+        validationIdleTime = VALIDATION_IDLE_TIME;
+        maxIdleTime = MAX_IDLE_TIME;
+        maxLifetime = MAX_LIFETIME;
+
         socketWrappers = Stream
                 .generate(() -> new SocketWrapper(host, port, socketFactory))
                 .limit(socketCount)
@@ -51,21 +106,52 @@ public class SocketPool implements SocketFactory {
 
         availableSocketWrappers = new ArrayBlockingQueue<>(socketCount);
         availableSocketWrappers.addAll(socketWrappers);
+
+        maintenanceService = Executors.newSingleThreadScheduledExecutor(
+                new CustomThreadFactory("socket-pool-maintenance-", true));
+        maintenanceService.scheduleWithFixedDelay(
+                this::maintain, MAINTENANCE_PERIOD, MAINTENANCE_PERIOD, TimeUnit.MILLISECONDS);
     }
 
     public void close() {
         log.info("Closing sockets...");
+        shutdownAndAwaitTermination(maintenanceService, MAINTENANCE_TERM_TIME_S, log);
         socketWrappers.forEach(SocketWrapper::releaseSocket);
         log.info("Done.");
     }
 
     /**
-     * Returns an available socket.
+     * Returns an available socket. Waits at most the borrow timeout for a free socket.
      *
-     * @return the socket
+     * @return the socket or null if no socket is available in the borrow timeout
      */
     public SocketWrapper getSocket() {
-        return availableSocketWrappers.poll();
+        long start = System.nanoTime();
+        SocketWrapper socket;
+        try {
+            socket = availableSocketWrappers.poll(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            socket = null;
+        }
+        borrowWaitTime.addAndGet(System.nanoTime() - start);
+
+        if (socket == null) {
+            log.warn("Pool exhausted!");
+            exhaustedCount.getAndIncrement();
+
+            return null;
+        }
+        borrowCount.getAndIncrement();
+
+        if (socket.idleTime(System.currentTimeMillis()) > validationIdleTime
+                && socket.isConnected()
+                && !socket.validate()) {
+            validationFailureCount.getAndIncrement();
+            socket.fix();
+        }
+
+        return socket;
     }
 
     /**
@@ -74,9 +160,59 @@ public class SocketPool implements SocketFactory {
      * @param socket the used socket
      */
     public void returnSocket(SocketWrapper socket) {
+        socket.touch();
         availableSocketWrappers.add(socket);
     }
 
+    /**
+     * Connects all sockets which are not in use in the background.
+     */
+    public void warmUp() {
+        maintenanceService.execute(() -> {
+            log.debug("Warming up pool...");
+            forEachAvailable(SocketWrapper::initialize);
+        });
+    }
+
+    /**
+     * Evicts idle and old sockets which are not in use.
+     */
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        forEachAvailable(socket -> {
+            if (!socket.isConnected()) {
+                return;
+            }
+
+            if (socket.idleTime(now) > maxIdleTime) {
+                log.debug("Evicting idle socket...");
+                evictionCount.getAndIncrement();
+                socket.releaseSocket();
+            } else if (socket.lifetime(now) > maxLifetime) {
+                log.debug("Replacing old socket...");
+                evictionCount.getAndIncrement();
+                socket.releaseSocket();
+                socket.initialize();
+            }
+        });
+    }
+
+    private void forEachAvailable(Consumer<SocketWrapper> action) {
+        int count = availableSocketWrappers.size();
+        for (int i = 0; i < count; i++) {
+            SocketWrapper socket = availableSocketWrappers.poll();
+            if (socket == null) {
+                return;
+            }
+
+            try {
+                action.accept(socket);
+            } finally {
+                availableSocketWrappers.add(socket);
+            }
+        }
+    }
+
     public int availableSockets() {
         return availableSocketWrappers.size();
     }
@@ -97,6 +233,68 @@ public class SocketPool implements SocketFactory {
         return socketWrappers.size();
     }
 
+    public long getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    public void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    public long getValidationIdleTime() {
+        return validationIdleTime;
+    }
+
+    public void setValidationIdleTime(long validationIdleTime) {
+        this.validationIdleTime = validationIdleTime;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the total time spent waiting for sockets in milliseconds.
+     *
+     * @return the wait time
+     */
+    public long getBorrowWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(borrowWaitTime.get());
+    }
+
+    /**
+     * Returns the count of borrowings which timed out.
+     *
+     * @return the count
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
     @Override
     public Socket createSocket(String host, int port) {
         log.debug("Creating socket, host: {}, port: {}", host, port);
@@ -113,6 +311,8 @@ public class SocketPool implements SocketFactory {
 
     public static class SocketWrapper {
 
+        private static final String PING_RESPONSE = "PONG";
+
         private final String host;
         private final int port;
         private final SocketFactory socketFactory;
@@ -121,6 +321,9 @@ public class SocketPool implements SocketFactory {
         private OutputStream outputStream;
         private BufferedReader reader;
 
+        private long created;
+        private long lastUsed;
+
 
         SocketWrapper(String host, int port, SocketFactory socketFactory) {
             this.host = requireNonNull(host);
@@ -137,12 +340,18 @@ public class SocketPool implements SocketFactory {
 
                 try {
                     socket = socketFactory.createSocket(host, port);
+                    if (socket == null) {
+                        return;
+                    }
 
                     outputStream = socket.getOutputStream();
                     outputStream.write("nIDSESSION\n".getBytes("UTF-8"));
 
                     reader = new BufferedReader(new InputStreamReader(
                             socket.getInputStream(), StandardCharsets.UTF_8));
+
+                    created = System.currentTimeMillis();
+                    lastUsed = created;
                 } catch (IOException e) {
                     log.error("Socket problem!", e);
                     socket = null;
@@ -166,6 +375,42 @@ public class SocketPool implements SocketFactory {
             initialize();
         }
 
+        /**
+         * Checks the session with PING.
+         *
+         * @return the result
+         */
+        boolean validate() {
+            try {
+                outputStream.write("nPING\n".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                String response = reader.readLine();
+                touch();
+
+                return response != null && response.endsWith(PING_RESPONSE);
+            } catch (IOException e) {
+                log.info("Socket validation failed: {}", e.getMessage());
+
+                return false;
+            }
+        }
+
+        boolean isConnected() {
+            return socket != null;
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+
+        long idleTime(long now) {
+            return now - lastUsed;
+        }
+
+        long lifetime(long now) {
+            return now - created;
+        }
+
         public OutputStream getOutputStream() {
             initialize();
 
@@ -195,6 +440,7 @@ public class SocketPool implements SocketFactory {
             } catch (IOException e) {
                 log.warn("Release socket problem!", e);
             }
+            socket = null;
         }
     }
 }
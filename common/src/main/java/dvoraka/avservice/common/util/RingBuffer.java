@@ -0,0 +1,163 @@
+package dvoraka.avservice.common.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded lock-free ring buffer.
+ * <p>
+ * Every slot has a sequence number telling whether it is free for the producer of the current
+ * lap or full for the consumer. Producers and consumers claim positions with a CAS on their
+ * counter and never wait for each other, a full buffer refuses new elements.
+ * <p>
+ * Thread-safe.
+ *
+ * @param <E> the element type
+ */
+public final class RingBuffer<E> {
+
+    /**
+     * Sequences of a single slot could not tell a full slot from a free one.
+     */
+    private static final int MIN_CAPACITY = 2;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong tail;
+    private final AtomicLong head;
+
+
+    /**
+     * Creates a buffer.
+     *
+     * @param capacity the capacity, rounded up to a power of two and at least two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Bad capacity: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        size = Math.max(size, MIN_CAPACITY);
+
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+
+        tail = new AtomicLong();
+        head = new AtomicLong();
+    }
+
+    /**
+     * Adds an element if there is free space.
+     *
+     * @param element the element
+     * @return true if the element was added, false if the buffer is full
+     */
+    public boolean offer(E element) {
+        requireNonNull(element, "Element must not be null!");
+
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // publishes the element
+                    sequences.set(index, position + 1);
+
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element.
+     *
+     * @return the element or null if the buffer is empty
+     */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    // frees the slot for the next lap
+                    sequences.set(index, position + mask + 1);
+
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to a given count of the oldest elements to a collection.
+     *
+     * @param collection  the target collection
+     * @param maxElements the maximum count of elements
+     * @return the count of moved elements
+     */
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            E element = poll();
+            if (element == null) {
+                break;
+            }
+            collection.add(element);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns an approximate count of elements.
+     *
+     * @return the count
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
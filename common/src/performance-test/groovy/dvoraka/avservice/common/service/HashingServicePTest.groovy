@@ -0,0 +1,32 @@
+package dvoraka.avservice.common.service
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Performance test for hashing services.
+ */
+class HashingServicePTest extends Specification {
+
+    @Unroll
+    def "#algorithm hash of #size bytes: #cycles times"() {
+        given:
+            HashingService service = algorithm.newService()
+            byte[] data = new byte[size]
+            new Random().nextBytes(data)
+
+        when:
+            long start = System.nanoTime()
+            cycles.times {
+                service.arrayHash(data)
+            }
+            long duration = System.nanoTime() - start
+
+        then:
+            println "${algorithm}: ${duration / cycles} ns per hash of ${size} bytes"
+
+        where:
+            [algorithm, size] << [HashingAlgorithm.values(), [64, 5_000]].combinations()
+            cycles = 1_000_000
+    }
+}
@@ -30,4 +30,12 @@ class CustomThreadFactorySpec extends Specification {
 
             !thread1.getName().equals(thread2.getName())
     }
+
+    def "daemon factory"() {
+        setup:
+            CustomThreadFactory factory = new CustomThreadFactory('TEST-DAEMON-', true)
+
+        expect:
+            factory.newThread({}).isDaemon()
+    }
 }
@@ -0,0 +1,101 @@
+package dvoraka.avservice.common
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+
+/**
+ * Executor factory spec.
+ */
+class ExecutorFactorySpec extends Specification {
+
+    def "platform thread factory"() {
+        when:
+            ThreadFactory factory = ExecutorFactory.threadFactory(ThreadMode.PLATFORM, 'TEST-', true)
+            Thread thread = factory.newThread({})
+
+        then:
+            factory instanceof CustomThreadFactory
+            thread.getName().startsWith('TEST-')
+            thread.isDaemon()
+    }
+
+    def "virtual thread factory"() {
+        when:
+            ThreadFactory factory = ExecutorFactory.threadFactory(ThreadMode.VIRTUAL, 'TEST-', false)
+            Thread thread = factory.newThread({})
+
+        then:
+            thread.getName() == 'TEST-0'
+            // only virtual threads are daemons here
+            thread.isDaemon() == ExecutorFactory.isVirtualThreadAvailable()
+    }
+
+    def "executors run tasks"() {
+        given:
+            ExecutorService executor = ExecutorFactory.newFixedThreadPool(mode, 2, 'TEST-')
+            String threadName = null
+
+        when:
+            executor.submit({ threadName = Thread.currentThread().getName() }).get()
+
+        then:
+            threadName.startsWith('TEST-')
+
+        cleanup:
+            executor.shutdown()
+            executor.awaitTermination(1, TimeUnit.SECONDS)
+
+        where:
+            mode << ThreadMode.values()
+    }
+
+    def "single thread executor"() {
+        given:
+            ExecutorService executor = ExecutorFactory.newSingleThreadExecutor(ThreadMode.VIRTUAL, 'TEST-')
+
+            Callable<String> task = new Callable<String>() {
+                @Override
+                String call() {
+                    return 'done'
+                }
+            }
+
+        expect:
+            executor.submit(task).get() == 'done'
+
+        cleanup:
+            executor.shutdown()
+    }
+
+    def "parse mode"() {
+        expect:
+            ExecutorFactory.parseMode(mode) == expected
+
+        where:
+            mode       || expected
+            null       || ThreadMode.PLATFORM
+            ''         || ThreadMode.PLATFORM
+            'virtual'  || ThreadMode.VIRTUAL
+            ' VIRTUAL' || ThreadMode.VIRTUAL
+            'PLATFORM' || ThreadMode.PLATFORM
+            'green'    || ThreadMode.PLATFORM
+    }
+
+    def "set default mode"() {
+        given:
+            ThreadMode original = ExecutorFactory.getDefaultMode()
+
+        when:
+            ExecutorFactory.setDefaultMode(ThreadMode.VIRTUAL)
+
+        then:
+            ExecutorFactory.getDefaultMode() == ThreadMode.VIRTUAL
+
+        cleanup:
+            ExecutorFactory.setDefaultMode(original)
+    }
+}
@@ -1,5 +1,7 @@
 package dvoraka.avservice.common.amqp
 
+import dvoraka.avservice.common.codec.BinaryMessageCodec
+import dvoraka.avservice.common.codec.WireFormat
 import dvoraka.avservice.common.data.AvMessage
 import dvoraka.avservice.common.exception.MapperException
 import dvoraka.avservice.common.util.Utils
@@ -87,4 +89,30 @@ class AvMessageConverterSpec extends Specification {
         then:
             thrown(MessageConversionException)
     }
+
+    def "binary conversion to and from Message"() {
+        given:
+            converter = new AvMessageConverter(mapper, WireFormat.BINARY)
+            AvMessage avMessage = Utils.genInfectedFileMessage()
+
+        when:
+            Message message = converter.toMessage(avMessage, null)
+
+        then:
+            message.getMessageProperties().getContentType() == BinaryMessageCodec.CONTENT_TYPE
+            message.getMessageProperties().getMessageId() == avMessage.getId()
+            converter.getWireFormat() == WireFormat.BINARY
+            converter.fromMessage(message) == avMessage
+            new AvMessageConverter(mapper).fromMessage(message) == avMessage
+    }
+
+    def "binary message received in JSON mode"() {
+        given:
+            AvMessage avMessage = Utils.genInfectedMessage()
+            Message message = new AvMessageConverter(mapper, WireFormat.BINARY).toMessage(avMessage, null)
+
+        expect:
+            converter.getWireFormat() == WireFormat.JSON
+            converter.fromMessage(message) == avMessage
+    }
 }
@@ -247,4 +247,41 @@ class AvMessageMapperSpec extends Specification {
         then:
             thrown(MapperException)
     }
+
+    def "data reference goes through a header"() {
+        given:
+            String reference = 'abc:10'
+            AvMessage avMessage = new DefaultAvMessage.Builder(testId)
+                    .type(MessageType.FILE_CHECK)
+                    .dataReference(reference)
+                    .build()
+
+        when:
+            Message message = mapper.transform(avMessage)
+
+        then:
+            message.getMessageProperties().getHeaders().get(AvMessageMapper.DATA_REFERENCE_KEY) == reference
+            message.getBody().length == 0
+
+        when:
+            AvMessage result = mapper.transform(message)
+
+        then:
+            result.getDataReference() == reference
+    }
+
+    def "no data reference header for messages with data"() {
+        given:
+            AvMessage avMessage = new DefaultAvMessage.Builder(testId)
+                    .type(MessageType.FILE_CHECK)
+                    .data(new byte[dataSize])
+                    .build()
+
+        when:
+            Message message = mapper.transform(avMessage)
+
+        then:
+            !message.getMessageProperties().getHeaders().containsKey(AvMessageMapper.DATA_REFERENCE_KEY)
+            mapper.transform(message).getDataReference() == null
+    }
 }
@@ -0,0 +1,72 @@
+package dvoraka.avservice.common.amqp
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec
+import dvoraka.avservice.common.codec.WireFormat
+import dvoraka.avservice.common.data.Command
+import dvoraka.avservice.common.data.MessageType
+import dvoraka.avservice.common.data.replication.DefaultReplicationMessage
+import dvoraka.avservice.common.data.replication.MessageRouting
+import dvoraka.avservice.common.data.replication.ReplicationMessage
+import org.springframework.amqp.core.Message
+import org.springframework.amqp.core.MessageProperties
+import org.springframework.amqp.support.converter.MessageConversionException
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * Replication message converter spec.
+ */
+class ReplicationMessageConverterSpec extends Specification {
+
+    @Subject
+    ReplicationMessageConverter converter
+
+    ReplicationMessage replicationMessage
+
+
+    def setup() {
+        converter = new ReplicationMessageConverter(WireFormat.BINARY)
+        replicationMessage = new DefaultReplicationMessage.Builder(null)
+                .type(MessageType.REPLICATION_COMMAND)
+                .routing(MessageRouting.BROADCAST)
+                .command(Command.DISCOVER)
+                .fromId('node1')
+                .data(new byte[5])
+                .build()
+    }
+
+    def "binary conversion"() {
+        when:
+            Message message = converter.toMessage(replicationMessage, new MessageProperties())
+
+        then:
+            message.getMessageProperties().getContentType() == BinaryMessageCodec.CONTENT_TYPE
+            BinaryMessageCodec.isEncoded(message.getBody())
+            converter.fromMessage(message).toString() == replicationMessage.toString()
+    }
+
+    def "JSON conversion"() {
+        given:
+            converter = new ReplicationMessageConverter(WireFormat.JSON)
+
+        when:
+            Message message = converter.toMessage(replicationMessage, new MessageProperties())
+
+        then:
+            message.getMessageProperties().getContentType() == MessageProperties.CONTENT_TYPE_JSON
+            new ReplicationMessageConverter(WireFormat.BINARY).fromMessage(message).toString() ==
+                    replicationMessage.toString()
+    }
+
+    def "broken binary message"() {
+        given:
+            MessageProperties properties = new MessageProperties()
+            properties.setContentType(BinaryMessageCodec.CONTENT_TYPE)
+
+        when:
+            converter.fromMessage(new Message([1, 2, 3] as byte[], properties))
+
+        then:
+            thrown(MessageConversionException)
+    }
+}
@@ -0,0 +1,31 @@
+package dvoraka.avservice.common.blob
+
+import spock.lang.Specification
+
+/**
+ * Blob reference spec.
+ */
+class BlobReferenceSpec extends Specification {
+
+    def "value and parse"() {
+        given:
+            BlobReference reference = new BlobReference('abc', 10)
+
+        expect:
+            reference.getValue() == 'abc:10'
+            BlobReference.parse('abc:10') == reference
+            BlobReference.parse('abc:10').getId() == 'abc'
+            BlobReference.parse('abc:10').getLength() == 10
+    }
+
+    def "bad references"() {
+        when:
+            BlobReference.parse(value)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            value << ['abc', 'abc:', 'abc:x', ':10', 'abc:-1', 'a:b:10']
+    }
+}
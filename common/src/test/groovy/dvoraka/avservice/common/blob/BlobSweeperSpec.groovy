@@ -0,0 +1,66 @@
+package dvoraka.avservice.common.blob
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Blob sweeper spec.
+ */
+class BlobSweeperSpec extends Specification {
+
+    @Subject
+    BlobSweeper sweeper
+
+    Path directory
+    FileBlobStore store
+
+
+    def setup() {
+        directory = Files.createTempDirectory('avservice-sweeper')
+        store = new FileBlobStore(directory)
+    }
+
+    def cleanup() {
+        sweeper?.stop()
+        directory.toFile().deleteDir()
+    }
+
+    def "blobs expire after the retention time"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(new byte[10]))
+
+        when:
+            sweeper = new BlobSweeper(new ClaimCheck(1, store), 50)
+
+        then:
+            new PollingConditions(timeout: 3).eventually {
+                assert !Files.exists(directory.resolve(id))
+            }
+    }
+
+    def "sweep failure is logged"() {
+        given:
+            BlobStore failingStore = Mock()
+            sweeper = new BlobSweeper(new ClaimCheck(1, failingStore), 60_000)
+
+        when:
+            sweeper.sweep()
+
+        then:
+            1 * failingStore.expire(60_000) >> { throw new IOException('test') }
+            notThrown(IOException)
+    }
+
+    def "bad retention"() {
+        when:
+            new BlobSweeper(ClaimCheck.disabled(), 0)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,200 @@
+package dvoraka.avservice.common.blob
+
+import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.data.DefaultAvMessage
+import dvoraka.avservice.common.data.MessageType
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Claim check spec.
+ */
+class ClaimCheckSpec extends Specification {
+
+    @Subject
+    ClaimCheck claimCheck
+
+    Path directory
+    FileBlobStore store
+
+    int threshold = 10
+
+
+    def setup() {
+        directory = Files.createTempDirectory('avservice-claims')
+        store = new FileBlobStore(directory)
+        claimCheck = new ClaimCheck(threshold, store)
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    AvMessage message(MessageType type, int size) {
+        return new DefaultAvMessage.Builder('TEST-ID')
+                .correlationId('TEST-CORR-ID')
+                .type(type)
+                .filename('file')
+                .owner('owner')
+                .data(new byte[size])
+                .build()
+    }
+
+    def "small data stay in the message"() {
+        given:
+            AvMessage message = message(MessageType.FILE_CHECK, threshold)
+
+        expect:
+            claimCheck.checkIn(message).is(message)
+            claimCheck.getClaimedCount() == 0
+    }
+
+    def "big data are claimed"() {
+        given:
+            AvMessage message = message(MessageType.FILE_SAVE, threshold + 1)
+
+        when:
+            AvMessage claimed = claimCheck.checkIn(message)
+
+        then:
+            ClaimCheck.isClaimed(claimed)
+            claimed.getDataLength() == 0
+            ClaimCheck.dataLength(claimed) == threshold + 1
+            claimed.getId() == message.getId()
+            claimed.getCorrelationId() == message.getCorrelationId()
+            claimed.getFilename() == message.getFilename()
+            claimed.getOwner() == message.getOwner()
+            claimed.getType() == message.getType()
+            claimCheck.getClaimedCount() == 1
+            claimCheck.getClaimedBytes() == threshold + 1
+    }
+
+    def "only file requests are claimed"() {
+        expect:
+            ClaimCheck.isClaimed(claimCheck.checkIn(message(type, threshold + 1))) == claimed
+
+        where:
+            type                      || claimed
+            MessageType.FILE_CHECK    || true
+            MessageType.FILE_SAVE     || true
+            MessageType.FILE_UPDATE   || true
+            MessageType.FILE_LOAD     || false
+            MessageType.RESPONSE      || false
+            MessageType.FILE_RESPONSE || false
+    }
+
+    def "zero threshold is rejected"() {
+        when:
+            new ClaimCheck(0, store)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "disabled claim check keeps data and rejects references"() {
+        given:
+            AvMessage message = message(MessageType.FILE_CHECK, threshold + 1)
+            AvMessage claimed = claimCheck.checkIn(message)
+            claimCheck = ClaimCheck.disabled()
+
+        expect:
+            !claimCheck.isEnabled()
+            claimCheck.checkIn(message).is(message)
+
+        when:
+            claimCheck.open(claimed)
+
+        then:
+            thrown(IOException)
+
+        when:
+            claimCheck.checkOut(claimed)
+
+        then:
+            thrown(IOException)
+    }
+
+    def "create from configuration"() {
+        expect:
+            !ClaimCheck.create(0, '').isEnabled()
+            ClaimCheck.create(threshold, directory.toString()).isEnabled()
+
+        when:
+            ClaimCheck.create(threshold, ' ')
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "check out restores the message"() {
+        given:
+            AvMessage message = message(MessageType.FILE_UPDATE, threshold + 1)
+            AvMessage claimed = claimCheck.checkIn(message)
+
+        expect:
+            claimCheck.checkOut(claimed) == message
+            claimCheck.open(claimed).withCloseable { it.bytes } == message.getData()
+    }
+
+    def "changed data are not checked out"() {
+        given:
+            AvMessage claimed = claimCheck.checkIn(message(MessageType.FILE_SAVE, threshold + 1))
+            String id = BlobReference.parse(claimed.getDataReference()).getId()
+            Files.write(directory.resolve(id), [1] * (threshold + 1) as byte[])
+
+        when:
+            claimCheck.checkOut(claimed)
+
+        then:
+            thrown(IOException)
+    }
+
+    def "check out of a message with data"() {
+        given:
+            AvMessage message = message(MessageType.FILE_SAVE, 1)
+
+        expect:
+            claimCheck.checkOut(message).is(message)
+    }
+
+    def "store failure keeps data in the message"() {
+        given:
+            BlobStore failingStore = Mock()
+            claimCheck = new ClaimCheck(threshold, failingStore)
+            AvMessage message = message(MessageType.FILE_CHECK, threshold + 1)
+
+        when:
+            AvMessage result = claimCheck.checkIn(message)
+
+        then:
+            1 * failingStore.put(_) >> { throw new IOException('full') }
+            result.is(message)
+            claimCheck.getClaimedCount() == 0
+    }
+
+    def "bad references"() {
+        given:
+            AvMessage message = new DefaultAvMessage.Builder('TEST-ID')
+                    .type(MessageType.FILE_CHECK)
+                    .dataReference(reference)
+                    .build()
+
+        when:
+            claimCheck.open(message)
+
+        then:
+            thrown(IOException)
+
+        when:
+            claimCheck.checkOut(message)
+
+        then:
+            thrown(IOException)
+
+        where:
+            reference << ['bad', '../../etc/passwd:10', ('0' * 64) + ':10']
+    }
+}
@@ -0,0 +1,197 @@
+package dvoraka.avservice.common.blob
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+/**
+ * File blob store spec.
+ */
+class FileBlobStoreSpec extends Specification {
+
+    @Subject
+    FileBlobStore store
+
+    Path directory
+    byte[] data = 'TEST-DATA'.getBytes(StandardCharsets.UTF_8)
+
+
+    def setup() {
+        directory = Files.createTempDirectory('avservice-blobs').resolve('store')
+        store = new FileBlobStore(directory)
+    }
+
+    def cleanup() {
+        directory.parent.toFile().deleteDir()
+    }
+
+    def "put and load"() {
+        given:
+            ByteBuffer buffer = ByteBuffer.wrap(data)
+
+        when:
+            String id = store.put(buffer)
+
+        then:
+            id ==~ /[0-9a-f]{64}/
+            buffer.position() == 0
+            store.load(reference(id)) == data
+            store.size(id) == data.length
+            store.open(reference(id)).withCloseable { it.bytes } == data
+    }
+
+    BlobReference reference(String id) {
+        return new BlobReference(id, data.length)
+    }
+
+    def "changed blobs are not loaded"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(data))
+            Files.write(directory.resolve(id), changed.getBytes(StandardCharsets.UTF_8))
+
+        when:
+            store.load(reference(id))
+
+        then:
+            thrown(IOException)
+
+        where:
+            changed << ['TEST-DATB', 'TEST-DAT', 'TEST-DATA!']
+    }
+
+    def "changed blobs are not verified"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(data))
+            Files.write(directory.resolve(id), 'TEST-DATB'.getBytes(StandardCharsets.UTF_8))
+            BlobInputStream stream = store.open(reference(id))
+
+        when:
+            stream.read(new byte[4])
+            stream.verify()
+
+        then:
+            thrown(IOException)
+
+        cleanup:
+            stream.close()
+    }
+
+    def "streams end at the referenced length"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(data))
+            BlobInputStream stream = store.open(new BlobReference(id, 4))
+
+        expect:
+            stream.bytes.length == 4
+
+        when:
+            stream.verify()
+
+        then:
+            thrown(IOException)
+
+        cleanup:
+            stream.close()
+    }
+
+    def "verify reads the rest"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(data))
+            BlobInputStream stream = store.open(reference(id))
+
+        when:
+            stream.read()
+            stream.verify()
+
+        then:
+            notThrown(IOException)
+            stream.read() == -1
+
+        cleanup:
+            stream.close()
+    }
+
+    def "the same data get the same ID"() {
+        expect:
+            store.put(ByteBuffer.wrap(data)) == store.put(ByteBuffer.wrap(data.clone()))
+            store.put(ByteBuffer.wrap(data)) != store.put(ByteBuffer.wrap(new byte[1]))
+    }
+
+    def "only blobs stay in the directory"() {
+        when:
+            String id = store.put(ByteBuffer.wrap(data))
+
+        then:
+            directory.toFile().list() as List == [id]
+    }
+
+    def "delete"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(data))
+
+        expect:
+            store.delete(id)
+            !store.delete(id)
+
+        when:
+            store.load(reference(id))
+
+        then:
+            thrown(IOException)
+    }
+
+    def "expire only old blobs"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(data))
+            String oldId = store.put(ByteBuffer.wrap(new byte[1]))
+            Path temp = Files.createFile(directory.resolve(id + '1.tmp'))
+            Path other = Files.createFile(directory.resolve('other'))
+
+        expect:
+            store.expire(60_000) == 0
+
+        when:
+            [oldId, temp.fileName.toString(), 'other'].each {
+                Files.setLastModifiedTime(directory.resolve(it), FileTime.fromMillis(0))
+            }
+
+        then:
+            store.expire(60_000) == 2
+            store.expire(60_000) == 0
+            Files.exists(directory.resolve(id))
+            Files.exists(other)
+    }
+
+    def "expire without the directory"() {
+        expect:
+            store.expire(0) == 0
+    }
+
+    def "storing again renews a blob"() {
+        given:
+            String id = store.put(ByteBuffer.wrap(data))
+            Files.setLastModifiedTime(directory.resolve(id), FileTime.fromMillis(0))
+
+        when:
+            store.put(ByteBuffer.wrap(data))
+
+        then:
+            store.expire(60_000) == 0
+    }
+
+    def "bad IDs are rejected"() {
+        when:
+            store.open(new BlobReference(id, 1))
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            id << ['../secret', 'abc', 'A' * 64]
+    }
+}
@@ -0,0 +1,146 @@
+package dvoraka.avservice.common.codec
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.data.Command
+import dvoraka.avservice.common.data.DefaultAvMessage
+import dvoraka.avservice.common.data.Message
+import dvoraka.avservice.common.data.MessageType
+import dvoraka.avservice.common.data.replication.DefaultReplicationMessage
+import dvoraka.avservice.common.data.replication.MessageRouting
+import dvoraka.avservice.common.data.replication.ReplicationMessage
+import dvoraka.avservice.common.data.replication.ReplicationStatus
+import dvoraka.avservice.common.exception.MapperException
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * Binary message codec spec.
+ */
+class BinaryMessageCodecSpec extends Specification {
+
+    @Subject
+    BinaryMessageCodec codec = new BinaryMessageCodec()
+
+
+    def "AV message round trip"() {
+        given:
+            AvMessage message = Utils.genInfectedFileMessage()
+
+        when:
+            byte[] bytes = codec.encode(message)
+
+        then:
+            BinaryMessageCodec.isEncoded(bytes)
+            codec.decodeAvMessage(bytes) == message
+            codec.decode(bytes) == message
+    }
+
+    def "AV message with null fields"() {
+        given:
+            AvMessage message = new DefaultAvMessage.Builder('ID').build()
+
+        when:
+            AvMessage decoded = codec.decodeAvMessage(codec.encode(message))
+
+        then:
+            decoded.getId() == 'ID'
+            decoded.getCorrelationId() == null
+            decoded.getType() == null
+            decoded.getFilename() == null
+            decoded.getDataReference() == null
+            decoded.getData().length == 0
+    }
+
+    def "replication message round trip"() {
+        given:
+            ReplicationMessage message = new DefaultReplicationMessage.Builder(null)
+                    .correlationId('corrId')
+                    .type(MessageType.REPLICATION_COMMAND)
+                    .data('TEST-DATA'.getBytes('UTF-8'))
+                    .filename('\u017elu\u0165ou\u010dk\u00fd')
+                    .owner('owner')
+                    .fromId('from')
+                    .toId('to')
+                    .sequence(Long.MAX_VALUE)
+                    .master(true)
+                    .routing(MessageRouting.UNICAST)
+                    .replicationStatus(ReplicationStatus.OK)
+                    .command(Command.SAVE)
+                    .build()
+
+        when:
+            byte[] bytes = codec.encode(message)
+            ReplicationMessage decoded = codec.decodeReplicationMessage(bytes)
+
+        then:
+            decoded.toString() == message.toString()
+            codec.decode(bytes) instanceof ReplicationMessage
+    }
+
+    def "binary form is smaller than JSON"() {
+        given:
+            AvMessage message = Utils.genFileMessage()
+
+        expect:
+            codec.encode(message).length < new ObjectMapper().writeValueAsBytes(message).length
+    }
+
+    def "encode unsupported message"() {
+        when:
+            codec.encode(Stub(Message))
+
+        then:
+            thrown(MapperException)
+    }
+
+    def "decode wrong kind"() {
+        given:
+            byte[] av = codec.encode(Utils.genMessage())
+
+        when:
+            codec.decodeReplicationMessage(av)
+
+        then:
+            thrown(MapperException)
+    }
+
+    def "decode malformed input"() {
+        when:
+            codec.decode(bytes as byte[])
+
+        then:
+            thrown(MapperException)
+
+        where:
+            bytes << [
+                    null,
+                    [],
+                    [0x7B, 0x22, 0x7D],
+                    [BinaryMessageCodec.MAGIC, 2, 1, 1],
+                    [BinaryMessageCodec.MAGIC, BinaryMessageCodec.VERSION, 9, 1],
+                    [BinaryMessageCodec.MAGIC, BinaryMessageCodec.VERSION, 1, 5, 0x41],
+                    [BinaryMessageCodec.MAGIC, BinaryMessageCodec.VERSION, 1, 0, 0, 0, 0, 0, 0, 0, 0],
+                    [BinaryMessageCodec.MAGIC, BinaryMessageCodec.VERSION, 1, 2, 0x41, 1, 99],
+            ]
+    }
+
+    def "decode truncated message"() {
+        given:
+            byte[] bytes = codec.encode(Utils.genFileMessage())
+
+        when:
+            codec.decode(Arrays.copyOf(bytes, bytes.length - 1))
+
+        then:
+            thrown(MapperException)
+    }
+
+    def "is encoded"() {
+        expect:
+            !BinaryMessageCodec.isEncoded(null)
+            !BinaryMessageCodec.isEncoded(new byte[0])
+            !BinaryMessageCodec.isEncoded('{}'.getBytes('UTF-8'))
+    }
+}
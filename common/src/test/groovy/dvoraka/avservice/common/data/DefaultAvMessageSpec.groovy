@@ -5,6 +5,11 @@ import nl.jqno.equalsverifier.EqualsVerifier
 import nl.jqno.equalsverifier.Warning
 import spock.lang.Specification
 
+import com.fasterxml.jackson.databind.ObjectMapper
+import dvoraka.avservice.common.data.replication.DefaultReplicationMessage
+
+import java.nio.ByteBuffer
+import java.nio.ReadOnlyBufferException
 import java.nio.charset.StandardCharsets
 
 /**
@@ -148,4 +153,115 @@ class DefaultAvMessageSpec extends Specification {
         expect:
             msg1.hashCode() != msg2.hashCode()
     }
+
+    def "data buffer is a read-only view"() {
+        given:
+            byte[] data = [1, 2, 3] as byte[]
+            DefaultAvMessage message = new DefaultAvMessage.Builder(testId)
+                    .data(data)
+                    .build()
+
+        when:
+            ByteBuffer buffer = message.getDataBuffer()
+
+        then:
+            buffer.isReadOnly()
+            buffer.remaining() == 3
+            buffer.get(2) == 3 as byte
+            message.getDataLength() == 3
+
+        when:
+            buffer.put(0, 9 as byte)
+
+        then:
+            thrown(ReadOnlyBufferException)
+    }
+
+    def "data buffer without data"() {
+        given:
+            DefaultAvMessage message = new DefaultAvMessage.Builder(testId).build()
+
+        expect:
+            message.getDataBuffer().remaining() == 0
+            message.getDataLength() == 0
+    }
+
+    def "wrap data without a copy"() {
+        given:
+            byte[] data = [1, 2, 3] as byte[]
+            DefaultAvMessage message = new DefaultAvMessage.Builder(testId)
+                    .wrapData(data)
+                    .build()
+
+        when:
+            data[0] = 5
+
+        then:
+            message.getData()[0] == 5 as byte
+    }
+
+    def "share data of another message"() {
+        given:
+            DefaultAvMessage message = new DefaultAvMessage.Builder(testId)
+                    .data([1, 2, 3] as byte[])
+                    .build()
+            DefaultReplicationMessage replicationMessage = new DefaultReplicationMessage.Builder(null)
+                    .data([4, 5] as byte[])
+                    .build()
+
+        when:
+            DefaultAvMessage copy = new DefaultAvMessage.Builder(testId)
+                    .dataOf(message)
+                    .build()
+            DefaultAvMessage replicationCopy = new DefaultAvMessage.Builder(testId)
+                    .dataOf(replicationMessage)
+                    .build()
+
+        then:
+            copy == message
+            Arrays.equals(replicationCopy.getData(), [4, 5] as byte[])
+    }
+
+    def "JSON does not contain data views"() {
+        given:
+            ObjectMapper mapper = new ObjectMapper()
+            DefaultAvMessage message = Utils.genMessage()
+
+        when:
+            String json = mapper.writeValueAsString(message)
+
+        then:
+            !json.contains('dataBuffer')
+            !json.contains('dataLength')
+            mapper.readValue(json, DefaultAvMessage) == message
+    }
+
+    def "data reference goes through JSON"() {
+        given:
+            ObjectMapper mapper = new ObjectMapper()
+            DefaultAvMessage message = new DefaultAvMessage.Builder(testId)
+                    .type(MessageType.FILE_SAVE)
+                    .dataReference('abc:10')
+                    .build()
+
+        when:
+            DefaultAvMessage result = mapper.readValue(mapper.writeValueAsString(message), DefaultAvMessage)
+
+        then:
+            result.getDataReference() == 'abc:10'
+            result.getType() == MessageType.FILE_SAVE
+    }
+
+    def "responses do not carry data references"() {
+        given:
+            DefaultAvMessage message = new DefaultAvMessage.Builder(testId)
+                    .type(MessageType.FILE_CHECK)
+                    .dataReference('abc:10')
+                    .build()
+
+        expect:
+            message.createCheckResponse('').getDataReference() == null
+            message.createErrorResponse('').getDataReference() == null
+            message.createFileMessage(new byte[0], MessageType.FILE_RESPONSE).getDataReference() == null
+    }
 }
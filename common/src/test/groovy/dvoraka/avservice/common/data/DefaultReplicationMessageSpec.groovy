@@ -112,4 +112,22 @@ class DefaultReplicationMessageSpec extends Specification
             transformed.getFilename() == loadMessage.getFilename()
             transformed.getOwner() == loadMessage.getOwner()
     }
+
+    def "data views"() {
+        given:
+            DefaultReplicationMessage message = new DefaultReplicationMessage.Builder(null)
+                    .data([1, 2, 3] as byte[])
+                    .build()
+
+        when:
+            DefaultReplicationMessage copy = new DefaultReplicationMessage.Builder(null)
+                    .dataOf(message)
+                    .build()
+
+        then:
+            message.getDataBuffer().isReadOnly()
+            message.getDataLength() == 3
+            Arrays.equals(copy.getData(), message.getData())
+            new DefaultReplicationMessage.Builder(null).build().getDataLength() == 0
+    }
 }
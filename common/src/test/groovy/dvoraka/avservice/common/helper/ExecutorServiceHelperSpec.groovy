@@ -75,5 +75,8 @@ class ExecutorServiceHelperSpec extends Specification {
 
             1 * logger.warn(_, _)
             1 * logger._
+
+            // the interrupted status is restored, clear it for other tests
+            Thread.interrupted()
     }
 }
@@ -0,0 +1,113 @@
+package dvoraka.avservice.common.jms
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec
+import dvoraka.avservice.common.codec.WireFormat
+import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.util.Utils
+import org.springframework.jms.support.converter.MessageConversionException
+import org.springframework.jms.support.converter.MessageConverter
+import spock.lang.Specification
+import spock.lang.Subject
+
+import javax.jms.BytesMessage
+import javax.jms.Message
+import javax.jms.Session
+import javax.jms.TextMessage
+
+/**
+ * Binary JMS message converter spec.
+ */
+class BinaryMessageConverterSpec extends Specification {
+
+    @Subject
+    BinaryMessageConverter converter
+
+    MessageConverter delegate
+    Session session
+
+
+    def setup() {
+        delegate = Mock()
+        session = Mock()
+        converter = new BinaryMessageConverter(delegate, WireFormat.BINARY)
+    }
+
+    def "binary conversion to message"() {
+        given:
+            AvMessage avMessage = Utils.genFileMessage()
+            BytesMessage message = Mock()
+
+        when:
+            converter.toMessage(avMessage, session)
+
+        then:
+            1 * session.createBytesMessage() >> message
+            1 * message.setStringProperty(
+                    BinaryMessageConverter.CONTENT_TYPE_PROPERTY, BinaryMessageCodec.CONTENT_TYPE)
+            1 * message.writeBytes({ new BinaryMessageCodec().decode(it) == avMessage })
+            0 * delegate._
+    }
+
+    def "JSON conversion to message"() {
+        given:
+            converter = new BinaryMessageConverter(delegate, WireFormat.JSON)
+            AvMessage avMessage = Utils.genFileMessage()
+
+        when:
+            converter.toMessage(avMessage, session)
+
+        then:
+            1 * delegate.toMessage(avMessage, session)
+            0 * session._
+    }
+
+    def "other objects go through the delegate"() {
+        when:
+            converter.toMessage('text', session)
+
+        then:
+            1 * delegate.toMessage('text', session)
+    }
+
+    def "binary conversion from message"() {
+        given:
+            AvMessage avMessage = Utils.genFileMessage()
+            byte[] bytes = new BinaryMessageCodec().encode(avMessage)
+            BytesMessage message = Stub()
+            message.getStringProperty(BinaryMessageConverter.CONTENT_TYPE_PROPERTY) >>
+                    BinaryMessageCodec.CONTENT_TYPE
+            message.getBodyLength() >> bytes.length
+            message.readBytes(_ as byte[]) >> { args ->
+                System.arraycopy(bytes, 0, args[0], 0, bytes.length)
+                return bytes.length
+            }
+
+        expect:
+            converter.fromMessage(message) == avMessage
+    }
+
+    def "broken binary message"() {
+        given:
+            BytesMessage message = Stub()
+            message.getStringProperty(BinaryMessageConverter.CONTENT_TYPE_PROPERTY) >>
+                    BinaryMessageCodec.CONTENT_TYPE
+            message.getBodyLength() >> 3
+
+        when:
+            converter.fromMessage(message)
+
+        then:
+            thrown(MessageConversionException)
+    }
+
+    def "JSON conversion from message"() {
+        given:
+            Message message = Stub(TextMessage)
+
+        when:
+            converter.fromMessage(message)
+
+        then:
+            1 * delegate.fromMessage(message)
+    }
+}
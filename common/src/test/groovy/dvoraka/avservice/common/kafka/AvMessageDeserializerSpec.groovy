@@ -0,0 +1,49 @@
+package dvoraka.avservice.common.kafka
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec
+import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.util.Utils
+import org.apache.kafka.common.errors.SerializationException
+import org.springframework.kafka.support.serializer.JsonSerializer
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * AV message deserializer spec.
+ */
+class AvMessageDeserializerSpec extends Specification {
+
+    @Subject
+    AvMessageDeserializer deserializer = new AvMessageDeserializer()
+
+    String topic = 'topic'
+
+
+    def "deserialize binary message"() {
+        given:
+            AvMessage message = Utils.genFileMessage()
+
+            byte[] bytes = new BinaryMessageSerializer().serialize(topic, message)
+
+        expect:
+            deserializer.deserialize(topic, bytes) == message
+    }
+
+    def "deserialize JSON message"() {
+        given:
+            AvMessage message = Utils.genFileMessage()
+
+            byte[] bytes = new JsonSerializer<AvMessage>().serialize(topic, message)
+
+        expect:
+            deserializer.deserialize(topic, bytes) == message
+    }
+
+    def "deserialize broken binary message"() {
+        when:
+            deserializer.deserialize(topic, [BinaryMessageCodec.MAGIC, 0, 0] as byte[])
+
+        then:
+            thrown(SerializationException)
+    }
+}
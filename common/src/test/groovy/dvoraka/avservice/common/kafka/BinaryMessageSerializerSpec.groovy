@@ -0,0 +1,46 @@
+package dvoraka.avservice.common.kafka
+
+import dvoraka.avservice.common.codec.BinaryMessageCodec
+import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.data.Message
+import dvoraka.avservice.common.util.Utils
+import org.apache.kafka.common.errors.SerializationException
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * Binary message serializer spec.
+ */
+class BinaryMessageSerializerSpec extends Specification {
+
+    @Subject
+    BinaryMessageSerializer serializer = new BinaryMessageSerializer()
+
+    String topic = 'topic'
+
+
+    def "serialize"() {
+        given:
+            AvMessage message = Utils.genFileMessage()
+
+        when:
+            byte[] bytes = serializer.serialize(topic, message)
+
+        then:
+            BinaryMessageCodec.isEncoded(bytes)
+            new BinaryMessageCodec().decodeAvMessage(bytes) == message
+    }
+
+    def "serialize null"() {
+        expect:
+            serializer.serialize(topic, null) == null
+    }
+
+    def "serialize unsupported message"() {
+        when:
+            serializer.serialize(topic, Stub(Message))
+
+        then:
+            thrown(SerializationException)
+    }
+}
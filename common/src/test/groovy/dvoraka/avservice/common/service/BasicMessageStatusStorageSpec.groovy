@@ -3,6 +3,9 @@ package dvoraka.avservice.common.service
 import dvoraka.avservice.common.data.MessageStatus
 import spock.lang.Specification
 import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.TimeUnit
 
 /**
  * BasicMessageStatusStorage spec.
@@ -48,4 +51,51 @@ class BasicMessageStatusStorageSpec extends Specification {
         expect:
             storage.getStatus('unknown') == MessageStatus.UNKNOWN
     }
+
+    def "started does not change processed status"() {
+        given:
+            String testId = 'test'
+
+        when:
+            storage.processed(testId)
+            storage.started(testId)
+
+        then:
+            storage.getStatus(testId) == MessageStatus.PROCESSED
+            storage.size() == 1
+    }
+
+    def "statuses expire"() {
+        given:
+            ExpiryWheel wheel = new ExpiryWheel(10, TimeUnit.MILLISECONDS, 8, 'test-wheel-')
+            BasicMessageStatusStorage expiringStorage = new BasicMessageStatusStorage(100, wheel)
+            PollingConditions conditions = new PollingConditions(timeout: 3)
+
+        when:
+            expiringStorage.started('first')
+            expiringStorage.processed('first')
+            expiringStorage.started('second')
+
+        then:
+            expiringStorage.size() == 2
+            conditions.eventually {
+                assert expiringStorage.size() == 0
+                assert wheel.getPendingCount() == 0
+            }
+            expiringStorage.getStatus('first') == MessageStatus.UNKNOWN
+
+        cleanup:
+            expiringStorage.stop()
+            wheel.stop()
+    }
+
+    def "stop removes statuses"() {
+        when:
+            storage.started('test')
+            storage.stop()
+
+        then:
+            storage.size() == 0
+            storage.getStatus('test') == MessageStatus.UNKNOWN
+    }
 }
@@ -1,8 +1,11 @@
 package dvoraka.avservice.common.service
 
+import dvoraka.avservice.common.util.Utils
 import spock.lang.Specification
 import spock.lang.Subject
 
+import java.nio.ByteBuffer
+
 /**
  * DefaultCachingService spec.
  */
@@ -69,6 +72,22 @@ class DefaultCachingServiceSpec extends Specification {
             !cachingService.arrayDigest(bytes)
     }
 
+    def "buffer digest is the array digest"() {
+        given:
+            byte[] bytes = 'Some text'.getBytes('UTF-8')
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer()
+
+        expect:
+            cachingService.bufferDigest(buffer) == cachingService.arrayDigest(bytes)
+            buffer.remaining() == bytes.length
+
+        when:
+            cachingService.setMaxCachedFileSize(bytes.length - 1)
+
+        then:
+            !cachingService.bufferDigest(buffer)
+    }
+
     def "you can insert null digest, info or both without NPE"() {
         when:
             cachingService.put(null, "info")
@@ -131,4 +150,97 @@ class DefaultCachingServiceSpec extends Specification {
         then:
             cachingService.getMaxCachedFileSize() == maxFileSize
     }
+
+    def "full cache evicts"() {
+        given:
+            cachingService.setMaxCacheSize(10)
+
+        when:
+            100.times {
+                cachingService.put('DIGEST' + it, 'INFO')
+            }
+
+        then:
+            cachingService.cacheSize() == 10
+            cachingService.getEvictionCount() == 90
+    }
+
+    def "hit and miss counts"() {
+        given:
+            cachingService.put('DIGEST', 'INFO')
+
+        when:
+            cachingService.get('DIGEST')
+            cachingService.get('DIGEST')
+            cachingService.get('UNKNOWN')
+
+        then:
+            cachingService.getHitCount() == 2
+            cachingService.getMissCount() == 1
+    }
+
+    def "signature version change invalidates clean infos"() {
+        given:
+            cachingService.setSignatureVersion('1')
+            cachingService.put('DIGEST', Utils.OK_VIRUS_INFO)
+
+        when:
+            cachingService.setSignatureVersion('1')
+
+        then:
+            cachingService.get('DIGEST') == Utils.OK_VIRUS_INFO
+
+        when:
+            cachingService.setSignatureVersion('2')
+
+        then:
+            cachingService.getSignatureVersion() == '2'
+            !cachingService.get('DIGEST')
+            cachingService.cacheSize() == 0
+    }
+
+    def "info expires"() {
+        given:
+            cachingService.setTimeToLive(1)
+            cachingService.put('DIGEST', 'INFO')
+
+        when:
+            sleep(20)
+
+        then:
+            cachingService.getTimeToLive() == 1
+            !cachingService.get('DIGEST')
+    }
+
+    def "concurrent digests"() {
+        given:
+            byte[] bytes = 'Some text'.getBytes('UTF-8')
+            String expected = cachingService.arrayDigest(bytes)
+            Set<String> digests = Collections.synchronizedSet(new HashSet<>())
+
+        when:
+            List<Thread> threads = (1..20).collect {
+                Thread.start {
+                    100.times {
+                        digests.add(cachingService.arrayDigest(bytes))
+                    }
+                }
+            }
+            threads*.join()
+
+        then:
+            digests == [expected] as Set
+    }
+
+    def "signature version change keeps infected infos"() {
+        given:
+            cachingService.setSignatureVersion('1')
+            cachingService.put('INFECTED', 'stream: Eicar FOUND')
+
+        when:
+            cachingService.setSignatureVersion('2')
+
+        then:
+            cachingService.get('INFECTED') == 'stream: Eicar FOUND'
+    }
 }
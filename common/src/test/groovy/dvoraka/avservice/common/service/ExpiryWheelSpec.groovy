@@ -0,0 +1,147 @@
+package dvoraka.avservice.common.service
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Expiry wheel spec.
+ */
+class ExpiryWheelSpec extends Specification {
+
+    @Subject
+    ExpiryWheel wheel
+
+    PollingConditions conditions
+
+
+    def setup() {
+        wheel = new ExpiryWheel(10, TimeUnit.MILLISECONDS, 8, 'test-wheel-')
+        conditions = new PollingConditions(timeout: 3)
+    }
+
+    def cleanup() {
+        wheel.stop()
+    }
+
+    def "wheel size is rounded to a power of two"() {
+        expect:
+            new ExpiryWheel(1, TimeUnit.MILLISECONDS, 5, 'test-').getWheelSize() == 8
+            wheel.getWheelSize() == 8
+            wheel.getTickDuration() == 10
+    }
+
+    def "bad parameters"() {
+        when:
+            new ExpiryWheel(tick, TimeUnit.MILLISECONDS, size, 'test-')
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            tick | size
+            0    | 8
+            10   | 0
+    }
+
+    def "task expires"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(1)
+
+        when:
+            ExpiryWheel.Expiry expiry = wheel.schedule({ latch.countDown() }, 20, TimeUnit.MILLISECONDS)
+
+        then:
+            latch.await(2, TimeUnit.SECONDS)
+            expiry.isExpired()
+            !expiry.cancel()
+            conditions.eventually {
+                assert wheel.getPendingCount() == 0
+                assert wheel.getExpiredCount() == 1
+            }
+    }
+
+    def "task expires after more rounds"() {
+        given:
+            long delay = 300
+            CountDownLatch latch = new CountDownLatch(1)
+            long start = System.nanoTime()
+
+        when:
+            wheel.schedule({ latch.countDown() }, delay, TimeUnit.MILLISECONDS)
+
+        then:
+            latch.await(2, TimeUnit.SECONDS)
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= delay
+    }
+
+    def "cancelled task does not expire"() {
+        given:
+            AtomicInteger counter = new AtomicInteger()
+
+        when:
+            ExpiryWheel.Expiry expiry = wheel.schedule({ counter.incrementAndGet() }, 50, TimeUnit.MILLISECONDS)
+
+        then:
+            expiry.cancel()
+            expiry.isCancelled()
+            wheel.getPendingCount() == 0
+
+        when:
+            sleep(200)
+
+        then:
+            counter.get() == 0
+            wheel.getExpiredCount() == 0
+    }
+
+    def "many tasks expire"() {
+        given:
+            int count = 1_000
+            CountDownLatch latch = new CountDownLatch(count)
+
+        when:
+            count.times {
+                wheel.schedule({ latch.countDown() }, it % 200, TimeUnit.MILLISECONDS)
+            }
+
+        then:
+            latch.await(3, TimeUnit.SECONDS)
+            conditions.eventually {
+                assert wheel.getExpiredCount() == count
+            }
+    }
+
+    def "failing task does not stop the wheel"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(1)
+
+        when:
+            wheel.schedule({ throw new IllegalStateException() }, 10, TimeUnit.MILLISECONDS)
+            wheel.schedule({ latch.countDown() }, 30, TimeUnit.MILLISECONDS)
+
+        then:
+            latch.await(2, TimeUnit.SECONDS)
+    }
+
+    def "schedule after stop"() {
+        given:
+            wheel.stop()
+
+        when:
+            wheel.schedule({}, 10, TimeUnit.MILLISECONDS)
+
+        then:
+            thrown(IllegalStateException)
+    }
+
+    def "shared wheel"() {
+        expect:
+            ExpiryWheel.shared().is(ExpiryWheel.shared())
+            ExpiryWheel.shared().getTickDuration() == ExpiryWheel.TICK_DURATION
+    }
+}
@@ -0,0 +1,31 @@
+package dvoraka.avservice.common.service
+
+import spock.lang.Specification
+
+/**
+ * HashingAlgorithm spec.
+ */
+class HashingAlgorithmSpec extends Specification {
+
+    def "new service"() {
+        expect:
+            algorithm.newService().getClass() == serviceClass
+
+        where:
+            algorithm                | serviceClass
+            HashingAlgorithm.MD5     | Md5HashingService
+            HashingAlgorithm.SHA256  | Sha256HashingService
+            HashingAlgorithm.MURMUR3 | Murmur3HashingService
+    }
+
+    def "cryptographic algorithms"() {
+        expect:
+            algorithm.isCryptographic() == cryptographic
+
+        where:
+            algorithm                | cryptographic
+            HashingAlgorithm.MD5     | true
+            HashingAlgorithm.SHA256  | true
+            HashingAlgorithm.MURMUR3 | false
+    }
+}
@@ -0,0 +1,274 @@
+package dvoraka.avservice.common.service
+
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * MappedCachingService spec.
+ */
+class MappedCachingServiceSpec extends Specification {
+
+    @Subject
+    MappedCachingService cachingService
+
+    Path file
+    long maxSize = 100
+
+
+    def setup() {
+        file = Files.createTempFile('avservice-cache', '.bin')
+        Files.delete(file)
+        cachingService = new MappedCachingService(file, maxSize)
+    }
+
+    def cleanup() {
+        cachingService.close()
+        Files.deleteIfExists(file)
+    }
+
+    def "constructor with bad size"() {
+        when:
+            new MappedCachingService(file, 0)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "put and get"() {
+        when:
+            cachingService.put('DIGEST', 'INFO')
+
+        then:
+            cachingService.get('DIGEST') == 'INFO'
+            cachingService.cacheSize() == 1
+            cachingService.getHitCount() == 1
+    }
+
+    def "get unknown digest"() {
+        expect:
+            !cachingService.get('UNKNOWN')
+            !cachingService.get(null)
+            cachingService.getMissCount() == 1
+    }
+
+    def "replace info"() {
+        when:
+            cachingService.put('DIGEST', 'INFO')
+            cachingService.put('DIGEST', 'INFO2')
+
+        then:
+            cachingService.get('DIGEST') == 'INFO2'
+            cachingService.cacheSize() == 1
+    }
+
+    def "null digest or info"() {
+        when:
+            cachingService.put(null, 'INFO')
+            cachingService.put('DIGEST', null)
+
+        then:
+            cachingService.cacheSize() == 0
+    }
+
+    def "too long info is not cached"() {
+        when:
+            cachingService.put('DIGEST', 'I' * (MappedCachingService.MAX_INFO_LENGTH + 1))
+
+        then:
+            !cachingService.get('DIGEST')
+    }
+
+    def "full cache evicts"() {
+        when:
+            1_000.times {
+                cachingService.put('DIGEST' + it, 'INFO')
+            }
+
+        then:
+            cachingService.cacheSize() == cachingService.getMaxCacheSize()
+            cachingService.getEvictionCount() == 1_000 - cachingService.getMaxCacheSize()
+            cachingService.get('DIGEST999') == 'INFO'
+    }
+
+    def "infos survive reopening"() {
+        given:
+            cachingService.setSignatureVersion('1')
+            cachingService.put('DIGEST', 'INFO')
+            cachingService.close()
+
+        when:
+            cachingService = new MappedCachingService(file, maxSize)
+
+        then:
+            cachingService.getSignatureVersion() == '1'
+            cachingService.get('DIGEST') == 'INFO'
+            cachingService.cacheSize() == 1
+    }
+
+    def "infos without version survive reopening"() {
+        given:
+            cachingService.put('DIGEST', 'INFO')
+            cachingService.close()
+
+        when:
+            cachingService = new MappedCachingService(file, maxSize)
+
+        then:
+            cachingService.get('DIGEST') == 'INFO'
+    }
+
+    def "damaged slot is dropped"() {
+        given:
+            cachingService.put('DIGEST', 'INFO')
+            cachingService.close()
+            // damage info bytes of every used slot
+            FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE).withCloseable {
+                ByteBuffer bytes = ByteBuffer.allocate((int) it.size())
+                it.read(bytes, 0)
+                for (int i = 128; i < bytes.capacity(); i += 256) {
+                    if (bytes.get(i + 4) != 0) {
+                        it.write(ByteBuffer.wrap('X'.getBytes('UTF-8')), i + 88)
+                    }
+                }
+            }
+
+        when:
+            cachingService = new MappedCachingService(file, maxSize)
+
+        then:
+            cachingService.cacheSize() == 0
+            !cachingService.get('DIGEST')
+    }
+
+    def "different capacity clears file"() {
+        given:
+            cachingService.put('DIGEST', 'INFO')
+            cachingService.close()
+
+        when:
+            cachingService = new MappedCachingService(file, maxSize * 2)
+
+        then:
+            cachingService.cacheSize() == 0
+    }
+
+    def "signature version change invalidates clean infos"() {
+        given:
+            cachingService.setSignatureVersion('1')
+            cachingService.put('DIGEST', Utils.OK_VIRUS_INFO)
+
+        when:
+            cachingService.setSignatureVersion('2')
+
+        then:
+            !cachingService.get('DIGEST')
+
+        when:
+            cachingService.setSignatureVersion('1')
+
+        then:
+            cachingService.get('DIGEST') == Utils.OK_VIRUS_INFO
+    }
+
+    def "array digest"() {
+        given:
+            byte[] bytes = 'Some text'.getBytes('UTF-8')
+
+        expect:
+            cachingService.arrayDigest(bytes) == new DefaultCachingService().arrayDigest(bytes)
+
+        when:
+            cachingService.setMaxCachedFileSize(bytes.length - 1)
+
+        then:
+            !cachingService.arrayDigest(bytes)
+            cachingService.getMaxCachedFileSize() == bytes.length - 1
+    }
+
+    def "set max cache size is ignored"() {
+        when:
+            cachingService.setMaxCacheSize(10)
+
+        then:
+            notThrown(Exception)
+            cachingService.getMaxCacheSize() == 104
+    }
+
+    def "concurrent reads never return infos of other digests"() {
+        given:
+            cachingService.close()
+            Files.delete(file)
+            // one bucket, so writers overwrite the slots readers are copying
+            cachingService = new MappedCachingService(file, 8)
+            AtomicInteger mismatches = new AtomicInteger()
+            AtomicBoolean running = new AtomicBoolean(true)
+
+        when:
+            List<Thread> writers = (1..4).collect { n ->
+                Thread.start {
+                    while (running.get()) {
+                        int i = ThreadLocalRandom.current().nextInt(32)
+                        cachingService.put("DIGEST-${i}", "INFO-${i}")
+                    }
+                }
+            }
+            List<Thread> readers = (1..4).collect {
+                Thread.start {
+                    20_000.times {
+                        int i = ThreadLocalRandom.current().nextInt(32)
+                        String info = cachingService.get("DIGEST-${i}")
+                        if (info != null && info != "INFO-${i}") {
+                            mismatches.getAndIncrement()
+                        }
+                    }
+                }
+            }
+            readers*.join()
+            running.set(false)
+            writers*.join()
+
+        then:
+            mismatches.get() == 0
+    }
+
+    def "concurrent puts"() {
+        when:
+            List<Thread> threads = (1..10).collect { n ->
+                Thread.start {
+                    100.times {
+                        cachingService.put("DIGEST-${n}-${it}", 'INFO')
+                    }
+                }
+            }
+            threads*.join()
+
+        then:
+            cachingService.cacheSize() == cachingService.getMaxCacheSize()
+            cachingService.getPath() == file
+    }
+
+    def "signature version change keeps infected infos"() {
+        given:
+            cachingService.setSignatureVersion('1')
+            cachingService.put('INFECTED', 'stream: Eicar FOUND')
+            cachingService.setSignatureVersion('2')
+            cachingService.close()
+
+        when:
+            cachingService = new MappedCachingService(file, maxSize)
+
+        then:
+            cachingService.getSignatureVersion() == '2'
+            cachingService.get('INFECTED') == 'stream: Eicar FOUND'
+    }
+}
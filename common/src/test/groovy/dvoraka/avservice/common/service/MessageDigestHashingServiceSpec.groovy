@@ -0,0 +1,68 @@
+package dvoraka.avservice.common.service
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.ByteBuffer
+
+/**
+ * MessageDigestHashingService spec.
+ */
+class MessageDigestHashingServiceSpec extends Specification {
+
+    @Subject
+    MessageDigestHashingService service
+
+
+    def setup() {
+        service = new MessageDigestHashingService('SHA-1')
+    }
+
+    def "unknown algorithm"() {
+        when:
+            new MessageDigestHashingService('UNKNOWN')
+
+        then:
+            thrown(IllegalStateException)
+    }
+
+    def "get algorithm"() {
+        expect:
+            service.getAlgorithm() == 'SHA-1'
+    }
+
+    def "array and string hash are same"() {
+        expect:
+            service.stringHash('test') == service.arrayHash('test'.getBytes('UTF-8'))
+    }
+
+    def "buffer and array hash are same"() {
+        given:
+            byte[] bytes = 'test'.getBytes('UTF-8')
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer()
+
+        expect:
+            service.bufferHash(buffer) == service.arrayHash(bytes)
+            buffer.remaining() == bytes.length
+    }
+
+    def "concurrent hashing"() {
+        given:
+            byte[] bytes = new byte[1_000]
+            String expected = service.arrayHash(bytes)
+            Set<String> hashes = Collections.synchronizedSet(new HashSet<>())
+
+        when:
+            List<Thread> threads = (1..20).collect {
+                Thread.start {
+                    1_000.times {
+                        hashes.add(service.arrayHash(bytes))
+                    }
+                }
+            }
+            threads*.join()
+
+        then:
+            hashes == [expected] as Set
+    }
+}
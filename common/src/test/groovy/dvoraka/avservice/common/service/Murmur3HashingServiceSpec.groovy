@@ -0,0 +1,51 @@
+package dvoraka.avservice.common.service
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * Murmur3HashingService spec.
+ */
+class Murmur3HashingServiceSpec extends Specification {
+
+    @Subject
+    Murmur3HashingService service
+
+
+    def setup() {
+        service = new Murmur3HashingService()
+    }
+
+    def "string hash"() {
+        expect:
+            service.stringHash(data) == hash
+
+        where:
+            data                                          || hash
+            ''                                            || '00000000000000000000000000000000'
+            'The quick brown fox jumps over the lazy dog' || 'e34bbc7bbc071b6c7a433ca9c49a9347'
+    }
+
+    def "array hash with all tail lengths"() {
+        given:
+            Set<String> hashes = new HashSet<>()
+
+        when:
+            (0..32).each {
+                hashes.add(service.arrayHash(new byte[it]))
+            }
+
+        then:
+            hashes.size() == 33
+            hashes.every { it.length() == 32 }
+    }
+
+    def "seed changes hash"() {
+        given:
+            Murmur3HashingService seeded = new Murmur3HashingService(1)
+
+        expect:
+            seeded.getSeed() == 1
+            seeded.stringHash('test') != service.stringHash('test')
+    }
+}
@@ -0,0 +1,28 @@
+package dvoraka.avservice.common.service
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * Sha256HashingService spec.
+ */
+class Sha256HashingServiceSpec extends Specification {
+
+    @Subject
+    Sha256HashingService service
+
+
+    def setup() {
+        service = new Sha256HashingService()
+    }
+
+    def "string hash"() {
+        expect:
+            service.stringHash('abc') == 'ungWv48Bz+pBQUDeXa4iI7ADYaOWF3qctBD/YfIAFa0='
+    }
+
+    def "array hash"() {
+        expect:
+            service.arrayHash(new byte[0]) == '47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU='
+    }
+}
@@ -4,6 +4,8 @@ import spock.lang.Specification
 import spock.lang.Subject
 import spock.util.concurrent.PollingConditions
 
+import java.util.concurrent.TimeUnit
+
 /**
  * Timed storage spec.
  */
@@ -81,4 +83,54 @@ class TimedStorageSpec extends Specification {
                 storage.size() == 0
             }
     }
+
+    def "put refreshes the time"() {
+        given:
+            ExpiryWheel wheel = new ExpiryWheel(10, TimeUnit.MILLISECONDS, 8, 'test-wheel-')
+            storage = new TimedStorage<>(1, wheel)
+
+        when:
+            storage.put(testData)
+            storage.put(testData)
+
+        then:
+            conditions.eventually {
+                assert storage.size() == 0
+                assert wheel.getPendingCount() == 0
+            }
+            storage.getExpiredCount() == 1
+            wheel.getExpiredCount() == 1
+
+        cleanup:
+            wheel.stop()
+    }
+
+    def "removed data do not expire"() {
+        given:
+            ExpiryWheel wheel = new ExpiryWheel(10, TimeUnit.MILLISECONDS, 8, 'test-wheel-')
+            storage = new TimedStorage<>(10_000, wheel)
+
+        when:
+            storage.put(testData)
+            long created = storage.remove(testData)
+
+        then:
+            created > 0
+            storage.remove(testData) == 0
+            storage.remove(null) == 0
+            wheel.getPendingCount() == 0
+
+        cleanup:
+            wheel.stop()
+    }
+
+    def "stop removes data"() {
+        when:
+            storage.put(testData)
+            storage.stop()
+
+        then:
+            storage.size() == 0
+            !storage.contains(testData)
+    }
 }
@@ -0,0 +1,158 @@
+package dvoraka.avservice.common.socket
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+/**
+ * Pipelined session spec.
+ */
+class PipelinedSessionSpec extends Specification {
+
+    @Subject
+    PipelinedSession session
+
+    ServerSocket server
+    int batchSize = 3
+
+
+    def setup() {
+        server = new ServerSocket(0)
+        Thread.startDaemon { serve() }
+
+        session = new PipelinedSession('localhost', server.getLocalPort(), null, batchSize)
+    }
+
+    def cleanup() {
+        session.close()
+        server.close()
+    }
+
+    /**
+     * Fake clamd session. Replies to every batch of requests in the reverse order.
+     */
+    void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept()
+                Thread.startDaemon {
+                    socket.withCloseable {
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                                socket.getInputStream(), StandardCharsets.UTF_8))
+                        assert reader.readLine() == 'nIDSESSION'
+
+                        int id = 0
+                        List<String> replies = []
+                        String line
+                        while ((line = reader.readLine()) != null && line != 'nEND') {
+                            replies.add(0, "${++id}: ${line.substring(1)}\n")
+                            if (replies.size() == batchSize) {
+                                replies.each {
+                                    socket.getOutputStream().write(it.getBytes('UTF-8'))
+                                }
+                                socket.getOutputStream().flush()
+                                replies.clear()
+                            }
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                // server closed
+            }
+        }
+    }
+
+    CompletableFuture<String> send(String command) {
+        return session.send({ out -> out.write("n${command}\n".getBytes('UTF-8')) })
+    }
+
+    def "constructor with bad pipeline depth"() {
+        when:
+            new PipelinedSession('localhost', 3310, null, 0)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "replies are matched by ID"() {
+        when:
+            List<CompletableFuture<String>> futures = (1..batchSize * 2).collect {
+                send("REQUEST-${it}")
+            }
+
+        then:
+            futures.withIndex().every { future, i -> future.get() == "REQUEST-${i + 1}" }
+            session.pendingCount() == 0
+    }
+
+    def "pending requests fail when session is closed"() {
+        given:
+            CompletableFuture<String> future = send('REQUEST')
+
+        expect:
+            session.pendingCount() == 1
+
+        when:
+            session.close()
+            future.get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof IOException
+            session.pendingCount() == 0
+    }
+
+    def "pending requests fail when session is reset"() {
+        given:
+            CompletableFuture<String> future = send('REQUEST')
+
+        when:
+            session.reset(new IOException('TEST'))
+            future.get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause().getMessage() == 'TEST'
+            session.pendingCount() == 0
+
+        when: "the session reconnects"
+            List<CompletableFuture<String>> futures = (1..batchSize).collect { send('REQUEST') }
+
+        then:
+            futures.every { it.get() == 'REQUEST' }
+    }
+
+    def "send after close"() {
+        given:
+            session.close()
+
+        when:
+            send('REQUEST').get()
+
+        then:
+            ExecutionException e = thrown()
+            e.getCause() instanceof IOException
+    }
+
+    def "send without server"() {
+        given:
+            SocketFactory socketFactory = Mock()
+            session = new PipelinedSession('localhost', 3310, socketFactory, batchSize)
+
+        when:
+            send('REQUEST').get()
+
+        then:
+            1 * socketFactory.createSocket('localhost', 3310) >> null
+            ExecutionException e = thrown()
+            e.getCause() instanceof IOException
+    }
+
+    def "get pipeline depth"() {
+        expect:
+            session.getPipelineDepth() == batchSize
+    }
+}
@@ -3,6 +3,9 @@ package dvoraka.avservice.common.socket
 import spock.lang.Specification
 import spock.lang.Subject
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
 /**
  * Socket pool spec.
  */
@@ -62,4 +65,112 @@ class SocketPoolSpec extends Specification {
         expect:
             socketFactory == socketPool.getSocketFactory()
     }
+
+    def "borrow timeout"() {
+        given:
+            socketPool = new SocketPool(1, host, port, socketFactory)
+            socketPool.setBorrowTimeout(10)
+            socketPool.getSocket()
+
+        expect:
+            socketPool.getSocket() == null
+            socketPool.getBorrowCount() == 1
+            socketPool.getExhaustedCount() == 1
+    }
+
+    def "failed validation reconnects socket"() {
+        given:
+            Socket brokenSocket = Mock()
+            brokenSocket.getOutputStream() >> new ByteArrayOutputStream()
+            brokenSocket.getInputStream() >> new ByteArrayInputStream(new byte[0])
+
+            socketPool = new SocketPool(1, host, port, socketFactory)
+            socketPool.setValidationIdleTime(-1)
+
+        when:
+            SocketPool.SocketWrapper wrapper = socketPool.getSocket()
+            wrapper.getOutputStream()
+            socketPool.returnSocket(wrapper)
+            socketPool.getSocket()
+
+        then:
+            2 * socketFactory.createSocket(host, port) >> brokenSocket >> socket
+            socketPool.getValidationFailureCount() == 1
+    }
+
+    def "successful validation"() {
+        given:
+            Socket validSocket = Mock()
+            validSocket.getOutputStream() >> new ByteArrayOutputStream()
+            validSocket.getInputStream() >> new ByteArrayInputStream('1: PONG\n'.getBytes('UTF-8'))
+
+            socketPool = new SocketPool(1, host, port, socketFactory)
+            socketPool.setValidationIdleTime(-1)
+
+        when:
+            SocketPool.SocketWrapper wrapper = socketPool.getSocket()
+            wrapper.getOutputStream()
+            socketPool.returnSocket(wrapper)
+            socketPool.getSocket()
+
+        then:
+            1 * socketFactory.createSocket(host, port) >> validSocket
+            socketPool.getValidationFailureCount() == 0
+    }
+
+    def "idle socket eviction"() {
+        given:
+            socketPool.setMaxIdleTime(-1)
+            SocketPool.SocketWrapper wrapper = socketPool.getSocket()
+
+        when:
+            wrapper.getOutputStream()
+            socketPool.returnSocket(wrapper)
+            socketPool.maintain()
+
+        then:
+            1 * socketFactory.createSocket(host, port) >> socket
+            socketPool.getEvictionCount() == 1
+            !wrapper.isConnected()
+            socketPool.availableSockets() == socketCount
+    }
+
+    def "old socket replacement"() {
+        given:
+            socketPool.setMaxLifetime(-1)
+            SocketPool.SocketWrapper wrapper = socketPool.getSocket()
+
+        when:
+            wrapper.getOutputStream()
+            socketPool.returnSocket(wrapper)
+            socketPool.maintain()
+
+        then:
+            2 * socketFactory.createSocket(host, port) >> socket
+            socketPool.getEvictionCount() == 1
+            wrapper.isConnected()
+    }
+
+    def "warm up"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(socketCount)
+            socketFactory.createSocket(host, port) >> {
+                latch.countDown()
+                return socket
+            }
+
+        when:
+            socketPool.warmUp()
+
+        then:
+            latch.await(5, TimeUnit.SECONDS)
+    }
+
+    def "close pool"() {
+        when:
+            socketPool.close()
+
+        then:
+            notThrown(Exception)
+    }
 }
@@ -0,0 +1,152 @@
+package dvoraka.avservice.common.util
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+
+/**
+ * Ring buffer spec.
+ */
+class RingBufferSpec extends Specification {
+
+    @Subject
+    RingBuffer<Integer> buffer
+
+
+    def "capacity is rounded to a power of two"() {
+        expect:
+            new RingBuffer<Integer>(capacity).capacity() == rounded
+
+        where:
+            capacity || rounded
+            1        || 2
+            2        || 2
+            3        || 4
+            4        || 4
+            1000     || 1024
+    }
+
+    def "bad capacity"() {
+        when:
+            new RingBuffer<Integer>(capacity)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            capacity << [0, -1, Integer.MAX_VALUE]
+    }
+
+    def "FIFO order over several laps"() {
+        given:
+            buffer = new RingBuffer<>(4)
+            List<Integer> polled = []
+
+        when:
+            10.times { lap ->
+                3.times { buffer.offer(lap * 3 + it) }
+                3.times { polled.add(buffer.poll()) }
+            }
+
+        then:
+            polled == (0..<30).toList()
+            buffer.isEmpty()
+            buffer.poll() == null
+    }
+
+    def "the smallest buffer"() {
+        given:
+            buffer = new RingBuffer<>(1)
+
+        expect:
+            buffer.offer(1)
+            buffer.offer(2)
+            !buffer.offer(3)
+            buffer.poll() == 1
+            buffer.offer(3)
+            buffer.poll() == 2
+            buffer.poll() == 3
+            buffer.poll() == null
+    }
+
+    def "full buffer refuses elements"() {
+        given:
+            buffer = new RingBuffer<>(2)
+
+        expect:
+            buffer.offer(1)
+            buffer.offer(2)
+            !buffer.offer(3)
+            buffer.size() == 2
+
+        when:
+            buffer.poll()
+
+        then:
+            buffer.offer(3)
+    }
+
+    def "null element"() {
+        given:
+            buffer = new RingBuffer<>(2)
+
+        when:
+            buffer.offer(null)
+
+        then:
+            thrown(NullPointerException)
+    }
+
+    def "drain to"() {
+        given:
+            buffer = new RingBuffer<>(8)
+            5.times { buffer.offer(it) }
+            List<Integer> target = []
+
+        expect:
+            buffer.drainTo(target, 3) == 3
+            target == [0, 1, 2]
+            buffer.drainTo(target, 10) == 2
+            target == [0, 1, 2, 3, 4]
+    }
+
+    def "concurrent producers and consumers"() {
+        given:
+            buffer = new RingBuffer<>(64)
+            int producers = 4
+            int perProducer = 10_000
+            Set<Integer> consumed = ConcurrentHashMap.newKeySet()
+            CountDownLatch produced = new CountDownLatch(producers)
+
+            List<Thread> threads = (0..<producers).collect { p ->
+                new Thread({
+                    perProducer.times {
+                        while (!buffer.offer(p * perProducer + it)) {
+                            Thread.yield()
+                        }
+                    }
+                    produced.countDown()
+                })
+            }
+            threads += (0..<2).collect {
+                new Thread({
+                    while (produced.getCount() > 0 || !buffer.isEmpty()) {
+                        Integer element = buffer.poll()
+                        if (element != null) {
+                            consumed.add(element)
+                        }
+                    }
+                })
+            }
+
+        when:
+            threads*.start()
+            threads*.join()
+
+        then:
+            consumed.size() == producers * perProducer
+            buffer.isEmpty()
+    }
+}
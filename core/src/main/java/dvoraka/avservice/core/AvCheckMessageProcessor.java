@@ -1,13 +1,17 @@
 package dvoraka.avservice.core;
 
 import dvoraka.avservice.avprogram.service.AvService;
-import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.ExecutorFactory;
+import dvoraka.avservice.common.ThreadMode;
+import dvoraka.avservice.common.blob.BlobInputStream;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.InfoSource;
 import dvoraka.avservice.common.data.MessageStatus;
 import dvoraka.avservice.common.exception.ScanException;
 import dvoraka.avservice.common.listener.AvMessageListener;
 import dvoraka.avservice.common.service.BasicMessageStatusStorage;
+import dvoraka.avservice.common.service.ExpiryWheel;
 import dvoraka.avservice.common.service.MessageStatusStorage;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.apache.logging.log4j.LogManager;
@@ -19,11 +23,15 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
@@ -31,6 +39,20 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * AV message processor. Checks messages for viruses.
+ * <p>
+ * Accepted messages wait for a processing thread in a bounded queue. When the queue is full,
+ * the rejection policy decides whether the sender is blocked, the message is rejected back
+ * to the sender or a busy error response is sent.
+ * <p>
+ * Messages can be split into lanes by their size. Every lane has its own threads and queue,
+ * so a few big messages do not delay many small ones.
+ * <p>
+ * Scanning threads spend most of the time waiting for the AV program, so with the virtual
+ * thread mode the thread count can match the AV program capacity instead of CPU cores.
+ * <p>
+ * Data of claimed messages are streamed from the blob store of the
+ * {@link #setClaimCheck(ClaimCheck) claim check} to the AV program. A result counts only
+ * when the streamed data match the reference.
  */
 @Service
 @ManagedResource
@@ -42,6 +64,18 @@ public class AvCheckMessageProcessor implements MessageProcessor {
     private static final Logger log = LogManager.getLogger(AvCheckMessageProcessor.class);
 
     public static final int CACHE_TIMEOUT = 60 * 1_000; // one minute
+    /**
+     * Default work queue capacity.
+     */
+    public static final int QUEUE_CAPACITY = 100;
+    /**
+     * Error info of busy responses.
+     */
+    public static final String BUSY_ERROR = "Service is busy.";
+    /**
+     * Name of the lane for all sizes when no size classes are used.
+     */
+    public static final String DEFAULT_LANE = "default";
     private static final long POOL_TERM_TIME_S = 20;
     private static final InfoSource MESSAGE_SOURCE = InfoSource.PROCESSOR;
 
@@ -49,22 +83,28 @@ public class AvCheckMessageProcessor implements MessageProcessor {
 
     private final AtomicLong receivedMsgCount = new AtomicLong();
     private final AtomicLong processedMsgCount = new AtomicLong();
+    private final AtomicLong rejectedMsgCount = new AtomicLong();
 
     private final Set<AvMessageListener> avMessageListeners;
 
     private Predicate<AvMessage> inputFilter;
+    private volatile ClaimCheck claimCheck;
 
-    private final ExecutorService executorService;
+    private final List<ProcessingLane> lanes;
 
     private final int threadCount;
     private final String serviceId;
+    private final int queueCapacity;
+    private final RejectionPolicy rejectionPolicy;
+    private final ThreadMode threadMode;
 
     private volatile boolean running;
 
 
     /**
      * Creates a processor with a given thread count, service ID, anti-virus service and
-     * message info service.
+     * message info service. The processor uses the default queue capacity and blocks senders
+     * when the queue is full.
      *
      * @param threadCount        the processing thread count
      * @param serviceId          the service ID string
@@ -78,19 +118,127 @@ public class AvCheckMessageProcessor implements MessageProcessor {
             AvService avService,
             MessageInfoService messageInfoService
     ) {
-        this.threadCount = threadCount;
+        this(threadCount, serviceId, avService, messageInfoService,
+                QUEUE_CAPACITY, RejectionPolicy.BLOCK);
+    }
+
+    /**
+     * Creates a processor with a bounded work queue and the default thread mode.
+     *
+     * @param threadCount        the processing thread count
+     * @param serviceId          the service ID string
+     * @param avService          the anti-virus service
+     * @param messageInfoService the message info service
+     * @param queueCapacity      the capacity of the queue for messages waiting for a thread
+     * @param rejectionPolicy    the policy for messages which do not fit into the queue
+     */
+    public AvCheckMessageProcessor(
+            int threadCount,
+            String serviceId,
+            AvService avService,
+            MessageInfoService messageInfoService,
+            int queueCapacity,
+            RejectionPolicy rejectionPolicy
+    ) {
+        this(threadCount, serviceId, avService, messageInfoService,
+                queueCapacity, rejectionPolicy, ExecutorFactory.getDefaultMode());
+    }
+
+    /**
+     * Creates a processor with a bounded work queue.
+     *
+     * @param threadCount        the processing thread count
+     * @param serviceId          the service ID string
+     * @param avService          the anti-virus service
+     * @param messageInfoService the message info service
+     * @param queueCapacity      the capacity of the queue for messages waiting for a thread
+     * @param rejectionPolicy    the policy for messages which do not fit into the queue
+     * @param threadMode         the processing thread mode
+     */
+    public AvCheckMessageProcessor(
+            int threadCount,
+            String serviceId,
+            AvService avService,
+            MessageInfoService messageInfoService,
+            int queueCapacity,
+            RejectionPolicy rejectionPolicy,
+            ThreadMode threadMode
+    ) {
+        this(Collections.singletonList(new SizeClass(DEFAULT_LANE, Long.MAX_VALUE, threadCount)),
+                serviceId, avService, messageInfoService, queueCapacity, rejectionPolicy, threadMode);
+    }
+
+    /**
+     * Creates a processor with lanes for message size classes. Every lane has its own threads
+     * and bounded queue. A message goes to the first lane with a big enough size, so the
+     * classes must be sorted by the size and the last one must accept any size.
+     *
+     * @param sizeClasses        the size classes
+     * @param serviceId          the service ID string
+     * @param avService          the anti-virus service
+     * @param messageInfoService the message info service
+     * @param queueCapacity      the queue capacity of every lane
+     * @param rejectionPolicy    the policy for messages which do not fit into the queue
+     * @param threadMode         the processing thread mode
+     */
+    public AvCheckMessageProcessor(
+            List<SizeClass> sizeClasses,
+            String serviceId,
+            AvService avService,
+            MessageInfoService messageInfoService,
+            int queueCapacity,
+            RejectionPolicy rejectionPolicy,
+            ThreadMode threadMode
+    ) {
+        checkSizeClasses(sizeClasses);
+        this.threadCount = sizeClasses.stream()
+                .mapToInt(SizeClass::getThreadCount)
+                .sum();
         this.serviceId = serviceId;
         this.avService = requireNonNull(avService);
         this.messageInfoService = requireNonNull(messageInfoService);
-
-        ThreadFactory threadFactory = new CustomThreadFactory("check-message-processor-");
-        executorService = Executors.newFixedThreadPool(threadCount, threadFactory);
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        this.queueCapacity = queueCapacity;
+        this.rejectionPolicy = requireNonNull(rejectionPolicy);
+        this.threadMode = requireNonNull(threadMode);
+
+        List<ProcessingLane> newLanes = new ArrayList<>();
+        for (SizeClass sizeClass : sizeClasses) {
+            String threadName = sizeClasses.size() == 1
+                    ? "check-message-processor-"
+                    : "check-message-processor-" + sizeClass.getName() + "-";
+            ThreadFactory threadFactory = ExecutorFactory.threadFactory(
+                    threadMode, threadName, false);
+            newLanes.add(new ProcessingLane(
+                    sizeClass, queueCapacity, threadFactory, this::handleFullQueue));
+        }
+        lanes = Collections.unmodifiableList(newLanes);
 
         statusStorage = new BasicMessageStatusStorage(CACHE_TIMEOUT);
 
         avMessageListeners = new CopyOnWriteArraySet<>();
     }
 
+    private static void checkSizeClasses(List<SizeClass> sizeClasses) {
+        if (sizeClasses.isEmpty()) {
+            throw new IllegalArgumentException("No size classes.");
+        }
+
+        long previousSize = -1;
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass.getMaxSize() <= previousSize) {
+                throw new IllegalArgumentException("Size classes are not sorted: " + sizeClasses);
+            }
+            previousSize = sizeClass.getMaxSize();
+        }
+
+        if (previousSize != Long.MAX_VALUE) {
+            throw new IllegalArgumentException("The last size class must accept any size.");
+        }
+    }
+
     @PostConstruct
     @Override
     public void start() {
@@ -113,7 +261,9 @@ public class AvCheckMessageProcessor implements MessageProcessor {
         setRunning(false);
         statusStorage.stop();
 
-        shutdownAndAwaitTermination(executorService, POOL_TERM_TIME_S, log);
+        lanes.forEach(lane -> lane.getExecutorService().shutdown());
+        lanes.forEach(lane ->
+                shutdownAndAwaitTermination(lane.getExecutorService(), POOL_TERM_TIME_S, log));
         log.debug("Processor stopped.");
     }
 
@@ -128,14 +278,66 @@ public class AvCheckMessageProcessor implements MessageProcessor {
         }
 
         log.debug("Processing message...");
-        statusStorage.started(message.getId());
+        try {
+            selectLane(message).execute(() -> processMessage(message));
+        } catch (RejectedExecutionException e) {
+            if (rejectionPolicy != RejectionPolicy.BUSY || !isRunning()) {
+                // not accepted, so no status and no info, the sender handles the message
+                log.debug("Message rejected: {}", message);
+                throw e;
+            }
 
-        messageInfoService.save(message, MESSAGE_SOURCE, serviceId);
+            log.debug("Service busy, replying: {}", message);
+            statusStorage.processed(message.getId());
+            messageInfoService.save(message, MESSAGE_SOURCE, serviceId);
+            sendResponse(prepareErrorResponse(message, BUSY_ERROR));
+
+            return;
+        }
 
-        executorService.execute(() -> processMessage(message));
+        // a processed status stored meanwhile by a fast thread is kept
+        statusStorage.started(message.getId());
+        messageInfoService.save(message, MESSAGE_SOURCE, serviceId);
         log.debug("Message accepted.");
     }
 
+    private ProcessingLane selectLane(AvMessage message) {
+        long size = ClaimCheck.dataLength(message);
+        for (ProcessingLane lane : lanes) {
+            if (lane.accepts(size)) {
+                return lane;
+            }
+        }
+
+        // the last lane accepts any size
+        return lanes.get(lanes.size() - 1);
+    }
+
+    /**
+     * Handles a task which did not fit into the queue. With the blocking policy waits for
+     * free space in the queue, otherwise rejects the task.
+     *
+     * @param task     the task
+     * @param executor the executor
+     */
+    private void handleFullQueue(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Processor is stopped.");
+        }
+
+        rejectedMsgCount.getAndIncrement();
+        if (rejectionPolicy != RejectionPolicy.BLOCK) {
+            throw new RejectedExecutionException("Queue is full.");
+        }
+
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Waiting for the queue interrupted.", e);
+        }
+    }
+
     @Override
     public MessageStatus messageStatus(String id) {
         log.debug("Message status call from: " + Thread.currentThread().getName());
@@ -149,9 +351,11 @@ public class AvCheckMessageProcessor implements MessageProcessor {
         String virusInfo = null;
         String error = null;
         try {
-            byte[] data = message.getData();
-            if (data != null && data.length != 0) {
-                virusInfo = avService.scanBytesWithInfo(data);
+            if (ClaimCheck.isClaimed(message)) {
+                virusInfo = scanClaimed(message);
+            } else if (message.getDataLength() != 0) {
+                // a read-only view, the data are not copied
+                virusInfo = avService.scanBufferWithInfo(message.getDataBuffer());
             } else {
                 throw new ScanException("No data in the message.");
             }
@@ -172,6 +376,23 @@ public class AvCheckMessageProcessor implements MessageProcessor {
         }
     }
 
+    private String scanClaimed(AvMessage message) throws ScanException {
+        if (claimCheck == null) {
+            throw new ScanException("No claim check for claimed data.");
+        }
+
+        String virusInfo;
+        try (BlobInputStream data = claimCheck.open(message)) {
+            virusInfo = avService.scanStreamWithInfo(data);
+            // the result is valid only for the referenced data
+            data.verify();
+        } catch (IOException e) {
+            throw new ScanException("Claimed data not available.", e);
+        }
+
+        return virusInfo;
+    }
+
     private void sendResponse(AvMessage message) {
         notifyListeners(avMessageListeners, message);
     }
@@ -191,6 +412,15 @@ public class AvCheckMessageProcessor implements MessageProcessor {
         inputFilter = filter;
     }
 
+    /**
+     * Sets a claim check for reading claimed message data.
+     *
+     * @param claimCheck the claim check
+     */
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+    }
+
     /**
      * Returns actual observer count.
      *
@@ -221,4 +451,79 @@ public class AvCheckMessageProcessor implements MessageProcessor {
     public long getProcessedMsgCount() {
         return processedMsgCount.get();
     }
+
+    /**
+     * Returns the count of messages which did not fit into the queue. With the blocking
+     * policy, it is the count of senders which had to wait.
+     *
+     * @return the count
+     */
+    @ManagedAttribute
+    public long getRejectedMsgCount() {
+        return rejectedMsgCount.get();
+    }
+
+    /**
+     * Returns the count of messages waiting for a processing thread.
+     *
+     * @return the queue depth
+     */
+    @ManagedAttribute
+    public int getQueueSize() {
+        return lanes.stream()
+                .mapToInt(ProcessingLane::getQueueSize)
+                .sum();
+    }
+
+    @ManagedAttribute
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @ManagedAttribute
+    public int getActiveThreadCount() {
+        return lanes.stream()
+                .mapToInt(ProcessingLane::getActiveCount)
+                .sum();
+    }
+
+    /**
+     * Returns statistics of all processing lanes.
+     *
+     * @return the statistics, one line per lane
+     */
+    @ManagedAttribute
+    public String[] getLaneStatistics() {
+        return lanes.stream()
+                .map(ProcessingLane::toString)
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Returns the count of message statuses and other temporary data waiting for
+     * the expiration in the whole service.
+     *
+     * @return the count
+     */
+    @ManagedAttribute
+    public long getExpiringEntryCount() {
+        return ExpiryWheel.shared().getPendingCount();
+    }
+
+    @ManagedAttribute
+    public long getExpiredEntryCount() {
+        return ExpiryWheel.shared().getExpiredCount();
+    }
+
+    public List<ProcessingLane> getLanes() {
+        return lanes;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
 }
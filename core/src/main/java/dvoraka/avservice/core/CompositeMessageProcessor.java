@@ -1,5 +1,7 @@
 package dvoraka.avservice.core;
 
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.ExecutorFactory;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.MessageStatus;
 import dvoraka.avservice.common.listener.AvMessageListener;
@@ -11,39 +13,90 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 /**
  * Processor for composition of processors.
+ * <p>
+ * The configured processors are stages of a pipeline compiled into a dependency graph
+ * on start. A stage runs after all stages it depends on, so stages which do not depend
+ * on each other run in parallel. A stage which does not accept a message passes its
+ * input to following stages and a failed stage skips all stages depending on it.
+ * <p>
+ * Many messages flow through the pipeline concurrently. Stage results are matched with
+ * waiting messages by the correlation ID and following stages run on a shared executor.
+ * Stages without dependencies start in the sender thread, so the backpressure of the first
+ * processor reaches the sender. A stage without a result in the stage timeout fails.
  */
 @Service
-public class CompositeMessageProcessor implements MessageProcessor, AvMessageListener {
+public class CompositeMessageProcessor implements MessageProcessor {
 
     private static final Logger log = LogManager.getLogger(CompositeMessageProcessor.class);
 
     public static final int CACHE_TIMEOUT = 10 * 60 * 1_000;
+    /**
+     * Default thread count of the stage executor.
+     */
+    public static final int THREAD_COUNT = 4;
+    /**
+     * Default stage timeout in milliseconds.
+     */
+    public static final long STAGE_TIMEOUT = 5_000;
+
+    private static final long POOL_TERM_TIME_S = 5;
 
     private final List<ProcessorConfiguration> processors;
     private final List<AvMessageListener> listeners;
 
-    private final BlockingQueue<AvMessage> queue;
+    private final AtomicInteger pendingCount;
     private final MessageStatusStorage statusStorage;
 
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService timeoutService;
+
     private Predicate<AvMessage> inputFilter;
 
-    private volatile AvMessage actualMessage;
+    private volatile Pipeline pipeline;
+    private volatile long stageTimeout;
 
 
     public CompositeMessageProcessor() {
+        this(THREAD_COUNT);
+    }
+
+    /**
+     * Creates a processor with a given stage executor thread count.
+     *
+     * @param threadCount the thread count
+     */
+    public CompositeMessageProcessor(int threadCount) {
         processors = new CopyOnWriteArrayList<>();
         listeners = new CopyOnWriteArrayList<>();
-        queue = new SynchronousQueue<>();
+        pendingCount = new AtomicInteger();
         statusStorage = new BasicMessageStatusStorage(CACHE_TIMEOUT);
+        stageTimeout = STAGE_TIMEOUT;
+
+        executorService = ExecutorFactory.newFixedThreadPool(
+                ExecutorFactory.getDefaultMode(), threadCount, "composite-processor-");
+        timeoutService = Executors.newSingleThreadScheduledExecutor(
+                new CustomThreadFactory("composite-processor-timeout-", true));
     }
 
     @Override
@@ -54,38 +107,129 @@ public class CompositeMessageProcessor implements MessageProcessor, AvMessageLis
             return;
         }
 
+        Pipeline current = pipeline;
+        if (current == null) {
+            throw new IllegalStateException("Processor is not started.");
+        }
+
         statusStorage.started(message.getId());
+        if (current.graph.size() == 0) {
+            statusStorage.processed(message.getId());
+
+            return;
+        }
+
+        Run run = new Run(current, message);
+        for (int root : current.graph.getRoots()) {
+            runStage(run, root, true);
+        }
+    }
+
+    /**
+     * Runs a stage with all dependencies resolved or skips it.
+     *
+     * @param run      the message run
+     * @param index    the stage index
+     * @param inSender the flag for the sender thread
+     */
+    private void runStage(Run run, int index, boolean inSender) {
+        StageGraph graph = run.pipeline.graph;
+        if (run.isBlocked(index)) {
+            log.debug("Dependency failed for stage: {}", graph.getName(index));
+            resolve(run, index, null, true, inSender);
+
+            return;
+        }
+
+        AvMessage input = run.getInput(index);
+        if (!run.route[index] || !graph.testConditions(index, run.original, input)) {
+            log.debug("Input conditions failed for stage: {}", graph.getName(index));
+            resolve(run, index, input, false, inSender);
+
+            return;
+        }
 
-        AvMessage lastResult = message;
-        for (ProcessorConfiguration configuration : processors) {
+        dispatch(run, index, input, inSender);
+    }
+
+    private void dispatch(Run run, int index, AvMessage input, boolean inSender) {
+        final ProcessorConfiguration configuration = run.pipeline.graph.getStage(index);
+        final StageListener stageListener = run.pipeline.stageListeners[index];
+        final AvMessage data = configuration.isUseOriginalMessage() ? run.original : input;
+        final String id = data.getId();
+
+        CompletableFuture<AvMessage> result = new CompletableFuture<>();
+        stageListener.register(id, result);
+        pendingCount.incrementAndGet();
 
-            if (!(checkConditions(
-                    configuration.getInputConditions().stream(), message, lastResult))) {
-                log.debug("Input conditions failed for processor: " + configuration);
-                continue;
+        ScheduledFuture<?> timeout = timeoutService.schedule(
+                () -> result.completeExceptionally(new TimeoutException("Stage timeout: " + id)),
+                stageTimeout,
+                TimeUnit.MILLISECONDS);
+
+        boolean first = inSender && run.markDispatched();
+        try {
+            configuration.getProcessor().sendMessage(data);
+        } catch (RuntimeException e) {
+            if (first) {
+                // let the sender handle the rejection of the message
+                stageListener.unregister(id, result);
+                pendingCount.decrementAndGet();
+                timeout.cancel(false);
+                throw e;
             }
+            result.completeExceptionally(e);
+        }
+
+        result.whenCompleteAsync((response, throwable) -> {
+            stageListener.unregister(id, result);
+            pendingCount.decrementAndGet();
+            timeout.cancel(false);
+
+            if (throwable != null) {
+                log.warn("Stage failed for processor: " + configuration, throwable);
+                resolve(run, index, null, true, false);
 
-            // process message in a new thread
-            final AvMessage data = configuration.isUseOriginalMessage() ? message : lastResult;
-            setActualMessage(data);
-            new Thread(() -> configuration.getProcessor().sendMessage(data))
-                    .start();
-
-            // wait for result
-            try {
-                final int waitTime = 5;
-                AvMessage result = queue.poll(waitTime, TimeUnit.SECONDS);
-                setActualMessage(null);
-                notifyListeners(listeners, result);
-                lastResult = result;
-            } catch (InterruptedException e) {
-                log.warn("Polling interrupted!", e);
-                Thread.currentThread().interrupt();
                 return;
             }
+
+            notifyListeners(listeners, response);
+            resolve(run, index, response, false, false);
+        }, executorService);
+    }
+
+    /**
+     * Records a stage result and runs ready dependent stages.
+     *
+     * @param run      the message run
+     * @param index    the stage index
+     * @param result   the stage result
+     * @param failed   the failure flag
+     * @param inSender the flag for the sender thread
+     */
+    private void resolve(Run run, int index, AvMessage result, boolean failed, boolean inSender) {
+        List<Integer> ready = new ArrayList<>();
+        boolean done;
+        synchronized (run) {
+            run.results[index] = result;
+            for (int dependent : run.pipeline.graph.getDependents(index)) {
+                if (failed) {
+                    run.blocked[dependent] = true;
+                }
+                if (--run.remaining[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+            done = --run.unresolved == 0;
+        }
+
+        for (int dependent : ready) {
+            runStage(run, dependent, inSender);
         }
 
-        statusStorage.processed(message.getId());
+        if (done) {
+            statusStorage.processed(run.original.getId());
+        }
     }
 
     @Override
@@ -93,12 +237,29 @@ public class CompositeMessageProcessor implements MessageProcessor, AvMessageLis
         return statusStorage.getStatus(id);
     }
 
+    /**
+     * Compiles the pipeline and registers stage listeners.
+     *
+     * @throws IllegalArgumentException if the stage graph is not valid
+     */
     @PostConstruct
     @Override
     public void start() {
-        processors.forEach(
-                configuration -> configuration.getProcessor()
-                        .addProcessedAVMessageListener(this));
+        StageGraph graph = new StageGraph(processors);
+
+        Map<MessageProcessor, StageListener> processorListeners = new IdentityHashMap<>();
+        StageListener[] stageListeners = new StageListener[graph.size()];
+        for (int i = 0; i < graph.size(); i++) {
+            MessageProcessor processor = graph.getStage(i).getProcessor();
+            stageListeners[i] = processorListeners.computeIfAbsent(processor, key -> {
+                StageListener listener = new StageListener();
+                key.addProcessedAVMessageListener(listener);
+
+                return listener;
+            });
+        }
+
+        pipeline = new Pipeline(graph, stageListeners);
     }
 
     @PreDestroy
@@ -107,6 +268,8 @@ public class CompositeMessageProcessor implements MessageProcessor, AvMessageLis
         processors.forEach(
                 configuration -> configuration.getProcessor()
                         .stop());
+        shutdownAndAwaitTermination(executorService, POOL_TERM_TIME_S, log);
+        shutdownAndAwaitTermination(timeoutService, POOL_TERM_TIME_S, log);
         statusStorage.stop();
     }
 
@@ -125,28 +288,153 @@ public class CompositeMessageProcessor implements MessageProcessor, AvMessageLis
         inputFilter = filter;
     }
 
+    /**
+     * Adds a pipeline stage. Stages must be added before the start.
+     *
+     * @param configuration the stage configuration
+     */
     public void addProcessor(ProcessorConfiguration configuration) {
         processors.add(configuration);
     }
 
-    @Override
-    public void onMessage(AvMessage message) {
-        try {
-            if (getActualMessage() != null
-                    && message.getCorrelationId().equals(getActualMessage().getId())) {
-                queue.put(message);
-            }
-        } catch (InterruptedException e) {
-            log.warn("Putting interrupted!", e);
-            Thread.currentThread().interrupt();
+    /**
+     * Returns the count of stages waiting for a result.
+     *
+     * @return the count
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getStageTimeout() {
+        return stageTimeout;
+    }
+
+    public void setStageTimeout(long stageTimeout) {
+        this.stageTimeout = stageTimeout;
+    }
+
+    /**
+     * Compiled stage graph with listeners for stage results.
+     */
+    private static final class Pipeline {
+
+        private final StageGraph graph;
+        private final StageListener[] stageListeners;
+
+
+        private Pipeline(StageGraph graph, StageListener[] stageListeners) {
+            this.graph = graph;
+            this.stageListeners = stageListeners;
         }
     }
 
-    private AvMessage getActualMessage() {
-        return actualMessage;
+    /**
+     * State of one message in the pipeline. Guarded by itself.
+     */
+    private static final class Run {
+
+        private final Pipeline pipeline;
+        private final AvMessage original;
+        private final boolean[] route;
+
+        private final int[] remaining;
+        private final boolean[] blocked;
+        private final AvMessage[] results;
+        private int unresolved;
+        private boolean dispatched;
+
+
+        private Run(Pipeline pipeline, AvMessage original) {
+            this.pipeline = pipeline;
+            this.original = original;
+
+            StageGraph graph = pipeline.graph;
+            route = graph.getRoute(original.getType());
+            remaining = new int[graph.size()];
+            for (int i = 0; i < remaining.length; i++) {
+                remaining[i] = graph.getDependencyCount(i);
+            }
+            blocked = new boolean[graph.size()];
+            results = new AvMessage[graph.size()];
+            unresolved = graph.size();
+        }
+
+        private synchronized boolean isBlocked(int index) {
+            return blocked[index];
+        }
+
+        private synchronized AvMessage getInput(int index) {
+            int inputStage = pipeline.graph.getInputStage(index);
+
+            return inputStage == StageGraph.ORIGINAL ? original : results[inputStage];
+        }
+
+        /**
+         * Marks a stage dispatch.
+         *
+         * @return true for the first dispatch of the message
+         */
+        private synchronized boolean markDispatched() {
+            boolean first = !dispatched;
+            dispatched = true;
+
+            return first;
+        }
     }
 
-    private void setActualMessage(AvMessage actualMessage) {
-        this.actualMessage = actualMessage;
+    /**
+     * Listener for results of one processor. Parallel stages can send messages with
+     * the same ID to the processor, so results are matched in the sending order.
+     */
+    private static final class StageListener implements AvMessageListener {
+
+        private final ConcurrentMap<String, Queue<CompletableFuture<AvMessage>>> pending =
+                new ConcurrentHashMap<>();
+
+
+        private void register(String id, CompletableFuture<AvMessage> result) {
+            pending.compute(id, (key, queue) -> {
+                Queue<CompletableFuture<AvMessage>> results = queue;
+                if (results == null) {
+                    results = new ArrayDeque<>(1);
+                }
+                results.add(result);
+
+                return results;
+            });
+        }
+
+        private void unregister(String id, CompletableFuture<AvMessage> result) {
+            pending.computeIfPresent(id, (key, queue) -> {
+                queue.remove(result);
+
+                return queue.isEmpty() ? null : queue;
+            });
+        }
+
+        @Override
+        public void onMessage(AvMessage message) {
+            String correlationId = message.getCorrelationId();
+            if (correlationId == null) {
+                return;
+            }
+
+            List<CompletableFuture<AvMessage>> waiting = new ArrayList<>(1);
+            pending.computeIfPresent(correlationId, (key, queue) -> {
+                CompletableFuture<AvMessage> result;
+                while ((result = queue.poll()) != null) {
+                    // skip results which timed out in the meantime
+                    if (!result.isDone()) {
+                        waiting.add(result);
+                        break;
+                    }
+                }
+
+                return queue.isEmpty() ? null : queue;
+            });
+
+            waiting.forEach(result -> result.complete(message));
+        }
     }
 }
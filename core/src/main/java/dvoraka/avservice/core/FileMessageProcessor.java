@@ -1,5 +1,6 @@
 package dvoraka.avservice.core;
 
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.FileMessage;
 import dvoraka.avservice.common.data.MessageStatus;
@@ -16,6 +17,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
@@ -28,6 +30,9 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * Message processor for processing files.
+ * <p>
+ * Claimed data of saved and updated files are loaded from the blob store of the
+ * {@link #setClaimCheck(ClaimCheck) claim check} and checked against their reference.
  */
 @Service
 public class FileMessageProcessor implements MessageProcessor {
@@ -45,6 +50,7 @@ public class FileMessageProcessor implements MessageProcessor {
     private final Map<MessageType, Consumer<AvMessage>> processMap;
 
     private Predicate<AvMessage> inputFilter;
+    private volatile ClaimCheck claimCheck;
 
 
     @Autowired
@@ -84,9 +90,9 @@ public class FileMessageProcessor implements MessageProcessor {
 
     private void save(AvMessage message) {
         try {
-            fileService.saveFile(message);
+            fileService.saveFile(checkOut(message));
             notifyListeners(createOkResponse(message));
-        } catch (FileServiceException e) {
+        } catch (FileServiceException | IOException e) {
             log.warn(FILE_SERVICE_PROBLEM, e);
             notifyListeners(message.createErrorResponse("Save problem"));
         }
@@ -106,9 +112,9 @@ public class FileMessageProcessor implements MessageProcessor {
 
     private void update(AvMessage message) {
         try {
-            fileService.updateFile(message);
+            fileService.updateFile(checkOut(message));
             notifyListeners(createOkResponse(message));
-        } catch (FileServiceException e) {
+        } catch (FileServiceException | IOException e) {
             log.warn(FILE_SERVICE_PROBLEM, e);
             notifyListeners(message.createErrorResponse("Update problem"));
         }
@@ -124,6 +130,17 @@ public class FileMessageProcessor implements MessageProcessor {
         }
     }
 
+    private AvMessage checkOut(AvMessage message) throws IOException {
+        if (!ClaimCheck.isClaimed(message)) {
+            return message;
+        }
+        if (claimCheck == null) {
+            throw new IOException("No claim check for claimed data.");
+        }
+
+        return claimCheck.checkOut(message);
+    }
+
     private void unknown(AvMessage message) {
         log.warn("Unknown mapping for: " + message);
     }
@@ -167,4 +184,13 @@ public class FileMessageProcessor implements MessageProcessor {
     public void setInputFilter(Predicate<AvMessage> filter) {
         inputFilter = filter;
     }
+
+    /**
+     * Sets a claim check for loading claimed message data.
+     *
+     * @param claimCheck the claim check
+     */
+    public void setClaimCheck(ClaimCheck claimCheck) {
+        this.claimCheck = claimCheck;
+    }
 }
@@ -4,38 +4,76 @@ import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.MessageType;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.BiPredicate;
 
 /**
  * Input condition helper.
+ * <p>
+ * Allowed types are compiled into {@link EnumSet} masks, so type checks are only bit tests.
+ * An empty mask allows all types.
  */
 public final class InputConditions implements BiPredicate<AvMessage, AvMessage> {
 
-    private final List<MessageType> allowedOriginalTypes;
-    private final List<MessageType> allowedLastTypes;
+    private final EnumSet<MessageType> allowedOriginalTypes;
+    private final EnumSet<MessageType> allowedLastTypes;
     private final List<BiPredicate<AvMessage, AvMessage>> conditions;
 
 
     private InputConditions(Builder builder) {
-        allowedOriginalTypes = builder.allowedOriginalTypes;
-        allowedLastTypes = builder.allowedLastTypes;
-        conditions = builder.conditions;
+        allowedOriginalTypes = EnumSet.copyOf(builder.allowedOriginalTypes);
+        allowedLastTypes = EnumSet.copyOf(builder.allowedLastTypes);
+        conditions = Collections.unmodifiableList(new ArrayList<>(builder.conditions));
     }
 
     @Override
     public boolean test(AvMessage original, AvMessage lastResult) {
+        if (!allowed(allowedOriginalTypes, original.getType())
+                || !allowed(allowedLastTypes, lastResult.getType())) {
+            return false;
+        }
+
+        for (BiPredicate<AvMessage, AvMessage> condition : conditions) {
+            if (!condition.test(original, lastResult)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
 
-        boolean originalTypes = allowedOriginalTypes.isEmpty() || allowedOriginalTypes.stream()
-                .anyMatch(type -> type.equals(original.getType()));
+    private static boolean allowed(EnumSet<MessageType> types, MessageType type) {
+        return types.isEmpty() || (type != null && types.contains(type));
+    }
 
-        boolean lastTypes = allowedLastTypes.isEmpty() || allowedLastTypes.stream()
-                .anyMatch(type -> type.equals(lastResult.getType()));
+    /**
+     * Returns true if a message of a given original type can pass the conditions.
+     *
+     * @param type the original message type
+     * @return the result
+     */
+    public boolean acceptsOriginalType(MessageType type) {
+        return allowed(allowedOriginalTypes, type);
+    }
 
-        boolean conditionsPassed = conditions.isEmpty() || conditions.stream()
-                .allMatch(predicate -> predicate.test(original, lastResult));
+    /**
+     * Returns true if the original message type is the only condition.
+     *
+     * @return the result
+     */
+    boolean hasOnlyOriginalTypes() {
+        return allowedLastTypes.isEmpty() && conditions.isEmpty();
+    }
+
+    public Set<MessageType> getAllowedOriginalTypes() {
+        return Collections.unmodifiableSet(allowedOriginalTypes);
+    }
 
-        return originalTypes && lastTypes && conditionsPassed;
+    public Set<MessageType> getAllowedLastTypes() {
+        return Collections.unmodifiableSet(allowedLastTypes);
     }
 
     public List<InputConditions> toList() {
@@ -47,14 +85,14 @@ public final class InputConditions implements BiPredicate<AvMessage, AvMessage>
 
     public static class Builder {
 
-        private List<MessageType> allowedOriginalTypes;
-        private List<MessageType> allowedLastTypes;
+        private EnumSet<MessageType> allowedOriginalTypes;
+        private EnumSet<MessageType> allowedLastTypes;
         private List<BiPredicate<AvMessage, AvMessage>> conditions;
 
 
         public Builder() {
-            allowedOriginalTypes = new ArrayList<>();
-            allowedLastTypes = new ArrayList<>();
+            allowedOriginalTypes = EnumSet.noneOf(MessageType.class);
+            allowedLastTypes = EnumSet.noneOf(MessageType.class);
             conditions = new ArrayList<>();
         }
 
@@ -83,7 +121,7 @@ public final class InputConditions implements BiPredicate<AvMessage, AvMessage>
         return "InputConditions{" +
                 "allowedOriginalTypes=" + allowedOriginalTypes +
                 ", allowedLastTypes=" + allowedLastTypes +
-                ", conditions=" + conditions +
+                ", conditions=" + conditions.size() +
                 '}';
     }
 }
@@ -0,0 +1,126 @@
+package dvoraka.avservice.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Processing lane for messages of one size class. Every lane has its own threads
+ * and bounded queue, so big messages cannot block small ones.
+ * <p>
+ * The latency is measured from the acceptance of a message to the end of its processing.
+ */
+public final class ProcessingLane {
+
+    private final SizeClass sizeClass;
+    private final BlockingQueue<Runnable> workQueue;
+    private final ThreadPoolExecutor executorService;
+
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+
+    ProcessingLane(
+            SizeClass sizeClass,
+            int queueCapacity,
+            ThreadFactory threadFactory,
+            RejectedExecutionHandler rejectionHandler
+    ) {
+        this.sizeClass = requireNonNull(sizeClass);
+
+        workQueue = new ArrayBlockingQueue<>(queueCapacity);
+        executorService = new ThreadPoolExecutor(
+                sizeClass.getThreadCount(), sizeClass.getThreadCount(),
+                0L, TimeUnit.MILLISECONDS, workQueue, threadFactory, rejectionHandler);
+    }
+
+    /**
+     * Executes a task in the lane and records its latency.
+     *
+     * @param task the task
+     */
+    void execute(Runnable task) {
+        long accepted = System.nanoTime();
+        executorService.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                record(System.nanoTime() - accepted);
+            }
+        });
+    }
+
+    private void record(long latency) {
+        processedCount.getAndIncrement();
+        totalLatency.addAndGet(latency);
+        maxLatency.accumulateAndGet(latency, Math::max);
+    }
+
+    boolean accepts(long size) {
+        return size <= sizeClass.getMaxSize();
+    }
+
+    ThreadPoolExecutor getExecutorService() {
+        return executorService;
+    }
+
+    public String getName() {
+        return sizeClass.getName();
+    }
+
+    public SizeClass getSizeClass() {
+        return sizeClass;
+    }
+
+    public int getActiveCount() {
+        return executorService.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return workQueue.size();
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * Returns the average latency in milliseconds.
+     *
+     * @return the average latency
+     */
+    public double getAverageLatency() {
+        long count = processedCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        return (double) totalLatency.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the maximum latency in milliseconds.
+     *
+     * @return the maximum latency
+     */
+    public long getMaxLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatency.get());
+    }
+
+    @Override
+    public String toString() {
+        return getName() +
+                ": active=" + getActiveCount() +
+                ", queued=" + getQueueSize() +
+                ", processed=" + getProcessedCount() +
+                ", avgLatency=" + String.format("%.1f", getAverageLatency()) + " ms" +
+                ", maxLatency=" + getMaxLatency() + " ms";
+    }
+}
@@ -2,20 +2,30 @@ package dvoraka.avservice.core;
 
 import dvoraka.avservice.common.data.AvMessage;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.BiPredicate;
 
 import static java.util.Objects.requireNonNull;
 
 /**
  * Message processor configuration for a composite processor.
+ * <p>
+ * A configuration is a stage of the pipeline. A stage without dependencies set
+ * follows the previously added stage. Stages with the same dependencies do not
+ * depend on each other and can run in parallel.
  */
 public class ProcessorConfiguration {
 
     private final MessageProcessor processor;
     private final List<? extends BiPredicate<AvMessage, AvMessage>> inputConditions;
     private final boolean useOriginalMessage;
+    private final String name;
+    private final Set<String> dependencies;
 
 
     public ProcessorConfiguration(MessageProcessor processor) {
@@ -26,6 +36,16 @@ public class ProcessorConfiguration {
             MessageProcessor processor,
             List<? extends BiPredicate<AvMessage, AvMessage>> inputConditions,
             boolean useOriginalMessage
+    ) {
+        this(processor, inputConditions, useOriginalMessage, null, null);
+    }
+
+    private ProcessorConfiguration(
+            MessageProcessor processor,
+            List<? extends BiPredicate<AvMessage, AvMessage>> inputConditions,
+            boolean useOriginalMessage,
+            String name,
+            Set<String> dependencies
     ) {
         this.processor = requireNonNull(processor);
 
@@ -36,6 +56,8 @@ public class ProcessorConfiguration {
         }
 
         this.useOriginalMessage = useOriginalMessage;
+        this.name = name;
+        this.dependencies = dependencies == null ? null : Collections.unmodifiableSet(dependencies);
     }
 
     public MessageProcessor getProcessor() {
@@ -50,6 +72,25 @@ public class ProcessorConfiguration {
         return useOriginalMessage;
     }
 
+    /**
+     * Returns the stage name or null for an unnamed stage.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns names of stages this stage waits for or null if the stage follows
+     * the previously added stage.
+     *
+     * @return the stage names
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
     @Override
     @SuppressWarnings("checkstyle:OperatorWrap")
     public String toString() {
@@ -57,6 +98,63 @@ public class ProcessorConfiguration {
                 "processor=" + processor +
                 ", inputConditions=" + inputConditions +
                 ", useOriginalMessage=" + useOriginalMessage +
+                ", name=" + name +
+                ", dependencies=" + dependencies +
                 '}';
     }
+
+    /**
+     * Pipeline stage builder.
+     */
+    public static class Builder {
+
+        private final MessageProcessor processor;
+        private final List<BiPredicate<AvMessage, AvMessage>> inputConditions;
+        private boolean useOriginalMessage;
+        private String name;
+        private Set<String> dependencies;
+
+
+        public Builder(MessageProcessor processor) {
+            this.processor = requireNonNull(processor);
+            inputConditions = new ArrayList<>();
+            useOriginalMessage = true;
+        }
+
+        public Builder name(String stageName) {
+            name = requireNonNull(stageName);
+            return this;
+        }
+
+        public Builder conditions(InputConditions conditions) {
+            inputConditions.add(requireNonNull(conditions));
+            return this;
+        }
+
+        public Builder condition(BiPredicate<AvMessage, AvMessage> condition) {
+            inputConditions.add(requireNonNull(condition));
+            return this;
+        }
+
+        public Builder useOriginalMessage(boolean useOriginal) {
+            useOriginalMessage = useOriginal;
+            return this;
+        }
+
+        /**
+         * Sets stages to wait for. The stage without names does not wait for any stage.
+         *
+         * @param stageNames the stage names
+         * @return the builder
+         */
+        public Builder after(String... stageNames) {
+            dependencies = new LinkedHashSet<>(Arrays.asList(stageNames));
+            return this;
+        }
+
+        public ProcessorConfiguration build() {
+            return new ProcessorConfiguration(
+                    processor, inputConditions, useOriginalMessage, name, dependencies);
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package dvoraka.avservice.core;
+
+/**
+ * What a processor does with a message when its work queue is full.
+ */
+public enum RejectionPolicy {
+    /**
+     * Blocks the sending thread until there is space in the queue. A blocked listener thread
+     * stops consuming and the broker holds the backlog.
+     */
+    BLOCK,
+    /**
+     * Throws a {@link java.util.concurrent.RejectedExecutionException} back to the sender.
+     * Listener containers reject the message and the broker redelivers it later. AMQP
+     * containers requeue the message and the JMS container uses a transacted session
+     * for this policy, an auto acknowledged message would be lost.
+     * <p>
+     * Kafka has no redelivery of single records, a rejected record would be skipped,
+     * so the Kafka transport refuses this policy.
+     */
+    REQUEUE,
+    /**
+     * Replies immediately with an error response.
+     */
+    BUSY
+}
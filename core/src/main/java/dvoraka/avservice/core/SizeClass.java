@@ -0,0 +1,92 @@
+package dvoraka.avservice.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Message size class for processing lanes. Messages with data up to the maximum size
+ * belong to the class.
+ */
+public final class SizeClass {
+
+    /**
+     * Name of the small message class.
+     */
+    public static final String SMALL = "small";
+    /**
+     * Name of the large message class.
+     */
+    public static final String LARGE = "large";
+
+    private final String name;
+    private final long maxSize;
+    private final int threadCount;
+
+
+    /**
+     * Creates a size class.
+     *
+     * @param name        the class name
+     * @param maxSize     the maximum data size in bytes
+     * @param threadCount the processing thread count for the class
+     */
+    public SizeClass(String name, long maxSize, int threadCount) {
+        this.name = requireNonNull(name);
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size must not be negative.");
+        }
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+        this.maxSize = maxSize;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Creates size classes for small and large messages. Without a small message size
+     * it creates one class for all sizes.
+     *
+     * @param threadCount      the thread count for small messages or all messages
+     * @param smallMessageSize the maximum size of small messages, less than 1 means no split
+     * @param largeThreadCount the thread count for large messages
+     * @return the size classes
+     */
+    public static List<SizeClass> smallAndLarge(
+            int threadCount,
+            long smallMessageSize,
+            int largeThreadCount
+    ) {
+        if (smallMessageSize < 1) {
+            return Collections.singletonList(new SizeClass(
+                    AvCheckMessageProcessor.DEFAULT_LANE, Long.MAX_VALUE, threadCount));
+        }
+
+        return Arrays.asList(
+                new SizeClass(SMALL, smallMessageSize, threadCount),
+                new SizeClass(LARGE, Long.MAX_VALUE, largeThreadCount));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SizeClass{" +
+                "name='" + name + '\'' +
+                ", maxSize=" + maxSize +
+                ", threadCount=" + threadCount +
+                '}';
+    }
+}
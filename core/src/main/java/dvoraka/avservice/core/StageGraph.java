@@ -0,0 +1,222 @@
+package dvoraka.avservice.core;
+
+import dvoraka.avservice.common.data.AvMessage;
+import dvoraka.avservice.common.data.MessageType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * Compiled pipeline of a composite processor.
+ * <p>
+ * Stages are resolved into a dependency graph and every message type gets a routing
+ * table of stages which can accept it. Stages with only type conditions are decided
+ * by the routing table alone, so the usual routing does not evaluate any condition.
+ * <p>
+ * The input of a stage is the result of its last dependency or the original message
+ * for stages without dependencies. Immutable.
+ */
+final class StageGraph {
+
+    /**
+     * Input stage index of stages processing the original message.
+     */
+    static final int ORIGINAL = -1;
+
+    private static final String UNNAMED_PREFIX = "stage";
+
+    private final ProcessorConfiguration[] stages;
+    private final String[] names;
+    private final int[] dependencyCounts;
+    private final int[][] dependents;
+    private final int[] inputStages;
+    private final int[] roots;
+    /**
+     * Flags for stages with conditions fully resolved by the routing table.
+     */
+    private final boolean[] routedOnly;
+    private final Map<MessageType, boolean[]> routes;
+    private final boolean[] untypedRoute;
+
+
+    StageGraph(List<ProcessorConfiguration> configurations) {
+        stages = configurations.toArray(new ProcessorConfiguration[0]);
+        int count = stages.length;
+
+        names = new String[count];
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = stages[i].getName() != null ? stages[i].getName() : UNNAMED_PREFIX + i;
+            if (indexes.putIfAbsent(name, i) != null) {
+                throw new IllegalArgumentException("Duplicate stage name: " + name);
+            }
+            names[i] = name;
+        }
+
+        dependencyCounts = new int[count];
+        inputStages = new int[count];
+        List<List<Integer>> dependentLists = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            dependentLists.add(new ArrayList<>());
+        }
+
+        List<Integer> rootList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int[] dependencies = resolveDependencies(i, indexes);
+            dependencyCounts[i] = dependencies.length;
+            if (dependencies.length == 0) {
+                inputStages[i] = ORIGINAL;
+                rootList.add(i);
+            } else {
+                inputStages[i] = dependencies[dependencies.length - 1];
+            }
+
+            for (int dependency : dependencies) {
+                dependentLists.get(dependency).add(i);
+            }
+        }
+
+        dependents = new int[count][];
+        for (int i = 0; i < count; i++) {
+            dependents[i] = toArray(dependentLists.get(i));
+        }
+        roots = toArray(rootList);
+
+        checkCycles();
+
+        routedOnly = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            routedOnly[i] = stages[i].getInputConditions().stream()
+                    .allMatch(condition -> condition instanceof InputConditions
+                            && ((InputConditions) condition).hasOnlyOriginalTypes());
+        }
+
+        routes = new EnumMap<>(MessageType.class);
+        for (MessageType type : MessageType.values()) {
+            routes.put(type, route(type));
+        }
+        untypedRoute = route(null);
+    }
+
+    private int[] resolveDependencies(int index, Map<String, Integer> indexes) {
+        Set<String> dependencies = stages[index].getDependencies();
+        if (dependencies == null) {
+            return index == 0 ? new int[0] : new int[]{index - 1};
+        }
+
+        int[] result = new int[dependencies.size()];
+        int i = 0;
+        for (String dependency : dependencies) {
+            Integer dependencyIndex = indexes.get(dependency);
+            if (dependencyIndex == null) {
+                throw new IllegalArgumentException(
+                        "Unknown stage: " + dependency + " for stage: " + names[index]);
+            }
+            result[i++] = dependencyIndex;
+        }
+
+        return result;
+    }
+
+    private void checkCycles() {
+        int[] remaining = dependencyCounts.clone();
+        int[] ready = new int[stages.length];
+        int readyCount = 0;
+        for (int root : roots) {
+            ready[readyCount++] = root;
+        }
+
+        for (int i = 0; i < readyCount; i++) {
+            for (int dependent : dependents[ready[i]]) {
+                if (--remaining[dependent] == 0) {
+                    ready[readyCount++] = dependent;
+                }
+            }
+        }
+
+        if (readyCount != stages.length) {
+            throw new IllegalArgumentException("Pipeline stages contain a cycle.");
+        }
+    }
+
+    private boolean[] route(MessageType type) {
+        boolean[] route = new boolean[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            route[i] = stages[i].getInputConditions().stream()
+                    .filter(condition -> condition instanceof InputConditions)
+                    .allMatch(condition -> ((InputConditions) condition).acceptsOriginalType(type));
+        }
+
+        return route;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the routing table for an original message type. Stages with false
+     * cannot accept the message.
+     *
+     * @param type the original message type
+     * @return the routing table
+     */
+    boolean[] getRoute(MessageType type) {
+        return type == null ? untypedRoute : routes.get(type);
+    }
+
+    /**
+     * Tests conditions of a routed stage which the routing table cannot decide.
+     *
+     * @param index    the stage index
+     * @param original the original message
+     * @param input    the stage input
+     * @return the result
+     */
+    boolean testConditions(int index, AvMessage original, AvMessage input) {
+        if (routedOnly[index]) {
+            return true;
+        }
+
+        for (BiPredicate<AvMessage, AvMessage> condition : stages[index].getInputConditions()) {
+            if (!condition.test(original, input)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    int size() {
+        return stages.length;
+    }
+
+    ProcessorConfiguration getStage(int index) {
+        return stages[index];
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    int getDependencyCount(int index) {
+        return dependencyCounts[index];
+    }
+
+    int[] getDependents(int index) {
+        return dependents[index];
+    }
+
+    int getInputStage(int index) {
+        return inputStages[index];
+    }
+
+    int[] getRoots() {
+        return roots;
+    }
+}
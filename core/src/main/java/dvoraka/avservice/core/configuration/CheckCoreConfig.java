@@ -1,9 +1,13 @@
 package dvoraka.avservice.core.configuration;
 
 import dvoraka.avservice.avprogram.service.AvService;
+import dvoraka.avservice.common.ThreadMode;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.core.AvCheckMessageProcessor;
 import dvoraka.avservice.core.MessageProcessor;
+import dvoraka.avservice.core.RejectionPolicy;
+import dvoraka.avservice.core.SizeClass;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -23,21 +27,41 @@ public class CheckCoreConfig {
     private Integer cpuCores;
     @Value("${avservice.serviceId:default1}")
     private String serviceId;
+    @Value("${avservice.processor.queueCapacity:100}")
+    private Integer queueCapacity;
+    @Value("${avservice.processor.rejectionPolicy:BLOCK}")
+    private RejectionPolicy rejectionPolicy;
+    @Value("${avservice.threadMode:PLATFORM}")
+    private ThreadMode threadMode;
+    @Value("${avservice.processor.virtualThreadCount:64}")
+    private Integer virtualThreadCount;
+    @Value("${avservice.processor.smallMessageSize:0}")
+    private Long smallMessageSize;
+    @Value("${avservice.processor.largeThreadCount:1}")
+    private Integer largeThreadCount;
 
 
     @Bean
     public MessageProcessor messageProcessor(
             AvService avService,
             MessageInfoService messageInfoService,
-            Predicate<AvMessage> avCheckInputFilter
+            Predicate<AvMessage> avCheckInputFilter,
+            ClaimCheck claimCheck
     ) {
-        MessageProcessor checkProcessor = new AvCheckMessageProcessor(
-                cpuCores,
+        AvCheckMessageProcessor checkProcessor = new AvCheckMessageProcessor(
+                SizeClass.smallAndLarge(
+                        threadMode == ThreadMode.VIRTUAL ? virtualThreadCount : cpuCores,
+                        smallMessageSize,
+                        largeThreadCount),
                 serviceId,
                 avService,
-                messageInfoService
+                messageInfoService,
+                queueCapacity,
+                rejectionPolicy,
+                threadMode
         );
         checkProcessor.setInputFilter(avCheckInputFilter);
+        checkProcessor.setClaimCheck(claimCheck);
 
         return checkProcessor;
     }
@@ -1,10 +1,13 @@
 package dvoraka.avservice.core.configuration;
 
 import dvoraka.avservice.avprogram.configuration.AvProgramConfig;
+import dvoraka.avservice.common.blob.BlobSweeper;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.MessageType;
 import dvoraka.avservice.db.configuration.DatabaseConfig;
 import dvoraka.avservice.storage.configuration.StorageConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableMBeanExport;
@@ -34,6 +37,14 @@ import java.util.function.Predicate;
 })
 public class CoreConfig {
 
+    @Value("${avservice.claimCheck.threshold:0}")
+    private Long claimCheckThreshold;
+    @Value("${avservice.claimCheck.directory:}")
+    private String claimCheckDirectory;
+    @Value("${avservice.claimCheck.retention:600000}")
+    private Long claimCheckRetention;
+
+
     /**
      * Input filter configuration for an AV check message processor.
      *
@@ -46,6 +57,28 @@ public class CoreConfig {
                 || message.getType() == MessageType.FILE_UPDATE;
     }
 
+    /**
+     * Claim check for reading claimed message data. The blob directory must be shared
+     * with clients. Without a threshold data references are rejected.
+     *
+     * @return the claim check
+     */
+    @Bean
+    public ClaimCheck claimCheck() {
+        return ClaimCheck.create(claimCheckThreshold, claimCheckDirectory);
+    }
+
+    /**
+     * Sweeper expiring blobs after the retention time.
+     *
+     * @param claimCheck the claim check
+     * @return the sweeper
+     */
+    @Bean
+    public BlobSweeper blobSweeper(ClaimCheck claimCheck) {
+        return new BlobSweeper(claimCheck, claimCheckRetention);
+    }
+
     /**
      * Special MBeanExporter bean for integration tests.
      *
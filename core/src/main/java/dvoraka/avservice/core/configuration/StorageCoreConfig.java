@@ -1,6 +1,8 @@
 package dvoraka.avservice.core.configuration;
 
 import dvoraka.avservice.avprogram.service.AvService;
+import dvoraka.avservice.common.ThreadMode;
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.MessageType;
 import dvoraka.avservice.common.util.Utils;
@@ -10,6 +12,8 @@ import dvoraka.avservice.core.FileMessageProcessor;
 import dvoraka.avservice.core.InputConditions;
 import dvoraka.avservice.core.MessageProcessor;
 import dvoraka.avservice.core.ProcessorConfiguration;
+import dvoraka.avservice.core.RejectionPolicy;
+import dvoraka.avservice.core.SizeClass;
 import dvoraka.avservice.db.service.MessageInfoService;
 import dvoraka.avservice.storage.service.FileService;
 import org.springframework.beans.factory.annotation.Value;
@@ -27,80 +31,111 @@ import java.util.function.Predicate;
 @Profile("storage")
 public class StorageCoreConfig {
 
+    public static final String CHECK_STAGE = "check";
+    public static final String FILE_SAVE_UPDATE_STAGE = "fileSaveUpdate";
+    public static final String FILE_LOAD_DELETE_STAGE = "fileLoadDelete";
+
     @Value("${avservice.cpuCores:2}")
     private Integer cpuCores;
     @Value("${avservice.serviceId:default1}")
     private String serviceId;
+    @Value("${avservice.processor.queueCapacity:100}")
+    private Integer queueCapacity;
+    @Value("${avservice.processor.rejectionPolicy:BLOCK}")
+    private RejectionPolicy rejectionPolicy;
+    @Value("${avservice.threadMode:PLATFORM}")
+    private ThreadMode threadMode;
+    @Value("${avservice.processor.virtualThreadCount:64}")
+    private Integer virtualThreadCount;
+    @Value("${avservice.processor.smallMessageSize:0}")
+    private Long smallMessageSize;
+    @Value("${avservice.processor.largeThreadCount:1}")
+    private Integer largeThreadCount;
 
 
     @Bean
     @Profile("!replication")
-    public MessageProcessor fileMessageProcessor(FileService fileService) {
-        return new FileMessageProcessor(fileService);
+    public MessageProcessor fileMessageProcessor(FileService fileService, ClaimCheck claimCheck) {
+        FileMessageProcessor processor = new FileMessageProcessor(fileService);
+        processor.setClaimCheck(claimCheck);
+
+        return processor;
     }
 
     @Bean
     public MessageProcessor checkMessageProcessor(
             AvService avService,
             MessageInfoService messageInfoService,
-            Predicate<AvMessage> avCheckInputFilter
+            Predicate<AvMessage> avCheckInputFilter,
+            ClaimCheck claimCheck
     ) {
-        MessageProcessor messageProcessor = new AvCheckMessageProcessor(
-                cpuCores,
+        AvCheckMessageProcessor messageProcessor = new AvCheckMessageProcessor(
+                SizeClass.smallAndLarge(
+                        threadMode == ThreadMode.VIRTUAL ? virtualThreadCount : cpuCores,
+                        smallMessageSize,
+                        largeThreadCount),
                 serviceId,
                 avService,
-                messageInfoService
+                messageInfoService,
+                queueCapacity,
+                rejectionPolicy,
+                threadMode
         );
         messageProcessor.setInputFilter(avCheckInputFilter);
+        messageProcessor.setClaimCheck(claimCheck);
 
         return messageProcessor;
     }
 
     @Bean
-    public MessageProcessor messageProcessor(
-            MessageProcessor checkMessageProcessor,
-            MessageProcessor fileMessageProcessor
-    ) {
-        List<InputConditions> checkConditions =
-                new InputConditions.Builder()
+    public ProcessorConfiguration checkStage(MessageProcessor checkMessageProcessor) {
+        return new ProcessorConfiguration.Builder(checkMessageProcessor)
+                .name(CHECK_STAGE)
+                .conditions(new InputConditions.Builder()
                         .originalType(MessageType.FILE_CHECK)
                         .originalType(MessageType.FILE_SAVE)
                         .originalType(MessageType.FILE_UPDATE)
-                        .build().toList();
+                        .build())
+                .after()
+                .build();
+    }
 
-        List<InputConditions> fileSaveUpdateConditions =
-                new InputConditions.Builder()
+    @Bean
+    public ProcessorConfiguration fileSaveUpdateStage(MessageProcessor fileMessageProcessor) {
+        return new ProcessorConfiguration.Builder(fileMessageProcessor)
+                .name(FILE_SAVE_UPDATE_STAGE)
+                .conditions(new InputConditions.Builder()
                         .originalType(MessageType.FILE_SAVE)
                         .originalType(MessageType.FILE_UPDATE)
                         .condition((orig, last) -> Utils.OK_VIRUS_INFO.equals(last.getVirusInfo()))
-                        .build().toList();
+                        .build())
+                .after(CHECK_STAGE)
+                .build();
+    }
 
-        List<InputConditions> fileLoadDeleteConditions =
-                new InputConditions.Builder()
+    @Bean
+    public ProcessorConfiguration fileLoadDeleteStage(MessageProcessor fileMessageProcessor) {
+        return new ProcessorConfiguration.Builder(fileMessageProcessor)
+                .name(FILE_LOAD_DELETE_STAGE)
+                .conditions(new InputConditions.Builder()
                         .originalType(MessageType.FILE_LOAD)
                         .originalType(MessageType.FILE_DELETE)
-                        .build().toList();
-
-        ProcessorConfiguration checkConfig = new ProcessorConfiguration(
-                checkMessageProcessor,
-                checkConditions,
-                true
-        );
-        ProcessorConfiguration fileSaveUpdateConfig = new ProcessorConfiguration(
-                fileMessageProcessor,
-                fileSaveUpdateConditions,
-                true
-        );
-        ProcessorConfiguration fileLoadDeleteConfig = new ProcessorConfiguration(
-                fileMessageProcessor,
-                fileLoadDeleteConditions,
-                true
-        );
+                        .build())
+                .after()
+                .build();
+    }
 
-        CompositeMessageProcessor processor = new CompositeMessageProcessor();
-        processor.addProcessor(checkConfig);
-        processor.addProcessor(fileSaveUpdateConfig);
-        processor.addProcessor(fileLoadDeleteConfig);
+    /**
+     * Composite processor with all stage beans. New stages plug in as
+     * {@link ProcessorConfiguration} beans with names of stages they wait for.
+     *
+     * @param stages the pipeline stages
+     * @return the processor
+     */
+    @Bean
+    public MessageProcessor messageProcessor(List<ProcessorConfiguration> stages) {
+        CompositeMessageProcessor processor = new CompositeMessageProcessor(cpuCores);
+        stages.forEach(processor::addProcessor);
 
         return processor;
     }
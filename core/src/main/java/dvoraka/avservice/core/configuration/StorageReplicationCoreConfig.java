@@ -1,5 +1,6 @@
 package dvoraka.avservice.core.configuration;
 
+import dvoraka.avservice.common.blob.ClaimCheck;
 import dvoraka.avservice.core.FileMessageProcessor;
 import dvoraka.avservice.core.MessageProcessor;
 import dvoraka.avservice.storage.service.FileService;
@@ -15,7 +16,13 @@ import org.springframework.context.annotation.Profile;
 public class StorageReplicationCoreConfig {
 
     @Bean
-    public MessageProcessor fileMessageProcessor(FileService replicationService) {
-        return new FileMessageProcessor(replicationService);
+    public MessageProcessor fileMessageProcessor(
+            FileService replicationService,
+            ClaimCheck claimCheck
+    ) {
+        FileMessageProcessor processor = new FileMessageProcessor(replicationService);
+        processor.setClaimCheck(claimCheck);
+
+        return processor;
     }
 }
@@ -1,6 +1,10 @@
 package dvoraka.avservice.core
 
 import dvoraka.avservice.avprogram.service.AvService
+import dvoraka.avservice.common.ThreadMode
+import dvoraka.avservice.common.blob.BlobReference
+import dvoraka.avservice.common.blob.ClaimCheck
+import dvoraka.avservice.common.blob.FileBlobStore
 import dvoraka.avservice.common.data.AvMessage
 import dvoraka.avservice.common.data.DefaultAvMessage
 import dvoraka.avservice.common.data.MessageStatus
@@ -14,6 +18,11 @@ import spock.lang.Specification
 import spock.lang.Subject
 import spock.util.concurrent.PollingConditions
 
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
 import java.util.function.Predicate
 
 /**
@@ -72,9 +81,194 @@ class AvCheckMessageProcessorSpec extends Specification {
             processor.getThreadCount() == threadCount
     }
 
+    def "constructor with bad queue capacity"() {
+        when:
+            new AvCheckMessageProcessor(
+                    1, serviceId, avService, infoService, 0, RejectionPolicy.BLOCK)
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "full queue with busy policy"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(1)
+
+            AvMessage response = null
+            processor = new AvCheckMessageProcessor(
+                    1, serviceId, blockingService(latch), infoService, 1, RejectionPolicy.BUSY)
+            processor.setInputFilter(inputFilter)
+            processor.addProcessedAVMessageListener({ response = it })
+            processor.start()
+
+            processor.sendMessage(Utils.genMessage())
+            conditions.eventually {
+                processor.getActiveThreadCount() == 1
+            }
+            processor.sendMessage(Utils.genMessage())
+
+            AvMessage message = Utils.genMessage()
+
+        when:
+            processor.sendMessage(message)
+
+        then:
+            response.getCorrelationId() == message.getId()
+            response.getType() == MessageType.RESPONSE_ERROR
+            processor.getRejectedMsgCount() == 1
+            processor.getQueueSize() == 1
+            processor.messageStatus(message.getId()) == MessageStatus.PROCESSED
+
+        cleanup:
+            latch.countDown()
+    }
+
+    def "full queue with requeue policy"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(1)
+
+            processor = new AvCheckMessageProcessor(
+                    1, serviceId, blockingService(latch), infoService, 1, RejectionPolicy.REQUEUE)
+            processor.setInputFilter(inputFilter)
+            processor.start()
+
+            processor.sendMessage(Utils.genMessage())
+            conditions.eventually {
+                processor.getActiveThreadCount() == 1
+            }
+            processor.sendMessage(Utils.genMessage())
+
+            AvMessage message = Utils.genMessage()
+
+        when:
+            processor.sendMessage(message)
+
+        then:
+            thrown(RejectedExecutionException)
+            0 * infoService.save(message, _, _)
+            processor.getRejectedMsgCount() == 1
+            processor.messageStatus(message.getId()) == MessageStatus.UNKNOWN
+
+        cleanup:
+            latch.countDown()
+    }
+
+    def "full queue with block policy"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(1)
+
+            processor = new AvCheckMessageProcessor(
+                    1, serviceId, blockingService(latch), infoService, 1, RejectionPolicy.BLOCK)
+            processor.setInputFilter(inputFilter)
+            processor.start()
+
+            processor.sendMessage(Utils.genMessage())
+            conditions.eventually {
+                processor.getActiveThreadCount() == 1
+            }
+            processor.sendMessage(Utils.genMessage())
+
+        when:
+            Thread sender = Thread.start {
+                processor.sendMessage(Utils.genMessage())
+            }
+            sleep(200)
+
+        then:
+            sender.isAlive()
+            processor.getQueueSize() == 1
+
+        when:
+            latch.countDown()
+            sender.join(2000)
+
+        then:
+            !sender.isAlive()
+            conditions.eventually {
+                processor.getProcessedMsgCount() == 3
+            }
+            processor.getRejectedMsgCount() == 1
+    }
+
+    def "constructor with bad size classes"() {
+        when:
+            new AvCheckMessageProcessor(sizeClasses, serviceId, avService, infoService,
+                    1, RejectionPolicy.BLOCK, ThreadMode.PLATFORM)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            sizeClasses << [
+                    [],
+                    [new SizeClass('small', 10, 1)],
+                    [new SizeClass('large', Long.MAX_VALUE, 1), new SizeClass('small', 10, 1)],
+            ]
+    }
+
+    def "small message is not blocked by large ones"() {
+        given:
+            CountDownLatch latch = new CountDownLatch(1)
+            AvService service = [scanBufferWithInfo: { ByteBuffer buffer ->
+                if (buffer.remaining() > 10) {
+                    latch.await()
+                }
+                return Utils.OK_VIRUS_INFO
+            }] as AvService
+
+            processor = new AvCheckMessageProcessor(SizeClass.smallAndLarge(1, 10, 1),
+                    serviceId, service, infoService, 10, RejectionPolicy.BLOCK, ThreadMode.PLATFORM)
+            processor.setInputFilter(inputFilter)
+            processor.start()
+
+            List<AvMessage> responses = [].asSynchronized()
+            processor.addProcessedAVMessageListener({ responses.add(it) })
+
+            AvMessage small = new DefaultAvMessage.Builder('small')
+                    .type(MessageType.FILE_CHECK)
+                    .data(new byte[10])
+                    .build()
+
+        when:
+            3.times {
+                processor.sendMessage(Utils.genMessage())
+            }
+            processor.sendMessage(small)
+
+        then:
+            conditions.eventually {
+                responses*.getCorrelationId() == ['small']
+            }
+            processor.getLanes()*.getName() == [SizeClass.SMALL, SizeClass.LARGE]
+            processor.getLanes()[1].getQueueSize() == 2
+            processor.getLaneStatistics().length == 2
+            processor.getThreadCount() == 2
+
+        when:
+            latch.countDown()
+
+        then:
+            conditions.eventually {
+                responses.size() == 4
+                processor.getLanes()[0].getProcessedCount() == 1
+                processor.getLanes()[1].getProcessedCount() == 3
+                processor.getLanes()[1].getAverageLatency() > 0
+            }
+    }
+
+    /**
+     * Mock responses are handled under a global lock, so a blocked scan needs a real stub.
+     */
+    AvService blockingService(CountDownLatch latch) {
+        return [scanBufferWithInfo: { ByteBuffer buffer ->
+            latch.await()
+            return Utils.OK_VIRUS_INFO
+        }] as AvService
+    }
+
     def "responding test with a listener"() {
         given:
-            avService.scanBytesWithInfo((byte[]) _) >> Utils.OK_VIRUS_INFO
+            avService.scanBufferWithInfo(_) >> Utils.OK_VIRUS_INFO
 
             AvMessage response = null
             AvMessageListener messageListener = new AvMessageListener() {
@@ -122,7 +316,7 @@ class AvCheckMessageProcessorSpec extends Specification {
 
     def "send message with a service error"() {
         given:
-            avService.scanBytesWithInfo(_) >> {
+            avService.scanBufferWithInfo(_) >> {
                 throw new ScanException("Service is dead")
             }
 
@@ -149,6 +343,111 @@ class AvCheckMessageProcessorSpec extends Specification {
             0 * avService._
     }
 
+    def "claimed data are streamed to the AV program"() {
+        given:
+            Path directory = Files.createTempDirectory('avservice-claims')
+            FileBlobStore blobStore = new FileBlobStore(directory)
+            String id = blobStore.put(ByteBuffer.wrap(new byte[20]))
+            processor.setClaimCheck(new ClaimCheck(10, blobStore))
+
+            AvMessage response = null
+            processor.addProcessedAVMessageListener({ response = it })
+
+            AvMessage message = new DefaultAvMessage.Builder('testId')
+                    .type(MessageType.FILE_CHECK)
+                    .dataReference(new BlobReference(id, 20).getValue())
+                    .build()
+
+        when:
+            processor.sendMessage(message)
+            conditions.eventually {
+                assert response != null
+            }
+
+        then:
+            1 * avService.scanStreamWithInfo(_ as InputStream) >> Utils.OK_VIRUS_INFO
+            0 * avService.scanBufferWithInfo(_)
+            response.getType() == MessageType.RESPONSE
+            response.getVirusInfo() == Utils.OK_VIRUS_INFO
+
+        cleanup:
+            directory.toFile().deleteDir()
+    }
+
+    def "claimed data changed in the store"() {
+        given:
+            Path directory = Files.createTempDirectory('avservice-claims')
+            FileBlobStore blobStore = new FileBlobStore(directory)
+            String id = blobStore.put(ByteBuffer.wrap(new byte[20]))
+            Files.write(directory.resolve(id), [1] * 20 as byte[])
+            processor.setClaimCheck(new ClaimCheck(10, blobStore))
+
+            AvMessage response = null
+            processor.addProcessedAVMessageListener({ response = it })
+
+            AvMessage message = new DefaultAvMessage.Builder('testId')
+                    .type(MessageType.FILE_CHECK)
+                    .dataReference(new BlobReference(id, 20).getValue())
+                    .build()
+
+        when:
+            processor.sendMessage(message)
+            conditions.eventually {
+                assert response != null
+            }
+
+        then:
+            1 * avService.scanStreamWithInfo(_ as InputStream) >> Utils.OK_VIRUS_INFO
+            response.getType() == MessageType.RESPONSE_ERROR
+
+        cleanup:
+            directory.toFile().deleteDir()
+    }
+
+    def "claimed data with a disabled claim check"() {
+        given:
+            processor.setClaimCheck(ClaimCheck.disabled())
+
+            AvMessage response = null
+            processor.addProcessedAVMessageListener({ response = it })
+
+            AvMessage message = new DefaultAvMessage.Builder('testId')
+                    .type(MessageType.FILE_CHECK)
+                    .dataReference(new BlobReference('0' * 64, 20).getValue())
+                    .build()
+
+        when:
+            processor.sendMessage(message)
+            conditions.eventually {
+                assert response != null
+            }
+
+        then:
+            0 * avService._
+            response.getType() == MessageType.RESPONSE_ERROR
+    }
+
+    def "claimed data without a claim check"() {
+        given:
+            AvMessage response = null
+            processor.addProcessedAVMessageListener({ response = it })
+
+            AvMessage message = new DefaultAvMessage.Builder('testId')
+                    .type(MessageType.FILE_CHECK)
+                    .dataReference(new BlobReference('0' * 64, 20).getValue())
+                    .build()
+
+        when:
+            processor.sendMessage(message)
+            conditions.eventually {
+                assert response != null
+            }
+
+        then:
+            0 * avService._
+            response.getType() == MessageType.RESPONSE_ERROR
+    }
+
     def "send message with bad message type"() {
         given:
             AvMessage message = Utils.genDeleteMessage()
@@ -167,7 +466,7 @@ class AvCheckMessageProcessorSpec extends Specification {
             AvMessage message = Utils.genMessage()
             String testId = message.getId()
 
-            avService.scanBytesWithInfo(_) >> {
+            avService.scanBufferWithInfo(_) >> {
                 sleep(1000)
                 return Utils.OK_VIRUS_INFO
             }
@@ -204,7 +503,7 @@ class AvCheckMessageProcessorSpec extends Specification {
 
     def "test message counters"() {
         given:
-            avService.scanBytesWithInfo(_) >> Utils.OK_VIRUS_INFO
+            avService.scanBufferWithInfo(_) >> Utils.OK_VIRUS_INFO
 
         when:
             AvMessage message = Utils.genMessage()
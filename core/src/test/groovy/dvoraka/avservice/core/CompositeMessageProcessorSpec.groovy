@@ -10,6 +10,12 @@ import dvoraka.avservice.db.service.MessageInfoService
 import dvoraka.avservice.storage.service.FileService
 import spock.lang.Specification
 import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
 
 /**
  * CompositeMessageProcessor spec.
@@ -24,6 +30,8 @@ class CompositeMessageProcessorSpec extends Specification {
 
     AvMessageListener listener
 
+    PollingConditions conditions
+
 
     def setup() {
         processor = new CompositeMessageProcessor()
@@ -34,6 +42,7 @@ class CompositeMessageProcessorSpec extends Specification {
         fileService.loadFile(_) >> Utils.genFileMessage()
 
         listener = Mock()
+        conditions = new PollingConditions(timeout: 4)
 
         MessageProcessor checkMessageProcessor = new AvCheckMessageProcessor(
                 4,
@@ -103,6 +112,7 @@ class CompositeMessageProcessorSpec extends Specification {
 
         when:
             processor.sendMessage(message)
+            waitForProcessing(message)
 
         then:
             1 * avService._
@@ -117,6 +127,7 @@ class CompositeMessageProcessorSpec extends Specification {
 
         when:
             processor.sendMessage(message)
+            waitForProcessing(message)
 
         then:
             1 * avService._ >> Utils.OK_VIRUS_INFO
@@ -132,6 +143,7 @@ class CompositeMessageProcessorSpec extends Specification {
 
         when:
             processor.sendMessage(message)
+            waitForProcessing(message)
 
         then:
             1 * avService._ >> Utils.OK_VIRUS_INFO
@@ -147,6 +159,7 @@ class CompositeMessageProcessorSpec extends Specification {
 
         when:
             processor.sendMessage(message)
+            waitForProcessing(message)
 
         then:
             0 * avService._
@@ -161,6 +174,7 @@ class CompositeMessageProcessorSpec extends Specification {
 
         when:
             processor.sendMessage(message)
+            waitForProcessing(message)
 
         then:
             0 * avService._
@@ -169,6 +183,191 @@ class CompositeMessageProcessorSpec extends Specification {
             1 * listener.onMessage(_)
     }
 
+    def "many messages flow concurrently"() {
+        given:
+            List<AvMessage> messages = (1..20).collect { Utils.genSaveMessage() }
+
+        when:
+            messages.each {
+                processor.sendMessage(it)
+            }
+            messages.each {
+                waitForProcessing(it)
+            }
+
+        then:
+            20 * avService.scanBufferWithInfo(_) >> Utils.OK_VIRUS_INFO
+            20 * fileService.saveFile(_)
+            40 * listener.onMessage(_)
+            processor.getPendingCount() == 0
+    }
+
+    def "stage without a result times out"() {
+        given:
+            MessageProcessor silentProcessor = Mock()
+            CompositeMessageProcessor silentComposite = new CompositeMessageProcessor(1)
+            silentComposite.addProcessor(new ProcessorConfiguration(silentProcessor))
+            silentComposite.setStageTimeout(100)
+            silentComposite.start()
+
+            AvMessage message = Utils.genMessage()
+
+        when:
+            silentComposite.sendMessage(message)
+
+        then:
+            1 * silentProcessor.sendMessage(message)
+            silentComposite.messageStatus(message.getId()) == MessageStatus.PROCESSING
+            silentComposite.getPendingCount() == 1
+
+        and:
+            conditions.eventually {
+                silentComposite.messageStatus(message.getId()) == MessageStatus.PROCESSED
+                silentComposite.getPendingCount() == 0
+            }
+
+        cleanup:
+            silentComposite.stop()
+    }
+
+    def "first stage rejection goes to the sender"() {
+        given:
+            MessageProcessor rejectingProcessor = Mock()
+            rejectingProcessor.sendMessage(_) >> { throw new RejectedExecutionException() }
+            CompositeMessageProcessor rejectingComposite = new CompositeMessageProcessor(1)
+            rejectingComposite.addProcessor(new ProcessorConfiguration(rejectingProcessor))
+            rejectingComposite.start()
+
+        when:
+            rejectingComposite.sendMessage(Utils.genMessage())
+
+        then:
+            thrown(RejectedExecutionException)
+            rejectingComposite.getPendingCount() == 0
+
+        cleanup:
+            rejectingComposite.stop()
+    }
+
+    def "independent stages run in parallel"() {
+        given:
+            CountDownLatch secondStarted = new CountDownLatch(1)
+            List<AvMessage> lastInputs = new CopyOnWriteArrayList<>()
+
+            MessageProcessor first = respondingProcessor { msg ->
+                secondStarted.await(2, TimeUnit.SECONDS) ? msg.createCheckResponse('first') : null
+            }
+            MessageProcessor second = respondingProcessor { msg ->
+                secondStarted.countDown()
+                msg.createCheckResponse('second')
+            }
+            MessageProcessor last = respondingProcessor { msg ->
+                lastInputs << msg
+                msg.createCheckResponse('last')
+            }
+
+            CompositeMessageProcessor dag = new CompositeMessageProcessor(2)
+            dag.addProcessor(new ProcessorConfiguration.Builder(first).name('first').after().build())
+            dag.addProcessor(new ProcessorConfiguration.Builder(second).name('second').after().build())
+            dag.addProcessor(new ProcessorConfiguration.Builder(last)
+                    .name('last')
+                    .after('first', 'second')
+                    .useOriginalMessage(false)
+                    .build())
+            dag.addProcessedAVMessageListener(listener)
+            dag.start()
+
+            AvMessage message = Utils.genMessage()
+
+        when:
+            dag.sendMessage(message)
+            conditions.eventually {
+                assert dag.messageStatus(message.getId()) == MessageStatus.PROCESSED
+            }
+
+        then:
+            lastInputs.size() == 1
+            lastInputs[0].getVirusInfo() == 'second'
+            3 * listener.onMessage(_)
+
+        cleanup:
+            dag.stop()
+    }
+
+    def "failed stage skips dependent stages"() {
+        given:
+            List<AvMessage> dependentInputs = new CopyOnWriteArrayList<>()
+
+            MessageProcessor silent = respondingProcessor { msg -> null }
+            MessageProcessor dependent = respondingProcessor { msg ->
+                dependentInputs << msg
+                msg.createCheckResponse('dependent')
+            }
+
+            CompositeMessageProcessor dag = new CompositeMessageProcessor(1)
+            dag.addProcessor(new ProcessorConfiguration.Builder(silent).name('silent').build())
+            dag.addProcessor(new ProcessorConfiguration.Builder(dependent).after('silent').build())
+            dag.addProcessor(new ProcessorConfiguration(dependent))
+            dag.setStageTimeout(100)
+            dag.start()
+
+            AvMessage message = Utils.genMessage()
+
+        when:
+            dag.sendMessage(message)
+
+        then:
+            conditions.eventually {
+                assert dag.messageStatus(message.getId()) == MessageStatus.PROCESSED
+            }
+            dependentInputs.isEmpty()
+            dag.getPendingCount() == 0
+
+        cleanup:
+            dag.stop()
+    }
+
+    def "send message before start"() {
+        given:
+            CompositeMessageProcessor notStarted = new CompositeMessageProcessor(1)
+
+        when:
+            notStarted.sendMessage(Utils.genMessage())
+
+        then:
+            thrown(IllegalStateException)
+
+        cleanup:
+            notStarted.stop()
+    }
+
+    /**
+     * Creates a processor which responds with a handler result from another thread.
+     * A null result means no response.
+     */
+    MessageProcessor respondingProcessor(Closure<AvMessage> handler) {
+        List<AvMessageListener> processorListeners = new CopyOnWriteArrayList<>()
+
+        return [
+                sendMessage                  : { AvMessage msg ->
+                    Thread.start {
+                        AvMessage response = handler(msg)
+                        if (response != null) {
+                            processorListeners.each { it.onMessage(response) }
+                        }
+                    }
+                },
+                addProcessedAVMessageListener: { AvMessageListener l -> processorListeners << l },
+                stop                         : {}
+        ] as MessageProcessor
+    }
+
+    void waitForProcessing(AvMessage message) {
+        conditions.eventually {
+            assert processor.messageStatus(message.getId()) == MessageStatus.PROCESSED
+        }
+    }
+
     def "message status for unknown ID"() {
         expect:
             processor.messageStatus('XXX') == MessageStatus.UNKNOWN
@@ -180,6 +379,7 @@ class CompositeMessageProcessorSpec extends Specification {
 
         when:
             processor.sendMessage(saveMessage)
+            waitForProcessing(saveMessage)
 
         then:
             1 * listener.onMessage(_)
@@ -187,6 +387,7 @@ class CompositeMessageProcessorSpec extends Specification {
         when:
             processor.setInputFilter({ msg -> msg.getType() == MessageType.FILE_LOAD })
             processor.sendMessage(saveMessage)
+            sleep(200)
 
         then:
             0 * listener.onMessage(_)
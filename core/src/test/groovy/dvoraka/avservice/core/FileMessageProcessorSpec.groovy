@@ -1,6 +1,10 @@
 package dvoraka.avservice.core
 
+import dvoraka.avservice.common.blob.BlobReference
+import dvoraka.avservice.common.blob.BlobStore
+import dvoraka.avservice.common.blob.ClaimCheck
 import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.data.DefaultAvMessage
 import dvoraka.avservice.common.data.MessageStatus
 import dvoraka.avservice.common.data.MessageType
 import dvoraka.avservice.common.listener.AvMessageListener
@@ -59,6 +63,50 @@ class FileMessageProcessorSpec extends Specification {
             1 * listener.onMessage(_)
     }
 
+    def "save message with claimed data"() {
+        given:
+            String id = '0' * 64
+            byte[] data = new byte[20]
+            BlobStore blobStore = Mock()
+            blobStore.load(new BlobReference(id, data.length)) >> data
+            processor.setClaimCheck(new ClaimCheck(10, blobStore))
+
+            AvMessage message = new DefaultAvMessage.Builder('testId')
+                    .type(MessageType.FILE_SAVE)
+                    .filename('file')
+                    .owner('owner')
+                    .dataReference(new BlobReference(id, data.length).getValue())
+                    .build()
+
+        when:
+            processor.sendMessage(message)
+
+        then:
+            1 * fileService.saveFile({ AvMessage saved ->
+                saved.getData() == data && saved.getDataReference() == null && saved.getFilename() == 'file'
+            })
+            1 * listener.onMessage({ it.getType() == MessageType.FILE_RESPONSE })
+    }
+
+    def "update message with unavailable claimed data"() {
+        given:
+            BlobStore blobStore = Mock()
+            blobStore.load(_) >> { throw new IOException('missing') }
+            processor.setClaimCheck(new ClaimCheck(10, blobStore))
+
+            AvMessage message = new DefaultAvMessage.Builder('testId')
+                    .type(MessageType.FILE_UPDATE)
+                    .dataReference(new BlobReference('0' * 64, 20).getValue())
+                    .build()
+
+        when:
+            processor.sendMessage(message)
+
+        then:
+            0 * fileService._
+            1 * listener.onMessage({ it.getType() == MessageType.RESPONSE_ERROR })
+    }
+
     def "load message"() {
         given:
             AvMessage message = Utils.genLoadMessage()
@@ -95,4 +95,32 @@ class InputConditionsSpec extends Specification {
         expect:
             conditions.test(responseMessage, responseMessage)
     }
+
+    def "accepts original type"() {
+        given:
+            conditions = new InputConditions.Builder()
+                    .originalType(MessageType.FILE_SAVE)
+                    .lastType(MessageType.RESPONSE)
+                    .build()
+
+        expect:
+            conditions.acceptsOriginalType(MessageType.FILE_SAVE)
+            !conditions.acceptsOriginalType(MessageType.FILE_LOAD)
+            !conditions.acceptsOriginalType(null)
+            !conditions.hasOnlyOriginalTypes()
+    }
+
+    def "empty conditions accept everything"() {
+        given:
+            conditions = new InputConditions.Builder().build()
+
+            AvMessage message = Utils.genMessage()
+
+        expect:
+            conditions.test(message, message)
+            conditions.acceptsOriginalType(null)
+            conditions.hasOnlyOriginalTypes()
+            conditions.getAllowedOriginalTypes().isEmpty()
+            conditions.getAllowedLastTypes().isEmpty()
+    }
 }
@@ -38,6 +38,43 @@ class ProcessorConfigurationSpec extends Specification {
             !configuration.isUseOriginalMessage()
     }
 
+    def "constructor configuration follows the previous stage"() {
+        expect:
+            configuration.getName() == null
+            configuration.getDependencies() == null
+    }
+
+    def "build a stage"() {
+        given:
+            InputConditions conditions = new InputConditions.Builder().build()
+
+        when:
+            configuration = new ProcessorConfiguration.Builder(messageProcessor)
+                    .name('save')
+                    .conditions(conditions)
+                    .useOriginalMessage(false)
+                    .after('check', 'scan')
+                    .build()
+
+        then:
+            configuration.getProcessor() == messageProcessor
+            configuration.getName() == 'save'
+            configuration.getInputConditions() == [conditions]
+            !configuration.isUseOriginalMessage()
+            configuration.getDependencies() as List == ['check', 'scan']
+    }
+
+    def "build an independent stage"() {
+        when:
+            configuration = new ProcessorConfiguration.Builder(messageProcessor)
+                    .after()
+                    .build()
+
+        then:
+            configuration.getDependencies().isEmpty()
+            configuration.isUseOriginalMessage()
+    }
+
     def "to string"() {
         expect:
             configuration.toString().endsWith('}')
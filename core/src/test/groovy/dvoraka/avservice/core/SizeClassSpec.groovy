@@ -0,0 +1,44 @@
+package dvoraka.avservice.core
+
+import spock.lang.Specification
+
+/**
+ * Size class spec.
+ */
+class SizeClassSpec extends Specification {
+
+    def "constructor with bad arguments"() {
+        when:
+            new SizeClass(name, maxSize, threadCount)
+
+        then:
+            thrown(exception)
+
+        where:
+            name    | maxSize | threadCount || exception
+            null    | 1       | 1           || NullPointerException
+            'small' | -1      | 1           || IllegalArgumentException
+            'small' | 1       | 0           || IllegalArgumentException
+    }
+
+    def "one class without a small message size"() {
+        when:
+            List<SizeClass> classes = SizeClass.smallAndLarge(4, 0, 1)
+
+        then:
+            classes.size() == 1
+            classes[0].getName() == AvCheckMessageProcessor.DEFAULT_LANE
+            classes[0].getMaxSize() == Long.MAX_VALUE
+            classes[0].getThreadCount() == 4
+    }
+
+    def "small and large classes"() {
+        when:
+            List<SizeClass> classes = SizeClass.smallAndLarge(4, 1024, 2)
+
+        then:
+            classes*.getName() == [SizeClass.SMALL, SizeClass.LARGE]
+            classes*.getMaxSize() == [1024L, Long.MAX_VALUE]
+            classes*.getThreadCount() == [4, 2]
+    }
+}
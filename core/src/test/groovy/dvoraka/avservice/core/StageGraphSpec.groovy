@@ -0,0 +1,135 @@
+package dvoraka.avservice.core
+
+import dvoraka.avservice.common.data.MessageType
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ * Stage graph spec.
+ */
+class StageGraphSpec extends Specification {
+
+    @Subject
+    StageGraph graph
+
+    MessageProcessor processor
+
+
+    def setup() {
+        processor = Mock()
+    }
+
+    def "unnamed stages form a chain"() {
+        when:
+            graph = new StageGraph([
+                    new ProcessorConfiguration(processor),
+                    new ProcessorConfiguration(processor),
+                    new ProcessorConfiguration(processor)
+            ])
+
+        then:
+            graph.size() == 3
+            graph.getRoots() == [0] as int[]
+            graph.getDependents(0) == [1] as int[]
+            graph.getDependents(1) == [2] as int[]
+            graph.getInputStage(0) == StageGraph.ORIGINAL
+            graph.getInputStage(2) == 1
+            graph.getName(1) == 'stage1'
+    }
+
+    def "independent stages are roots"() {
+        when:
+            graph = new StageGraph([
+                    stage('a'),
+                    stage('b'),
+                    stage('c', 'a', 'b')
+            ])
+
+        then:
+            graph.getRoots() == [0, 1] as int[]
+            graph.getDependencyCount(2) == 2
+            graph.getInputStage(2) == 1
+    }
+
+    def "unknown dependency"() {
+        when:
+            new StageGraph([stage('a', 'x')])
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "duplicate stage name"() {
+        when:
+            new StageGraph([stage('a'), stage('a')])
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "cycle"() {
+        when:
+            new StageGraph([
+                    stage('root'),
+                    stage('a', 'b'),
+                    stage('b', 'a')
+            ])
+
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def "routing table"() {
+        given:
+            InputConditions saveConditions = new InputConditions.Builder()
+                    .originalType(MessageType.FILE_SAVE)
+                    .build()
+            InputConditions lastConditions = new InputConditions.Builder()
+                    .originalType(MessageType.FILE_SAVE)
+                    .originalType(MessageType.FILE_CHECK)
+                    .lastType(MessageType.RESPONSE)
+                    .build()
+
+        when:
+            graph = new StageGraph([
+                    new ProcessorConfiguration(processor, saveConditions.toList(), true),
+                    new ProcessorConfiguration(processor, lastConditions.toList(), true),
+                    new ProcessorConfiguration(processor)
+            ])
+
+        then:
+            graph.getRoute(MessageType.FILE_SAVE) == [true, true, true] as boolean[]
+            graph.getRoute(MessageType.FILE_CHECK) == [false, true, true] as boolean[]
+            graph.getRoute(MessageType.FILE_LOAD) == [false, false, true] as boolean[]
+            graph.getRoute(null) == [false, false, true] as boolean[]
+    }
+
+    def "conditions decided by the routing table are not tested"() {
+        given:
+            InputConditions typeConditions = new InputConditions.Builder()
+                    .originalType(MessageType.FILE_SAVE)
+                    .build()
+            InputConditions lastConditions = new InputConditions.Builder()
+                    .lastType(MessageType.RESPONSE)
+                    .build()
+            graph = new StageGraph([
+                    new ProcessorConfiguration(processor, typeConditions.toList(), true),
+                    new ProcessorConfiguration(processor, lastConditions.toList(), true)
+            ])
+
+            def message = Utils.genMessage()
+
+        expect:
+            graph.testConditions(0, message, message)
+            !graph.testConditions(1, message, message)
+            graph.testConditions(1, message, message.createCheckResponse(Utils.OK_VIRUS_INFO))
+    }
+
+    ProcessorConfiguration stage(String name, String... dependencies) {
+        return new ProcessorConfiguration.Builder(processor)
+                .name(name)
+                .after(dependencies)
+                .build()
+    }
+}
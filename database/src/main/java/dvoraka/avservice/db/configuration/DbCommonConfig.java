@@ -3,6 +3,9 @@ package dvoraka.avservice.db.configuration;
 import dvoraka.avservice.db.repository.db.DbMessageInfoRepository;
 import dvoraka.avservice.db.service.DbMessageInfoService;
 import dvoraka.avservice.db.service.MessageInfoService;
+import dvoraka.avservice.db.service.OverflowPolicy;
+import dvoraka.avservice.db.service.WriteBehindMessageInfoService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -21,6 +24,18 @@ import java.util.Properties;
 @Profile({"db", "db-mem"})
 public class DbCommonConfig {
 
+    @Value("${avservice.db.writeBehind.enabled:false}")
+    private boolean writeBehind;
+    @Value("${avservice.db.writeBehind.capacity:65536}")
+    private int writeBehindCapacity;
+    @Value("${avservice.db.writeBehind.batchSize:500}")
+    private int writeBehindBatchSize;
+    @Value("${avservice.db.writeBehind.flushInterval:1000}")
+    private long writeBehindFlushInterval;
+    @Value("${avservice.db.writeBehind.overflow:DROP}")
+    private OverflowPolicy writeBehindOverflow;
+
+
     @Bean
     public LocalContainerEntityManagerFactoryBean entityManagerFactory(
             DataSource dataSource,
@@ -47,6 +62,17 @@ public class DbCommonConfig {
 
     @Bean
     public MessageInfoService messageInfoService(DbMessageInfoRepository messageInfoRepository) {
-        return new DbMessageInfoService(messageInfoRepository);
+        MessageInfoService service = new DbMessageInfoService(messageInfoRepository);
+        if (!writeBehind) {
+            return service;
+        }
+
+        return new WriteBehindMessageInfoService(
+                service,
+                writeBehindCapacity,
+                writeBehindBatchSize,
+                writeBehindFlushInterval,
+                writeBehindOverflow
+        );
     }
 }
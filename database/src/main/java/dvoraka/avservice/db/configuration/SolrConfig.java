@@ -2,9 +2,12 @@ package dvoraka.avservice.db.configuration;
 
 import dvoraka.avservice.db.repository.solr.SolrMessageInfoRepository;
 import dvoraka.avservice.db.service.MessageInfoService;
+import dvoraka.avservice.db.service.OverflowPolicy;
 import dvoraka.avservice.db.service.SolrMessageInfoService;
+import dvoraka.avservice.db.service.WriteBehindMessageInfoService;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -19,6 +22,18 @@ import org.springframework.data.solr.repository.config.EnableSolrRepositories;
 @Profile("db-solr")
 public class SolrConfig {
 
+    @Value("${avservice.db.writeBehind.enabled:false}")
+    private boolean writeBehind;
+    @Value("${avservice.db.writeBehind.capacity:65536}")
+    private int writeBehindCapacity;
+    @Value("${avservice.db.writeBehind.batchSize:500}")
+    private int writeBehindBatchSize;
+    @Value("${avservice.db.writeBehind.flushInterval:1000}")
+    private long writeBehindFlushInterval;
+    @Value("${avservice.db.writeBehind.overflow:DROP}")
+    private OverflowPolicy writeBehindOverflow;
+
+
     @Bean
     public SolrClient solrClient() {
         return new HttpSolrClient.Builder()
@@ -33,6 +48,17 @@ public class SolrConfig {
 
     @Bean
     public MessageInfoService messageInfoService(SolrMessageInfoRepository messageInfoRepository) {
-        return new SolrMessageInfoService(messageInfoRepository);
+        MessageInfoService service = new SolrMessageInfoService(messageInfoRepository);
+        if (!writeBehind) {
+            return service;
+        }
+
+        return new WriteBehindMessageInfoService(
+                service,
+                writeBehindCapacity,
+                writeBehindBatchSize,
+                writeBehindFlushInterval,
+                writeBehindOverflow
+        );
     }
 }
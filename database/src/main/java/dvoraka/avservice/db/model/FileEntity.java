@@ -11,6 +11,7 @@ import javax.persistence.Id;
 import javax.persistence.Lob;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 /**
@@ -51,6 +52,17 @@ public class FileEntity {
         this.data = data.clone();
     }
 
+    /**
+     * Sets data from a buffer with one copy.
+     *
+     * @param buffer the data buffer
+     */
+    public void setData(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        this.data = bytes;
+    }
+
     public String getFilename() {
         return filename;
     }
@@ -70,7 +82,7 @@ public class FileEntity {
     public FileMessage fileMessage(String originalId) {
         return new DefaultAvMessage.Builder(UUID.randomUUID().toString())
                 .correlationId(originalId)
-                .data(getData())
+                .data(data)
                 .type(MessageType.FILE_RESPONSE)
                 .filename(getFilename())
                 .owner(getOwner())
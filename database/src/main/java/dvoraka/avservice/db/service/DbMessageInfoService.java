@@ -14,6 +14,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
@@ -43,6 +44,25 @@ public class DbMessageInfoService implements MessageInfoService {
         messageInfoRepository.save(messageInfo);
     }
 
+    @Override
+    public void saveAll(List<AvMessageInfo> infos) {
+        log.debug("Saving infos: " + infos.size());
+
+        messageInfoRepository.saveAll(infos.stream()
+                .map(this::toMessageInfo)
+                .collect(Collectors.toList()));
+    }
+
+    private MessageInfo toMessageInfo(AvMessageInfo info) {
+        MessageInfo messageInfo = new MessageInfo();
+        messageInfo.setUuid(info.getId());
+        messageInfo.setSource(info.getSource().toString());
+        messageInfo.setServiceId(info.getServiceId());
+        messageInfo.setCreated(info.getCreated());
+
+        return messageInfo;
+    }
+
     private MessageInfo toMessageInfo(
             AvMessage message,
             InfoSource source,
@@ -6,6 +6,7 @@ import dvoraka.avservice.common.data.InfoSource;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -19,6 +20,11 @@ public class DummyMessageInfoService implements MessageInfoService {
         // do nothing
     }
 
+    @Override
+    public void saveAll(List<AvMessageInfo> infos) {
+        // do nothing
+    }
+
     @Override
     public AvMessageInfo loadInfo(String uuid) {
         return null;
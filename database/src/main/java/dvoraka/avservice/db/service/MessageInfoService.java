@@ -5,6 +5,7 @@ import dvoraka.avservice.common.data.AvMessageInfo;
 import dvoraka.avservice.common.data.InfoSource;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -21,6 +22,13 @@ public interface MessageInfoService {
      */
     void save(AvMessage message, InfoSource source, String serviceId);
 
+    /**
+     * Saves prepared AV message infos at once.
+     *
+     * @param infos the infos
+     */
+    void saveAll(List<AvMessageInfo> infos);
+
     /**
      * Loads a stored AV message info for a given UUID string.
      *
@@ -0,0 +1,15 @@
+package dvoraka.avservice.db.service;
+
+/**
+ * What a write-behind service does with an info when its buffer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Drops the info and counts it.
+     */
+    DROP,
+    /**
+     * Blocks the saving thread until there is space in the buffer.
+     */
+    BLOCK
+}
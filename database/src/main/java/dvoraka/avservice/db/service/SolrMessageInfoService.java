@@ -22,6 +22,7 @@ import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
@@ -91,6 +92,15 @@ public class SolrMessageInfoService implements MessageInfoService, ExecutorServi
         }
     }
 
+    @Override
+    public void saveAll(List<AvMessageInfo> infos) {
+        log.debug("Saving infos: " + infos.size());
+
+        messageInfoRepository.saveAll(infos.stream()
+                .map(this::toMessageInfoDocument)
+                .collect(Collectors.toList()));
+    }
+
     /**
      * Saves a document in a batch and then saves it later at once.
      *
@@ -137,6 +147,17 @@ public class SolrMessageInfoService implements MessageInfoService, ExecutorServi
         return messageInfoDocument;
     }
 
+    private MessageInfoDocument toMessageInfoDocument(AvMessageInfo info) {
+        MessageInfoDocument messageInfoDocument = new MessageInfoDocument();
+        messageInfoDocument.setId(UUID.randomUUID().toString());
+        messageInfoDocument.setUuid(info.getId());
+        messageInfoDocument.setSource(info.getSource().toString());
+        messageInfoDocument.setServiceId(info.getServiceId());
+        messageInfoDocument.setCreated(Date.from(info.getCreated()));
+
+        return messageInfoDocument;
+    }
+
     public boolean isBatching() {
         return batching;
     }
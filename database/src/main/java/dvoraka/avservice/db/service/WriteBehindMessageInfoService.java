@@ -0,0 +1,234 @@
+package dvoraka.avservice.db.service;
+
+import dvoraka.avservice.common.CustomThreadFactory;
+import dvoraka.avservice.common.data.AvMessage;
+import dvoraka.avservice.common.data.AvMessageInfo;
+import dvoraka.avservice.common.data.DefaultAvMessageInfo;
+import dvoraka.avservice.common.data.InfoSource;
+import dvoraka.avservice.common.util.RingBuffer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Write-behind decorator for any message info service.
+ * <p>
+ * Saving only puts the info into a lock-free ring buffer. One background thread saves
+ * buffered infos in batches with {@link MessageInfoService#saveAll(List)} when a batch is
+ * full or after the flush interval. A full buffer drops the info or blocks the caller
+ * according to the {@link OverflowPolicy overflow policy}. Saved infos can be loaded after
+ * the next flush.
+ * <p>
+ * Thread-safe.
+ */
+public class WriteBehindMessageInfoService implements MessageInfoService {
+
+    private static final Logger log = LogManager.getLogger(WriteBehindMessageInfoService.class);
+
+    private static final long BLOCK_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long STOP_TIMEOUT = 10_000;
+
+    private final MessageInfoService delegate;
+    private final RingBuffer<AvMessageInfo> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Thread worker;
+    private final AtomicBoolean started;
+    private volatile boolean running;
+
+    private final AtomicLong savedCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong failedCount;
+
+
+    /**
+     * Creates a service.
+     *
+     * @param delegate       the service saving batches
+     * @param capacity       the buffer capacity, rounded up to a power of two
+     * @param batchSize      the maximum batch size
+     * @param flushInterval  the maximum time between flushes in milliseconds
+     * @param overflowPolicy the full buffer handling
+     */
+    public WriteBehindMessageInfoService(
+            MessageInfoService delegate,
+            int capacity,
+            int batchSize,
+            long flushInterval,
+            OverflowPolicy overflowPolicy
+    ) {
+        this.delegate = requireNonNull(delegate);
+        this.overflowPolicy = requireNonNull(overflowPolicy);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Bad batch size: " + batchSize);
+        }
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("Bad flush interval: " + flushInterval);
+        }
+        this.batchSize = batchSize;
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        buffer = new RingBuffer<>(capacity);
+
+        savedCount = new AtomicLong();
+        droppedCount = new AtomicLong();
+        failedCount = new AtomicLong();
+
+        started = new AtomicBoolean();
+        running = true;
+        worker = new CustomThreadFactory("info-writer-", true).newThread(this::run);
+    }
+
+    @Override
+    public void save(AvMessage message, InfoSource source, String serviceId) {
+        AvMessageInfo info = new DefaultAvMessageInfo.Builder(message.getId())
+                .source(source)
+                .serviceId(serviceId)
+                .created(Instant.now())
+                .build();
+
+        if (!running) {
+            droppedCount.getAndIncrement();
+            log.debug("Service stopped, dropping: {}", info.getId());
+
+            return;
+        }
+        if (started.compareAndSet(false, true)) {
+            worker.start();
+        }
+
+        if (buffer.offer(info)) {
+            if (buffer.size() >= batchSize) {
+                LockSupport.unpark(worker);
+            }
+
+            return;
+        }
+
+        handleOverflow(info);
+    }
+
+    private void handleOverflow(AvMessageInfo info) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            while (running) {
+                LockSupport.unpark(worker);
+                LockSupport.parkNanos(this, BLOCK_WAIT);
+                if (buffer.offer(info)) {
+                    return;
+                }
+            }
+        }
+
+        droppedCount.getAndIncrement();
+        log.debug("Buffer full, dropping: {}", info.getId());
+    }
+
+    private void run() {
+        List<AvMessageInfo> batch = new ArrayList<>(batchSize);
+        while (running) {
+            flush(batch);
+            if (buffer.size() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+        flush(batch);
+    }
+
+    private void flush(List<AvMessageInfo> batch) {
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                delegate.saveAll(batch);
+                savedCount.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                failedCount.addAndGet(batch.size());
+                log.error("Saving infos failed, count: " + batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void saveAll(List<AvMessageInfo> infos) {
+        delegate.saveAll(infos);
+    }
+
+    @Override
+    public AvMessageInfo loadInfo(String uuid) {
+        return delegate.loadInfo(uuid);
+    }
+
+    @Override
+    public Stream<AvMessageInfo> loadInfoStream(Instant from, Instant to) {
+        return delegate.loadInfoStream(from, to);
+    }
+
+    /**
+     * Returns the count of infos waiting for saving.
+     *
+     * @return the count
+     */
+    public int getPendingCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Returns the count of saved infos.
+     *
+     * @return the count
+     */
+    public long getSavedCount() {
+        return savedCount.get();
+    }
+
+    /**
+     * Returns the count of infos dropped because of a full buffer or a stopped service.
+     *
+     * @return the count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the count of infos which failed to be saved.
+     *
+     * @return the count
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Saves buffered infos and stops the service.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        log.info("Stopping write-behind...");
+        running = false;
+        if (started.get()) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Write-behind stopped.");
+    }
+}
@@ -1,6 +1,7 @@
 package dvoraka.avservice.db.service
 
 import dvoraka.avservice.common.data.AvMessageInfo
+import dvoraka.avservice.common.data.DefaultAvMessageInfo
 import dvoraka.avservice.common.data.InfoSource
 import dvoraka.avservice.common.util.Utils
 import dvoraka.avservice.db.model.MessageInfo
@@ -38,6 +39,26 @@ class DbMessageInfoServiceSpec extends Specification {
             1 * messageRepository.save(_ as MessageInfo)
     }
 
+    def "save all"() {
+        given:
+            Instant created = Instant.now()
+            AvMessageInfo info = new DefaultAvMessageInfo.Builder(testUuid)
+                    .source(InfoSource.TEST)
+                    .serviceId(testService)
+                    .created(created)
+                    .build()
+
+        when:
+            messageService.saveAll([info, info])
+
+        then:
+            1 * messageRepository.saveAll({ List<MessageInfo> infos ->
+                infos.size() == 2 && infos.every {
+                    it.getUuid() == testUuid && it.getSource() == 'TEST' && it.getCreated() == created
+                }
+            })
+    }
+
     def "load info"() {
         when:
             messageService.loadInfo(testUuid)
@@ -21,6 +21,11 @@ class DummyMessageInfoServiceSpec extends Specification {
             infoService.save(null, null, null)
     }
 
+    def "save all calling"() {
+        expect:
+            infoService.saveAll([])
+    }
+
     def "message info should be null"() {
         expect:
             infoService.loadInfo(null) == null
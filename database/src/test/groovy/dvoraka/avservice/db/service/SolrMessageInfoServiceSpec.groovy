@@ -2,6 +2,7 @@ package dvoraka.avservice.db.service
 
 import dvoraka.avservice.common.data.AvMessage
 import dvoraka.avservice.common.data.AvMessageInfo
+import dvoraka.avservice.common.data.DefaultAvMessageInfo
 import dvoraka.avservice.common.data.InfoSource
 import dvoraka.avservice.common.util.Utils
 import dvoraka.avservice.db.model.MessageInfoDocument
@@ -42,6 +43,23 @@ class SolrMessageInfoServiceSpec extends Specification {
             1 * messageRepository.save(_)
     }
 
+    def "save all"() {
+        given:
+            AvMessageInfo info = new DefaultAvMessageInfo.Builder(testUuid)
+                    .source(InfoSource.TEST)
+                    .serviceId(testService)
+                    .created(Instant.now())
+                    .build()
+
+        when:
+            messageService.saveAll([info, info])
+
+        then:
+            1 * messageRepository.saveAll({ List<MessageInfoDocument> documents ->
+                documents.size() == 2 && documents.every { it.getUuid() == testUuid }
+            })
+    }
+
     def "call save method with batching"() {
         given:
             int batchSize = 2
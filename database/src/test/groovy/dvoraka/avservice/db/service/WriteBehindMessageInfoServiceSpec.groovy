@@ -0,0 +1,185 @@
+package dvoraka.avservice.db.service
+
+import dvoraka.avservice.common.data.AvMessageInfo
+import dvoraka.avservice.common.data.InfoSource
+import dvoraka.avservice.common.util.Utils
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import java.time.Instant
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+
+/**
+ * Write-behind message info service spec.
+ */
+class WriteBehindMessageInfoServiceSpec extends Specification {
+
+    @Subject
+    WriteBehindMessageInfoService service
+
+    List<List<AvMessageInfo>> batches
+    MessageInfoService delegate
+
+    String testService = 'TEST'
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+
+    def setup() {
+        batches = new CopyOnWriteArrayList<>()
+        delegate = [
+                saveAll        : { List<AvMessageInfo> infos -> batches.add(new ArrayList<>(infos)) },
+                loadInfo       : { String uuid -> null },
+                loadInfoStream : { Instant from, Instant to -> null },
+        ] as MessageInfoService
+    }
+
+    def cleanup() {
+        service?.stop()
+    }
+
+    def "full batches are saved"() {
+        given:
+            service = new WriteBehindMessageInfoService(delegate, 64, 3, 60_000, OverflowPolicy.DROP)
+
+        when:
+            6.times { service.save(Utils.genMessage(), InfoSource.TEST, testService) }
+
+        then:
+            conditions.eventually {
+                assert service.getSavedCount() == 6
+            }
+            batches.every { it.size() <= 3 }
+            batches.flatten().every { AvMessageInfo info ->
+                info.getSource() == InfoSource.TEST && info.getServiceId() == testService
+            }
+    }
+
+    def "partial batch is saved after flush interval"() {
+        given:
+            service = new WriteBehindMessageInfoService(delegate, 64, 100, 10, OverflowPolicy.DROP)
+
+        when:
+            service.save(Utils.genMessage(), InfoSource.TEST, testService)
+
+        then:
+            conditions.eventually {
+                assert service.getSavedCount() == 1
+            }
+            service.getPendingCount() == 0
+    }
+
+    def "full buffer drops infos"() {
+        given:
+            CountDownLatch blocked = new CountDownLatch(1)
+            delegate = [saveAll: { List<AvMessageInfo> infos -> blocked.await() }] as MessageInfoService
+            service = new WriteBehindMessageInfoService(delegate, 2, 1, 60_000, OverflowPolicy.DROP)
+
+        when:
+            service.save(Utils.genMessage(), InfoSource.TEST, testService)
+            conditions.eventually {
+                assert service.getPendingCount() == 0
+            }
+            4.times { service.save(Utils.genMessage(), InfoSource.TEST, testService) }
+
+        then:
+            service.getDroppedCount() == 2
+
+        cleanup:
+            blocked.countDown()
+    }
+
+    def "full buffer blocks the caller"() {
+        given:
+            CountDownLatch blocked = new CountDownLatch(1)
+            delegate = [saveAll: { List<AvMessageInfo> infos -> blocked.await() }] as MessageInfoService
+            service = new WriteBehindMessageInfoService(delegate, 2, 1, 60_000, OverflowPolicy.BLOCK)
+            service.save(Utils.genMessage(), InfoSource.TEST, testService)
+            conditions.eventually {
+                assert service.getPendingCount() == 0
+            }
+            2.times { service.save(Utils.genMessage(), InfoSource.TEST, testService) }
+
+            Thread caller = new Thread({ service.save(Utils.genMessage(), InfoSource.TEST, testService) })
+
+        when:
+            caller.start()
+            sleep(100)
+
+        then:
+            caller.isAlive()
+
+        when:
+            blocked.countDown()
+            caller.join(5_000)
+
+        then:
+            !caller.isAlive()
+            service.getDroppedCount() == 0
+    }
+
+    def "failed batch is counted"() {
+        given:
+            delegate = [
+                    saveAll: { List<AvMessageInfo> infos -> throw new RuntimeException('TEST') }
+            ] as MessageInfoService
+            service = new WriteBehindMessageInfoService(delegate, 64, 10, 10, OverflowPolicy.DROP)
+
+        when:
+            2.times { service.save(Utils.genMessage(), InfoSource.TEST, testService) }
+
+        then:
+            conditions.eventually {
+                assert service.getFailedCount() == 2
+            }
+    }
+
+    def "stop saves pending infos"() {
+        given:
+            service = new WriteBehindMessageInfoService(delegate, 64, 100, 60_000, OverflowPolicy.DROP)
+
+        when:
+            3.times { service.save(Utils.genMessage(), InfoSource.TEST, testService) }
+            service.stop()
+
+        then:
+            service.getSavedCount() == 3
+
+        when:
+            service.save(Utils.genMessage(), InfoSource.TEST, testService)
+
+        then:
+            service.getDroppedCount() == 1
+    }
+
+    def "loading goes to the delegate"() {
+        given:
+            delegate = Mock()
+            service = new WriteBehindMessageInfoService(delegate, 64, 10, 10, OverflowPolicy.DROP)
+            Instant now = Instant.now()
+
+        when:
+            service.loadInfo('ID')
+            service.loadInfoStream(now, now)
+            service.saveAll([])
+
+        then:
+            1 * delegate.loadInfo('ID')
+            1 * delegate.loadInfoStream(now, now)
+            1 * delegate.saveAll([])
+    }
+
+    def "bad arguments"() {
+        when:
+            new WriteBehindMessageInfoService(delegate, 64, batchSize, flushInterval, OverflowPolicy.DROP)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            batchSize | flushInterval
+            0         | 10
+            1         | 0
+    }
+}
@@ -1,5 +1,6 @@
 package dvoraka.avservice.runner.service;
 
+import dvoraka.avservice.common.ExecutorFactory;
 import dvoraka.avservice.common.helper.ExecutorServiceHelper;
 import dvoraka.avservice.runner.Runner;
 import dvoraka.avservice.runner.RunningState;
@@ -19,7 +20,6 @@ import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -41,7 +41,8 @@ public class DefaultRunnerService implements RunnerService, ExecutorServiceHelpe
         runners = new ConcurrentHashMap<>();
 
         final int threadCount = 8;
-        executorService = Executors.newFixedThreadPool(threadCount);
+        executorService = ExecutorFactory.newFixedThreadPool(
+                ExecutorFactory.getDefaultMode(), threadCount, "runner-service-");
     }
 
     @Override
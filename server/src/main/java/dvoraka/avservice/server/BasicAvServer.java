@@ -11,6 +11,9 @@ import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -26,6 +29,10 @@ public class BasicAvServer implements AvServer {
     private static final Logger log = LogManager.getLogger(BasicAvServer.class);
 
     public static final InfoSource MESSAGE_SOURCE = InfoSource.SERVER;
+    /**
+     * Error info of responses to rejected messages from batches.
+     */
+    public static final String REJECTED_ERROR = "Message rejected.";
 
     private final String serviceId;
     private final ProcessedAvMessageListener processedAvMessageListener;
@@ -94,10 +101,36 @@ public class BasicAvServer implements AvServer {
         this.running = value;
     }
 
+    /**
+     * Sends a message to the processor. The message info is saved only for an accepted
+     * message, a rejected message is left to the transport.
+     *
+     * @param message the message
+     * @throws RejectedExecutionException if the processor rejected the message
+     */
     @Override
     public void onMessage(AvMessage message) {
-        messageInfoService.save(message, MESSAGE_SOURCE, serviceId);
         messageProcessor.sendMessage(message);
+        messageInfoService.save(message, MESSAGE_SOURCE, serviceId);
+    }
+
+    /**
+     * Sends a batch of messages to the processor one by one. A batch cannot be returned
+     * to the transport only partly, so a rejected message gets an error response and
+     * the rest of the batch is still sent.
+     *
+     * @param messages the messages
+     */
+    @Override
+    public void onMessages(List<AvMessage> messages) {
+        for (AvMessage message : messages) {
+            try {
+                onMessage(message);
+            } catch (RejectedExecutionException e) {
+                log.warn("Message rejected: " + message.getId(), e);
+                sendMessage(message.createErrorResponse(REJECTED_ERROR));
+            }
+        }
     }
 
     private void setStarted(boolean started) {
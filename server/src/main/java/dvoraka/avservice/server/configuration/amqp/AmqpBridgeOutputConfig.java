@@ -4,6 +4,7 @@ import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.amqp.AmqpAdapter;
 import dvoraka.avservice.common.amqp.AvMessageConverter;
 import dvoraka.avservice.common.amqp.AvMessageMapper;
+import dvoraka.avservice.common.codec.WireFormat;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.MessageListener;
@@ -46,6 +47,8 @@ public class AmqpBridgeOutputConfig {
 
     @Value("${avservice.serviceId:default1}")
     private String serviceId;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
 
 
     @Bean
@@ -78,7 +81,7 @@ public class AmqpBridgeOutputConfig {
 
     @Bean
     public MessageConverter outMessageConverter(AvMessageMapper outMessageMapper) {
-        return new AvMessageConverter(outMessageMapper);
+        return new AvMessageConverter(outMessageMapper, wireFormat);
     }
 
     @Bean
@@ -24,6 +24,9 @@ public class AmqpCommonServerConfig {
     @Value("${avservice.amqp.pass}")
     private String userPassword;
 
+    @Value("${avservice.amqp.publisherConfirms:false}")
+    private boolean publisherConfirms;
+
 
     @Bean
     public ConnectionFactory serverConnectionFactory() {
@@ -31,6 +34,8 @@ public class AmqpCommonServerConfig {
         connectionFactory.setUsername(userName);
         connectionFactory.setPassword(userPassword);
         connectionFactory.setVirtualHost(virtualHost);
+        connectionFactory.setPublisherConfirms(publisherConfirms);
+        connectionFactory.setPublisherReturns(publisherConfirms);
 
         return connectionFactory;
     }
@@ -4,6 +4,8 @@ import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.amqp.AmqpAdapter;
 import dvoraka.avservice.common.amqp.AvMessageConverter;
 import dvoraka.avservice.common.amqp.AvMessageMapper;
+import dvoraka.avservice.common.codec.WireFormat;
+import dvoraka.avservice.core.RejectionPolicy;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.springframework.amqp.core.MessageListener;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
@@ -33,6 +35,21 @@ public class AmqpServerConfig {
 
     @Value("${avservice.amqp.listeningTimeout:4000}")
     private long listeningTimeout;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
+
+    @Value("${avservice.amqp.consumersPerQueue:1}")
+    private int consumersPerQueue;
+    @Value("${avservice.amqp.prefetch:250}")
+    private int prefetch;
+    @Value("${avservice.amqp.messagesPerAck:1}")
+    private int messagesPerAck;
+    @Value("${avservice.amqp.ackTimeout:20000}")
+    private long ackTimeout;
+    @Value("${avservice.amqp.publisherConfirms:false}")
+    private boolean publisherConfirms;
+    @Value("${avservice.processor.rejectionPolicy:BLOCK}")
+    private RejectionPolicy rejectionPolicy;
 
 
     @Bean
@@ -40,8 +57,13 @@ public class AmqpServerConfig {
             RabbitTemplate fileServerRabbitTemplate,
             MessageInfoService messageInfoService
     ) {
-        return new AmqpAdapter(
+        AmqpAdapter adapter = new AmqpAdapter(
                 resultExchange, serviceId, fileServerRabbitTemplate, messageInfoService);
+        if (publisherConfirms) {
+            adapter.enablePublisherConfirms();
+        }
+
+        return adapter;
     }
 
     @Bean
@@ -51,7 +73,7 @@ public class AmqpServerConfig {
 
     @Bean
     public MessageConverter fileServerMessageConverter(AvMessageMapper fileServerMessageMapper) {
-        return new AvMessageConverter(fileServerMessageMapper);
+        return new AvMessageConverter(fileServerMessageMapper, wireFormat);
     }
 
     @Bean
@@ -76,9 +98,20 @@ public class AmqpServerConfig {
             ConnectionFactory serverConnectionFactory,
             MessageListener fileServerMessageListener
     ) {
+        // a failed message is rejected with all messages waiting for the batch ack, they were
+        // already processed and would be processed again
+        if (messagesPerAck > 1 && rejectionPolicy == RejectionPolicy.REQUEUE) {
+            throw new IllegalStateException(
+                    "Acknowledging more messages at once does not support the REQUEUE policy.");
+        }
+
         DirectMessageListenerContainer container = new DirectMessageListenerContainer();
         container.setConnectionFactory(serverConnectionFactory);
         container.setQueueNames(fileQueue);
+        container.setConsumersPerQueue(consumersPerQueue);
+        container.setPrefetchCount(prefetch);
+        container.setMessagesPerAck(messagesPerAck);
+        container.setAckTimeout(ackTimeout);
         container.setMessageListener(fileServerMessageListener);
 
         return container;
@@ -2,6 +2,8 @@ package dvoraka.avservice.server.configuration.jms;
 
 import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.jms.JmsAdapter;
+import dvoraka.avservice.common.codec.WireFormat;
+import dvoraka.avservice.common.jms.BinaryMessageConverter;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -37,6 +39,8 @@ public class JmsBridgeOutputConfig {
 
     @Value("${avservice.serviceId:default1}")
     private String serviceId;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
 
 
     @Bean
@@ -54,7 +58,7 @@ public class JmsBridgeOutputConfig {
         MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
         messageConverter.setTypeIdPropertyName("typeId");
 
-        return messageConverter;
+        return new BinaryMessageConverter(messageConverter, wireFormat);
     }
 
     @Bean
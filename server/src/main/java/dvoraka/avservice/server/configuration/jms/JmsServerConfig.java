@@ -2,6 +2,10 @@ package dvoraka.avservice.server.configuration.jms;
 
 import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.jms.JmsAdapter;
+import dvoraka.avservice.client.transport.jms.JmsBatchPublisher;
+import dvoraka.avservice.common.codec.WireFormat;
+import dvoraka.avservice.common.jms.BinaryMessageConverter;
+import dvoraka.avservice.core.RejectionPolicy;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -32,15 +36,38 @@ public class JmsServerConfig {
 
     @Value("${avservice.serviceId:default1}")
     private String serviceId;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
+
+    @Value("${avservice.jms.batchSize:1}")
+    private int batchSize;
+    @Value("${avservice.jms.linger:5}")
+    private long linger;
+    @Value("${avservice.jms.sendQueueCapacity:10000}")
+    private int sendQueueCapacity;
+    @Value("${avservice.processor.rejectionPolicy:BLOCK}")
+    private RejectionPolicy rejectionPolicy;
 
 
     @Bean
     public AvNetworkComponent fileAvNetworkComponent(
             JmsTemplate fileServerJmsTemplate,
-            MessageInfoService messageInfoService
+            MessageInfoService messageInfoService,
+            JmsBatchPublisher fileServerBatchPublisher
     ) {
-        return new JmsAdapter(
+        JmsAdapter adapter = new JmsAdapter(
                 resultDestination, serviceId, fileServerJmsTemplate, messageInfoService);
+        if (batchSize > 1) {
+            adapter.setBatchPublisher(fileServerBatchPublisher);
+        }
+
+        return adapter;
+    }
+
+    @Bean
+    public JmsBatchPublisher fileServerBatchPublisher(JmsTemplate fileServerJmsTemplate) {
+        return new JmsBatchPublisher(
+                fileServerJmsTemplate, resultDestination, batchSize, linger, sendQueueCapacity);
     }
 
     @Bean
@@ -48,7 +75,7 @@ public class JmsServerConfig {
         MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
         messageConverter.setTypeIdPropertyName("typeId");
 
-        return messageConverter;
+        return new BinaryMessageConverter(messageConverter, wireFormat);
     }
 
     @Bean
@@ -59,6 +86,7 @@ public class JmsServerConfig {
         JmsTemplate template = new JmsTemplate(serverConnectionFactory);
         template.setReceiveTimeout(receiveTimeout);
         template.setMessageConverter(fileServerMessageConverter);
+        template.setSessionTransacted(batchSize > 1);
 
         return template;
     }
@@ -77,6 +105,9 @@ public class JmsServerConfig {
         container.setConnectionFactory(serverConnectionFactory);
         container.setDestinationName(fileDestination);
         container.setMessageListener(fileServerMessageListener);
+        // an auto acknowledged message is lost when the listener throws, a transacted
+        // session is rolled back and the broker redelivers the message
+        container.setSessionTransacted(rejectionPolicy == RejectionPolicy.REQUEUE);
 
         return container;
     }
@@ -2,8 +2,12 @@ package dvoraka.avservice.server.configuration.kafka;
 
 import dvoraka.avservice.client.transport.AvNetworkComponent;
 import dvoraka.avservice.client.transport.kafka.KafkaAdapter;
+import dvoraka.avservice.common.codec.WireFormat;
 import dvoraka.avservice.common.data.AvMessage;
 import dvoraka.avservice.common.data.DefaultAvMessage;
+import dvoraka.avservice.common.kafka.AvMessageDeserializer;
+import dvoraka.avservice.common.kafka.BinaryMessageSerializer;
+import dvoraka.avservice.core.RejectionPolicy;
 import dvoraka.avservice.db.service.MessageInfoService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -18,11 +22,11 @@ import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.BatchMessageListener;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListener;
 import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.listener.config.ContainerProperties;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
@@ -46,6 +50,21 @@ public class KafkaServerConfig {
 
     @Value("${avservice.serviceId}")
     private String serviceId;
+    @Value("${avservice.wireFormat:JSON}")
+    private WireFormat wireFormat;
+
+    @Value("${avservice.kafka.concurrency:1}")
+    private int concurrency;
+    @Value("${avservice.kafka.batchListener:false}")
+    private boolean batchListener;
+    @Value("${avservice.kafka.maxPollRecords:500}")
+    private int maxPollRecords;
+    @Value("${avservice.kafka.linger:5}")
+    private int linger;
+    @Value("${avservice.kafka.batchSize:16384}")
+    private int batchSize;
+    @Value("${avservice.processor.rejectionPolicy:BLOCK}")
+    private RejectionPolicy rejectionPolicy;
 
 
     @Bean
@@ -61,7 +80,10 @@ public class KafkaServerConfig {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
+                wireFormat == WireFormat.BINARY ? BinaryMessageSerializer.class : JsonSerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, linger);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
 
         return new DefaultKafkaProducerFactory<>(configProps);
     }
@@ -76,7 +98,7 @@ public class KafkaServerConfig {
         return new DefaultKafkaConsumerFactory<>(
                 consumerConfigs(),
                 new StringDeserializer(),
-                new JsonDeserializer<>(DefaultAvMessage.class)
+                new AvMessageDeserializer()
         );
     }
 
@@ -84,17 +106,28 @@ public class KafkaServerConfig {
     public MessageListenerContainer fileServerMessageListenerContainer(
             ConsumerFactory<String, DefaultAvMessage> consumerFactory,
             MessageListener<String, AvMessage> fileServerMessageListener,
+            AvNetworkComponent avNetworkComponent,
             ThreadPoolTaskScheduler kafkaServerThreadPoolTaskScheduler
     ) {
+        // the container commits offsets of failed records, so they would be lost
+        if (rejectionPolicy == RejectionPolicy.REQUEUE) {
+            throw new IllegalStateException("Kafka does not support the REQUEUE rejection policy.");
+        }
+
         ContainerProperties props = new ContainerProperties(fileTopic);
         // shouldn't be necessary but the default scheduler is not destroyed after shutdown
         props.setScheduler(kafkaServerThreadPoolTaskScheduler);
 
-        MessageListenerContainer container = new ConcurrentMessageListenerContainer<>(
-                consumerFactory,
-                props
-        );
-        container.setupMessageListener(fileServerMessageListener);
+        ConcurrentMessageListenerContainer<String, DefaultAvMessage> container =
+                new ConcurrentMessageListenerContainer<>(consumerFactory, props);
+        container.setConcurrency(concurrency);
+
+        if (batchListener) {
+            BatchMessageListener<String, AvMessage> listener = avNetworkComponent::onMessages;
+            container.setupMessageListener(listener);
+        } else {
+            container.setupMessageListener(fileServerMessageListener);
+        }
 
         return container;
     }
@@ -117,8 +150,9 @@ public class KafkaServerConfig {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, AvMessageDeserializer.class);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "server");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
 
         return props;
     }
@@ -1,11 +1,16 @@
 package dvoraka.avservice.server
 
 import dvoraka.avservice.client.transport.AvNetworkComponent
+import dvoraka.avservice.common.data.AvMessage
+import dvoraka.avservice.common.data.MessageType
+import dvoraka.avservice.common.util.Utils
 import dvoraka.avservice.core.MessageProcessor
 import dvoraka.avservice.db.service.MessageInfoService
 import spock.lang.Specification
 import spock.lang.Subject
 
+import java.util.concurrent.RejectedExecutionException
+
 /**
  * Basic AV server spec.
  */
@@ -78,4 +83,56 @@ class BasicAvServerSpec extends Specification {
         then:
             server.isStarted()
     }
+
+    def "batch goes to the processor"() {
+        given:
+            List<AvMessage> messages = [Utils.genMessage(), Utils.genMessage()]
+
+        when:
+            server.onMessages(messages)
+
+        then:
+            1 * processor.sendMessage(messages[0])
+
+        then:
+            1 * messageInfoService.save(messages[0], BasicAvServer.MESSAGE_SOURCE, 'TEST1')
+
+        then:
+            1 * processor.sendMessage(messages[1])
+
+        then:
+            1 * messageInfoService.save(messages[1], BasicAvServer.MESSAGE_SOURCE, 'TEST1')
+    }
+
+    def "rejected message"() {
+        given:
+            AvMessage message = Utils.genMessage()
+
+        when:
+            server.onMessage(message)
+
+        then:
+            1 * processor.sendMessage(message) >> { throw new RejectedExecutionException('test') }
+            0 * messageInfoService._
+            thrown(RejectedExecutionException)
+    }
+
+    def "rejected message does not stop a batch"() {
+        given:
+            List<AvMessage> messages = [Utils.genMessage(), Utils.genMessage(), Utils.genMessage()]
+
+        when:
+            server.onMessages(messages)
+
+        then:
+            1 * processor.sendMessage(messages[1]) >> { throw new RejectedExecutionException('test') }
+            1 * processor.sendMessage(messages[0])
+            1 * processor.sendMessage(messages[2])
+            0 * messageInfoService.save(messages[1], _, _)
+            2 * messageInfoService.save(_, BasicAvServer.MESSAGE_SOURCE, 'TEST1')
+            1 * component.sendMessage({ AvMessage response ->
+                response.getCorrelationId() == messages[1].getId() &&
+                        response.getType() == MessageType.RESPONSE_ERROR
+            })
+    }
 }
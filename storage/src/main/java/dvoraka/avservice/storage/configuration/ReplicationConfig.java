@@ -3,6 +3,7 @@ package dvoraka.avservice.storage.configuration;
 import dvoraka.avservice.client.service.ReplicationServiceClient;
 import dvoraka.avservice.client.service.response.ReplicationResponseClient;
 import dvoraka.avservice.common.service.BasicServiceManagement;
+import dvoraka.avservice.common.service.HashingAlgorithm;
 import dvoraka.avservice.storage.replication.DefaultRemoteLock;
 import dvoraka.avservice.storage.replication.DefaultReplicationService;
 import dvoraka.avservice.storage.replication.RemoteLock;
@@ -28,6 +29,8 @@ public class ReplicationConfig {
     private int maxServiceResponseTime;
     @Value("${avservice.storage.replication.remoteLock.maxResponseTime}")
     private int maxLockResponseTime;
+    @Value("${avservice.storage.replication.remoteLock.hashing:MURMUR3}")
+    private HashingAlgorithm lockHashing;
 
 
     @Bean
@@ -55,7 +58,8 @@ public class ReplicationConfig {
             ReplicationServiceClient serviceClient,
             ReplicationResponseClient responseClient
     ) {
-        DefaultRemoteLock lock = new DefaultRemoteLock(serviceClient, responseClient, nodeId);
+        DefaultRemoteLock lock = new DefaultRemoteLock(
+                serviceClient, responseClient, nodeId, lockHashing.newService());
         lock.setMaxResponseTime(maxLockResponseTime);
 
         return lock;
@@ -10,7 +10,7 @@ import dvoraka.avservice.common.helper.WaitingHelper;
 import dvoraka.avservice.common.helper.replication.ReplicationHelper;
 import dvoraka.avservice.common.listener.ReplicationMessageListener;
 import dvoraka.avservice.common.service.HashingService;
-import dvoraka.avservice.common.service.Md5HashingService;
+import dvoraka.avservice.common.service.Murmur3HashingService;
 import dvoraka.avservice.storage.replication.exception.FileNotLockedException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -74,6 +74,15 @@ public class DefaultRemoteLock implements
             ReplicationServiceClient serviceClient,
             ReplicationResponseClient responseClient,
             String nodeId
+    ) {
+        this(serviceClient, responseClient, nodeId, new Murmur3HashingService());
+    }
+
+    public DefaultRemoteLock(
+            ReplicationServiceClient serviceClient,
+            ReplicationResponseClient responseClient,
+            String nodeId,
+            HashingService hashingService
     ) {
         this.serviceClient = requireNonNull(serviceClient);
         this.responseClient = requireNonNull(responseClient);
@@ -82,7 +91,7 @@ public class DefaultRemoteLock implements
         sequence = new AtomicLong(NOT_INITIALIZED);
         lockedFiles = new HashMap<>();
         lockingLock = new ReentrantLock();
-        hashingService = new Md5HashingService();
+        this.hashingService = requireNonNull(hashingService);
 
         maxResponseTime = MAX_RESPONSE_TIME;
 
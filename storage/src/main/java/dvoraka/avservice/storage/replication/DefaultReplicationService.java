@@ -177,7 +177,7 @@ public class DefaultReplicationService implements
         // depends on an efficiency of the sending algorithm and
         // it still must be different for "bigger" (~10 MB+) files
         final int sizeTimeRatio = 2_000;
-        final int maxSaveTime = (message.getData().length / sizeTimeRatio) + maxResponseTime;
+        final int maxSaveTime = (message.getDataLength() / sizeTimeRatio) + maxResponseTime;
         log.debug("Setting max save time to {} {}", maxSaveTime, idString);
 
         if (localCopyExists(message)) {
@@ -52,7 +52,7 @@ public class DbFileService implements FileService {
 
     private FileEntity buildFile(FileMessage message) {
         FileEntity file = new FileEntity();
-        file.setData(message.getData());
+        file.setData(message.getDataBuffer());
         file.setFilename(message.getFilename());
         file.setOwner(message.getOwner());
 
@@ -86,7 +86,7 @@ public class DbFileService implements FileService {
                 message.getFilename(), message.getOwner());
 
         if (oldFile.isPresent()) {
-            oldFile.get().setData(message.getData());
+            oldFile.get().setData(message.getDataBuffer());
             repository.save(oldFile.get());
         } else {
             throw new FileNotFoundException();